@@ -0,0 +1,271 @@
+package java112.analyzer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The results of analyzing one input, for callers which embed the analyzer
+ * instead of reading its reports back from disk. Returned by
+ * {@link FileAnalysis#analyzeFile}.
+ *
+ * Nothing is sorted, formatted or written when the result is created. Each
+ * view is built the first time it is asked for, kept for later calls and
+ * cannot be changed. {@link #writeReports} writes the usual report files
+ * from the same analyzers, which is how the command line uses it.
+ *
+ * A view whose analyzer was disabled throws an
+ * {@code IllegalStateException}. When the memory budget made an analyzer
+ * spill to disk or stop retaining positions, the views only hold what
+ * stayed in memory and {@link #isComplete} is false; the reports are always
+ * complete. {@link #close} deletes the spilled runs once the reports have
+ * been written.
+ *
+ * @author Ryan Chua
+ */
+public class AnalysisResult implements AutoCloseable {
+
+    /** The path of the analyzed input                                        */
+    private String inputFilePath;
+
+    /** The analyzers which processed the input, in output order              */
+    private List<TokenAnalyzer> analyzers;
+
+    /** The memory governor of the run, which owns its spills                 */
+    private MemoryGovernor governor;
+
+    /** What each degraded analyzer gave up, keyed by analyzer name           */
+    private Map<String, String> degradations;
+
+    /** Each distinct token and its count, or null until first asked for      */
+    private SortedMap<String, Integer> tokenCounts;
+
+    /** The distinct tokens, or null until first asked for                    */
+    private SortedSet<String> distinctTokens;
+
+    /** The found locations of each search token, or null until asked for     */
+    private SortedMap<String, List<Integer>> searchHits;
+
+    /**
+     * Creates a new {@code AnalysisResult} over analyzers which have
+     * processed every token of the input.
+     *
+     * @param inputFilePath the path of the analyzed input
+     * @param analyzers the analyzers which processed the input
+     * @param governor the memory governor of the run
+     */
+    AnalysisResult(String inputFilePath, List<TokenAnalyzer> analyzers,
+            MemoryGovernor governor) {
+        this.inputFilePath = inputFilePath;
+        this.analyzers = new ArrayList<TokenAnalyzer>(analyzers);
+        this.governor = governor;
+        degradations = Collections.unmodifiableMap(new TreeMap<String,
+                String>(governor.getDegradations()));
+    }
+
+    /**
+     * Finds the analyzer of a class.
+     *
+     * @param analyzerClass the class of the analyzer
+     * @param name the name used to enable the analyzer
+     * @return the analyzer
+     * @throws IllegalStateException if the analyzer was not enabled
+     */
+    private <T extends TokenAnalyzer> T find(Class<T> analyzerClass,
+            String name) {
+        for (TokenAnalyzer analyzer : analyzers) {
+            if (analyzerClass.isInstance(analyzer)) {
+                return analyzerClass.cast(analyzer);
+            }
+        }
+        throw new IllegalStateException("The " + name
+                + " analyzer is not enabled");
+    }
+
+    /**
+     * Gets the analyzers which processed the input, for callers which need
+     * more than the views, such as writing a partial.
+     *
+     * @return the analyzers in output order
+     */
+    public List<TokenAnalyzer> getAnalyzers() {
+        return Collections.unmodifiableList(analyzers);
+    }
+
+    /**
+     * Gets the path of the analyzed input.
+     *
+     * @return the path of the input
+     */
+    public String getInputFilePath() {
+        return inputFilePath;
+    }
+
+    /**
+     * Checks whether every view holds the whole input.
+     *
+     * @return false if the memory budget degraded any analyzer, else true
+     */
+    public boolean isComplete() {
+        return degradations.isEmpty();
+    }
+
+    /**
+     * Gets what each degraded analyzer gave up to stay within the budget.
+     *
+     * @return the degradations keyed by analyzer name, empty if none
+     */
+    public Map<String, String> getDegradations() {
+        return degradations;
+    }
+
+    /**
+     * Gets the total number of tokens.
+     *
+     * @return the number of tokens in the input
+     */
+    public long getTotalTokens() {
+        return find(FileSummaryAnalyzer.class, "summary")
+                .getTotalTokensCount();
+    }
+
+    /**
+     * Gets each distinct token and the number of times it appears, in
+     * ascending order of token.
+     *
+     * @return an unmodifiable sorted map of tokens to counts
+     */
+    public synchronized SortedMap<String, Integer> getTokenCounts() {
+        if (tokenCounts == null) {
+            DistinctTokenCountsAnalyzer analyzer = find(
+                    DistinctTokenCountsAnalyzer.class, "distinct.counts");
+            SortedMap<String, Integer> counts = new TreeMap<String, Integer>();
+            for (String token : analyzer.getTokens()) {
+                counts.put(token, analyzer.getCount(token));
+            }
+            tokenCounts = Collections.unmodifiableSortedMap(counts);
+        }
+        return tokenCounts;
+    }
+
+    /**
+     * Gets the distinct tokens in ascending order.
+     *
+     * @return an unmodifiable sorted set of the distinct tokens
+     */
+    public synchronized SortedSet<String> getDistinctTokens() {
+        if (distinctTokens == null) {
+            distinctTokens = Collections.unmodifiableSortedSet(
+                    new TreeSet<String>(find(DistinctTokensAnalyzer.class,
+                    "distinct").getDistinctTokens()));
+        }
+        return distinctTokens;
+    }
+
+    /**
+     * Gets each token length and the number of tokens of that length, in
+     * ascending order of length.
+     *
+     * @return an unmodifiable sorted map of lengths to counts
+     */
+    public SortedMap<Integer, Long> getTokenLengths() {
+        return Collections.unmodifiableSortedMap(new TreeMap<Integer, Long>(
+                getLengthHistogram().toMap()));
+    }
+
+    /**
+     * Gets the mean token length.
+     *
+     * @return the mean length, or 0 if there were no tokens
+     */
+    public double getMeanTokenLength() {
+        return getLengthHistogram().getMean();
+    }
+
+    /**
+     * Gets the token length at a percentile, by the nearest-rank method.
+     *
+     * @param fraction the percentile as a fraction between 0 and 1
+     * @return the length at the percentile, or 0 if there were no tokens
+     */
+    public int getTokenLengthPercentile(double fraction) {
+        return getLengthHistogram().getPercentile(fraction);
+    }
+
+    /**
+     * Gets the histogram of the token lengths analyzer.
+     *
+     * @return the histogram
+     */
+    private LengthHistogram getLengthHistogram() {
+        return find(TokenLengthsAnalyzer.class, "token.lengths")
+                .getHistogram();
+    }
+
+    /**
+     * Gets the number of tokens which are not non-lexical words.
+     *
+     * @return the number of lexical tokens
+     */
+    public long getLexicalTokens() {
+        return find(LexicalDensityAnalyzer.class, "lexical.density")
+                .getLexicalTokens();
+    }
+
+    /**
+     * Gets the share of the tokens which are lexical.
+     *
+     * @return the lexical density between 0 and 1
+     */
+    public double getLexicalDensity() {
+        return find(LexicalDensityAnalyzer.class, "lexical.density")
+                .calculateLexicalDensity();
+    }
+
+    /**
+     * Gets the positions of each search token, pattern and phrase, in
+     * ascending order of search token. A search token which was not found
+     * has an empty list.
+     *
+     * @return an unmodifiable sorted map of search tokens to positions
+     */
+    public synchronized SortedMap<String, List<Integer>> getSearchHits() {
+        if (searchHits == null) {
+            SortedMap<String, List<Integer>> hits =
+                    new TreeMap<String, List<Integer>>();
+            for (Map.Entry<String, List<Integer>> entry : find(
+                    TokenLocationSearchAnalyzer.class,
+                    "token.search.locations").getFoundLocations()
+                    .entrySet()) {
+                hits.put(entry.getKey(), Collections.unmodifiableList(
+                        new ArrayList<Integer>(entry.getValue())));
+            }
+            searchHits = Collections.unmodifiableSortedMap(hits);
+        }
+        return searchHits;
+    }
+
+    /**
+     * Writes the report file of every analyzer to the output directory of
+     * the properties the analysis was run with.
+     */
+    public void writeReports() {
+        for (TokenAnalyzer analyzer : analyzers) {
+            analyzer.generateOutputFile(inputFilePath);
+        }
+    }
+
+    /**
+     * Deletes the runs the analyzers spilled to disk. The views still work,
+     * but the reports of an analyzer which spilled can no longer be written.
+     */
+    @Override
+    public void close() {
+        governor.deleteSpills();
+    }
+}
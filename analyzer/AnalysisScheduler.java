@@ -0,0 +1,534 @@
+package java112.analyzer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs analysis jobs for several callers on one host without letting them
+ * run the host out of memory.
+ *
+ * Each submitted job is given a memory reservation estimated from the size
+ * of its file and the analyzers it enables, see {@code estimateJobBytes}. A
+ * job is only admitted while the reservations of the running jobs and its
+ * own stay under {@code scheduler.memory.mb}; the reservation also becomes
+ * the job's {@code memory.budget.mb}, so a job which outgrows its estimate
+ * degrades through its {@link MemoryGovernor} instead of taking memory from
+ * the others. A job estimated above the whole cap is given the cap and runs
+ * alone.
+ *
+ * Admitted jobs share a fixed pool of {@code scheduler.threads} threads. Each
+ * job runs its analyzers sequentially on one pool thread, so every running
+ * job gets the same share of the pool. Waiting jobs are admitted highest
+ * priority first and in submission order within a priority. A waiting job
+ * gains one priority level every {@code scheduler.aging.seconds}, so low
+ * priority jobs are not starved, and a job which does not fit is never
+ * overtaken by a smaller one behind it.
+ *
+ * <pre>
+ * java java112.analyzer.AnalysisScheduler /analyzer.properties
+ *         [--priority=N] input.txt ...
+ * </pre>
+ *
+ * On the command line each file's reports are written to a directory named
+ * after the file inside the output directory, and a priority applies to the
+ * files after it.
+ *
+ * @author Ryan Chua
+ */
+public class AnalysisScheduler {
+
+    /** The command line option setting the priority of the files after it    */
+    private static final String PRIORITY_OPTION = "--priority=";
+
+    /** The number of bytes in a megabyte                                     */
+    private static final long MEGABYTE = 1024 * 1024;
+
+    /** The estimated bytes of text for each token, separators included       */
+    private static final long BYTES_PER_TOKEN = 6;
+
+    /** The estimated ratio of text size to gzip file size                    */
+    private static final long GZIP_RATIO = 4;
+
+    /** The constant of Heaps' law estimating the distinct tokens of a file   */
+    private static final double HEAPS_K = 44;
+
+    /** The exponent of Heaps' law estimating the distinct tokens of a file   */
+    private static final double HEAPS_BETA = 0.49;
+
+    /** The estimated bytes of one distinct token held by an analyzer         */
+    private static final long TOKEN_ENTRY_BYTES = 112;
+
+    /** The estimated bytes of one distinct pair held by an analyzer          */
+    private static final long PAIR_ENTRY_BYTES = 128;
+
+    /** The estimated fraction of a file's token pairs which are distinct     */
+    private static final double DISTINCT_PAIR_FRACTION = 0.5;
+
+    /** The estimated bytes used by a job besides its analyzers' tables       */
+    private static final long JOB_OVERHEAD_BYTES = 16 * MEGABYTE;
+
+    /** The analyzers which hold each distinct token of the file              */
+    private static final String[] VOCABULARY_ANALYZERS = {"distinct",
+            "distinct.counts", "largest.words", "tfidf"};
+
+    /** The analyzers which hold each distinct pair of tokens of the file     */
+    private static final String[] PAIR_ANALYZERS = {"ngrams", "collocations"};
+
+    /** The total memory the running jobs may reserve in bytes                */
+    private long memoryCap;
+
+    /** The number of jobs which may run at once                              */
+    private int threadCount;
+
+    /** The wait in nanoseconds for a job to gain a priority level, or 0      */
+    private long agingNanos;
+
+    /** Runs the admitted jobs                                                */
+    private ExecutorService pool;
+
+    /** The jobs waiting to be admitted, in submission order                  */
+    private List<Job> waitingJobs;
+
+    /** The number of jobs submitted so far                                   */
+    private long submittedJobs;
+
+    /** The number of admitted jobs which have not finished                   */
+    private int runningJobs;
+
+    /** The sum of the reservations of the running jobs in bytes              */
+    private long reservedBytes;
+
+    /** The number of jobs which have finished, successfully or not           */
+    private long completedJobs;
+
+    /** The number of jobs which have failed                                  */
+    private long failedJobs;
+
+    /** The sum of the waits of the admitted jobs in nanoseconds              */
+    private long totalWaitNanos;
+
+    /** The longest wait of an admitted job in nanoseconds                    */
+    private long maxWaitNanos;
+
+    /** The number of jobs which have been admitted                           */
+    private long admittedJobs;
+
+    /** True once no more jobs are accepted                                   */
+    private boolean shutdown;
+
+    /**
+     * Creates a new {@code AnalysisScheduler}. Reads the memory cap from
+     * {@code scheduler.memory.mb}, by default three quarters of the maximum
+     * heap, the pool size from {@code scheduler.threads}, by default the
+     * number of processors, and the aging interval from
+     * {@code scheduler.aging.seconds} in the properties file.
+     *
+     * @param properties the properties object to read from
+     */
+    public AnalysisScheduler(Properties properties) {
+        long defaultCap = Runtime.getRuntime().maxMemory() / 4 * 3 / MEGABYTE;
+        memoryCap = Long.parseLong(properties.getProperty(
+                "scheduler.memory.mb", String.valueOf(defaultCap))) * MEGABYTE;
+        threadCount = Integer.parseInt(properties.getProperty(
+                "scheduler.threads", String.valueOf(
+                Runtime.getRuntime().availableProcessors())));
+        agingNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(
+                properties.getProperty("scheduler.aging.seconds", "60")));
+
+        pool = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "analysis-job");
+            thread.setDaemon(true);
+            return thread;
+        });
+        waitingJobs = new ArrayList<Job>();
+    }
+
+    /**
+     * Runs the files named on the command line as scheduled jobs and prints
+     * the scheduler's metrics once they have all finished.
+     *
+     * @param args the location of the properties file, then the input files,
+     *             each optionally preceded by a priority
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Please enter the properties file and the text "
+                    + "files to analyze");
+            return;
+        }
+
+        Properties properties = new FileAnalysis().loadProperties(args[0]);
+        AnalysisScheduler scheduler = new AnalysisScheduler(properties);
+        String outputDirectory = properties.getProperty("output.directory");
+        List<Future<AnalysisResult>> results;
+        results = new ArrayList<Future<AnalysisResult>>();
+        List<String> fileNames = new ArrayList<String>();
+        int priority = 0;
+
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith(PRIORITY_OPTION)) {
+                priority = Integer.parseInt(args[i].substring(
+                        PRIORITY_OPTION.length()));
+                continue;
+            }
+
+            String name = new File(args[i]).getName();
+            Properties jobProperties = new Properties();
+            jobProperties.putAll(properties);
+            jobProperties.setProperty("output.directory",
+                    outputDirectory + name + File.separator);
+            new File(outputDirectory, name).mkdirs();
+            results.add(scheduler.submit(args[i], jobProperties, priority));
+            fileNames.add(args[i]);
+        }
+
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                results.get(i).get();
+            } catch (Exception exception) {
+                System.out.println("There was a problem analyzing the file \""
+                        + fileNames.get(i) + "\"");
+                exception.printStackTrace();
+            }
+        }
+
+        scheduler.shutdown();
+        for (String line : scheduler.getMetricsLines()) {
+            System.out.println(line);
+        }
+    }
+
+    /**
+     * Estimates the memory an analysis of a file will use: the tables of its
+     * enabled built-in analyzers plus a fixed overhead. The number of tokens
+     * is estimated from the file size and the number of distinct tokens from
+     * Heaps' law. Analyzers of n-grams and collocations hold pairs of tokens,
+     * which grow with the number of tokens rather than the vocabulary.
+     *
+     * @param fileName the name of the input file
+     * @param properties the properties the file will be analyzed with
+     * @return the estimated memory in bytes
+     */
+    public static long estimateJobBytes(String fileName,
+            Properties properties) {
+        FileAnalysis analysis = new FileAnalysis();
+        long textBytes = new File(fileName).length();
+        if (analysis.isGzipFile(fileName)) {
+            textBytes *= GZIP_RATIO;
+        }
+
+        long tokens = textBytes / BYTES_PER_TOKEN;
+        long distinctTokens = Math.min(tokens,
+                (long) (HEAPS_K * Math.pow(tokens, HEAPS_BETA)));
+        long distinctPairs = (long) (tokens * DISTINCT_PAIR_FRACTION);
+        long estimate = JOB_OVERHEAD_BYTES;
+
+        for (String name : VOCABULARY_ANALYZERS) {
+            if (analysis.isAnalyzerEnabled(properties, name)) {
+                estimate += distinctTokens * TOKEN_ENTRY_BYTES;
+            }
+        }
+        for (String name : PAIR_ANALYZERS) {
+            if (analysis.isAnalyzerEnabled(properties, name)) {
+                estimate += distinctPairs * PAIR_ENTRY_BYTES;
+            }
+        }
+        return estimate;
+    }
+
+    /**
+     * Queues a plain or gzip text file for analysis. The job writes its
+     * reports to the output directory of its properties once it has read the
+     * file, then deletes any runs it spilled to disk.
+     *
+     * @param fileName the name of the input file
+     * @param properties the properties to analyze the file with
+     * @param priority the priority of the job, higher runs sooner
+     * @return the results of the analysis once the job has finished
+     */
+    public Future<AnalysisResult> submit(String fileName,
+            Properties properties, int priority) {
+        long reservation = Math.min(memoryCap,
+                estimateJobBytes(fileName, properties));
+
+        // Enforce the reservation with the job's own memory governor
+        Properties jobProperties = new Properties();
+        jobProperties.putAll(properties);
+        long budgetMb = Math.max(1,
+                (reservation - JOB_OVERHEAD_BYTES) / MEGABYTE);
+        long configuredMb = Long.parseLong(properties.getProperty(
+                "memory.budget.mb", "0"));
+        if (configuredMb <= 0 || configuredMb > budgetMb) {
+            jobProperties.setProperty("memory.budget.mb",
+                    String.valueOf(budgetMb));
+        }
+        jobProperties.setProperty("analyzer.execution.mode", "sequential");
+
+        Job job = new Job(fileName, jobProperties, priority, reservation);
+        synchronized (this) {
+            if (shutdown) {
+                throw new IllegalStateException("The scheduler is shut down");
+            }
+            job.sequence = submittedJobs++;
+            waitingJobs.add(job);
+            dispatch();
+        }
+        return job.result;
+    }
+
+    /**
+     * Admits waiting jobs while there is a free pool thread and their
+     * reservations fit under the memory cap.
+     */
+    private synchronized void dispatch() {
+        while (runningJobs < threadCount && !waitingJobs.isEmpty()) {
+            long now = System.nanoTime();
+            Job next = waitingJobs.get(0);
+            for (Job job : waitingJobs) {
+                long priority = getEffectivePriority(job, now);
+                long nextPriority = getEffectivePriority(next, now);
+                if (priority > nextPriority || (priority == nextPriority
+                        && job.sequence < next.sequence)) {
+                    next = job;
+                }
+            }
+
+            if (runningJobs > 0
+                    && reservedBytes + next.reservation > memoryCap) {
+                return;
+            }
+
+            Job admitted = next;
+            waitingJobs.remove(admitted);
+            long wait = now - admitted.submitTime;
+            totalWaitNanos += wait;
+            maxWaitNanos = Math.max(maxWaitNanos, wait);
+            admittedJobs++;
+            runningJobs++;
+            reservedBytes += admitted.reservation;
+            pool.execute(() -> run(admitted));
+        }
+    }
+
+    /**
+     * Gets the priority of a waiting job including the levels it has gained
+     * by waiting.
+     *
+     * @param job the waiting job
+     * @param now the current time from {@code System.nanoTime}
+     * @return the effective priority
+     */
+    private long getEffectivePriority(Job job, long now) {
+        if (agingNanos <= 0) {
+            return job.priority;
+        }
+        return job.priority + (now - job.submitTime) / agingNanos;
+    }
+
+    /**
+     * Analyzes the file of a job, writes its reports and deletes its
+     * spilled runs. Runs on a pool thread. Any exception or error, such as
+     * running out of memory, completes the job's result with the failure,
+     * so a caller waiting on the result is never left blocked.
+     *
+     * @param job the admitted job
+     */
+    private void run(Job job) {
+        boolean failed = false;
+        try {
+            AnalysisResult result = new FileAnalysis().analyzeFile(
+                    job.fileName, job.properties);
+            try {
+                result.writeReports();
+            } finally {
+                result.close();
+            }
+            job.result.complete(result);
+        } catch (Throwable throwable) {
+            failed = true;
+            job.result.completeExceptionally(throwable);
+        } finally {
+            finished(job, failed);
+        }
+    }
+
+    /**
+     * Releases the reservation of a finished job and admits the jobs which
+     * now fit.
+     *
+     * @param job the finished job
+     * @param failed true if the job failed, else false
+     */
+    private synchronized void finished(Job job, boolean failed) {
+        runningJobs--;
+        reservedBytes -= job.reservation;
+        completedJobs++;
+        if (failed) {
+            failedJobs++;
+        }
+        dispatch();
+        notifyAll();
+    }
+
+    /**
+     * Stops accepting jobs, waits for every submitted job to finish and
+     * stops the pool.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        try {
+            while (runningJobs > 0 || !waitingJobs.isEmpty()) {
+                wait();
+            }
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            System.out.println("Interrupted while waiting for the jobs");
+            interruptedException.printStackTrace();
+        }
+        pool.shutdown();
+    }
+
+    // Getters and Setters
+
+    /**
+     * Gets the number of jobs waiting to be admitted.
+     *
+     * @return the queue depth
+     */
+    public synchronized int getQueueDepth() {
+        return waitingJobs.size();
+    }
+
+    /**
+     * Gets the number of admitted jobs which have not finished.
+     *
+     * @return the running jobs
+     */
+    public synchronized int getRunningJobs() {
+        return runningJobs;
+    }
+
+    /**
+     * Gets the sum of the reservations of the running jobs.
+     *
+     * @return the reserved memory in bytes
+     */
+    public synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    /**
+     * Gets the number of jobs which have finished, successfully or not.
+     *
+     * @return the completed jobs
+     */
+    public synchronized long getCompletedJobs() {
+        return completedJobs;
+    }
+
+    /**
+     * Gets the number of jobs which have failed.
+     *
+     * @return the failed jobs
+     */
+    public synchronized long getFailedJobs() {
+        return failedJobs;
+    }
+
+    /**
+     * Gets the mean time admitted jobs waited in the queue.
+     *
+     * @return the mean wait in milliseconds, or 0 if none were admitted
+     */
+    public synchronized double getMeanWaitMillis() {
+        if (admittedJobs == 0) {
+            return 0;
+        }
+        return totalWaitNanos / 1e6 / admittedJobs;
+    }
+
+    /**
+     * Gets the longest time a job has waited in the queue, including the
+     * jobs still waiting.
+     *
+     * @return the longest wait in milliseconds
+     */
+    public synchronized double getMaxWaitMillis() {
+        long longest = maxWaitNanos;
+        long now = System.nanoTime();
+        for (Job job : waitingJobs) {
+            longest = Math.max(longest, now - job.submitTime);
+        }
+        return longest / 1e6;
+    }
+
+    /**
+     * Gets the scheduler's metrics as lines of text.
+     *
+     * @return the metrics, one per line
+     */
+    public synchronized List<String> getMetricsLines() {
+        List<String> lines = new ArrayList<String>();
+        lines.add("Queue Depth: " + getQueueDepth());
+        lines.add("Running Jobs: " + runningJobs + " of " + threadCount);
+        lines.add("Reserved Memory: " + reservedBytes / MEGABYTE + " of "
+                + memoryCap / MEGABYTE + " MB");
+        lines.add("Completed Jobs: " + completedJobs + " (" + failedJobs
+                + " failed)");
+        lines.add(String.format("Wait Time: %.1f ms mean, %.1f ms max",
+                getMeanWaitMillis(), getMaxWaitMillis()));
+        return lines;
+    }
+
+    /**
+     * A file waiting for or running its analysis.
+     */
+    private static class Job {
+
+        /** The name of the input file                                        */
+        String fileName;
+
+        /** The properties to analyze the file with                           */
+        Properties properties;
+
+        /** The priority of the job, higher runs sooner                       */
+        int priority;
+
+        /** The memory reserved for the job in bytes                          */
+        long reservation;
+
+        /** The order the job was submitted in                                */
+        long sequence;
+
+        /** The time the job was submitted from {@code System.nanoTime}       */
+        long submitTime;
+
+        /** Completed with the results once the job has finished              */
+        CompletableFuture<AnalysisResult> result;
+
+        /**
+         * Creates a new job.
+         *
+         * @param fileName the name of the input file
+         * @param properties the properties to analyze the file with
+         * @param priority the priority of the job
+         * @param reservation the memory reserved for the job in bytes
+         */
+        Job(String fileName, Properties properties, int priority,
+                long reservation) {
+            this.fileName = fileName;
+            this.properties = properties;
+            this.priority = priority;
+            this.reservation = reservation;
+            submitTime = System.nanoTime();
+            result = new CompletableFuture<AnalysisResult>();
+        }
+    }
+}
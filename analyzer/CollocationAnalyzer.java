@@ -0,0 +1,465 @@
+package java112.analyzer;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Properties;
+
+/**
+ * Finds collocations: pairs of different tokens which occur within a window
+ * of {@code collocation.window} tokens of each other more often than their
+ * frequencies would suggest. Pairs are ranked by pointwise mutual
+ * information (PMI) or by Dunning's log-likelihood ratio.
+ *
+ * Each token is given an ID from a {@link TokenDictionary} and the IDs of the
+ * most recent tokens are kept in a ring buffer. A pair is packed into a
+ * {@code long} as two 32-bit IDs, smaller first, and counted in a
+ * {@link LongIntHashMap}, so counting a pair creates no objects. With
+ * {@code collocation.scope} set to {@code search}, only pairs including a
+ * search token are counted: a token which is one of the search tokens,
+ * matches a search pattern or is a word of a search phrase.
+ *
+ * Analyzers which counted consecutive parts of the input can be merged,
+ * including the pairs which span the boundary between the parts.
+ *
+ * @author Ryan Chua
+ */
+public class CollocationAnalyzer implements MergeableAnalyzer,
+        MemoryGovernedAnalyzer {
+
+    /** The mask of the low 32 bits of a packed pair                          */
+    private static final long ID_MASK = 0xFFFFFFFFL;
+
+    /** The number of pairs expected, used to size the table                  */
+    private static final int EXPECTED_PAIRS = 1 << 16;
+
+    /** The properties object to read from                                    */
+    private Properties properties;
+
+    /** The IDs of the tokens in the file                                     */
+    private TokenDictionary dictionary;
+
+    /** The count of each packed pair of token IDs                            */
+    private LongIntHashMap pairCounts;
+
+    /** The number of pairs each token ID is part of, indexed by ID           */
+    private int[] pairTotals;
+
+    /** The number of pairs counted                                           */
+    private long totalPairs;
+
+    /** The largest distance in tokens between the two tokens of a pair       */
+    private int window;
+
+    /** Matches the search tokens, or null to count pairs of any tokens       */
+    private TokenLocationSearchAnalyzer searchTerms;
+
+    /** The IDs of the search tokens                                          */
+    private BitSet searchIds;
+
+    /** The IDs of the most recent tokens, oldest overwritten first           */
+    private int[] recentIds;
+
+    /** The IDs of the first tokens, up to one window                         */
+    private int[] firstIds;
+
+    /** The number of tokens processed                                        */
+    private long tokenCount;
+
+    /** The smallest count of a reported pair                                 */
+    private int minimumCount;
+
+    /** The largest number of pairs in the report                             */
+    private int topCount;
+
+    /** True to rank pairs by PMI, false to rank by log-likelihood            */
+    private boolean rankByPmi;
+
+    /** The memory governor of the run, or null if there is none              */
+    private MemoryGovernor governor;
+
+    /** The footprint at which to report to the governor next                 */
+    private long nextReport;
+
+    /** True once pairs seen only once have been pruned to save memory        */
+    private boolean pruned;
+
+    /**
+     * Creates a new {@code CollocationAnalyzer} counting pairs of any tokens
+     * within five tokens of each other.
+     */
+    public CollocationAnalyzer() {
+        dictionary = new TokenDictionary();
+        pairCounts = new LongIntHashMap(EXPECTED_PAIRS);
+        pairTotals = new int[1024];
+        searchIds = new BitSet();
+        setWindow(5);
+        minimumCount = 1;
+        topCount = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Creates a new {@code CollocationAnalyzer}. Assigns a properties object
+     * to the instance variable. Reads the window from
+     * {@code collocation.window}, the scope from {@code collocation.scope},
+     * the ranking from {@code collocation.ranking}, the minimum count from
+     * {@code collocation.minimum.count} and the number of pairs to report
+     * from {@code collocation.top.count}. A scope of {@code search} loads the
+     * search tokens, patterns and phrases into a
+     * {@link TokenLocationSearchAnalyzer} of its own, whose compiled matchers
+     * decide which tokens are search tokens.
+     *
+     * @param properties the properties object to read from
+     */
+    public CollocationAnalyzer(Properties properties) {
+        this();
+        this.properties = properties;
+        setWindow(Integer.parseInt(properties.getProperty(
+                "collocation.window", "5")));
+        if (properties.getProperty("collocation.scope", "all").equals(
+                "search")) {
+            searchTerms = new TokenLocationSearchAnalyzer(properties);
+        }
+        rankByPmi = properties.getProperty("collocation.ranking", "llr")
+                .equals("pmi");
+        minimumCount = Integer.parseInt(properties.getProperty(
+                "collocation.minimum.count", "1"));
+        topCount = Integer.parseInt(properties.getProperty(
+                "collocation.top.count", "100"));
+    }
+
+    /**
+     * Sets the window and empties the buffers of recent and first tokens.
+     *
+     * @param window the largest distance between the tokens of a pair
+     */
+    private void setWindow(int window) {
+        this.window = Math.max(1, window);
+        recentIds = new int[this.window];
+        firstIds = new int[this.window];
+    }
+
+    /**
+     * Gives the analyzer the memory governor of the run. When the governor
+     * reports that the budget is nearly used, pairs seen only once are
+     * pruned, so the reported counts become lower bounds.
+     *
+     * @param governor the memory governor of the run
+     */
+    public void setMemoryGovernor(MemoryGovernor governor) {
+        this.governor = governor;
+        nextReport = governor.getReportStep();
+    }
+
+    /**
+     * Counts a pair of the token with each of the tokens in the window
+     * before it.
+     *
+     * @param token the token to process
+     */
+    public void processToken(String token) {
+        int id = idOf(token);
+
+        long available = Math.min(tokenCount, window);
+        for (int distance = 1; distance <= available; distance++) {
+            countPair(recentIds[(int) ((tokenCount - distance) % window)],
+                    id, 1);
+        }
+
+        if (tokenCount < window) {
+            firstIds[(int) tokenCount] = id;
+        }
+        recentIds[(int) (tokenCount % window)] = id;
+        tokenCount++;
+
+        if (governor != null && (tokenCount & 0x3FF) == 0) {
+            long footprint = getFootprint();
+            if (footprint >= nextReport) {
+                checkMemory(footprint);
+            }
+        }
+    }
+
+    /**
+     * Gets the ID of a token, noting whether a new ID is a search token.
+     *
+     * @param token the token
+     * @return the ID of the token
+     */
+    private int idOf(String token) {
+        int before = dictionary.size();
+        int id = dictionary.idOf(token);
+
+        if (id > before) {
+            if (searchTerms != null && searchTerms.matchesSearchTerm(token)) {
+                searchIds.set(id);
+            }
+            if (id >= pairTotals.length) {
+                pairTotals = Arrays.copyOf(pairTotals, pairTotals.length * 2);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Adds to the count of a pair of different tokens. When only search
+     * tokens are counted, pairs without one are ignored.
+     *
+     * @param firstId the ID of one token
+     * @param secondId the ID of the other token
+     * @param count the amount to add
+     */
+    private void countPair(int firstId, int secondId, int count) {
+        if (firstId == secondId || (searchTerms != null
+                && !searchIds.get(firstId) && !searchIds.get(secondId))) {
+            return;
+        }
+        pairCounts.add(pack(firstId, secondId), count);
+        pairTotals[firstId] += count;
+        pairTotals[secondId] += count;
+        totalPairs += count;
+    }
+
+    /**
+     * Packs two token IDs into a pair key with the smaller ID first, so both
+     * orders of the tokens count as the same pair.
+     *
+     * @param firstId the ID of one token
+     * @param secondId the ID of the other token
+     * @return the packed key
+     */
+    static long pack(int firstId, int secondId) {
+        int low = Math.min(firstId, secondId);
+        int high = Math.max(firstId, secondId);
+        return ((long) low << 32) | high;
+    }
+
+    /**
+     * Estimates the memory used by the table, the totals and the dictionary.
+     *
+     * @return the estimated size in bytes
+     */
+    private long getFootprint() {
+        return pairCounts.getFootprint() + 4L * pairTotals.length
+                + 64L * dictionary.size();
+    }
+
+    /**
+     * Reports the footprint to the governor and prunes the pairs seen only
+     * once if the budget is nearly used. The totals of each token keep
+     * counting the pruned pairs, so the scores of the remaining pairs are
+     * unchanged.
+     *
+     * @param footprint the estimated size of the analyzer in bytes
+     */
+    private void checkMemory(long footprint) {
+        nextReport = footprint + governor.getReportStep();
+        if (!governor.report(this, footprint)) {
+            return;
+        }
+
+        pairCounts.removeBelow(2);
+        pruned = true;
+        footprint = getFootprint();
+        nextReport = footprint + governor.getReportStep();
+        governor.report(this, footprint);
+        governor.recordDegradation("collocations", "pruned pairs seen once "
+                + "after token " + tokenCount + ", counts are lower bounds");
+    }
+
+    /**
+     * Adds the pair counts of another {@code CollocationAnalyzer} with the
+     * same settings. The other analyzer's token IDs are translated into this
+     * one's, and the pairs which span the end of this analyzer's tokens and
+     * the start of the other's are counted.
+     *
+     * @param other the analyzer to merge into this one
+     */
+    public void merge(TokenAnalyzer other) {
+        CollocationAnalyzer otherAnalyzer = (CollocationAnalyzer) other;
+        if (otherAnalyzer.tokenCount == 0) {
+            return;
+        }
+
+        int[] translated = dictionary.translate(otherAnalyzer.dictionary);
+        for (int id = 1; id < translated.length; id++) {
+            if (translated[id] >= pairTotals.length) {
+                pairTotals = Arrays.copyOf(pairTotals, Math.max(
+                        translated[id] + 1, pairTotals.length * 2));
+            }
+            if (otherAnalyzer.searchIds.get(id)) {
+                searchIds.set(translated[id]);
+            }
+        }
+
+        // Pairs spanning the boundary: each of the other analyzer's first
+        // tokens with the tokens at the end of this one in its window
+        int otherFirstCount = (int) Math.min(otherAnalyzer.tokenCount,
+                window);
+        for (int i = 0; i < otherFirstCount; i++) {
+            int id = translated[otherAnalyzer.firstIds[i]];
+            long available = Math.min(tokenCount, window - i);
+            for (int distance = i + 1; distance <= i + available;
+                    distance++) {
+                countPair(recentIds[(int) ((tokenCount + i - distance)
+                        % window)], id, 1);
+            }
+        }
+
+        otherAnalyzer.pairCounts.forEach((key, count) ->
+                pairCounts.add(pack(translated[(int) (key >>> 32)],
+                translated[(int) (key & ID_MASK)]), count));
+        for (int id = 1; id < translated.length; id++) {
+            pairTotals[translated[id]] += otherAnalyzer.pairTotals[id];
+        }
+        totalPairs += otherAnalyzer.totalPairs;
+        pruned |= otherAnalyzer.pruned;
+
+        // The first and most recent tokens of the combined input
+        for (int i = 0; i < otherFirstCount && tokenCount + i < window;
+                i++) {
+            firstIds[(int) tokenCount + i] = translated[
+                    otherAnalyzer.firstIds[i]];
+        }
+        long combinedCount = tokenCount + otherAnalyzer.tokenCount;
+        long recentCount = Math.min(otherAnalyzer.tokenCount, window);
+        for (long i = 1; i <= recentCount; i++) {
+            recentIds[(int) ((combinedCount - i) % window)] = translated[
+                    otherAnalyzer.recentIds[(int) ((otherAnalyzer.tokenCount
+                    - i) % window)]];
+        }
+        tokenCount = combinedCount;
+
+        if (governor != null) {
+            governor.release(otherAnalyzer);
+            long footprint = getFootprint();
+            if (footprint >= nextReport) {
+                checkMemory(footprint);
+            }
+        }
+    }
+
+    /**
+     * Creates an output file with the highest ranked pairs counted at least
+     * {@code collocation.minimum.count} times, up to
+     * {@code collocation.top.count} pairs. Each line holds the pair, its
+     * count, its PMI and its log-likelihood ratio, separated by tabs.
+     *
+     * Each counted pair is one observation. For tokens a and b, PMI is
+     * log2(count(a, b) * pairs / (pairs(a) * pairs(b))), where pairs(a) is the
+     * number of pairs including a. The log-likelihood ratio is Dunning's G2
+     * over the same 2x2 table.
+     *
+     * @param inputFilePath the filepath of the analyzed file
+     */
+    public void generateOutputFile(String inputFilePath) {
+        String outputFilePath = properties.getProperty("output.directory")
+                + properties.getProperty("output.file.collocations");
+
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(
+                new FileWriter(outputFilePath)))) {
+            long[] keys = new long[pairCounts.size()];
+            int[] counts = new int[pairCounts.size()];
+            int[] kept = new int[1];
+            pairCounts.forEach((key, count) -> {
+                if (count >= minimumCount) {
+                    keys[kept[0]] = key;
+                    counts[kept[0]] = count;
+                    kept[0]++;
+                }
+            });
+
+            double[] pmi = new double[kept[0]];
+            double[] logLikelihood = new double[kept[0]];
+            String[] texts = new String[kept[0]];
+            Integer[] order = new Integer[kept[0]];
+            for (int i = 0; i < kept[0]; i++) {
+                long firstTotal = pairTotals[(int) (keys[i] >>> 32)];
+                long secondTotal = pairTotals[(int) (keys[i] & ID_MASK)];
+                pmi[i] = Math.log((double) counts[i] * totalPairs
+                        / (firstTotal * secondTotal)) / Math.log(2);
+                logLikelihood[i] = logLikelihood(counts[i],
+                        firstTotal - counts[i], secondTotal - counts[i],
+                        totalPairs - firstTotal - secondTotal + counts[i]);
+                texts[i] = dictionary.tokenOf((int) (keys[i] >>> 32)) + " "
+                        + dictionary.tokenOf((int) (keys[i] & ID_MASK));
+                order[i] = i;
+            }
+            double[] scores = rankByPmi ? pmi : logLikelihood;
+            Arrays.sort(order, Comparator.<Integer>comparingDouble(
+                    i -> -scores[i]).thenComparing(i -> texts[i]));
+
+            DecimalFormat formatter = new DecimalFormat("0.00");
+            writer.println("Collocations within " + window + " tokens, ranked "
+                    + "by " + (rankByPmi ? "PMI" : "log-likelihood") + ": "
+                    + pairCounts.size() + " distinct pairs, " + totalPairs
+                    + " total pairs");
+            writer.println("Pair\tCount\tPMI\tLog-likelihood");
+            for (int i = 0; i < Math.min(topCount, order.length); i++) {
+                int index = order[i];
+                writer.println(texts[index] + "\t" + counts[index] + "\t"
+                        + formatter.format(pmi[index]) + "\t"
+                        + formatter.format(logLikelihood[index]));
+            }
+            if (pruned) {
+                writer.println();
+                writer.println("Pairs seen once were pruned to save memory, "
+                        + "so counts are lower bounds");
+            }
+        } catch (IOException iOException) {
+            System.out.println("There was a problem writing "
+                    + properties.getProperty("output.file.collocations"));
+            iOException.printStackTrace();
+        } catch (Exception exception) {
+            System.out.println("There was a problem writing "
+                    + properties.getProperty("output.file.collocations"));
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Calculates Dunning's log-likelihood ratio G2 of a 2x2 table.
+     *
+     * @param both observations with both tokens
+     * @param firstOnly observations with only the first token
+     * @param secondOnly observations with only the second token
+     * @param neither observations with neither token
+     * @return the log-likelihood ratio
+     */
+    static double logLikelihood(long both, long firstOnly, long secondOnly,
+            long neither) {
+        long total = both + firstOnly + secondOnly + neither;
+        long firstRow = both + firstOnly;
+        long secondRow = secondOnly + neither;
+        long firstColumn = both + secondOnly;
+        long secondColumn = firstOnly + neither;
+
+        return 2 * (term(both, firstRow, firstColumn, total)
+                + term(firstOnly, firstRow, secondColumn, total)
+                + term(secondOnly, secondRow, firstColumn, total)
+                + term(neither, secondRow, secondColumn, total));
+    }
+
+    /**
+     * Calculates one cell's part of the log-likelihood ratio.
+     *
+     * @param observed the observed count of the cell
+     * @param row the total of the cell's row
+     * @param column the total of the cell's column
+     * @param total the total of the table
+     * @return observed * ln(observed / expected), or 0 for an empty cell
+     */
+    private static double term(long observed, long row, long column,
+            long total) {
+        if (observed <= 0) {
+            return 0;
+        }
+        return observed * Math.log((double) observed * total
+                / ((double) row * column));
+    }
+}
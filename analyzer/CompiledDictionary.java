@@ -0,0 +1,235 @@
+package java112.analyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+
+/**
+ * A read-only set of words backed by a memory-mapped dictionary file written
+ * by {@link DictionaryCompiler}. The file holds a prebuilt open-addressing
+ * hash table, so opening it needs no parsing and the pages are shared through
+ * the operating system's page cache by every process using the dictionary.
+ *
+ * The file layout is:
+ * <ol>
+ *     <li>A header with the magic number, format version, entry count, table
+ *         size, the length and last modified time of the source text file
+ *         and a CRC32 checksum of everything after the header</li>
+ *     <li>The hash table: one int per slot holding the offset of the entry
+ *         plus one, or zero for an empty slot</li>
+ *     <li>The entries: the {@code String.hashCode} of the word, its length
+ *         in chars and its UTF-16 chars</li>
+ * </ol>
+ *
+ * @author Ryan Chua
+ */
+public class CompiledDictionary extends AbstractSet<String> {
+
+    /** Identifies a compiled dictionary file ("JDIC")                        */
+    public static final int MAGIC = 0x4A444943;
+
+    /** The version of the file layout written by this class                  */
+    public static final int FORMAT_VERSION = 1;
+
+    /** The size of the file header in bytes                                  */
+    public static final int HEADER_SIZE = 40;
+
+    /** The mapped contents of the dictionary file                            */
+    private ByteBuffer buffer;
+
+    /** The number of words in the dictionary                                 */
+    private int entryCount;
+
+    /** The number of slots in the hash table, always a power of two          */
+    private int tableSize;
+
+    /** The position of the first entry in the file                           */
+    private int entriesStart;
+
+    /**
+     * Creates a new {@code CompiledDictionary} over a validated buffer.
+     *
+     * @param buffer the mapped contents of the dictionary file
+     */
+    private CompiledDictionary(ByteBuffer buffer) {
+        this.buffer = buffer;
+        entryCount = buffer.getInt(8);
+        tableSize = buffer.getInt(12);
+        entriesStart = HEADER_SIZE + tableSize * Integer.BYTES;
+    }
+
+    /**
+     * Opens a compiled dictionary if it exists and is up to date with its
+     * source text file. A dictionary is stale when its version, checksum or
+     * recorded source length and modification time do not match.
+     *
+     * @param fileName the location of the compiled dictionary
+     * @param sourceLength the current length of the source text file
+     * @param sourceLastModified the current modification time of the source
+     * @return the dictionary, or null if it is missing or stale
+     */
+    public static CompiledDictionary open(String fileName, long sourceLength,
+            long sourceLastModified) {
+        if (fileName == null || !new File(fileName).isFile()) {
+            return null;
+        }
+
+        Path path = Paths.get(fileName);
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+
+            if (isValid(buffer, sourceLength, sourceLastModified)) {
+                return new CompiledDictionary(buffer);
+            }
+            System.out.println("The compiled dictionary \"" + fileName
+                    + "\" is out of date, loading the text file instead.");
+        } catch (IOException iOException) {
+            System.out.println("There was a problem opening the compiled "
+                    + "dictionary \"" + fileName + "\"");
+            iOException.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Checks the header and checksum of a dictionary file.
+     *
+     * @param buffer the contents of the dictionary file
+     * @param sourceLength the current length of the source text file
+     * @param sourceLastModified the current modification time of the source
+     * @return true if the dictionary can be used, else false
+     */
+    private static boolean isValid(ByteBuffer buffer, long sourceLength,
+            long sourceLastModified) {
+        if (buffer.capacity() < HEADER_SIZE
+                || buffer.getInt(0) != MAGIC
+                || buffer.getInt(4) != FORMAT_VERSION
+                || buffer.getLong(16) != sourceLength
+                || buffer.getLong(24) != sourceLastModified) {
+            return false;
+        }
+
+        CRC32 checksum = new CRC32();
+        ByteBuffer body = buffer.duplicate();
+        body.position(HEADER_SIZE);
+        checksum.update(body);
+        return checksum.getValue() == buffer.getLong(32);
+    }
+
+    /**
+     * Spreads the bits of a hash code so nearby codes use different slots.
+     *
+     * @param hashCode the {@code String.hashCode} of a word
+     * @return the mixed hash code
+     */
+    static int mix(int hashCode) {
+        return hashCode ^ (hashCode >>> 16);
+    }
+
+    /**
+     * Checks whether a word is in the dictionary by walking the prebuilt hash
+     * table. No objects are created for the lookup.
+     *
+     * @param object the word to look for
+     * @return true if the word is in the dictionary, else false
+     */
+    @Override
+    public boolean contains(Object object) {
+        if (!(object instanceof String)) {
+            return false;
+        }
+        String word = (String) object;
+        int hashCode = word.hashCode();
+        int mask = tableSize - 1;
+        int slot = mix(hashCode) & mask;
+
+        while (true) {
+            int entry = buffer.getInt(HEADER_SIZE + slot * Integer.BYTES);
+            if (entry == 0) {
+                return false;
+            }
+            int position = entriesStart + entry - 1;
+            if (buffer.getInt(position) == hashCode
+                    && matches(position + Integer.BYTES, word)) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Compares a stored entry with a word char by char.
+     *
+     * @param position the position of the entry's length
+     * @param word the word to compare
+     * @return true if the entry holds the word, else false
+     */
+    private boolean matches(int position, String word) {
+        int length = buffer.getInt(position);
+        if (length != word.length()) {
+            return false;
+        }
+        int charPosition = position + Integer.BYTES;
+        for (int i = 0; i < length; i++) {
+            if (buffer.getChar(charPosition + i * Character.BYTES)
+                    != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of words in the dictionary.
+     *
+     * @return the number of words
+     */
+    @Override
+    public int size() {
+        return entryCount;
+    }
+
+    /**
+     * Iterates over the words in the order they appeared in the source file.
+     *
+     * @return an iterator over the words
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private int remaining = entryCount;
+            private int position = entriesStart;
+
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            public String next() {
+                if (remaining == 0) {
+                    throw new NoSuchElementException();
+                }
+                int length = buffer.getInt(position + Integer.BYTES);
+                char[] chars = new char[length];
+                int charPosition = position + 2 * Integer.BYTES;
+                for (int i = 0; i < length; i++) {
+                    chars[i] = buffer.getChar(charPosition
+                            + i * Character.BYTES);
+                }
+                position = charPosition + length * Character.BYTES;
+                remaining--;
+                return new String(chars);
+            }
+        };
+    }
+}
@@ -0,0 +1,244 @@
+package java112.analyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Builds keyword-in-context lines for tokens of an analyzed file by reading
+ * a memory-mapped view of it. A token is found by jumping to the nearest
+ * checkpoint in a {@link TokenOffsetIndex} and scanning forward, so each line
+ * costs at most one checkpoint interval of tokens plus its context, however
+ * large the file is.
+ *
+ * Tokens are found by running a tokenizer with the same rules as the one the
+ * file was analyzed with from the checkpoint, so the tokens counted are the
+ * same. The tokenizer must report the byte offset of each token.
+ *
+ * @author Ryan Chua
+ */
+public class Concordance {
+
+    /** The number of address bits within one mapped segment                  */
+    private static final int SEGMENT_BITS = 30;
+
+    /** The largest number of bytes shown on either side of a token           */
+    private static final int MAX_CONTEXT_BYTES = 1024;
+
+    /** The largest number of bytes passed to the tokenizer at a time         */
+    private static final int READ_SIZE = 4096;
+
+    /** The mapped segments of the file, each 2^30 bytes except the last      */
+    private MappedByteBuffer[] segments;
+
+    /** The size of the file in bytes                                         */
+    private long size;
+
+    /** The charset the file is encoded in                                    */
+    private Charset charset;
+
+    /** The offsets of the checkpoint tokens                                  */
+    private TokenOffsetIndex index;
+
+    /** The tokenizer the file was analyzed with                              */
+    private Tokenizer tokenizer;
+
+    /**
+     * Creates a new {@code Concordance} and maps the file.
+     *
+     * @param file the analyzed file
+     * @param charset the charset the file is encoded in
+     * @param index the offsets recorded while the file was analyzed
+     * @param tokenizer a tokenizer with the same rules as the one the file
+     *                  was analyzed with
+     * @throws IOException if the file could not be mapped
+     */
+    public Concordance(File file, Charset charset, TokenOffsetIndex index,
+            Tokenizer tokenizer) throws IOException {
+        this.charset = charset;
+        this.index = index;
+        this.tokenizer = tokenizer;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            size = channel.size();
+            long segmentSize = 1L << SEGMENT_BITS;
+            segments = new MappedByteBuffer[(int) ((size + segmentSize - 1)
+                    >>> SEGMENT_BITS)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i << SEGMENT_BITS;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        start, Math.min(segmentSize, size - start));
+            }
+        }
+    }
+
+    /**
+     * Builds the keyword-in-context line of a token: up to {@code context}
+     * tokens on either side, with the token itself in brackets. Runs of
+     * whitespace are shown as single spaces.
+     *
+     * @param tokenNumber the number of the token, counting from 1
+     * @param context the number of tokens to show on either side
+     * @return the line
+     * @throws IOException if the file cannot be tokenized
+     */
+    public String getLine(long tokenNumber, int context) throws IOException {
+        return getLine(tokenNumber, 1, context);
+    }
+
+    /**
+     * Builds the keyword-in-context line of a run of tokens, such as a
+     * phrase: up to {@code context} tokens on either side, with the whole run
+     * in brackets. Runs of whitespace are shown as single spaces.
+     *
+     * @param tokenNumber the number of the first token, counting from 1
+     * @param length the number of tokens in brackets
+     * @param context the number of tokens to show on either side
+     * @return the line
+     * @throws IOException if the file cannot be tokenized
+     */
+    public String getLine(long tokenNumber, int length, int context)
+            throws IOException {
+        long first = Math.max(1, tokenNumber - context);
+        TokenWindow window = new TokenWindow(first,
+                (int) (tokenNumber + length + context - first));
+        tokenizer.tokenize(window, charset, window);
+        long[] starts = window.starts;
+        long[] ends = window.ends;
+
+        int token = (int) (tokenNumber - first);
+        int last = Math.min(token + length, window.found) - 1;
+        long start = starts[token];
+        long end = ends[last];
+
+        int left = token;
+        while (left > 0 && start - starts[left - 1] <= MAX_CONTEXT_BYTES) {
+            left--;
+        }
+
+        int right = last;
+        while (right + 1 < window.found
+                && ends[right + 1] - end <= MAX_CONTEXT_BYTES) {
+            right++;
+        }
+
+        return text(starts[left], start) + "[" + text(start, end) + "]"
+                + text(end, ends[right]);
+    }
+
+    /**
+     * Gets the byte at an offset of the file.
+     *
+     * @param position the offset
+     * @return the byte
+     */
+    private byte byteAt(long position) {
+        return segments[(int) (position >>> SEGMENT_BITS)].get(
+                (int) (position & ((1L << SEGMENT_BITS) - 1)));
+    }
+
+    /**
+     * Decodes a range of the file with whitespace collapsed.
+     *
+     * @param from the offset of the first byte
+     * @param to the offset just past the last byte
+     * @return the decoded text
+     */
+    private String text(long from, long to) {
+        byte[] bytes = new byte[(int) (to - from)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = byteAt(from + i);
+        }
+        return new String(bytes, charset).replaceAll("\\s+", " ");
+    }
+
+    /**
+     * Reads the mapped file from the checkpoint before a window of tokens
+     * and records where each token of the window starts and ends. Reading
+     * stops once the window is full, so the tokenizer sees at most one
+     * checkpoint interval of tokens and a few reads more.
+     */
+    private class TokenWindow extends InputStream
+            implements Consumer<String> {
+
+        /** The byte offset of the checkpoint the file is read from           */
+        private long base;
+
+        /** The byte offset of the next byte to read                          */
+        private long position;
+
+        /** The number of the next token, counting from 1                     */
+        private long tokenNumber;
+
+        /** The number of the first token of the window                       */
+        private long first;
+
+        /** The byte offset of each token of the window                       */
+        private long[] starts;
+
+        /** The byte offset just past each token of the window                */
+        private long[] ends;
+
+        /** The number of tokens of the window found so far                   */
+        private int found;
+
+        /**
+         * Creates a new {@code TokenWindow} starting at the checkpoint at or
+         * before its first token.
+         *
+         * @param first the number of the first token, counting from 1
+         * @param length the number of tokens in the window
+         */
+        TokenWindow(long first, int length) {
+            this.first = first;
+            base = index.getCheckpointOffset(first);
+            position = base;
+            tokenNumber = index.getCheckpointToken(first);
+            starts = new long[length];
+            ends = new long[length];
+        }
+
+        @Override
+        public int read() {
+            byte[] buffer = new byte[1];
+            return (read(buffer, 0, 1) == -1) ? -1 : buffer[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (found == starts.length || position >= size) {
+                return -1;
+            }
+
+            MappedByteBuffer segment = segments[(int) (position
+                    >>> SEGMENT_BITS)];
+            int within = (int) (position & ((1L << SEGMENT_BITS) - 1));
+            int count = Math.min(Math.min(length, READ_SIZE),
+                    segment.limit() - within);
+            segment.get(within, buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        /**
+         * Records the byte range of a token if it is in the window.
+         *
+         * @param token the token the tokenizer passed on
+         */
+        @Override
+        public void accept(String token) {
+            if (tokenNumber++ < first || found == starts.length) {
+                return;
+            }
+            starts[found] = base + tokenizer.getTokenOffset();
+            ends[found] = starts[found] + token.getBytes(charset).length;
+            found++;
+        }
+    }
+}
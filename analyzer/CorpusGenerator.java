@@ -0,0 +1,373 @@
+package java112.analyzer;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Writes a synthetic text file with the statistics of natural language, so
+ * performance work can be reproduced without sharing real documents. The
+ * same properties and seed always produce the same file.
+ *
+ * The vocabulary is {@code corpus.vocabulary.size} made-up lowercase words
+ * whose lengths follow a Poisson distribution around
+ * {@code corpus.token.length.mean}, capped at
+ * {@code corpus.token.length.max}. Shorter words are given the higher ranks,
+ * as in real text, and each token is drawn from the vocabulary with
+ * probability proportional to {@code 1 / rank ^ corpus.zipf.exponent}. A
+ * fraction {@code corpus.stopword.density} of the tokens are non-lexical
+ * words and a fraction {@code corpus.search.density} are search tokens, so
+ * the lexical density and search reports have work to do. Patterns in the
+ * search tokens file are skipped and phrases are written word by word.
+ *
+ * Lines hold {@code corpus.line.tokens} tokens on average, laid out by
+ * {@code corpus.line.profile}: {@code fixed} lines all hold that many,
+ * {@code uniform} lines hold between one and twice that many, and
+ * {@code prose} lines are capitalized sentences with commas and full stops,
+ * grouped into paragraphs by blank lines.
+ *
+ * Tokens are drawn in constant time from alias tables, so even a file of
+ * many gigabytes is written at close to disk speed.
+ *
+ * <pre>
+ * java java112.analyzer.CorpusGenerator /analyzer.properties corpus.txt
+ *         size.mb
+ * </pre>
+ *
+ * @author Ryan Chua
+ */
+public class CorpusGenerator {
+
+    /** The number of command line arguments needed                           */
+    private static final int ARGUMENTS_NEEDED = 3;
+
+    /** The number of bytes in a megabyte                                     */
+    private static final long MEGABYTE = 1024 * 1024;
+
+    /** The size of the output buffer in characters                           */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    /** The chance that a token in prose is followed by a comma               */
+    private static final double COMMA_CHANCE = 0.06;
+
+    /** The mean number of lines in a prose paragraph                         */
+    private static final int PARAGRAPH_LINES = 6;
+
+    /** The number of tokens in the vocabulary                                */
+    private int vocabularySize;
+
+    /** The exponent of the Zipf distribution of the vocabulary               */
+    private double zipfExponent;
+
+    /** The mean length of a vocabulary word                                  */
+    private double meanTokenLength;
+
+    /** The longest vocabulary word                                           */
+    private int maxTokenLength;
+
+    /** The mean number of tokens on a line                                   */
+    private int lineTokens;
+
+    /** How the tokens are laid out on lines: fixed, uniform or prose         */
+    private String lineProfile;
+
+    /** The fraction of the tokens which are search tokens                    */
+    private double searchDensity;
+
+    /** The fraction of the tokens which are non-lexical words                */
+    private double stopWordDensity;
+
+    /** The source of every random choice                                     */
+    private SplittableRandom random;
+
+    /** The vocabulary words in rank order                                    */
+    private String[] vocabulary;
+
+    /** The probability of keeping each column of the alias table             */
+    private double[] aliasProbabilities;
+
+    /** The rank drawn instead when a column of the alias table is not kept   */
+    private int[] aliases;
+
+    /** The non-lexical words                                                 */
+    private String[] stopWords;
+
+    /** The words of each search token and phrase                             */
+    private String[][] searchTerms;
+
+    /**
+     * Creates a new {@code CorpusGenerator} and builds its vocabulary. Reads
+     * the {@code corpus} settings, the non-lexical words and the search
+     * tokens from the properties file.
+     *
+     * @param properties the properties object to read from
+     */
+    public CorpusGenerator(Properties properties) {
+        vocabularySize = Integer.parseInt(properties.getProperty(
+                "corpus.vocabulary.size", "50000"));
+        zipfExponent = Double.parseDouble(properties.getProperty(
+                "corpus.zipf.exponent", "1.0"));
+        meanTokenLength = Double.parseDouble(properties.getProperty(
+                "corpus.token.length.mean", "5"));
+        maxTokenLength = Integer.parseInt(properties.getProperty(
+                "corpus.token.length.max", "20"));
+        lineTokens = Integer.parseInt(properties.getProperty(
+                "corpus.line.tokens", "12"));
+        lineProfile = properties.getProperty("corpus.line.profile", "prose");
+        searchDensity = Double.parseDouble(properties.getProperty(
+                "corpus.search.density", "0.001"));
+        stopWordDensity = Double.parseDouble(properties.getProperty(
+                "corpus.stopword.density", "0.45"));
+        random = new SplittableRandom(Long.parseLong(properties.getProperty(
+                "corpus.seed", "1")));
+
+        stopWords = new LexicalDensityAnalyzer(properties).getNonLexicalWords()
+                .toArray(new String[0]);
+        Arrays.sort(stopWords);
+        List<String[]> terms = new ArrayList<String[]>();
+        for (String searchToken : new TokenLocationSearchAnalyzer(properties)
+                .getFoundLocations().keySet()) {
+            if (!SearchPatternMatcher.isPattern(searchToken)) {
+                terms.add(searchToken.split("\\s+"));
+            }
+        }
+        terms.sort(Comparator.comparing(term -> String.join(" ", term)));
+        searchTerms = terms.toArray(new String[0][]);
+
+        buildVocabulary();
+        buildAliasTable();
+    }
+
+    /**
+     * Writes a corpus of the size named on the command line.
+     *
+     * @param args the location of the properties file, the file to write
+     *             and its size in megabytes
+     */
+    public static void main(String[] args) {
+        if (args.length != ARGUMENTS_NEEDED) {
+            System.out.println("Please enter the properties file, the corpus "
+                    + "file to write and its size in megabytes");
+            return;
+        }
+
+        Properties properties = new FileAnalysis().loadProperties(args[0]);
+        long size = (long) (Double.parseDouble(args[2]) * MEGABYTE);
+        CorpusGenerator generator = new CorpusGenerator(properties);
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(args[1]), StandardCharsets.US_ASCII),
+                BUFFER_SIZE)) {
+            long start = System.nanoTime();
+            generator.write(writer, size);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Wrote %.1f MB in %.1f s%n",
+                    (double) size / MEGABYTE, seconds);
+        } catch (IOException iOException) {
+            System.out.println("There was a problem writing the corpus");
+            iOException.printStackTrace();
+        }
+    }
+
+    /**
+     * Creates the vocabulary: distinct random words of Poisson distributed
+     * lengths, shortest first. A word which is already taken is lengthened
+     * by a letter until it is new.
+     */
+    private void buildVocabulary() {
+        Set<String> words = new HashSet<String>();
+        vocabulary = new String[vocabularySize];
+        StringBuilder word = new StringBuilder();
+
+        for (int i = 0; i < vocabularySize; i++) {
+            word.setLength(0);
+            int length = Math.min(maxTokenLength, 1 + nextPoisson(
+                    meanTokenLength - 1));
+            for (int j = 0; j < length; j++) {
+                word.append(nextLetter());
+            }
+            while (!words.add(word.toString())) {
+                word.append(nextLetter());
+            }
+            vocabulary[i] = word.toString();
+        }
+        Arrays.sort(vocabulary, Comparator.comparingInt(String::length));
+    }
+
+    /**
+     * Builds the alias table of the Zipf distribution over the vocabulary
+     * with Vose's method, so each token is drawn with one random column and
+     * one comparison.
+     */
+    private void buildAliasTable() {
+        double[] weights = new double[vocabularySize];
+        double total = 0;
+        for (int rank = 0; rank < vocabularySize; rank++) {
+            weights[rank] = 1 / Math.pow(rank + 1, zipfExponent);
+            total += weights[rank];
+        }
+
+        aliasProbabilities = new double[vocabularySize];
+        aliases = new int[vocabularySize];
+        int[] small = new int[vocabularySize];
+        int[] large = new int[vocabularySize];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int rank = 0; rank < vocabularySize; rank++) {
+            weights[rank] *= vocabularySize / total;
+            if (weights[rank] < 1) {
+                small[smallCount++] = rank;
+            } else {
+                large[largeCount++] = rank;
+            }
+        }
+
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            aliasProbabilities[less] = weights[less];
+            aliases[less] = more;
+            weights[more] -= 1 - weights[less];
+            if (weights[more] < 1) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        while (largeCount > 0) {
+            aliasProbabilities[large[--largeCount]] = 1;
+        }
+        while (smallCount > 0) {
+            aliasProbabilities[small[--smallCount]] = 1;
+        }
+    }
+
+    /**
+     * Writes lines of tokens until at least the given number of bytes has
+     * been written. Every character is ASCII, so each is one byte.
+     *
+     * @param writer the writer to write the corpus to
+     * @param size the size of the corpus in bytes
+     * @throws IOException if the corpus cannot be written
+     */
+    public void write(Writer writer, long size) throws IOException {
+        StringBuilder line = new StringBuilder();
+        List<String> pending = new ArrayList<String>();
+        long written = 0;
+        boolean sentenceStart = true;
+
+        while (written < size) {
+            line.setLength(0);
+            int tokens = nextLineLength();
+            for (int i = 0; i < tokens; i++) {
+                if (pending.isEmpty()) {
+                    nextTokens(pending);
+                }
+                String token = pending.remove(0);
+                if (i > 0) {
+                    line.append(' ');
+                }
+
+                if (sentenceStart && lineProfile.equals("prose")) {
+                    line.append(Character.toUpperCase(token.charAt(0)));
+                    line.append(token, 1, token.length());
+                } else {
+                    line.append(token);
+                }
+                sentenceStart = false;
+
+                if (lineProfile.equals("prose") && i < tokens - 1
+                        && random.nextDouble() < COMMA_CHANCE) {
+                    line.append(',');
+                }
+            }
+
+            if (lineProfile.equals("prose")) {
+                line.append('.');
+                sentenceStart = true;
+                if (random.nextInt(PARAGRAPH_LINES) == 0) {
+                    line.append('\n');
+                }
+            }
+            line.append('\n');
+            writer.append(line);
+            written += line.length();
+        }
+    }
+
+    /**
+     * Draws the number of tokens on the next line.
+     *
+     * @return the number of tokens on the line
+     */
+    private int nextLineLength() {
+        if (lineProfile.equals("fixed")) {
+            return lineTokens;
+        } else if (lineProfile.equals("uniform")) {
+            return 1 + random.nextInt(2 * lineTokens - 1);
+        }
+        return 1 + nextPoisson(lineTokens - 1);
+    }
+
+    /**
+     * Draws the next token, or the words of a phrase, and adds them to a
+     * list.
+     *
+     * @param tokens the list to add the tokens to
+     */
+    private void nextTokens(List<String> tokens) {
+        double choice = random.nextDouble();
+        if (choice < searchDensity && searchTerms.length > 0) {
+            tokens.addAll(Arrays.asList(searchTerms[random.nextInt(
+                    searchTerms.length)]));
+        } else if (choice < searchDensity + stopWordDensity
+                && stopWords.length > 0) {
+            tokens.add(stopWords[random.nextInt(stopWords.length)]);
+        } else {
+            int column = random.nextInt(vocabularySize);
+            if (random.nextDouble() < aliasProbabilities[column]) {
+                tokens.add(vocabulary[column]);
+            } else {
+                tokens.add(vocabulary[aliases[column]]);
+            }
+        }
+    }
+
+    /**
+     * Draws a random lowercase letter.
+     *
+     * @return the letter
+     */
+    private char nextLetter() {
+        return (char) ('a' + random.nextInt(26));
+    }
+
+    /**
+     * Draws a number from a Poisson distribution with Knuth's method, which
+     * is fast for the small means used here.
+     *
+     * @param mean the mean of the distribution
+     * @return the number drawn
+     */
+    private int nextPoisson(double mean) {
+        double limit = Math.exp(-Math.max(0, mean));
+        double product = random.nextDouble();
+        int count = 0;
+        while (product > limit) {
+            product *= random.nextDouble();
+            count++;
+        }
+        return count;
+    }
+}
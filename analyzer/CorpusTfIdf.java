@@ -0,0 +1,262 @@
+package java112.analyzer;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ranks the terms of each document of a corpus by TF-IDF, the share of the
+ * document's tokens which are the term times the log of how many documents
+ * there are per document containing it.
+ *
+ * The first pass is the reading of the documents. Each finished
+ * {@link TermFrequencyAnalyzer} is handed to a corpus thread, which moves
+ * its counts into the corpus dictionary as a vector of term IDs and counts
+ * and updates the document frequencies, while the next document is read.
+ * The second pass starts once every document has been added: the top terms
+ * of each document are ranked and written by a pool of threads. Memory is
+ * the corpus vocabulary plus one entry per distinct term of each document.
+ *
+ * @author Ryan Chua
+ */
+public class CorpusTfIdf {
+
+    /** The properties object to read from                                    */
+    private Properties properties;
+
+    /** The most terms to report for each document                            */
+    private int topCount;
+
+    /** The ID of each term in the corpus                                     */
+    private TokenDictionary terms;
+
+    /** The number of documents containing each term, indexed by its ID       */
+    private int[] documentFrequencies;
+
+    /** The documents added, in the order they were added                     */
+    private List<DocumentVector> documents;
+
+    /** Adds the documents to the corpus while the next one is read           */
+    private ExecutorService corpusExecutor;
+
+    /** The pending addition of each document by name, in the order added     */
+    private Map<String, Future<?>> additions;
+
+    /**
+     * Creates a new, empty {@code CorpusTfIdf}. Reads the number of terms to
+     * report from {@code tfidf.top.count}.
+     *
+     * @param properties the properties object to read from
+     */
+    public CorpusTfIdf(Properties properties) {
+        this.properties = properties;
+        topCount = Integer.parseInt(properties.getProperty("tfidf.top.count",
+                "20"));
+        terms = new TokenDictionary();
+        documentFrequencies = new int[1024];
+        documents = new ArrayList<DocumentVector>();
+        additions = new LinkedHashMap<String, Future<?>>();
+        corpusExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tfidf-corpus");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Adds a document to the corpus on the corpus thread. The analyzer must
+     * not be used again.
+     *
+     * @param name the name of the document shown in its report
+     * @param outputFilePath the path of the document's report
+     * @param analyzer the analyzer which counted the document's terms
+     */
+    public void add(String name, String outputFilePath,
+            TermFrequencyAnalyzer analyzer) {
+        additions.put(name, corpusExecutor.submit(() -> addDocument(name,
+                outputFilePath, analyzer)));
+    }
+
+    /**
+     * Translates a document's counts into corpus term IDs and counts each of
+     * its terms once in the document frequencies.
+     *
+     * @param name the name of the document shown in its report
+     * @param outputFilePath the path of the document's report
+     * @param analyzer the analyzer which counted the document's terms
+     */
+    private void addDocument(String name, String outputFilePath,
+            TermFrequencyAnalyzer analyzer) {
+        int[] translated = terms.translate(analyzer.getDictionary());
+        long[] packed = new long[translated.length - 1];
+
+        for (int id = 1; id < translated.length; id++) {
+            int termId = translated[id];
+            if (termId >= documentFrequencies.length) {
+                documentFrequencies = Arrays.copyOf(documentFrequencies,
+                        Math.max(termId + 1, documentFrequencies.length * 2));
+            }
+            documentFrequencies[termId]++;
+            packed[id - 1] = ((long) termId << 32) | analyzer.getCount(id);
+        }
+
+        Arrays.sort(packed);
+        DocumentVector document = new DocumentVector(name, outputFilePath,
+                analyzer.getTotalTokens(), packed.length);
+        for (int i = 0; i < packed.length; i++) {
+            document.termIds[i] = (int) (packed[i] >>> 32);
+            document.counts[i] = (int) packed[i];
+        }
+        documents.add(document);
+    }
+
+    /**
+     * Waits for every document to be added, then ranks and writes the
+     * reports of the documents in parallel. A document which could not be
+     * added is reported and left out of the corpus.
+     */
+    public void writeReports() {
+        corpusExecutor.shutdown();
+        ExecutorService writers = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors());
+
+        try {
+            corpusExecutor.awaitTermination(Long.MAX_VALUE,
+                    TimeUnit.NANOSECONDS);
+            checkAdditions();
+            for (DocumentVector document : documents) {
+                writers.execute(() -> writeReport(document));
+            }
+            writers.shutdown();
+            writers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            writers.shutdownNow();
+            System.out.println("Interrupted while writing the TF-IDF reports");
+            interruptedException.printStackTrace();
+        }
+    }
+
+    /**
+     * Reports each document whose addition to the corpus failed.
+     *
+     * @throws InterruptedException if interrupted while checking
+     */
+    private void checkAdditions() throws InterruptedException {
+        int failures = 0;
+        for (Map.Entry<String, Future<?>> addition : additions.entrySet()) {
+            try {
+                addition.getValue().get();
+            } catch (ExecutionException executionException) {
+                System.out.println("There was a problem adding "
+                        + addition.getKey() + " to the TF-IDF corpus");
+                executionException.getCause().printStackTrace();
+                failures++;
+            }
+        }
+
+        if (failures > 0) {
+            System.out.println(failures + " of " + additions.size()
+                    + " documents were left out of the TF-IDF reports");
+        }
+    }
+
+    /**
+     * Writes the top terms of one document by TF-IDF, highest first. Terms
+     * with the same score are in alphabetical order.
+     *
+     * @param document the document to report
+     */
+    private void writeReport(DocumentVector document) {
+        double documentCount = documents.size();
+        Integer[] order = new Integer[document.termIds.length];
+        double[] scores = new double[document.termIds.length];
+
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            scores[i] = (double) document.counts[i] / document.totalTokens
+                    * Math.log(documentCount
+                    / documentFrequencies[document.termIds[i]]);
+        }
+        Arrays.sort(order, (first, second) -> {
+            int compared = Double.compare(scores[second], scores[first]);
+            if (compared != 0) {
+                return compared;
+            }
+            return terms.tokenOf(document.termIds[first]).compareTo(
+                    terms.tokenOf(document.termIds[second]));
+        });
+
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(
+                new FileWriter(document.outputFilePath)))) {
+            DecimalFormat formatter = new DecimalFormat("0.000000");
+            writer.println("Top terms of " + document.name + " by TF-IDF in "
+                    + documents.size() + " documents");
+            writer.println();
+            for (int i = 0; i < Math.min(topCount, order.length); i++) {
+                writer.println(terms.tokenOf(document.termIds[order[i]]) + "\t"
+                        + formatter.format(scores[order[i]]));
+            }
+        } catch (IOException iOException) {
+            System.out.println("There was a problem writing "
+                    + document.outputFilePath);
+            iOException.printStackTrace();
+        } catch (Exception exception) {
+            System.out.println("There was a problem writing "
+                    + document.outputFilePath);
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * The distinct terms of one document and their counts, in ascending
+     * order of corpus term ID.
+     */
+    private static class DocumentVector {
+
+        /** The name of the document shown in its report                      */
+        String name;
+
+        /** The path of the document's report                                 */
+        String outputFilePath;
+
+        /** The total number of tokens in the document                        */
+        long totalTokens;
+
+        /** The corpus ID of each distinct term                               */
+        int[] termIds;
+
+        /** The count of each term in {@code termIds}                         */
+        int[] counts;
+
+        /**
+         * Creates a new vector with room for the document's terms.
+         *
+         * @param name the name of the document shown in its report
+         * @param outputFilePath the path of the document's report
+         * @param totalTokens the total number of tokens in the document
+         * @param termCount the number of distinct terms in the document
+         */
+        DocumentVector(String name, String outputFilePath, long totalTokens,
+                int termCount) {
+            this.name = name;
+            this.outputFilePath = outputFilePath;
+            this.totalTokens = totalTokens;
+            termIds = new int[termCount];
+            counts = new int[termCount];
+        }
+    }
+}
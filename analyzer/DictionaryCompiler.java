@@ -0,0 +1,173 @@
+package java112.analyzer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Converts a word list text file into the binary format read by
+ * {@link CompiledDictionary}. Run it whenever a word list changes:
+ *
+ * <pre>
+ * java java112.analyzer.DictionaryCompiler non_lexical_words.txt \
+ *         non_lexical_words.dict
+ * java java112.analyzer.DictionaryCompiler search-tokens.txt \
+ *         search-tokens.dict trim
+ * </pre>
+ *
+ * With the {@code trim} option each line is trimmed and blank lines are
+ * skipped, matching how search tokens are read. Without it every line is
+ * stored as written, matching how non-lexical words are read. Word lists
+ * are read as UTF-8 whatever the platform charset is.
+ *
+ * @author Ryan Chua
+ */
+public class DictionaryCompiler {
+
+    /**
+     * Compiles the word list named on the command line.
+     *
+     * @param args the source text file, the dictionary file to write and
+     *             optionally {@code trim}
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Please enter the word list to compile and the "
+                    + "dictionary file to write");
+            return;
+        }
+
+        boolean trim = args.length > 2 && args[2].equals("trim");
+        DictionaryCompiler compiler = new DictionaryCompiler();
+        compiler.compile(args[0], args[1], trim);
+    }
+
+    /**
+     * Reads a word list and writes it as a compiled dictionary.
+     *
+     * @param sourceFileName the word list text file
+     * @param targetFileName the dictionary file to write
+     * @param trim true to trim lines and skip blank ones
+     */
+    public void compile(String sourceFileName, String targetFileName,
+            boolean trim) {
+        File source = new File(sourceFileName);
+
+        try {
+            Set<String> words = readWords(source, trim);
+            ByteBuffer buffer = buildDictionary(words, source.length(),
+                    source.lastModified());
+
+            try (FileChannel channel = FileChannel.open(
+                    Paths.get(targetFileName), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            System.out.println("Compiled " + words.size() + " words to "
+                    + targetFileName);
+        } catch (IOException iOException) {
+            System.out.println("There was a problem compiling \""
+                    + sourceFileName + "\"");
+            iOException.printStackTrace();
+        }
+    }
+
+    /**
+     * Reads the words of a UTF-8 word list, one per line, without
+     * duplicates.
+     *
+     * @param source the word list text file
+     * @param trim true to trim lines and skip blank ones
+     * @return the words in the order they appear in the file
+     * @throws IOException if the file cannot be read
+     */
+    public Set<String> readWords(File source, boolean trim)
+            throws IOException {
+        Set<String> words = new LinkedHashSet<String>();
+
+        try (BufferedReader reader = Files.newBufferedReader(source.toPath(),
+                StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            while (line != null) {
+                String word = trim ? line.trim() : line;
+                if (!trim || word.length() != 0) {
+                    words.add(word);
+                }
+                line = reader.readLine();
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Lays out the header, hash table and entries of a dictionary.
+     *
+     * @param words the words to store
+     * @param sourceLength the length of the source text file
+     * @param sourceLastModified the modification time of the source text file
+     * @return a buffer holding the complete dictionary file
+     */
+    public ByteBuffer buildDictionary(Set<String> words, long sourceLength,
+            long sourceLastModified) {
+        // Keep the table at most half full so probe sequences stay short
+        int tableSize = Integer.highestOneBit(Math.max(words.size(), 1) * 2)
+                * 2;
+        int entriesSize = 0;
+        for (String word : words) {
+            entriesSize += 2 * Integer.BYTES + word.length() * Character.BYTES;
+        }
+
+        int entriesStart = CompiledDictionary.HEADER_SIZE
+                + tableSize * Integer.BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(entriesStart + entriesSize);
+        int mask = tableSize - 1;
+        int offset = 0;
+
+        for (String word : words) {
+            int hashCode = word.hashCode();
+            int slot = CompiledDictionary.mix(hashCode) & mask;
+            while (buffer.getInt(CompiledDictionary.HEADER_SIZE
+                    + slot * Integer.BYTES) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            buffer.putInt(CompiledDictionary.HEADER_SIZE
+                    + slot * Integer.BYTES, offset + 1);
+
+            int position = entriesStart + offset;
+            buffer.putInt(position, hashCode);
+            buffer.putInt(position + Integer.BYTES, word.length());
+            position += 2 * Integer.BYTES;
+            for (int i = 0; i < word.length(); i++) {
+                buffer.putChar(position, word.charAt(i));
+                position += Character.BYTES;
+            }
+            offset = position - entriesStart;
+        }
+
+        CRC32 checksum = new CRC32();
+        ByteBuffer body = buffer.duplicate();
+        body.position(CompiledDictionary.HEADER_SIZE);
+        checksum.update(body);
+
+        buffer.putInt(0, CompiledDictionary.MAGIC);
+        buffer.putInt(4, CompiledDictionary.FORMAT_VERSION);
+        buffer.putInt(8, words.size());
+        buffer.putInt(12, tableSize);
+        buffer.putLong(16, sourceLength);
+        buffer.putLong(24, sourceLastModified);
+        buffer.putLong(32, checksum.getValue());
+        return buffer;
+    }
+}
@@ -2,7 +2,12 @@ package java112.analyzer;
 
 import java.util.Properties;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.Set;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.HashMap;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.FileWriter;
 import java.io.BufferedWriter;
 import java.io.PrintWriter;
@@ -14,7 +19,8 @@ import java.io.IOException;
  *
  * @author Ryan Chua
  */
-public class DistinctTokenCountsAnalyzer implements TokenAnalyzer {
+public class DistinctTokenCountsAnalyzer implements PartialStateAnalyzer,
+        MemoryGovernedAnalyzer {
 
     /** The properties file to read from                                      */
     private Properties properties;
@@ -22,24 +28,56 @@ public class DistinctTokenCountsAnalyzer implements TokenAnalyzer {
     /** A map of the distinct tokens in the file and their frequency          */
     private Map<String, Integer> distinctTokenCounts;
 
+    /** The tokens and their frequency when stored off the heap, else null    */
+    private OffHeapVocabulary vocabulary;
+
+    /** The memory governor of the run, or null if there is none              */
+    private MemoryGovernor governor;
+
+    /** The estimated size of the tokens held in memory in bytes              */
+    private long footprint;
+
+    /** The footprint at which to report to the governor next                 */
+    private long nextReport;
+
+    /** The token counts spilled to disk, or null if nothing has been spilled */
+    private TokenSpill spill;
+
     /**
      * Creates a new {@code DistinctTokenCountsAnalyzer}. Creates an instance
-     * of a {@code TreeMap} and assigns it to {@code distinctTokenCounts}.
+     * of a {@code HashMap} and assigns it to {@code distinctTokenCounts}.
      */
     public DistinctTokenCountsAnalyzer() {
-        distinctTokenCounts = new TreeMap<String, Integer>();
+        distinctTokenCounts = new HashMap<String, Integer>();
     }
 
     /**
      * Creates a new {@code DistinctTokenCountsAnalyzer}. Creates an instance
-     * of a {@code TreeMap} and assigns it to {@code distinctTokenCounts}.
-     * Assigns a properties object to the instance variable.
+     * of a {@code HashMap} and assigns it to {@code distinctTokenCounts}.
+     * Assigns a properties object to the instance variable. Creates an
+     * {@code OffHeapVocabulary} to count the tokens instead when off-heap
+     * storage is configured.
      *
      * @param properties the properties object to read from
      */
     public DistinctTokenCountsAnalyzer(Properties properties) {
         this();
         this.properties = properties;
+        if (OffHeapVocabulary.isEnabled(properties)) {
+            vocabulary = new OffHeapVocabulary();
+        }
+    }
+
+    /**
+     * Gives the analyzer the memory governor of the run. When the governor
+     * reports that the budget is nearly used, the token counts held in
+     * memory are spilled to disk as a sorted run.
+     *
+     * @param governor the memory governor of the run
+     */
+    public void setMemoryGovernor(MemoryGovernor governor) {
+        this.governor = governor;
+        nextReport = governor.getReportStep();
     }
 
     /**
@@ -48,14 +86,177 @@ public class DistinctTokenCountsAnalyzer implements TokenAnalyzer {
      * @param token the token to add to the map of unique tokens
      */
     public void processToken(String token) {
-        Integer count = distinctTokenCounts.get(token);
-        distinctTokenCounts.put(token, (count == null) ? 1 : count + 1);
+        boolean added;
+        if (vocabulary != null) {
+            added = vocabulary.add(token);
+        } else {
+            Integer count = distinctTokenCounts.get(token);
+            distinctTokenCounts.put(token, (count == null) ? 1 : count + 1);
+            added = (count == null);
+        }
+
+        if (added && governor != null) {
+            footprint += MemoryGovernor.estimateTokenBytes(token);
+            if (footprint >= nextReport) {
+                checkMemory();
+            }
+        }
+    }
+
+    /**
+     * Reports the footprint to the governor and spills the token counts if
+     * the budget is nearly used.
+     */
+    private void checkMemory() {
+        nextReport = footprint + governor.getReportStep();
+        if (governor.report(this, footprint)) {
+            spillTokenCounts();
+        }
+    }
+
+    /**
+     * Writes the token counts held in memory to disk as a sorted run and
+     * starts again with no tokens.
+     */
+    private void spillTokenCounts() {
+        if (spill == null) {
+            spill = governor.createSpill();
+        }
+
+        try {
+            if (vocabulary != null) {
+                OffHeapVocabulary spilled = vocabulary;
+                spill.spill(writer -> spilled.writeSorted(writer, true));
+                vocabulary = new OffHeapVocabulary();
+            } else {
+                spill.spill(sortTokens(), distinctTokenCounts::get);
+                distinctTokenCounts = new HashMap<String, Integer>();
+            }
+        } catch (IOException iOException) {
+            System.out.println("There was a problem spilling the distinct "
+                    + "token counts");
+            iOException.printStackTrace();
+            return;
+        }
+
+        footprint = 0;
+        nextReport = governor.getReportStep();
+        governor.report(this, footprint);
+        governor.recordDegradation("distinct.counts", "spilled "
+                + spill.getRunCount() + " sorted runs to disk");
+    }
+
+    /**
+     * Copies the tokens held on the heap into an array sorted in parallel.
+     *
+     * @return the sorted tokens
+     */
+    private String[] sortTokens() {
+        String[] sortedTokens = distinctTokenCounts.keySet().toArray(
+                new String[0]);
+        Arrays.parallelSort(sortedTokens);
+        return sortedTokens;
+    }
+
+    /**
+     * Iterates over the tokens held in memory in sorted order. Tokens stored
+     * off the heap are copied into strings one at a time as they are merged.
+     *
+     * @return an iterator over the sorted tokens
+     */
+    private Iterator<String> sortedTokens() {
+        if (vocabulary != null) {
+            return vocabulary.sortedIterator();
+        }
+        return Arrays.asList(sortTokens()).iterator();
+    }
+
+    /**
+     * Adds the token counts of another {@code DistinctTokenCountsAnalyzer}.
+     *
+     * @param other the analyzer to merge into this one
+     */
+    public void merge(TokenAnalyzer other) {
+        DistinctTokenCountsAnalyzer otherAnalyzer =
+                (DistinctTokenCountsAnalyzer) other;
+        OffHeapVocabulary otherVocabulary = otherAnalyzer.vocabulary;
+        if (vocabulary != null) {
+            vocabulary.addAll(otherVocabulary);
+        } else {
+            for (Map.Entry<String, Integer> entry :
+                    otherAnalyzer.distinctTokenCounts.entrySet()) {
+                distinctTokenCounts.merge(entry.getKey(), entry.getValue(),
+                        Integer::sum);
+            }
+        }
+
+        if (otherAnalyzer.spill != null) {
+            if (spill == null) {
+                spill = governor.createSpill();
+            }
+            spill.addRuns(otherAnalyzer.spill);
+        }
+        if (governor != null) {
+            governor.release(otherAnalyzer);
+            footprint += otherAnalyzer.footprint;
+            checkMemory();
+        }
+    }
+
+    /**
+     * Writes each token and its count to a partial.
+     *
+     * @param output the stream to write the partial to
+     * @throws IOException if the partial cannot be written or counts have
+     *         been spilled to disk
+     */
+    public void writePartialState(DataOutputStream output)
+            throws IOException {
+        if (spill != null) {
+            throw new IOException("Spilled token counts cannot be written to a "
+                    + "partial");
+        }
+        output.writeInt(getTokens().size());
+        for (String token : getTokens()) {
+            PartialStateAnalyzer.writeToken(output, token);
+            output.writeInt(getCount(token));
+        }
+    }
+
+    /**
+     * Reads the tokens and their counts from a partial.
+     *
+     * @param input the stream to read the partial from
+     * @throws IOException if the partial cannot be read
+     */
+    public void readPartialState(DataInputStream input) throws IOException {
+        int size = input.readInt();
+        for (int i = 0; i < size; i++) {
+            String token = PartialStateAnalyzer.readToken(input);
+            int count = input.readInt();
+            boolean added;
+            if (vocabulary != null) {
+                added = vocabulary.add(token, count);
+            } else {
+                added = (distinctTokenCounts.merge(token, count,
+                        Integer::sum) == count);
+            }
+
+            if (added && governor != null) {
+                footprint += MemoryGovernor.estimateTokenBytes(token);
+                if (footprint >= nextReport) {
+                    checkMemory();
+                }
+            }
+        }
     }
 
     /**
      * Creates an output file with each distinct word and its frequency
      * displayed on a line. The word and the number of times the word appears
-     * in the file are separated by a tab.
+     * in the file are separated by a tab. The words are sorted in parallel
+     * when the file is written. Any runs spilled to disk are merged with the
+     * counts still in memory.
      *
      * @param inputFilePath the filepath of the analyzed file
      */
@@ -65,9 +266,19 @@ public class DistinctTokenCountsAnalyzer implements TokenAnalyzer {
 
         try (PrintWriter writer = new PrintWriter(new BufferedWriter(
                 new FileWriter(outputFilePath)))) {
-            for (Map.Entry<String, Integer> entry :
-                    distinctTokenCounts.entrySet()) {
-                writer.println(entry.getKey() + "\t" + entry.getValue());
+            if (spill != null) {
+                spill.writeMerged(writer, sortedTokens(), (vocabulary != null)
+                        ? vocabulary::getCount : distinctTokenCounts::get,
+                        true);
+                return;
+            }
+            if (vocabulary != null) {
+                vocabulary.writeSorted(writer, true);
+                return;
+            }
+
+            for (String token : sortTokens()) {
+                writer.println(token + "\t" + distinctTokenCounts.get(token));
             }
         } catch (IOException iOException) {
             System.out.println("There was a problem writing "
@@ -84,12 +295,42 @@ public class DistinctTokenCountsAnalyzer implements TokenAnalyzer {
 
     /**
      * Gets the map of unique tokens in the analyzed file and the number of
-     * times they appear.
+     * times they appear. When the tokens are stored off the heap the map is
+     * a read-only view of them. Tokens spilled to disk are not included.
      *
      * @return the unique tokens in the input file and number of times they
      *         appear
      */
     public Map<String, Integer> getDistinctTokenCounts() {
+        if (vocabulary != null) {
+            return vocabulary.asCountMap();
+        }
         return distinctTokenCounts;
     }
+
+    /**
+     * Gets the distinct tokens held in memory, on or off the heap.
+     *
+     * @return the distinct tokens which have not been spilled to disk
+     */
+    public Set<String> getTokens() {
+        if (vocabulary != null) {
+            return vocabulary;
+        }
+        return distinctTokenCounts.keySet();
+    }
+
+    /**
+     * Gets the number of times a token held in memory appears, on or off the
+     * heap.
+     *
+     * @param token the token
+     * @return the count of the token, or 0 if it is not held in memory
+     */
+    public int getCount(String token) {
+        if (vocabulary != null) {
+            return vocabulary.getCount(token);
+        }
+        return distinctTokenCounts.getOrDefault(token, 0);
+    }
 }
\ No newline at end of file
@@ -2,7 +2,11 @@ package java112.analyzer;
 
 import java.util.Properties;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.HashSet;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.FileWriter;
 import java.io.BufferedWriter;
 import java.io.PrintWriter;
@@ -14,7 +18,8 @@ import java.io.IOException;
  * 
  * @author Ryan Chua
  */
-public class DistinctTokensAnalyzer implements TokenAnalyzer {
+public class DistinctTokensAnalyzer implements PartialStateAnalyzer,
+        MemoryGovernedAnalyzer {
 
     /** A set of all unique tokens in the file                                */
     private Set<String> distinctTokens;
@@ -22,24 +27,52 @@ public class DistinctTokensAnalyzer implements TokenAnalyzer {
     /** The properties file to read from                                      */
     private Properties properties;
 
+    /** The memory governor of the run, or null if there is none              */
+    private MemoryGovernor governor;
+
+    /** The estimated size of the tokens held in memory in bytes              */
+    private long footprint;
+
+    /** The footprint at which to report to the governor next                 */
+    private long nextReport;
+
+    /** The tokens spilled to disk, or null if nothing has been spilled       */
+    private TokenSpill spill;
+
     /**
      * Creates a new {@code DistinctTokensAnalyzer}. Creates an instance of a
-     * {@code TreeSet} and assigns it to {@code distinctTokens}.
+     * {@code HashSet} and assigns it to {@code distinctTokens}.
      */
     public DistinctTokensAnalyzer() {
-        distinctTokens = new TreeSet<String>();
+        distinctTokens = new HashSet<String>();
     }
 
     /**
      * Creates a new {@code DistinctTokensAnalyzer}. Creates an instance of a
-     * {@code TreeSet} and assigns it to {@code distinctTokens}. Assigns a
-     * properties object to the instance variable.
+     * {@code HashSet} and assigns it to {@code distinctTokens}, or an
+     * {@code OffHeapVocabulary} when off-heap storage is configured. Assigns
+     * a properties object to the instance variable.
      * 
      * @param properties the properties object to read from
      */
     public DistinctTokensAnalyzer(Properties properties) {
         this();
         this.properties = properties;
+        if (OffHeapVocabulary.isEnabled(properties)) {
+            distinctTokens = new OffHeapVocabulary();
+        }
+    }
+
+    /**
+     * Gives the analyzer the memory governor of the run. When the governor
+     * reports that the budget is nearly used, the tokens held in memory
+     * are spilled to disk as a sorted run.
+     *
+     * @param governor the memory governor of the run
+     */
+    public void setMemoryGovernor(MemoryGovernor governor) {
+        this.governor = governor;
+        nextReport = governor.getReportStep();
     }
 
     /**
@@ -49,11 +82,140 @@ public class DistinctTokensAnalyzer implements TokenAnalyzer {
      * @param token the token to add to the set of unique tokens
      */
     public void processToken(String token) {
-        distinctTokens.add(token);
+        if (distinctTokens.add(token) && governor != null) {
+            footprint += MemoryGovernor.estimateTokenBytes(token);
+            if (footprint >= nextReport) {
+                checkMemory();
+            }
+        }
+    }
+
+    /**
+     * Reports the footprint to the governor and spills the tokens if the
+     * budget is nearly used.
+     */
+    private void checkMemory() {
+        nextReport = footprint + governor.getReportStep();
+        if (governor.report(this, footprint)) {
+            spillTokens();
+        }
+    }
+
+    /**
+     * Writes the tokens held in memory to disk as a sorted run and starts
+     * again with an empty set.
+     */
+    private void spillTokens() {
+        if (spill == null) {
+            spill = governor.createSpill();
+        }
+
+        try {
+            if (distinctTokens instanceof OffHeapVocabulary) {
+                OffHeapVocabulary vocabulary =
+                        (OffHeapVocabulary) distinctTokens;
+                spill.spill(writer -> vocabulary.writeSorted(writer, false));
+                distinctTokens = new OffHeapVocabulary();
+            } else {
+                spill.spill(sortTokens(), null);
+                distinctTokens = new HashSet<String>();
+            }
+        } catch (IOException iOException) {
+            System.out.println("There was a problem spilling the distinct "
+                    + "tokens");
+            iOException.printStackTrace();
+            return;
+        }
+
+        footprint = 0;
+        nextReport = governor.getReportStep();
+        governor.report(this, footprint);
+        governor.recordDegradation("distinct", "spilled "
+                + spill.getRunCount() + " sorted runs to disk");
+    }
+
+    /**
+     * Copies the tokens held on the heap into an array sorted in parallel.
+     *
+     * @return the sorted tokens
+     */
+    private String[] sortTokens() {
+        String[] sortedTokens = distinctTokens.toArray(new String[0]);
+        Arrays.parallelSort(sortedTokens);
+        return sortedTokens;
+    }
+
+    /**
+     * Iterates over the tokens held in memory in sorted order. Tokens stored
+     * off the heap are copied into strings one at a time as they are merged.
+     *
+     * @return an iterator over the sorted tokens
+     */
+    private Iterator<String> sortedTokens() {
+        if (distinctTokens instanceof OffHeapVocabulary) {
+            return ((OffHeapVocabulary) distinctTokens).sortedIterator();
+        }
+        return Arrays.asList(sortTokens()).iterator();
+    }
+
+    /**
+     * Adds the unique tokens of another {@code DistinctTokensAnalyzer}.
+     * 
+     * @param other the analyzer to merge into this one
+     */
+    public void merge(TokenAnalyzer other) {
+        DistinctTokensAnalyzer otherAnalyzer = (DistinctTokensAnalyzer) other;
+        distinctTokens.addAll(otherAnalyzer.distinctTokens);
+
+        if (otherAnalyzer.spill != null) {
+            if (spill == null) {
+                spill = governor.createSpill();
+            }
+            spill.addRuns(otherAnalyzer.spill);
+        }
+        if (governor != null) {
+            governor.release(otherAnalyzer);
+            footprint += otherAnalyzer.footprint;
+            checkMemory();
+        }
+    }
+
+    /**
+     * Writes the unique tokens to a partial.
+     *
+     * @param output the stream to write the partial to
+     * @throws IOException if the partial cannot be written or tokens have
+     *         been spilled to disk
+     */
+    public void writePartialState(DataOutputStream output)
+            throws IOException {
+        if (spill != null) {
+            throw new IOException("Spilled tokens cannot be written to a "
+                    + "partial");
+        }
+        output.writeInt(distinctTokens.size());
+        for (String token : distinctTokens) {
+            PartialStateAnalyzer.writeToken(output, token);
+        }
+    }
+
+    /**
+     * Reads the unique tokens from a partial.
+     *
+     * @param input the stream to read the partial from
+     * @throws IOException if the partial cannot be read
+     */
+    public void readPartialState(DataInputStream input) throws IOException {
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            processToken(PartialStateAnalyzer.readToken(input));
+        }
     }
 
     /**
-     * Creates a file containing each unique token on its own line.
+     * Creates a file containing each unique token on its own line. The tokens
+     * are only sorted here, in parallel, rather than as they are added. Any
+     * runs spilled to disk are merged with the tokens still in memory.
      * 
      * @param inputFilePath the filepath of the analyzed file
      */
@@ -63,8 +225,14 @@ public class DistinctTokensAnalyzer implements TokenAnalyzer {
 
         try (PrintWriter writer = new PrintWriter(new BufferedWriter(
                 new FileWriter(outputFilePath)))) {
-            for (String token : distinctTokens) {
-                writer.println(token);
+            if (spill != null) {
+                spill.writeMerged(writer, sortedTokens(), null, false);
+            } else if (distinctTokens instanceof OffHeapVocabulary) {
+                ((OffHeapVocabulary) distinctTokens).writeSorted(writer, false);
+            } else {
+                for (String token : sortTokens()) {
+                    writer.println(token);
+                }
             }
         } catch (IOException iOException) {
             System.out.println("There was a problem writing "
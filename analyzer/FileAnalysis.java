@@ -1,12 +1,28 @@
 package java112.analyzer;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
-import java.io.FileReader;
-import java.io.BufferedReader;
+import java.util.ServiceLoader;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java112.utilities.PropertiesLoader;
 
 /**
@@ -15,7 +31,10 @@ import java112.utilities.PropertiesLoader;
  * instances.
  *
  * The program requires one command line argument: the location of a text file
- * to analyze.
+ * to analyze. Gzip files are inflated while they are read, and each entry of
+ * a zip file is analyzed as its own document. A file name of {@code -} reads
+ * the text from standard input; standard input and named pipes are analyzed
+ * as streams with periodic report snapshots.
  *
  * @author Ryan Chua
  */
@@ -24,9 +43,47 @@ public class FileAnalysis implements PropertiesLoader {
     /** The required number of command line arguments to run the Analyzer.    */
     private final static int ARGUMENTS_NEEDED = 2;
 
+    /** The first bytes of a gzip file                                        */
+    private final static byte[] GZIP_MAGIC = {(byte) 0x1F, (byte) 0x8B};
+
+    /** The first bytes of a zip file                                         */
+    private final static byte[] ZIP_MAGIC = {'P', 'K', 3, 4};
+
+    /** The size of each buffer passed from the decompression thread          */
+    private final static int PREFETCH_BUFFER_SIZE = 64 * 1024;
+
+    /** The number of buffers the decompression thread may fill ahead         */
+    private final static int PREFETCH_BUFFER_COUNT = 4;
+
+    /** The class of the tokenizer built with the Vector API                  */
+    private final static String VECTOR_TOKENIZER =
+            "java112.analyzer.VectorScanningTokenizer";
+
+    /** The built-in analyzers which only run when enabled explicitly         */
+    private final static String[] OPTIONAL_ANALYZERS = {"ngrams",
+            "collocations", "minhash", "tfidf"};
+
     /** A collection of analyzers to process the input file.                  */
     private List<TokenAnalyzer> analyzers;
 
+    /** Runs the analyzers on their own threads, or null when sequential      */
+    private ParallelAnalyzerRunner parallelRunner;
+
+    /** Splits each line of the input file into tokens                        */
+    private Tokenizer tokenizer;
+
+    /** The charset the input file is encoded in                              */
+    private Charset inputCharset;
+
+    /** Keeps the analyzers of the current run within the memory budget       */
+    private MemoryGovernor memoryGovernor;
+
+    /** The offsets of the input file's tokens, or null if not recorded       */
+    private TokenOffsetIndex offsetIndex;
+
+    /** Normalizes each token for the analyzers, or null if not configured    */
+    private TokenNormalizer normalizer;
+
     /**
      * Reads the input file and calls the appropriate methods to process and
      * output the descriptive files. This is the main processing file of the
@@ -44,47 +101,502 @@ public class FileAnalysis implements PropertiesLoader {
             return;
         }
 
-        // Setup analyzers
         Properties properties = loadProperties(args[1]);
 
+        if (hasMagicNumber(args[0], ZIP_MAGIC)) {
+            analyzeArchive(args[0], properties);
+            return;
+        }
+
+        if (isStreamInput(args[0], properties)) {
+            analyzeStream(args[0], properties);
+            return;
+        }
+
+        if (SampledAnalysis.isEnabled(properties)) {
+            createTokenizer(properties);
+            if (!hasMagicNumber(args[0], GZIP_MAGIC)
+                    && SampledAnalysis.canSample(inputCharset)) {
+                new SampledAnalysis(this, properties).analyze(args[0],
+                        tokenizer, inputCharset);
+                return;
+            }
+            System.out.println("Only uncompressed UTF-8, ISO-8859-1 and "
+                    + "US-ASCII files can be sampled, reading the whole file");
+        }
+
+        if (ShardedAnalysis.isEnabled(properties)) {
+            createTokenizer(properties);
+            if (!hasMagicNumber(args[0], GZIP_MAGIC)
+                    && SampledAnalysis.canSample(inputCharset)) {
+                new ShardedAnalysis(properties).analyze(args[0], args[1]);
+                return;
+            }
+            System.out.println("Only uncompressed UTF-8, ISO-8859-1 and "
+                    + "US-ASCII files can be sharded, reading the whole file "
+                    + "in one process");
+        }
+
+        // Analyze text file
+        try (AnalysisResult result = analyzeFile(args[0], properties)) {
+            result.writeReports();
+        } catch (FileNotFoundException fileNotFoundException) {
+            System.out.println("The file \"" + args[0] + "\" was not found.");
+            fileNotFoundException.printStackTrace();
+        } catch (IOException iOException) {
+            System.out.println("There was a problem reading the file");
+            iOException.printStackTrace();
+        } catch (Exception exception) {
+            System.out.println("There was a problem reading the file");
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Analyzes a plain or gzip text file in-process and returns the results
+     * without writing any report. This is the entry point for callers which
+     * embed the analyzer; the command line writes the reports from the
+     * returned result. Close the result to delete any runs spilled to disk.
+     *
+     * @param fileName the name of the input file
+     * @param properties the properties object to read from
+     * @return the results of the analysis
+     * @throws IOException if the file cannot be read
+     */
+    public AnalysisResult analyzeFile(String fileName, Properties properties)
+            throws IOException {
+        // The index is only read back by the concordance
+        offsetIndex = null;
+        if (Integer.parseInt(properties.getProperty(
+                "search.concordance.context", "0")) > 0
+                && !hasMagicNumber(fileName, GZIP_MAGIC)) {
+            offsetIndex = new TokenOffsetIndex();
+        }
+
+        try (InputStream input = openInputStream(fileName)) {
+            return analyzeInput(fileName, input, properties);
+        }
+    }
+
+    /**
+     * Analyzes an uncompressed stream in-process and returns the results
+     * without writing any report. No offsets are recorded unless
+     * {@code analyzeFile} set up the offset index. The stream is not closed.
+     *
+     * @param inputName the name of the input shown in the reports
+     * @param input the uncompressed text to analyze
+     * @param properties the properties object to read from
+     * @return the results of the analysis
+     * @throws IOException if the stream cannot be read
+     */
+    public AnalysisResult analyzeInput(String inputName, InputStream input,
+            Properties properties) throws IOException {
+        startRun(properties);
+
+        // Setup analyzers
         analyzers = new ArrayList<TokenAnalyzer>();
         createAnalyzers(properties);
+        createTokenizer(properties);
+        startAnalyzers(properties);
 
-        // Analyze text file
-        openInputFile(args[0]);
-        writeOutputFiles(args[0]);
+        try {
+            analyzeInput(input);
+        } finally {
+            finishAnalyzers();
+        }
+        return new AnalysisResult(inputName, analyzers, memoryGovernor);
     }
 
     /**
-     * Creates the {@code TokenAnalyzer} objects used for file analysis.
+     * Checks whether the input should be analyzed as a stream. Standard input
+     * and named pipes always are; regular files are when
+     * {@code stream.snapshots} is true in the properties file.
+     *
+     * @param fileName the name of the input file, or - for standard input
+     * @param properties the properties object to read from
+     * @return true if the input should be analyzed as a stream, else false
+     */
+    public boolean isStreamInput(String fileName, Properties properties) {
+        File inputFile = new File(fileName);
+
+        if (fileName.equals("-")
+                || (inputFile.exists() && !inputFile.isFile())) {
+            return true;
+        }
+        return Boolean.parseBoolean(properties.getProperty("stream.snapshots",
+                "false"));
+    }
+
+    /**
+     * Analyzes the input as a stream, writing report snapshots while it is
+     * read. See {@link StreamingAnalysis}.
+     *
+     * @param fileName the name of the input file, or - for standard input
+     * @param properties the properties object to read from
+     */
+    public void analyzeStream(String fileName, Properties properties) {
+        offsetIndex = null;
+        startRun(properties);
+        StreamingAnalysis streaming = new StreamingAnalysis(this, properties,
+                fileName);
+        createTokenizer(properties);
+        Consumer<String> tokenConsumer = streaming::processToken;
+        if (normalizer != null) {
+            tokenConsumer = token -> streaming.processToken(
+                    normalizer.normalize(token));
+        }
+
+        try {
+            if (fileName.equals("-")) {
+                tokenizer.tokenize(System.in, inputCharset, tokenConsumer);
+            } else {
+                try (InputStream input = openInputStream(fileName)) {
+                    tokenizer.tokenize(input, inputCharset, tokenConsumer);
+                }
+            }
+        } catch (FileNotFoundException fileNotFoundException) {
+            System.out.println("The file \"" + fileName + "\" was not found.");
+            fileNotFoundException.printStackTrace();
+        } catch (IOException iOException) {
+            System.out.println("There was a problem reading the file");
+            iOException.printStackTrace();
+        } catch (Exception exception) {
+            System.out.println("There was a problem reading the file");
+            exception.printStackTrace();
+        }
+        streaming.finish();
+    }
+
+    /**
+     * Analyzes each file in a zip archive as a separate document. The reports
+     * for an entry are written to a directory named after the entry inside
+     * the output directory, and the entry is identified in the reports as
+     * {@code archive!/entry}.
+     *
+     * When the minhash analyzer is enabled, the entries are also grouped into
+     * near-duplicates by their signatures, see {@link NearDuplicateIndex}.
+     * When the tfidf analyzer is enabled, each entry's top terms by TF-IDF
+     * across the archive are written once every entry has been read, see
+     * {@link CorpusTfIdf}.
+     *
+     * @param fileName the name of the zip file
+     * @param properties the properties object to read from
+     */
+    public void analyzeArchive(String fileName, Properties properties) {
+        String outputDirectory = properties.getProperty("output.directory");
+        NearDuplicateIndex nearDuplicates = new NearDuplicateIndex(properties);
+        CorpusTfIdf corpus = new CorpusTfIdf(properties);
+
+        try (ZipFile archive = new ZipFile(fileName)) {
+            for (ZipEntry entry : Collections.list(archive.entries())) {
+                Path entryPath = Paths.get(entry.getName()).normalize();
+                if (entry.isDirectory() || entryPath.isAbsolute()
+                        || entryPath.startsWith("..")) {
+                    continue;
+                }
+
+                Properties entryProperties = new Properties();
+                entryProperties.putAll(properties);
+                entryProperties.setProperty("output.directory",
+                        outputDirectory + entryPath + File.separator);
+                new File(outputDirectory, entryPath.toString()).mkdirs();
+
+                // An entry cannot be read back for a concordance
+                offsetIndex = null;
+                analyzers = new ArrayList<TokenAnalyzer>();
+                startRun(entryProperties);
+                createAnalyzers(entryProperties);
+                createTokenizer(entryProperties);
+                startAnalyzers(entryProperties);
+
+                try (InputStream input = new PrefetchInputStream(
+                        archive.getInputStream(entry), PREFETCH_BUFFER_SIZE,
+                        PREFETCH_BUFFER_COUNT)) {
+                    analyzeInput(input);
+                } finally {
+                    finishAnalyzers();
+                }
+                writeOutputFiles(fileName + "!/" + entry.getName());
+                deleteSpilledRuns();
+
+                for (TokenAnalyzer analyzer : analyzers) {
+                    if (analyzer instanceof MinHashAnalyzer) {
+                        long[] signature =
+                                ((MinHashAnalyzer) analyzer).getSignature();
+                        if (signature != null) {
+                            nearDuplicates.add(entry.getName(), signature);
+                        }
+                    } else if (analyzer instanceof TermFrequencyAnalyzer) {
+                        corpus.add(entry.getName(), entryProperties
+                                .getProperty("output.directory")
+                                + properties.getProperty("output.file.tfidf"),
+                                (TermFrequencyAnalyzer) analyzer);
+                    }
+                }
+            }
+
+            if (nearDuplicates.size() > 0) {
+                nearDuplicates.writeReport(outputDirectory + properties
+                        .getProperty("output.file.near.duplicates"));
+            }
+            corpus.writeReports();
+        } catch (IOException iOException) {
+            System.out.println("There was a problem reading the archive \""
+                    + fileName + "\"");
+            iOException.printStackTrace();
+        } catch (Exception exception) {
+            System.out.println("There was a problem reading the archive \""
+                    + fileName + "\"");
+            exception.printStackTrace();
+        } finally {
+            deleteSpilledRuns();
+        }
+    }
+
+    /**
+     * Creates the {@code TokenAnalyzer} objects used for file analysis. Each
+     * built-in analyzer is only constructed when it is enabled, see
+     * {@code isAnalyzerEnabled}, so a disabled analyzer never loads its word
+     * lists. Any {@link TokenAnalyzerProvider}
+     * found on the classpath is added after the built-in analyzers. Analyzers
+     * which implement {@link MemoryGovernedAnalyzer} share the memory governor
+     * of the run, and analyzers which implement {@link OffsetIndexedAnalyzer}
+     * are given the offset index of a plain input file. The summary analyzer
+     * is given the token normalizer, if there is one, to report its cache.
      *
      * @param properties the properties object to read from
      */
     public void createAnalyzers(Properties properties) {
-        analyzers.add(new FileSummaryAnalyzer(properties));
-        analyzers.add(new DistinctTokensAnalyzer(properties));
-        analyzers.add(new DistinctTokenCountsAnalyzer(properties));
-        analyzers.add(new LargestTokensAnalyzer(properties));
-        analyzers.add(new LexicalDensityAnalyzer(properties));
-        analyzers.add(new TokenLengthsAnalyzer(properties));
-        analyzers.add(new TokenLocationSearchAnalyzer(properties));
+        analyzers.addAll(buildAnalyzers(properties));
+    }
+
+    /**
+     * Creates a new set of the enabled analyzers, as described for
+     * {@code createAnalyzers}.
+     *
+     * @param properties the properties object to read from
+     * @return the new analyzers in output order
+     */
+    public List<TokenAnalyzer> buildAnalyzers(Properties properties) {
+        List<TokenAnalyzer> enabled = new ArrayList<TokenAnalyzer>();
+
+        for (Map.Entry<String, Function<Properties, TokenAnalyzer>> entry :
+                builtInAnalyzers().entrySet()) {
+            if (isAnalyzerEnabled(properties, entry.getKey())) {
+                enabled.add(entry.getValue().apply(properties));
+            }
+        }
+
+        for (TokenAnalyzerProvider provider :
+                ServiceLoader.load(TokenAnalyzerProvider.class)) {
+            if (isAnalyzerEnabled(properties, provider.getName())) {
+                enabled.add(provider.createAnalyzer(properties));
+            }
+        }
+
+        if (memoryGovernor == null) {
+            memoryGovernor = new MemoryGovernor(properties);
+        }
+        for (TokenAnalyzer analyzer : enabled) {
+            if (analyzer instanceof MemoryGovernedAnalyzer) {
+                ((MemoryGovernedAnalyzer) analyzer).setMemoryGovernor(
+                        memoryGovernor);
+            }
+            if (offsetIndex != null
+                    && analyzer instanceof OffsetIndexedAnalyzer) {
+                ((OffsetIndexedAnalyzer) analyzer).setOffsetIndex(offsetIndex);
+            }
+            if (normalizer != null && analyzer instanceof FileSummaryAnalyzer) {
+                ((FileSummaryAnalyzer) analyzer).setNormalizer(normalizer);
+            }
+        }
+        return enabled;
+    }
+
+    /**
+     * Gets the analyzers included with the application, keyed by the name
+     * used to enable them in the properties file.
+     *
+     * @return the constructors of the built-in analyzers in output order
+     */
+    public Map<String, Function<Properties, TokenAnalyzer>> builtInAnalyzers() {
+        Map<String, Function<Properties, TokenAnalyzer>> builtIns;
+        builtIns = new LinkedHashMap<String, Function<Properties,
+                TokenAnalyzer>>();
+        builtIns.put("summary", FileSummaryAnalyzer::new);
+        builtIns.put("distinct", DistinctTokensAnalyzer::new);
+        builtIns.put("distinct.counts", DistinctTokenCountsAnalyzer::new);
+        builtIns.put("largest.words", LargestTokensAnalyzer::new);
+        builtIns.put("lexical.density", LexicalDensityAnalyzer::new);
+        builtIns.put("token.lengths", TokenLengthsAnalyzer::new);
+        builtIns.put("token.search.locations",
+                TokenLocationSearchAnalyzer::new);
+        builtIns.put("ngrams", NGramCountsAnalyzer::new);
+        builtIns.put("collocations", CollocationAnalyzer::new);
+        builtIns.put("minhash", MinHashAnalyzer::new);
+        builtIns.put("tfidf", TermFrequencyAnalyzer::new);
+        return builtIns;
+    }
+
+    /**
+     * Checks whether an analyzer is enabled in the properties file. Analyzers
+     * are enabled unless their property is set to false, except the optional
+     * built-in analyzers, which are disabled unless it is set to true.
+     *
+     * @param properties the properties object to read from
+     * @param name the name of the analyzer
+     * @return true if the analyzer should be created, else false
+     */
+    public boolean isAnalyzerEnabled(Properties properties, String name) {
+        boolean optional = Arrays.asList(OPTIONAL_ANALYZERS).contains(name);
+        return Boolean.parseBoolean(properties.getProperty(
+                "analyzer.enabled." + name, String.valueOf(!optional)));
+    }
+
+    /**
+     * Creates the memory governor and the token normalizer of a new run, so
+     * nothing is carried over from the previous input.
+     *
+     * @param properties the properties object to read from
+     */
+    private void startRun(Properties properties) {
+        memoryGovernor = new MemoryGovernor(properties);
+        createNormalizer(properties);
+    }
+
+    /**
+     * Creates the {@code TokenNormalizer} when {@code normalization.case} or
+     * {@code normalization.stemmer} is set in the properties file, so the
+     * analyzers count normalized tokens. Leaves {@code normalizer} null
+     * otherwise.
+     *
+     * @param properties the properties object to read from
+     */
+    public void createNormalizer(Properties properties) {
+        normalizer = null;
+        if (TokenNormalizer.isEnabled(properties)) {
+            normalizer = new TokenNormalizer(properties);
+        }
     }
 
     /**
-     * Reads the input file and processes its contents. Calls the appropriate
-     * methods to split each line of text into individual tokens and process
-     * each one.
+     * Creates the tokenizer named by {@code tokenizer.backend} in the
+     * properties file: {@code regex} splits lines with a regular expression
+     * and {@code scan} classifies each character with bitmasks. Both produce
+     * the same tokens, as does {@code vector}, which classifies many bytes
+     * at once with the Vector API when it is available. {@code rules} uses
+     * the configurable rules of {@link RuleTokenizer}, whose legacy preset
+     * produces the same tokens too. The input charset is read from
+     * {@code input.charset} and defaults to UTF-8, so results do not depend
+     * on the platform.
+     *
+     * @param properties the properties object to read from
+     */
+    public void createTokenizer(Properties properties) {
+        tokenizer = newTokenizer(properties);
+
+        String charsetName = properties.getProperty("input.charset", "UTF-8");
+        try {
+            inputCharset = Charset.forName(charsetName);
+        } catch (Exception exception) {
+            System.out.println("The charset \"" + charsetName
+                    + "\" is not supported, reading the file as UTF-8");
+            inputCharset = StandardCharsets.UTF_8;
+        }
+    }
+
+    /**
+     * Creates a new tokenizer of the backend named by
+     * {@code tokenizer.backend} in the properties file, so that search
+     * phrases can be split the same way as the input.
+     *
+     * @param properties the properties object to read from
+     * @return the tokenizer
+     */
+    public static Tokenizer newTokenizer(Properties properties) {
+        String backend = properties.getProperty("tokenizer.backend", "regex");
+
+        if (backend.equals("scan")) {
+            return new ScanningTokenizer();
+        } else if (backend.equals("vector")) {
+            return newVectorTokenizer();
+        } else if (backend.equals("rules")) {
+            return new RuleTokenizer(properties);
+        } else {
+            return new RegexTokenizer();
+        }
+    }
+
+    /**
+     * Loads the tokenizer which classifies bytes with the Vector API. It is
+     * compiled apart from the other classes and needs the
+     * {@code jdk.incubator.vector} module, so it is loaded by name; when it
+     * is missing, the module is not enabled or the hardware has no useful
+     * vectors, the scan tokenizer, which produces the same tokens, is used.
+     *
+     * @return the vector tokenizer, or a scan tokenizer if it is unavailable
+     */
+    public static Tokenizer newVectorTokenizer() {
+        try {
+            return (Tokenizer) Class.forName(VECTOR_TOKENIZER)
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError exception) {
+            Throwable cause = (exception.getCause() != null)
+                    ? exception.getCause() : exception;
+            System.out.println("The vector tokenizer is not available, using "
+                    + "the scan tokenizer: " + cause);
+            return new ScanningTokenizer();
+        }
+    }
+
+    /**
+     * Starts a thread for each analyzer when the execution mode in the
+     * properties file is {@code parallel}. In the default {@code sequential}
+     * mode every token is passed to each analyzer in turn on the reading
+     * thread.
+     *
+     * @param properties the properties object to read from
+     */
+    public void startAnalyzers(Properties properties) {
+        String mode = properties.getProperty("analyzer.execution.mode",
+                "sequential");
+
+        if (mode.equals("parallel")) {
+            int batchSize = Integer.parseInt(properties.getProperty(
+                    "analyzer.parallel.batch.size", "4096"));
+            int queueCapacity = Integer.parseInt(properties.getProperty(
+                    "analyzer.parallel.queue.capacity", "16"));
+            parallelRunner = new ParallelAnalyzerRunner(analyzers, batchSize,
+                    queueCapacity);
+        }
+    }
+
+    /**
+     * Waits for the analyzer threads to process every remaining token. Does
+     * nothing in sequential mode.
+     *
+     * @throws IllegalStateException if an analyzer thread failed, so the
+     *                               reports must not be written
+     */
+    public void finishAnalyzers() {
+        if (parallelRunner != null) {
+            try {
+                parallelRunner.finish();
+            } finally {
+                parallelRunner = null;
+            }
+        }
+    }
+
+    /**
+     * Reads the input file and processes its contents. The text is split
+     * into individual tokens by the tokenizer and each one is processed.
      *
      * @param fileName the name of the input file
      */
     public void openInputFile(String fileName) {
-        try (BufferedReader reader = new BufferedReader(
-                new FileReader(fileName))) {
-            while (reader.ready()) {
-                String fileLine = reader.readLine();
-                String[] fileTokens = parseFileLine(fileLine);
-                analyzeTokens(fileTokens);
-            }
+        try (InputStream input = openInputStream(fileName)) {
+            analyzeInput(input);
         } catch (FileNotFoundException fileNotFoundException) {
             System.out.println("The file \"" + fileName + "\" was not found.");
             fileNotFoundException.printStackTrace();
@@ -97,6 +609,78 @@ public class FileAnalysis implements PropertiesLoader {
         }
     }
 
+    /**
+     * Opens the input file for reading. A gzip file is recognized by its
+     * magic number and inflated on a background thread, so decompression
+     * overlaps with tokenizing and analysis.
+     *
+     * @param fileName the name of the input file
+     * @return the uncompressed contents of the file
+     * @throws IOException if the file cannot be opened
+     */
+    public InputStream openInputStream(String fileName) throws IOException {
+        InputStream input = new BufferedInputStream(
+                new FileInputStream(fileName));
+
+        if (hasMagicNumber(fileName, GZIP_MAGIC)) {
+            return new PrefetchInputStream(new GZIPInputStream(input,
+                    PREFETCH_BUFFER_SIZE), PREFETCH_BUFFER_SIZE,
+                    PREFETCH_BUFFER_COUNT);
+        }
+        return input;
+    }
+
+    /**
+     * Checks whether a file starts with the given bytes.
+     *
+     * @param fileName the name of the file to check
+     * @param magic the bytes identifying a file format
+     * @return true if the file starts with the bytes, else false
+     */
+    public boolean hasMagicNumber(String fileName, byte[] magic) {
+        // Reading a pipe would consume the bytes, so only check regular files
+        if (!new File(fileName).isFile()) {
+            return false;
+        }
+
+        try (InputStream input = new FileInputStream(fileName)) {
+            for (byte expected : magic) {
+                if (input.read() != (expected & 0xFF)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException iOException) {
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether a file is compressed with gzip.
+     *
+     * @param fileName the name of the file to check
+     * @return true if the file starts with the gzip magic number, else false
+     */
+    public boolean isGzipFile(String fileName) {
+        return hasMagicNumber(fileName, GZIP_MAGIC);
+    }
+
+    /**
+     * Splits the text of a stream into tokens and processes each one. The
+     * stream is not closed.
+     *
+     * @param input the uncompressed text to analyze
+     * @throws IOException if the stream cannot be read
+     */
+    public void analyzeInput(InputStream input) throws IOException {
+        if (tokenizer == null) {
+            tokenizer = new RegexTokenizer();
+            inputCharset = StandardCharsets.UTF_8;
+        }
+        Consumer<String> tokenConsumer = this::evaluateToken;
+        tokenizer.tokenize(input, inputCharset, tokenConsumer);
+    }
+
     /**
      * Splits a line of a text file into individual tokens. The delimiter
      * splits the string at each non-word character.
@@ -123,16 +707,42 @@ public class FileAnalysis implements PropertiesLoader {
     }
 
     /**
-     * Passes the token to each analyzer's {@code processToken} method.
+     * Passes the token to each analyzer's {@code processToken} method. In
+     * parallel mode the token is added to the next batch for the analyzer
+     * threads instead. The token is counted in the offset index first, while
+     * the tokenizer still knows its offset, and then normalized if a
+     * normalizer is configured.
      *
      * @param token the token for each analyzer to process
      */
     public void evaluateToken(String token) {
+        if (offsetIndex != null) {
+            offsetIndex.countToken(tokenizer);
+        }
+        if (normalizer != null) {
+            token = normalizer.normalize(token);
+        }
+
+        if (parallelRunner != null) {
+            parallelRunner.submit(token);
+            return;
+        }
+
         for (TokenAnalyzer analyzer : analyzers) {
             analyzer.processToken(token);
         }
     }
 
+    /**
+     * Deletes the runs the analyzers of the current run spilled to disk. Call
+     * it once their final reports have been written.
+     */
+    public void deleteSpilledRuns() {
+        if (memoryGovernor != null) {
+            memoryGovernor.deleteSpills();
+        }
+    }
+
     /**
      * Calls the {@code generateOutputFile} method of each analyzer to write
      * the output files.
@@ -140,7 +750,19 @@ public class FileAnalysis implements PropertiesLoader {
      * @param inputFilePath the filepath of the analyzed file
      */
     public void writeOutputFiles(String inputFilePath) {
-        for (TokenAnalyzer analyzer : analyzers) {
+        writeOutputFiles(analyzers, inputFilePath);
+    }
+
+    /**
+     * Calls the {@code generateOutputFile} method of each of the given
+     * analyzers to write the output files.
+     *
+     * @param outputAnalyzers the analyzers to write the output files of
+     * @param inputFilePath the filepath of the analyzed file
+     */
+    public void writeOutputFiles(List<TokenAnalyzer> outputAnalyzers,
+            String inputFilePath) {
+        for (TokenAnalyzer analyzer : outputAnalyzers) {
             analyzer.generateOutputFile(inputFilePath);
         }
     }
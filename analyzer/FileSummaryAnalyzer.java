@@ -1,21 +1,28 @@
 package java112.analyzer;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.BufferedWriter;
 import java.io.PrintWriter;
 import java.io.IOException;
+import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.Map;
 import java.util.Properties;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 /**
  * Creates a summary of the analyzed text file.
  * 
  * @author Ryan Chua
  */
-public class FileSummaryAnalyzer implements TokenAnalyzer {
+public class FileSummaryAnalyzer implements PartialStateAnalyzer,
+        MemoryGovernedAnalyzer {
 
     /** The overall number of tokens in the analyzed file                     */
     private int totalTokensCount;
@@ -23,6 +30,18 @@ public class FileSummaryAnalyzer implements TokenAnalyzer {
     /** The properties file to read from                                      */
     private Properties properties;
 
+    /** The memory governor of the run, or null if there is none              */
+    private MemoryGovernor governor;
+
+    /** The sample this analyzer processed, or null if it read the whole file */
+    private SampledAnalysis sample;
+
+    /** The input file name which means standard input                        */
+    private static final String STANDARD_INPUT = "-";
+
+    /** The normalizer of the run's tokens, or null if there is none          */
+    private TokenNormalizer normalizer;
+
     /**
      * Creates a new {@code FileSummaryAnalyzer}. Initializes the
      * {@code totalTokensCount} to 0.
@@ -43,6 +62,37 @@ public class FileSummaryAnalyzer implements TokenAnalyzer {
         this.properties = properties;
     }
 
+    /**
+     * Gives the analyzer the memory governor of the run, so the summary can
+     * list what the other analyzers gave up to stay within the budget.
+     *
+     * @param governor the memory governor of the run
+     */
+    public void setMemoryGovernor(MemoryGovernor governor) {
+        this.governor = governor;
+    }
+
+    /**
+     * Tells the analyzer that it only processes a sample of the file, so the
+     * summary reports the sampled tokens and the estimates for the whole file
+     * instead of a total.
+     *
+     * @param sample the sample of the file
+     */
+    public void setSample(SampledAnalysis sample) {
+        this.sample = sample;
+    }
+
+    /**
+     * Gives the analyzer the normalizer of the run's tokens, so the summary
+     * can report the normalization and its cache hit rate.
+     *
+     * @param normalizer the normalizer of the run's tokens
+     */
+    public void setNormalizer(TokenNormalizer normalizer) {
+        this.normalizer = normalizer;
+    }
+
     /**
      * Increments the {@code totalTokensCount}.
      * 
@@ -52,6 +102,36 @@ public class FileSummaryAnalyzer implements TokenAnalyzer {
         totalTokensCount++;
     }
 
+    /**
+     * Adds the token count of another {@code FileSummaryAnalyzer}.
+     *
+     * @param other the analyzer to merge into this one
+     */
+    public void merge(TokenAnalyzer other) {
+        totalTokensCount += ((FileSummaryAnalyzer) other).totalTokensCount;
+    }
+
+    /**
+     * Writes the token count to a partial.
+     *
+     * @param output the stream to write the partial to
+     * @throws IOException if the partial cannot be written
+     */
+    public void writePartialState(DataOutputStream output)
+            throws IOException {
+        output.writeInt(totalTokensCount);
+    }
+
+    /**
+     * Reads the token count from a partial.
+     *
+     * @param input the stream to read the partial from
+     * @throws IOException if the partial cannot be read
+     */
+    public void readPartialState(DataInputStream input) throws IOException {
+        totalTokensCount = input.readInt();
+    }
+
     /**
      * Writes information about the analyzed file to the specified output file.
      * The summary file contains:
@@ -59,12 +139,22 @@ public class FileSummaryAnalyzer implements TokenAnalyzer {
      *     <li>The Analyzer program's name</li>
      *     <li>The program's author</li>
      *     <li>The author's email</li>
-     *     <li>The absolute path of the analyzed file</li>
+     *     <li>The absolute path of the analyzed file, or
+     *         {@code (standard input)}</li>
      *     <li>The date and time of analysis</li>
-     *     <li>The last modified date of the analyzed file</li>
-     *     <li>The size of the analyzed file in bytes</li>
-     *     <li>The file URI of the analyzed file</li>
-     *     <li>The total number of tokens in the file</li>
+     *     <li>The last modified date of the analyzed file, unless it was
+     *         read from standard input or a pipe</li>
+     *     <li>The size of the analyzed file in bytes, unless it was read
+     *         from standard input or a pipe</li>
+     *     <li>The file URI of the analyzed file, unless it was read from
+     *         standard input</li>
+     *     <li>The total number of tokens in the file, or when only a
+     *         sample was read the sampled tokens and the estimates for the
+     *         whole file</li>
+     *     <li>The memory budget and each analyzer degraded to stay within
+     *         it, when a budget is configured</li>
+     *     <li>The token normalization and its cache hit rate, when tokens
+     *         are normalized</li>
      * </ol>
      *
      * @param inputFilePath the filepath of the analyzed file
@@ -79,20 +169,67 @@ public class FileSummaryAnalyzer implements TokenAnalyzer {
             Calendar calendar = Calendar.getInstance();
             SimpleDateFormat formatter = new SimpleDateFormat(
                     "E MMM d k:m:s z yyyy");
+            long lastModified = inputFile.lastModified();
+            long fileSize = inputFile.length();
+
+            // Entries of a zip file are named archive!/entry
+            int entrySeparator = inputFilePath.indexOf("!/");
+            if (entrySeparator != -1) {
+                try (ZipFile archive = new ZipFile(inputFilePath.substring(0,
+                        entrySeparator))) {
+                    ZipEntry entry = archive.getEntry(inputFilePath.substring(
+                            entrySeparator + 2));
+                    lastModified = entry.getTime();
+                    fileSize = entry.getSize();
+                }
+            }
 
             writer.println("Application: "
                     + properties.getProperty("application.name"));
             writer.println("Author: " + properties.getProperty("author"));
             writer.println("Author email: "
                     + properties.getProperty("author.email.address"));
-            writer.println("File: " + inputFile.getAbsolutePath());
+            writer.println("File: " + describeInput(inputFilePath));
             writer.println("Date of analysis: " + formatter.format(
                     calendar.getTime()));
-            writer.println("Last Modified:    " + formatter.format(new Date(
-                    inputFile.lastModified())));
-            writer.println("File Size: " + inputFile.length());
-            writer.println("File URI: " + inputFile.toURI());
-            writer.println("Total Tokens: " + totalTokensCount);
+            // A stream has no size or modification time of its own
+            if (!isStream(inputFilePath)) {
+                writer.println("Last Modified:    " + formatter.format(
+                        new Date(lastModified)));
+                writer.println("File Size: " + fileSize);
+            }
+            if (!inputFilePath.equals(STANDARD_INPUT)) {
+                writer.println("File URI: " + inputFile.toURI());
+            }
+            if (sample != null) {
+                writer.println("Sampled Tokens: " + totalTokensCount);
+                for (String line : sample.getEstimateLines()) {
+                    writer.println(line);
+                }
+            } else {
+                writer.println("Total Tokens: " + totalTokensCount);
+            }
+
+            if (governor != null && governor.getBudget() > 0) {
+                writer.println("Memory Budget: " + governor.getBudget()
+                        / (1024 * 1024) + " MB");
+                for (Map.Entry<String, String> entry :
+                        governor.getDegradations().entrySet()) {
+                    writer.println("Degraded: " + entry.getKey() + " "
+                            + entry.getValue());
+                }
+            }
+
+            if (normalizer != null) {
+                DecimalFormat percent = new DecimalFormat("0.00%");
+                writer.println("Normalization: "
+                        + normalizer.getDescription());
+                writer.println("Normalization Cache: " + percent.format(
+                        normalizer.getHitRate()) + " hits ("
+                        + normalizer.getHits() + " hits, "
+                        + normalizer.getMisses() + " misses, "
+                        + normalizer.getEvictions() + " evictions)");
+            }
         } catch (IOException iOException) {
             System.out.println("There was a problem writing "
                     + properties.getProperty("output.file.summary"));
@@ -104,6 +241,36 @@ public class FileSummaryAnalyzer implements TokenAnalyzer {
         }
     }
     
+    /**
+     * Describes the analyzed input for the reports: the absolute path of a
+     * file, or {@code (standard input)} when the text was read from standard
+     * input.
+     *
+     * @param inputFilePath the filepath of the analyzed file, or - for
+     *                      standard input
+     * @return the description of the input
+     */
+    public static String describeInput(String inputFilePath) {
+        if (inputFilePath.equals(STANDARD_INPUT)) {
+            return "(standard input)";
+        }
+        return new File(inputFilePath).getAbsolutePath();
+    }
+
+    /**
+     * Checks whether the analyzed input was read from standard input or a
+     * pipe rather than a regular file or zip entry.
+     *
+     * @param inputFilePath the filepath of the analyzed file, or - for
+     *                      standard input
+     * @return true if the input was a stream, else false
+     */
+    private boolean isStream(String inputFilePath) {
+        File inputFile = new File(inputFilePath);
+        return inputFilePath.equals(STANDARD_INPUT)
+                || (inputFile.exists() && !inputFile.isFile());
+    }
+
     // Getters and Setters
 
     /**
@@ -2,7 +2,11 @@ package java112.analyzer;
 
 import java.util.Properties;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.HashSet;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.FileWriter;
 import java.io.BufferedWriter;
 import java.io.PrintWriter;
@@ -14,7 +18,8 @@ import java.io.IOException;
  * 
  * @author Ryan Chua
  */
-public class LargestTokensAnalyzer implements TokenAnalyzer {
+public class LargestTokensAnalyzer implements PartialStateAnalyzer,
+        MemoryGovernedAnalyzer {
 
     /** The properties file to read from                                      */
     private Properties properties;
@@ -25,29 +30,70 @@ public class LargestTokensAnalyzer implements TokenAnalyzer {
     /** The minimum character length for a token to be considered large       */
     private int minimumTokenLength;
 
+    /** The memory governor of the run, or null if there is none              */
+    private MemoryGovernor governor;
+
+    /** The estimated size of the tokens held in memory in bytes              */
+    private long footprint;
+
+    /** The footprint at which to report to the governor next                 */
+    private long nextReport;
+
+    /** The tokens spilled to disk, or null if nothing has been spilled       */
+    private TokenSpill spill;
+
     /**
      * Creates a new {@code LargestTokensAnalyzer}. Creates an instance of a
-     * {@code TreeSet} and assigns it to {@code largestTokens}.
+     * {@code HashSet} and assigns it to {@code largestTokens}.
      */
     public LargestTokensAnalyzer() {
-        largestTokens = new TreeSet<String>();
+        largestTokens = new HashSet<String>();
     }
 
     /**
      * Creates a new {@code LargestTokensAnalyzer}. Creates an instance of a
-     * {@code TreeSet} and assigns it to {@code largestTokens}. Assigns a
-     * properties object to the instance variable. Reads the properties file to
-     * set the value of {@code minimumTokenLength}.
+     * {@code HashSet} and assigns it to {@code largestTokens}, or an
+     * {@code OffHeapVocabulary} when off-heap storage is configured. Assigns
+     * a properties object to the instance variable. Reads the properties file
+     * to set the value of {@code minimumTokenLength}.
      * 
      * @param properties the properties object to read from
      */
     public LargestTokensAnalyzer(Properties properties) {
         this();
         this.properties = properties;
+        if (OffHeapVocabulary.isEnabled(properties)) {
+            largestTokens = new OffHeapVocabulary();
+        }
         this.minimumTokenLength = Integer.valueOf(
                 properties.getProperty("largest.words.minimum.length"));
     }
 
+    /**
+     * Gives the analyzer the memory governor of the run. When the governor
+     * reports that the budget is nearly used, the large tokens held in memory
+     * are spilled to disk as a sorted run.
+     *
+     * @param governor the memory governor of the run
+     */
+    public void setMemoryGovernor(MemoryGovernor governor) {
+        this.governor = governor;
+        nextReport = governor.getReportStep();
+    }
+
+    /**
+     * Iterates over the tokens held in memory in sorted order. Tokens stored
+     * off the heap are copied into strings one at a time as they are merged.
+     *
+     * @return an iterator over the sorted tokens
+     */
+    private Iterator<String> sortedTokens() {
+        if (largestTokens instanceof OffHeapVocabulary) {
+            return ((OffHeapVocabulary) largestTokens).sortedIterator();
+        }
+        return Arrays.asList(sortTokens()).iterator();
+    }
+
     /**
      * Adds the token to {@code largestTokens} if it is greater than
      * or equal to {@code minimumTokenLength}.
@@ -55,15 +101,130 @@ public class LargestTokensAnalyzer implements TokenAnalyzer {
      * @param token the token to analyze
      */
     public void processToken(String token) {
-        if (token.length() >= minimumTokenLength) {
-            largestTokens.add(token);
+        if (token.length() >= minimumTokenLength
+                && largestTokens.add(token) && governor != null) {
+            footprint += MemoryGovernor.estimateTokenBytes(token);
+            if (footprint >= nextReport) {
+                checkMemory();
+            }
+        }
+    }
+
+    /**
+     * Reports the footprint to the governor and spills the large tokens if the
+     * budget is nearly used.
+     */
+    private void checkMemory() {
+        nextReport = footprint + governor.getReportStep();
+        if (governor.report(this, footprint)) {
+            spillTokens();
+        }
+    }
+
+    /**
+     * Writes the large tokens held in memory to disk as a sorted run and
+     * starts again with an empty set.
+     */
+    private void spillTokens() {
+        if (spill == null) {
+            spill = governor.createSpill();
+        }
+
+        try {
+            if (largestTokens instanceof OffHeapVocabulary) {
+                OffHeapVocabulary vocabulary =
+                        (OffHeapVocabulary) largestTokens;
+                spill.spill(writer -> vocabulary.writeSorted(writer, false));
+                largestTokens = new OffHeapVocabulary();
+            } else {
+                spill.spill(sortTokens(), null);
+                largestTokens = new HashSet<String>();
+            }
+        } catch (IOException iOException) {
+            System.out.println("There was a problem spilling the largest "
+                    + "tokens");
+            iOException.printStackTrace();
+            return;
+        }
+
+        footprint = 0;
+        nextReport = governor.getReportStep();
+        governor.report(this, footprint);
+        governor.recordDegradation("largest.words", "spilled "
+                + spill.getRunCount() + " sorted runs to disk");
+    }
+
+    /**
+     * Copies the large tokens held on the heap into an array sorted in
+     * parallel.
+     *
+     * @return the sorted tokens
+     */
+    private String[] sortTokens() {
+        String[] sortedTokens = largestTokens.toArray(new String[0]);
+        Arrays.parallelSort(sortedTokens);
+        return sortedTokens;
+    }
+
+    /**
+     * Adds the large tokens of another {@code LargestTokensAnalyzer}.
+     * 
+     * @param other the analyzer to merge into this one
+     */
+    public void merge(TokenAnalyzer other) {
+        LargestTokensAnalyzer otherAnalyzer = (LargestTokensAnalyzer) other;
+        largestTokens.addAll(otherAnalyzer.largestTokens);
+
+        if (otherAnalyzer.spill != null) {
+            if (spill == null) {
+                spill = governor.createSpill();
+            }
+            spill.addRuns(otherAnalyzer.spill);
+        }
+        if (governor != null) {
+            governor.release(otherAnalyzer);
+            footprint += otherAnalyzer.footprint;
+            checkMemory();
+        }
+    }
+
+    /**
+     * Writes the large tokens to a partial.
+     *
+     * @param output the stream to write the partial to
+     * @throws IOException if the partial cannot be written or tokens have
+     *         been spilled to disk
+     */
+    public void writePartialState(DataOutputStream output)
+            throws IOException {
+        if (spill != null) {
+            throw new IOException("Spilled tokens cannot be written to a "
+                    + "partial");
+        }
+        output.writeInt(largestTokens.size());
+        for (String token : largestTokens) {
+            PartialStateAnalyzer.writeToken(output, token);
+        }
+    }
+
+    /**
+     * Reads the large tokens from a partial.
+     *
+     * @param input the stream to read the partial from
+     * @throws IOException if the partial cannot be read
+     */
+    public void readPartialState(DataInputStream input) throws IOException {
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            processToken(PartialStateAnalyzer.readToken(input));
         }
-        
     }
 
     /**
      * Creates a file containing the tokens that are longer than the
-     * {@code minimumTokenLength}, each displayed on their own line.
+     * {@code minimumTokenLength}, each displayed on their own line. The
+     * tokens are sorted in parallel when the file is written. Any runs
+     * spilled to disk are merged with the tokens still in memory.
      * 
      * @param inputFilePath the filepath of the analyzed file
      */
@@ -73,8 +234,14 @@ public class LargestTokensAnalyzer implements TokenAnalyzer {
 
         try (PrintWriter writer = new PrintWriter(new BufferedWriter(
                 new FileWriter(outputFilePath)))) {
-            for (String token : largestTokens) {
-                writer.println(token);
+            if (spill != null) {
+                spill.writeMerged(writer, sortedTokens(), null, false);
+            } else if (largestTokens instanceof OffHeapVocabulary) {
+                ((OffHeapVocabulary) largestTokens).writeSorted(writer, false);
+            } else {
+                for (String token : sortTokens()) {
+                    writer.println(token);
+                }
             }
         } catch (IOException iOException) {
             System.out.println("There was a problem writing "
@@ -0,0 +1,179 @@
+package java112.analyzer;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Counts how many times each token length occurs. Lengths below
+ * {@code DENSE_LENGTHS} are counted in a plain {@code long[]}, so recording a
+ * typical token is a bounds check and an increment. Longer lengths are rare
+ * and go to an overflow map.
+ *
+ * Histograms built over separate parts of the input can be merged by adding
+ * their counts together.
+ *
+ * @author Ryan Chua
+ */
+public class LengthHistogram {
+
+    /** The number of lengths counted in the dense array                      */
+    public static final int DENSE_LENGTHS = 64;
+
+    /** The counts of each length below {@code DENSE_LENGTHS}                 */
+    private long[] counts;
+
+    /** The counts of each length of at least {@code DENSE_LENGTHS}           */
+    private TreeMap<Integer, Long> overflowCounts;
+
+    /**
+     * Creates a new, empty {@code LengthHistogram}.
+     */
+    public LengthHistogram() {
+        counts = new long[DENSE_LENGTHS];
+        overflowCounts = new TreeMap<Integer, Long>();
+    }
+
+    /**
+     * Counts one occurrence of a length.
+     *
+     * @param length the length to count
+     */
+    public void add(int length) {
+        if (length < DENSE_LENGTHS) {
+            counts[length]++;
+        } else {
+            overflowCounts.merge(length, 1L, Long::sum);
+        }
+    }
+
+    /**
+     * Counts several occurrences of a length.
+     *
+     * @param length the length to count
+     * @param count the number of occurrences
+     */
+    public void add(int length, long count) {
+        if (length < DENSE_LENGTHS) {
+            counts[length] += count;
+        } else {
+            overflowCounts.merge(length, count, Long::sum);
+        }
+    }
+
+    /**
+     * Adds the counts of another histogram to this one.
+     *
+     * @param other the histogram to add
+     */
+    public void merge(LengthHistogram other) {
+        for (int length = 0; length < DENSE_LENGTHS; length++) {
+            counts[length] += other.counts[length];
+        }
+        for (Map.Entry<Integer, Long> entry :
+                other.overflowCounts.entrySet()) {
+            overflowCounts.merge(entry.getKey(), entry.getValue(), Long::sum);
+        }
+    }
+
+    /**
+     * Gets every length which occurred and its count, in ascending order of
+     * length.
+     *
+     * @return a sorted map of lengths to counts
+     */
+    public Map<Integer, Long> toMap() {
+        Map<Integer, Long> lengths = new TreeMap<Integer, Long>();
+        for (int length = 0; length < DENSE_LENGTHS; length++) {
+            if (counts[length] != 0) {
+                lengths.put(length, counts[length]);
+            }
+        }
+        lengths.putAll(overflowCounts);
+        return lengths;
+    }
+
+    /**
+     * Gets the total number of lengths counted.
+     *
+     * @return the number of tokens counted
+     */
+    public long getTotal() {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        for (long count : overflowCounts.values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Gets the highest count of any one length.
+     *
+     * @return the highest count, or 0 if nothing was counted
+     */
+    public long getMaxCount() {
+        long maxCount = 0;
+        for (long count : toMap().values()) {
+            maxCount = Math.max(maxCount, count);
+        }
+        return maxCount;
+    }
+
+    /**
+     * Gets the mean length.
+     *
+     * @return the mean length, or 0 if nothing was counted
+     */
+    public double getMean() {
+        long total = getTotal();
+        if (total == 0) {
+            return 0;
+        }
+
+        double sum = 0;
+        for (Map.Entry<Integer, Long> entry : toMap().entrySet()) {
+            sum += (double) entry.getKey() * entry.getValue();
+        }
+        return sum / total;
+    }
+
+    /**
+     * Gets the length at a percentile using the nearest-rank method: the
+     * smallest length which at least the given fraction of tokens do not
+     * exceed.
+     *
+     * @param fraction the percentile as a fraction between 0 and 1
+     * @return the length at the percentile, or 0 if nothing was counted
+     */
+    public int getPercentile(double fraction) {
+        long rank = Math.max(1, (long) Math.ceil(fraction * getTotal()));
+        long seen = 0;
+
+        for (Map.Entry<Integer, Long> entry : toMap().entrySet()) {
+            seen += entry.getValue();
+            if (seen >= rank) {
+                return entry.getKey();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the longest length counted.
+     *
+     * @return the longest length, or 0 if nothing was counted
+     */
+    public int getMaxLength() {
+        if (!overflowCounts.isEmpty()) {
+            return overflowCounts.lastKey();
+        }
+        for (int length = DENSE_LENGTHS - 1; length > 0; length--) {
+            if (counts[length] != 0) {
+                return length;
+            }
+        }
+        return 0;
+    }
+}
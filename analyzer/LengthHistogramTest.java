@@ -0,0 +1,176 @@
+package java112.analyzer;
+
+/**
+ * Unit testing for {@link LengthHistogram}. The expected statistics were
+ * worked out by hand.
+ *
+ * @author Ryan Chua
+ */
+public class LengthHistogramTest {
+
+    /**
+     * Runs tests on methods used in {@code LengthHistogram}.
+     *
+     * @param args the command line arguments (not used)
+     */
+    public static void main(String[] args) {
+        LengthHistogramTest test = new LengthHistogramTest();
+
+        boolean statisticsFailed = test.testStatistics();
+        boolean mergeFailed = test.testMerge();
+        System.out.println();
+
+        if (statisticsFailed) {
+            System.out.println("Histogram statistics failed testing");
+        }
+
+        if (mergeFailed) {
+            System.out.println("merge failed testing");
+        }
+    }
+
+    /**
+     * Tests the mean, median, 90th and 99th percentiles and maximum of three
+     * histograms. Percentiles use the nearest rank, so with 100 tokens the
+     * 90th percentile is the length of the 90th shortest token.
+     *
+     * @return true if any test fails, else false
+     */
+    public boolean testStatistics() {
+        int successes = 0;
+        int failures = 0;
+
+        // Create test objects
+        LengthHistogram[] histograms = {new LengthHistogram(),
+                new LengthHistogram(), new LengthHistogram()};
+
+        // Lengths 1 to 10 once each
+        for (int length = 1; length <= 10; length++) {
+            histograms[0].add(length);
+        }
+
+        // 100 tokens, one longer than the dense array
+        add(histograms[1], 3, 50);
+        add(histograms[1], 4, 30);
+        add(histograms[1], 7, 15);
+        add(histograms[1], 12, 4);
+        histograms[1].add(100);
+
+        // Create expected results: mean, median, p90, p99 and max
+        double[][] expected = {
+                {5.5, 5, 9, 10, 10},
+                {5.23, 3, 7, 12, 100},
+                {0, 0, 0, 0, 0}};
+
+        // Compare expected v. actual and display results
+        System.out.println();
+        System.out.println("Testing histogram statistics");
+
+        for (int i = 0; i < histograms.length; i++) {
+            double[] actual = statistics(histograms[i]);
+            boolean matches = true;
+            for (int j = 0; j < actual.length; j++) {
+                matches &= Math.abs(expected[i][j] - actual[j]) < 1e-9;
+            }
+
+            if (matches) {
+                System.out.println("Test " + (i + 1) + ": Success");
+                successes++;
+            } else {
+                System.out.println("Test " + (i + 1) + ": Failed");
+                System.out.println("    Expected: " + toString(expected[i]));
+                System.out.println("    Actual:   " + toString(actual));
+                failures++;
+            }
+        }
+
+        System.out.println();
+        System.out.println("Successful tests: " + successes + "/"
+                + (successes + failures));
+        System.out.println("Failed tests: " + failures + "/"
+                + (successes + failures));
+
+        if (failures > 0) {
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Tests that two histograms merged together give the same statistics as
+     * one histogram of all the lengths.
+     *
+     * @return true if the test fails, else false
+     */
+    public boolean testMerge() {
+        LengthHistogram first = new LengthHistogram();
+        LengthHistogram second = new LengthHistogram();
+        add(first, 3, 50);
+        add(first, 12, 1);
+        add(second, 4, 30);
+        add(second, 7, 15);
+        add(second, 12, 3);
+        second.add(100);
+        first.merge(second);
+
+        double[] expected = {5.23, 3, 7, 12, 100};
+        double[] actual = statistics(first);
+
+        System.out.println();
+        System.out.println("Testing merge:");
+
+        boolean matches = first.getTotal() == 100;
+        for (int i = 0; i < actual.length; i++) {
+            matches &= Math.abs(expected[i] - actual[i]) < 1e-9;
+        }
+
+        if (matches) {
+            System.out.println("Merged statistics: Success");
+            return false;
+        } else {
+            System.out.println("Merged statistics: Failed");
+            System.out.println("    Expected: " + toString(expected));
+            System.out.println("    Actual:   " + toString(actual));
+            return true;
+        }
+    }
+
+    /**
+     * Adds a token length to a histogram several times.
+     *
+     * @param histogram the histogram to add to
+     * @param length the token length
+     * @param count the number of tokens of that length
+     */
+    private void add(LengthHistogram histogram, int length, int count) {
+        for (int i = 0; i < count; i++) {
+            histogram.add(length);
+        }
+    }
+
+    /**
+     * Gets the statistics of a histogram which the token lengths report
+     * lists.
+     *
+     * @param histogram the histogram to describe
+     * @return the mean, median, 90th and 99th percentiles and maximum
+     */
+    private double[] statistics(LengthHistogram histogram) {
+        return new double[] {histogram.getMean(),
+                histogram.getPercentile(0.5), histogram.getPercentile(0.9),
+                histogram.getPercentile(0.99), histogram.getMaxLength()};
+    }
+
+    /**
+     * Formats statistics for a failure message.
+     *
+     * @param values the mean, median, 90th and 99th percentiles and maximum
+     * @return the labelled values
+     */
+    private String toString(double[] values) {
+        return "mean " + values[0] + ", median " + values[1] + ", p90 "
+                + values[2] + ", p99 " + values[3] + ", max " + values[4];
+    }
+
+}
@@ -3,6 +3,8 @@ package java112.analyzer;
 import java.util.Properties;
 import java.util.Set;
 import java.util.HashSet;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.FileReader;
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
@@ -11,6 +13,7 @@ import java.io.FileWriter;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
 
 /**
@@ -22,7 +25,7 @@ import java.text.DecimalFormat;
  * 
  * @author Ryan Chua
  */
-public class LexicalDensityAnalyzer implements TokenAnalyzer {
+public class LexicalDensityAnalyzer implements PartialStateAnalyzer {
 
     /** A count of all lexical tokens in the file                             */
     private int lexicalTokens;
@@ -50,7 +53,8 @@ public class LexicalDensityAnalyzer implements TokenAnalyzer {
     /**
      * Creates a new {@code LexicalDensityAnalyzer}. Initializes {@code
      * lexicalTokens} and {@code totalTokens} to 0. Assigns a properties object
-     * to the instance variable. Loads the list of non-lexical words.
+     * to the instance variable. Loads the list of non-lexical words, and
+     * normalizes them when the run normalizes its tokens.
      * 
      * @param properties the properties object to read from
      */
@@ -58,6 +62,9 @@ public class LexicalDensityAnalyzer implements TokenAnalyzer {
         this();
         this.properties = properties;
         loadNonLexicalWords();
+        if (TokenNormalizer.isEnabled(properties)) {
+            normalizeNonLexicalWords(new TokenNormalizer(properties));
+        }
     }
 
     /**
@@ -74,6 +81,40 @@ public class LexicalDensityAnalyzer implements TokenAnalyzer {
         totalTokens++;
     }
 
+    /**
+     * Adds the token counts of another {@code LexicalDensityAnalyzer}.
+     * 
+     * @param other the analyzer to merge into this one
+     */
+    public void merge(TokenAnalyzer other) {
+        LexicalDensityAnalyzer otherAnalyzer = (LexicalDensityAnalyzer) other;
+        lexicalTokens += otherAnalyzer.lexicalTokens;
+        totalTokens += otherAnalyzer.totalTokens;
+    }
+
+    /**
+     * Writes the lexical and total token counts to a partial.
+     *
+     * @param output the stream to write the partial to
+     * @throws IOException if the partial cannot be written
+     */
+    public void writePartialState(DataOutputStream output)
+            throws IOException {
+        output.writeInt(lexicalTokens);
+        output.writeInt(totalTokens);
+    }
+
+    /**
+     * Reads the lexical and total token counts from a partial.
+     *
+     * @param input the stream to read the partial from
+     * @throws IOException if the partial cannot be read
+     */
+    public void readPartialState(DataInputStream input) throws IOException {
+        lexicalTokens = input.readInt();
+        totalTokens = input.readInt();
+    }
+
     /**
      * Creates an output file detailing the file analyzed, the number of
      * lexical tokens in the file, the total number of tokens in the file and
@@ -87,9 +128,9 @@ public class LexicalDensityAnalyzer implements TokenAnalyzer {
 
         try (PrintWriter writer = new PrintWriter(new BufferedWriter(
                 new FileWriter(outputFilePath)))) {
-            File inputFile = new File(inputFilePath);
             DecimalFormat formatter = new DecimalFormat("###.00%");
-            writer.println("File: " + inputFile.getAbsolutePath());
+            writer.println("File: "
+                    + FileSummaryAnalyzer.describeInput(inputFilePath));
             writer.println("Lexical Tokens:  " + lexicalTokens);
             writer.println("Total Tokens:    " + totalTokens);
             writer.println("Lexical Density: "
@@ -106,14 +147,24 @@ public class LexicalDensityAnalyzer implements TokenAnalyzer {
     }
 
     /**
-     * Reads the text file of non-lexical words and adds each word to
-     * {@code nonLexicalWords}.
+     * Reads the UTF-8 text file of non-lexical words and adds each word to
+     * {@code nonLexicalWords}. When an up-to-date compiled dictionary is
+     * configured it is memory-mapped and used instead of parsing the text.
      */
     public void loadNonLexicalWords() {
         String fileName = properties.getProperty("non.lexical.words.file");
+        File sourceFile = new File(fileName);
+        CompiledDictionary dictionary = CompiledDictionary.open(
+                properties.getProperty("non.lexical.words.compiled"),
+                sourceFile.length(), sourceFile.lastModified());
+
+        if (dictionary != null) {
+            nonLexicalWords = dictionary;
+            return;
+        }
 
         try (BufferedReader reader = new BufferedReader(
-                new FileReader(fileName))) {
+                new FileReader(fileName, StandardCharsets.UTF_8))) {
             while (reader.ready()) {
                 nonLexicalWords.add(reader.readLine());
             }
@@ -131,6 +182,20 @@ public class LexicalDensityAnalyzer implements TokenAnalyzer {
         }
     }
 
+    /**
+     * Replaces the non-lexical words with their normalized forms, so that a
+     * stemmed token such as "wa" is still found to be the non-lexical "was".
+     *
+     * @param normalizer the normalizer with the run's settings
+     */
+    public void normalizeNonLexicalWords(TokenNormalizer normalizer) {
+        Set<String> normalizedWords = new HashSet<String>();
+        for (String word : nonLexicalWords) {
+            normalizedWords.add(normalizer.normalize(word).toLowerCase());
+        }
+        nonLexicalWords = normalizedWords;
+    }
+
     /**
      * Calculates the lexical density of the analyzed file.
      * 
@@ -0,0 +1,214 @@
+package java112.analyzer;
+
+/**
+ * A map from {@code long} keys to {@code int} counts held in two parallel
+ * arrays with open addressing and linear probing, so counting a key creates
+ * no objects. Zero is reserved to mark an empty slot and cannot be used as a
+ * key.
+ *
+ * @author Ryan Chua
+ */
+public class LongIntHashMap {
+
+    /** The fraction of slots which may be used before the arrays grow        */
+    private static final double MAX_LOAD = 0.5;
+
+    /** The smallest number of slots                                          */
+    private static final int MINIMUM_CAPACITY = 16;
+
+    /** The keys of each slot, or zero for an empty slot                      */
+    private long[] keys;
+
+    /** The value of each slot                                                */
+    private int[] values;
+
+    /** The number of keys in the map                                         */
+    private int size;
+
+    /** The number of keys at which the arrays grow                           */
+    private int resizeThreshold;
+
+    /** The number of bits of a hash used to pick a slot                      */
+    private int slotBits;
+
+    /**
+     * Creates a new, empty {@code LongIntHashMap}.
+     *
+     * @param expectedSize the number of keys expected, used to size the arrays
+     */
+    public LongIntHashMap(int expectedSize) {
+        int capacity = MINIMUM_CAPACITY;
+        while (capacity * MAX_LOAD < expectedSize) {
+            capacity *= 2;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * Replaces the arrays with empty ones of the given size.
+     *
+     * @param capacity the number of slots, a power of two
+     */
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        slotBits = Integer.numberOfTrailingZeros(capacity);
+        resizeThreshold = (int) (capacity * MAX_LOAD);
+        size = 0;
+    }
+
+    /**
+     * Picks the first slot to probe for a key using Fibonacci hashing, which
+     * spreads keys built from small packed numbers across the table.
+     *
+     * @param key the key
+     * @return the first slot to probe
+     */
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - slotBits));
+    }
+
+    /**
+     * Adds an amount to the value of a key, adding the key with that value if
+     * it is not in the map.
+     *
+     * @param key the key, which must not be zero
+     * @param amount the amount to add
+     * @return the new value of the key
+     */
+    public int add(long key, int amount) {
+        int mask = keys.length - 1;
+        int slot = slot(key);
+
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                values[slot] += amount;
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = amount;
+        size++;
+        if (size > resizeThreshold) {
+            rehash(keys.length * 2, 0);
+        }
+        return amount;
+    }
+
+    /**
+     * Gets the value of a key.
+     *
+     * @param key the key
+     * @return the value of the key, or 0 if it is not in the map
+     */
+    public int get(long key) {
+        int mask = keys.length - 1;
+        int slot = slot(key);
+
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    /**
+     * Adds the values of every key of another map to this one.
+     *
+     * @param other the map to add
+     */
+    public void addAll(LongIntHashMap other) {
+        other.forEach(this::add);
+    }
+
+    /**
+     * Removes every key whose value is below a minimum, shrinking the arrays
+     * when most of the keys are gone.
+     *
+     * @param minimumValue the smallest value to keep
+     * @return the number of keys removed
+     */
+    public int removeBelow(int minimumValue) {
+        int before = size;
+        int capacity = keys.length;
+        int kept = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != 0 && values[slot] >= minimumValue) {
+                kept++;
+            }
+        }
+        while (capacity > MINIMUM_CAPACITY && (capacity / 2) * MAX_LOAD
+                >= kept) {
+            capacity /= 2;
+        }
+
+        rehash(capacity, minimumValue);
+        return before - size;
+    }
+
+    /**
+     * Moves every key whose value is at least a minimum into new arrays.
+     *
+     * @param capacity the number of slots of the new arrays
+     * @param minimumValue the smallest value to keep
+     */
+    private void rehash(int capacity, int minimumValue) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != 0 && oldValues[slot] >= minimumValue) {
+                add(oldKeys[slot], oldValues[slot]);
+            }
+        }
+    }
+
+    /**
+     * Passes every key and its value to a consumer, in slot order.
+     *
+     * @param consumer the consumer of each entry
+     */
+    public void forEach(EntryConsumer consumer) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != 0) {
+                consumer.accept(keys[slot], values[slot]);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of keys in the map.
+     *
+     * @return the number of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the memory used by the arrays.
+     *
+     * @return the size of the arrays in bytes
+     */
+    public long getFootprint() {
+        return (long) keys.length * (Long.BYTES + Integer.BYTES);
+    }
+
+    /**
+     * Receives the entries of a {@code LongIntHashMap} without boxing.
+     */
+    public interface EntryConsumer {
+        /**
+         * Receives one entry.
+         *
+         * @param key the key
+         * @param value the value of the key
+         */
+        void accept(long key, int value);
+    }
+}
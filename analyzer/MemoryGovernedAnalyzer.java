@@ -0,0 +1,19 @@
+package java112.analyzer;
+
+/**
+ * Interface for analyzers which take part in the memory budget of a run.
+ * Analyzers which grow with the input report their footprint to the
+ * {@link MemoryGovernor} and degrade when it asks them to.
+ *
+ * @author Ryan Chua
+ */
+public interface MemoryGovernedAnalyzer extends TokenAnalyzer {
+    /**
+     * Gives the analyzer the governor of the run it belongs to. Called once,
+     * before any token is processed.
+     *
+     * @param governor the memory governor of the run
+     */
+    public abstract void setMemoryGovernor(MemoryGovernor governor);
+
+}
@@ -0,0 +1,204 @@
+package java112.analyzer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the analyzers of one run within the memory budget set by
+ * {@code memory.budget.mb} in the properties file.
+ *
+ * Each {@link MemoryGovernedAnalyzer} estimates its own footprint and reports
+ * it whenever it has grown by another report step. Once the reported total
+ * passes the high-water mark of the budget, the reporting analyzer is told to
+ * degrade: each analyzer has its own policy, such as spilling sorted runs to
+ * disk or no longer retaining positions. Every degradation is recorded so it
+ * can be listed in the summary report.
+ *
+ * Analyzers may report from their own threads. With no budget configured
+ * nothing is ever degraded.
+ *
+ * Spills are created through the governor, which deletes them all once the
+ * reports of the run have been written.
+ *
+ * @author Ryan Chua
+ */
+public class MemoryGovernor {
+
+    /** The fraction of the budget at which analyzers start to degrade        */
+    private static final double HIGH_WATER = 0.9;
+
+    /** The smallest growth between two reports from one analyzer             */
+    private static final long MINIMUM_REPORT_STEP = 64 * 1024;
+
+    /** The estimated size of a hash table entry holding a token, less chars  */
+    private static final long TOKEN_ENTRY_BYTES = 96;
+
+    /** The memory budget in bytes, or 0 for no budget                        */
+    private long budget;
+
+    /** The growth in bytes between two reports from one analyzer             */
+    private long reportStep;
+
+    /** The directory spilled runs are written to                             */
+    private File spillDirectory;
+
+    /** The last footprint reported by each analyzer                          */
+    private Map<MemoryGovernedAnalyzer, Long> footprints;
+
+    /** The sum of the last footprints reported by each analyzer              */
+    private AtomicLong totalFootprint;
+
+    /** What each degraded analyzer gave up, keyed by analyzer name           */
+    private Map<String, String> degradations;
+
+    /** The spills created for the analyzers of the run                       */
+    private List<TokenSpill> spills;
+
+    /**
+     * Creates a new {@code MemoryGovernor}. Reads the budget from
+     * {@code memory.budget.mb} and the spill directory from
+     * {@code memory.spill.directory} in the properties file.
+     *
+     * @param properties the properties object to read from
+     */
+    public MemoryGovernor(Properties properties) {
+        budget = Long.parseLong(properties.getProperty("memory.budget.mb",
+                "0")) * 1024 * 1024;
+        reportStep = Math.max(MINIMUM_REPORT_STEP, budget / 64);
+        spillDirectory = new File(properties.getProperty(
+                "memory.spill.directory",
+                System.getProperty("java.io.tmpdir")));
+        footprints = new ConcurrentHashMap<MemoryGovernedAnalyzer, Long>();
+        totalFootprint = new AtomicLong();
+        degradations = new LinkedHashMap<String, String>();
+        spills = new ArrayList<TokenSpill>();
+    }
+
+    /**
+     * Estimates the heap used by one token held in a hash table: the table
+     * entry, the {@code String} and its chars.
+     *
+     * @param token the token held
+     * @return the estimated size in bytes
+     */
+    public static long estimateTokenBytes(String token) {
+        return TOKEN_ENTRY_BYTES + 2L * token.length();
+    }
+
+    /**
+     * Records the current footprint of an analyzer.
+     *
+     * @param analyzer the reporting analyzer
+     * @param footprint the estimated size of the analyzer in bytes
+     * @return true if the budget is nearly used and the analyzer should
+     *         degrade, else false
+     */
+    public boolean report(MemoryGovernedAnalyzer analyzer, long footprint) {
+        Long previous = footprints.put(analyzer, footprint);
+        long total = totalFootprint.addAndGet(footprint
+                - ((previous == null) ? 0 : previous));
+        return budget > 0 && total > budget * HIGH_WATER;
+    }
+
+    /**
+     * Forgets the footprint of an analyzer which is no longer used, for
+     * example one which has been merged into another.
+     *
+     * @param analyzer the analyzer to forget
+     */
+    public void release(MemoryGovernedAnalyzer analyzer) {
+        Long previous = footprints.remove(analyzer);
+        if (previous != null) {
+            totalFootprint.addAndGet(-previous);
+        }
+    }
+
+    /**
+     * Records that an analyzer has degraded. A later record for the same
+     * analyzer replaces the earlier one.
+     *
+     * @param name the name of the analyzer shown in the summary report
+     * @param description what the analyzer gave up
+     */
+    public synchronized void recordDegradation(String name,
+            String description) {
+        degradations.put(name, description);
+    }
+
+    /**
+     * Creates a spill in the spill directory for an analyzer of the run.
+     *
+     * @return the new spill with no runs
+     */
+    public synchronized TokenSpill createSpill() {
+        TokenSpill spill = new TokenSpill(spillDirectory);
+        spills.add(spill);
+        return spill;
+    }
+
+    /**
+     * Deletes the runs of every spill created for the run. Called once the
+     * final reports have been written, so a process which analyzes many
+     * inputs does not keep their runs until it exits.
+     */
+    public synchronized void deleteSpills() {
+        for (TokenSpill spill : spills) {
+            spill.close();
+        }
+        spills.clear();
+    }
+
+    // Getters and Setters
+
+    /**
+     * Gets what each degraded analyzer gave up, in the order the analyzers
+     * first degraded.
+     *
+     * @return a copy of the degradations keyed by analyzer name
+     */
+    public synchronized Map<String, String> getDegradations() {
+        return new LinkedHashMap<String, String>(degradations);
+    }
+
+    /**
+     * Gets the memory budget.
+     *
+     * @return the budget in bytes, or 0 for no budget
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Gets how much an analyzer should grow between two reports.
+     *
+     * @return the report step in bytes
+     */
+    public long getReportStep() {
+        return reportStep;
+    }
+
+    /**
+     * Gets the directory spilled runs are written to.
+     *
+     * @return the spill directory
+     */
+    public File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * Gets the sum of the footprints last reported by each analyzer.
+     *
+     * @return the total footprint in bytes
+     */
+    public long getTotalFootprint() {
+        return totalFootprint.get();
+    }
+}
@@ -0,0 +1,20 @@
+package java112.analyzer;
+
+/**
+ * Interface for analyzers whose results can be combined. Two analyzers of the
+ * same class which processed consecutive parts of a token stream can be
+ * merged into the result of processing the whole stream.
+ *
+ * @author Ryan Chua
+ */
+public interface MergeableAnalyzer extends TokenAnalyzer {
+    /**
+     * Adds the results of another analyzer of the same class to this one. The
+     * other analyzer must have processed the tokens which directly follow the
+     * tokens processed by this analyzer. The other analyzer is not changed.
+     *
+     * @param other the analyzer to merge into this one
+     */
+    public abstract void merge(TokenAnalyzer other);
+
+}
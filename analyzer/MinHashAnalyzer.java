@@ -0,0 +1,289 @@
+package java112.analyzer;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.SplittableRandom;
+
+/**
+ * Computes a MinHash signature of the file: for each of
+ * {@code minhash.permutations} hash functions, the smallest hash of any
+ * shingle (run of {@code minhash.shingle.size} consecutive tokens). The
+ * fraction of positions at which two signatures agree estimates the Jaccard
+ * similarity of the two files' shingle sets, so near-duplicate documents can
+ * be found without comparing their text.
+ *
+ * The signature is computed in one pass and the memory used does not depend
+ * on the length of the file: only the signature and the hashes of the last
+ * few tokens are kept. The hash functions come from a fixed seed, so
+ * signatures from different runs can be compared.
+ *
+ * @author Ryan Chua
+ */
+public class MinHashAnalyzer implements MergeableAnalyzer {
+
+    /** The seed of the hash functions, fixed so signatures are comparable    */
+    private static final long HASH_SEED = 0x4D696E48617368L;
+
+    /** The multiplier used to combine token hashes into a shingle hash       */
+    private static final long SHINGLE_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /** The properties object to read from                                    */
+    private Properties properties;
+
+    /** The number of tokens in each shingle                                  */
+    private int shingleSize;
+
+    /** The odd multiplier of each hash function                              */
+    private long[] multipliers;
+
+    /** The increment of each hash function                                   */
+    private long[] increments;
+
+    /** The smallest hash of any shingle under each hash function             */
+    private long[] signature;
+
+    /** The hashes of the most recent tokens, oldest first                    */
+    private long[] recentHashes;
+
+    /** The number of hashes in {@code recentHashes}                          */
+    private int recentCount;
+
+    /** The hashes of the first tokens, up to one shingle less one token      */
+    private long[] firstHashes;
+
+    /** The number of tokens processed                                        */
+    private long tokenCount;
+
+    /** The number of shingles hashed                                         */
+    private long shingleCount;
+
+    /**
+     * Creates a new {@code MinHashAnalyzer} with 128 hash functions and
+     * shingles of three tokens.
+     */
+    public MinHashAnalyzer() {
+        setUp(128, 3);
+    }
+
+    /**
+     * Creates a new {@code MinHashAnalyzer}. Assigns a properties object to
+     * the instance variable. Reads the number of hash functions from
+     * {@code minhash.permutations} and the shingle size from
+     * {@code minhash.shingle.size}.
+     *
+     * @param properties the properties object to read from
+     */
+    public MinHashAnalyzer(Properties properties) {
+        this.properties = properties;
+        setUp(Integer.parseInt(properties.getProperty("minhash.permutations",
+                "128")), Integer.parseInt(properties.getProperty(
+                "minhash.shingle.size", "3")));
+    }
+
+    /**
+     * Creates the hash functions and an empty signature.
+     *
+     * @param permutations the number of hash functions
+     * @param shingleSize the number of tokens in each shingle
+     */
+    private void setUp(int permutations, int shingleSize) {
+        this.shingleSize = Math.max(1, shingleSize);
+        multipliers = new long[permutations];
+        increments = new long[permutations];
+        SplittableRandom random = new SplittableRandom(HASH_SEED);
+        for (int i = 0; i < permutations; i++) {
+            multipliers[i] = random.nextLong() | 1;
+            increments[i] = random.nextLong();
+        }
+
+        signature = new long[permutations];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        recentHashes = new long[this.shingleSize - 1];
+        firstHashes = new long[this.shingleSize - 1];
+    }
+
+    /**
+     * Hashes the shingle ending with the token.
+     *
+     * @param token the token to process
+     */
+    public void processToken(String token) {
+        long tokenHash = mix(token.hashCode());
+        if (tokenCount < firstHashes.length) {
+            firstHashes[(int) tokenCount] = tokenHash;
+        }
+        tokenCount++;
+        addTokenHash(tokenHash);
+    }
+
+    /**
+     * Hashes the shingle ending with a token, once enough tokens have been
+     * seen, and moves the window of recent tokens along.
+     *
+     * @param tokenHash the hash of the token
+     */
+    private void addTokenHash(long tokenHash) {
+        if (recentCount == recentHashes.length) {
+            long shingleHash = 0;
+            for (int i = 0; i < recentCount; i++) {
+                shingleHash = shingleHash * SHINGLE_MULTIPLIER
+                        + recentHashes[i];
+            }
+            addShingle(mix(shingleHash * SHINGLE_MULTIPLIER + tokenHash));
+
+            if (recentCount > 0) {
+                System.arraycopy(recentHashes, 1, recentHashes, 0,
+                        recentCount - 1);
+                recentHashes[recentCount - 1] = tokenHash;
+            }
+        } else {
+            recentHashes[recentCount++] = tokenHash;
+        }
+    }
+
+    /**
+     * Lowers each position of the signature to the shingle's hash under that
+     * position's hash function where it is smaller.
+     *
+     * @param shingleHash the hash of the shingle
+     */
+    private void addShingle(long shingleHash) {
+        for (int i = 0; i < signature.length; i++) {
+            long hash = multipliers[i] * shingleHash + increments[i];
+            if (hash < signature[i]) {
+                signature[i] = hash;
+            }
+        }
+        shingleCount++;
+    }
+
+    /**
+     * Spreads the bits of a hash over all 64 bits with the MurmurHash3
+     * finalizer.
+     *
+     * @param hash the hash to mix
+     * @return the mixed hash
+     */
+    static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Adds the shingles of another {@code MinHashAnalyzer} with the same
+     * settings. The shingles which span the end of this analyzer's tokens and
+     * the start of the other's are hashed by replaying the other's first
+     * tokens.
+     *
+     * @param other the analyzer to merge into this one
+     */
+    public void merge(TokenAnalyzer other) {
+        MinHashAnalyzer otherAnalyzer = (MinHashAnalyzer) other;
+        int otherFirstCount = (int) Math.min(otherAnalyzer.tokenCount,
+                firstHashes.length);
+
+        for (int i = 0; i < otherFirstCount && tokenCount + i
+                < firstHashes.length; i++) {
+            firstHashes[(int) tokenCount + i] = otherAnalyzer.firstHashes[i];
+        }
+        for (int i = 0; i < otherFirstCount; i++) {
+            addTokenHash(otherAnalyzer.firstHashes[i]);
+        }
+
+        for (int i = 0; i < signature.length; i++) {
+            signature[i] = Math.min(signature[i], otherAnalyzer.signature[i]);
+        }
+        shingleCount += otherAnalyzer.shingleCount;
+        if (otherAnalyzer.tokenCount >= recentHashes.length) {
+            System.arraycopy(otherAnalyzer.recentHashes, 0, recentHashes, 0,
+                    recentHashes.length);
+            recentCount = recentHashes.length;
+        }
+        tokenCount += otherAnalyzer.tokenCount;
+    }
+
+    /**
+     * Estimates the Jaccard similarity of the shingle sets behind two
+     * signatures made with the same settings.
+     *
+     * @param first one signature
+     * @param second the other signature
+     * @return the fraction of positions at which the signatures agree
+     */
+    public static double estimateSimilarity(long[] first, long[] second) {
+        int matches = 0;
+        for (int i = 0; i < first.length; i++) {
+            if (first[i] == second[i]) {
+                matches++;
+            }
+        }
+        return (double) matches / first.length;
+    }
+
+    /**
+     * Creates an output file with the settings, the number of shingles and
+     * the signature as hexadecimal values, eight to a line.
+     *
+     * @param inputFilePath the filepath of the analyzed file
+     */
+    public void generateOutputFile(String inputFilePath) {
+        String outputFilePath = properties.getProperty("output.directory")
+                + properties.getProperty("output.file.minhash");
+
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(
+                new FileWriter(outputFilePath)))) {
+            writer.println("Permutations: " + signature.length);
+            writer.println("Shingle size: " + shingleSize);
+            writer.println("Shingles: " + shingleCount);
+            if (shingleCount == 0) {
+                return;
+            }
+
+            for (int i = 0; i < signature.length; i++) {
+                writer.print(String.format("%016x", signature[i]));
+                if (i % 8 == 7 || i == signature.length - 1) {
+                    writer.println();
+                } else {
+                    writer.print(' ');
+                }
+            }
+        } catch (IOException iOException) {
+            System.out.println("There was a problem writing "
+                    + properties.getProperty("output.file.minhash"));
+            iOException.printStackTrace();
+        } catch (Exception exception) {
+            System.out.println("There was a problem writing "
+                    + properties.getProperty("output.file.minhash"));
+            exception.printStackTrace();
+        }
+    }
+
+    // Getters and Setters
+
+    /**
+     * Gets the signature of the file.
+     *
+     * @return the signature, or null if the file had too few tokens for a
+     *         single shingle
+     */
+    public long[] getSignature() {
+        return (shingleCount == 0) ? null : signature.clone();
+    }
+
+    /**
+     * Gets the number of shingles hashed.
+     *
+     * @return the number of shingles
+     */
+    public long getShingleCount() {
+        return shingleCount;
+    }
+}
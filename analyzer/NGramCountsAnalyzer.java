@@ -0,0 +1,478 @@
+package java112.analyzer;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Properties;
+
+/**
+ * Counts the bigrams and trigrams (runs of two and three consecutive tokens)
+ * in the file and writes the most frequent of each to a text file.
+ *
+ * Each token is given an ID from a {@link TokenDictionary} for the run. A
+ * bigram is packed into a {@code long} as two 32-bit IDs. The first two
+ * tokens of a trigram are given a prefix ID of their own, and the trigram is
+ * packed as its prefix ID and the ID of its third token, so every trigram
+ * fits in a {@code long} however large the vocabulary is. The packed keys
+ * are counted in a {@link LongIntHashMap}, so counting an n-gram creates no
+ * objects.
+ *
+ * @author Ryan Chua
+ */
+public class NGramCountsAnalyzer implements MergeableAnalyzer,
+        MemoryGovernedAnalyzer {
+
+    /** The mask of the low 32 bits of a packed bigram                        */
+    private static final long BIGRAM_ID_MASK = 0xFFFFFFFFL;
+
+    /** The number of n-grams expected, used to size the tables               */
+    private static final int EXPECTED_NGRAMS = 1 << 16;
+
+    /** The properties object to read from                                    */
+    private Properties properties;
+
+    /** The IDs of the tokens in the file                                     */
+    private TokenDictionary dictionary;
+
+    /** The count of each packed bigram, or null if bigrams are not counted   */
+    private LongIntHashMap bigramCounts;
+
+    /** The count of each packed trigram, or null if trigrams are not counted */
+    private LongIntHashMap trigramCounts;
+
+    /** The prefix ID of the first two tokens of each trigram, by bigram key  */
+    private LongIntHashMap prefixIds;
+
+    /** The packed bigram of each prefix ID, from ID 1                        */
+    private long[] prefixes;
+
+    /** The number of prefix IDs given out                                    */
+    private int prefixCount;
+
+    /** The smallest count of an n-gram included in the report                */
+    private int minimumCount;
+
+    /** The largest number of n-grams of each size in the report              */
+    private int topCount;
+
+    /** The number of tokens processed                                        */
+    private long tokenCount;
+
+    /** The ID of the first token, or 0 before any token                      */
+    private int firstId;
+
+    /** The ID of the second token, or 0 before the second token              */
+    private int secondId;
+
+    /** The ID of the most recent token, or 0 before any token                */
+    private int previousId;
+
+    /** The ID of the token before the most recent one, or 0                  */
+    private int secondPreviousId;
+
+    /** The memory governor of the run, or null if there is none              */
+    private MemoryGovernor governor;
+
+    /** The footprint at which to report to the governor next                 */
+    private long nextReport;
+
+    /** True once n-grams seen only once have been pruned to save memory      */
+    private boolean pruned;
+
+    /**
+     * Creates a new {@code NGramCountsAnalyzer} counting bigrams and
+     * trigrams.
+     */
+    public NGramCountsAnalyzer() {
+        dictionary = new TokenDictionary();
+        bigramCounts = new LongIntHashMap(EXPECTED_NGRAMS);
+        trigramCounts = new LongIntHashMap(EXPECTED_NGRAMS);
+        prefixIds = new LongIntHashMap(EXPECTED_NGRAMS);
+        prefixes = new long[1024];
+        minimumCount = 1;
+        topCount = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Creates a new {@code NGramCountsAnalyzer}. Assigns a properties object
+     * to the instance variable. Reads the n-gram sizes to count from
+     * {@code ngram.sizes}, the minimum count from {@code ngram.minimum.count}
+     * and the number of n-grams to report from {@code ngram.top.count}.
+     *
+     * @param properties the properties object to read from
+     */
+    public NGramCountsAnalyzer(Properties properties) {
+        this();
+        this.properties = properties;
+
+        String sizes = "," + properties.getProperty("ngram.sizes", "2,3")
+                .replace(" ", "") + ",";
+        if (!sizes.contains(",2,")) {
+            bigramCounts = null;
+        }
+        if (!sizes.contains(",3,")) {
+            trigramCounts = null;
+            prefixIds = null;
+            prefixes = null;
+        }
+        minimumCount = Integer.parseInt(properties.getProperty(
+                "ngram.minimum.count", "1"));
+        topCount = Integer.parseInt(properties.getProperty("ngram.top.count",
+                "100"));
+    }
+
+    /**
+     * Gives the analyzer the memory governor of the run. When the governor
+     * reports that the budget is nearly used, n-grams seen only once are
+     * pruned, so the reported counts become lower bounds.
+     *
+     * @param governor the memory governor of the run
+     */
+    public void setMemoryGovernor(MemoryGovernor governor) {
+        this.governor = governor;
+        nextReport = governor.getReportStep();
+    }
+
+    /**
+     * Counts the bigram and trigram ending with the token.
+     *
+     * @param token the token to process
+     */
+    public void processToken(String token) {
+        int id = dictionary.idOf(token);
+
+        if (tokenCount == 0) {
+            firstId = id;
+        } else if (tokenCount == 1) {
+            secondId = id;
+        }
+        tokenCount++;
+
+        countNGrams(secondPreviousId, previousId, id);
+        secondPreviousId = previousId;
+        previousId = id;
+
+        if (governor != null && (tokenCount & 0x3FF) == 0) {
+            long footprint = getFootprint();
+            if (footprint >= nextReport) {
+                checkMemory(footprint);
+            }
+        }
+    }
+
+    /**
+     * Counts the bigram of the last two IDs and the trigram of all three.
+     * IDs of 0 stand for tokens before the start of the file.
+     *
+     * @param first the ID two tokens back, or 0
+     * @param second the ID one token back, or 0
+     * @param third the ID of the current token
+     */
+    private void countNGrams(int first, int second, int third) {
+        if (second == 0) {
+            return;
+        }
+        if (bigramCounts != null) {
+            bigramCounts.add(packBigram(second, third), 1);
+        }
+        if (first != 0) {
+            countTrigram(first, second, third, 1);
+        }
+    }
+
+    /**
+     * Adds to the count of a trigram.
+     *
+     * @param first the ID of the first token
+     * @param second the ID of the second token
+     * @param third the ID of the third token
+     * @param count the amount to add
+     */
+    private void countTrigram(int first, int second, int third, int count) {
+        if (trigramCounts == null) {
+            return;
+        }
+        trigramCounts.add(packTrigram(first, second, third), count);
+    }
+
+    /**
+     * Packs two token IDs into a bigram key.
+     *
+     * @param first the ID of the first token
+     * @param second the ID of the second token
+     * @return the packed key
+     */
+    static long packBigram(int first, int second) {
+        return ((long) first << 32) | second;
+    }
+
+    /**
+     * Packs three token IDs into a trigram key: the prefix ID of the first
+     * two, which is given out the first time they start a trigram, and the
+     * ID of the third.
+     *
+     * @param first the ID of the first token
+     * @param second the ID of the second token
+     * @param third the ID of the third token
+     * @return the packed key
+     */
+    private long packTrigram(int first, int second, int third) {
+        long prefix = packBigram(first, second);
+        int prefixId = prefixIds.get(prefix);
+        if (prefixId == 0) {
+            prefixId = ++prefixCount;
+            if (prefixId == prefixes.length) {
+                prefixes = Arrays.copyOf(prefixes, prefixes.length * 2);
+            }
+            prefixes[prefixId] = prefix;
+            prefixIds.add(prefix, prefixId);
+        }
+        return packBigram(prefixId, third);
+    }
+
+    /**
+     * Gets the token IDs packed into a key.
+     *
+     * @param key the packed key
+     * @param size 2 for a bigram key or 3 for a trigram key
+     * @return the IDs in order
+     */
+    private int[] unpack(long key, int size) {
+        int last = (int) (key & BIGRAM_ID_MASK);
+        if (size == 2) {
+            return new int[] {(int) (key >>> 32), last};
+        }
+        long prefix = prefixes[(int) (key >>> 32)];
+        return new int[] {(int) (prefix >>> 32),
+                (int) (prefix & BIGRAM_ID_MASK), last};
+    }
+
+    /**
+     * Estimates the memory used by the tables and the dictionary.
+     *
+     * @return the estimated size in bytes
+     */
+    private long getFootprint() {
+        long footprint = 64L * dictionary.size();
+        if (bigramCounts != null) {
+            footprint += bigramCounts.getFootprint();
+        }
+        if (trigramCounts != null) {
+            footprint += trigramCounts.getFootprint()
+                    + prefixIds.getFootprint() + 8L * prefixes.length;
+        }
+        return footprint;
+    }
+
+    /**
+     * Reports the footprint to the governor and prunes the n-grams seen only
+     * once if the budget is nearly used.
+     *
+     * @param footprint the estimated size of the analyzer in bytes
+     */
+    private void checkMemory(long footprint) {
+        nextReport = footprint + governor.getReportStep();
+        if (!governor.report(this, footprint)) {
+            return;
+        }
+
+        if (bigramCounts != null) {
+            bigramCounts.removeBelow(2);
+        }
+        if (trigramCounts != null) {
+            trigramCounts.removeBelow(2);
+        }
+        pruned = true;
+        footprint = getFootprint();
+        nextReport = footprint + governor.getReportStep();
+        governor.report(this, footprint);
+        governor.recordDegradation("ngrams", "pruned n-grams seen once after "
+                + "token " + tokenCount + ", counts are lower bounds");
+    }
+
+    /**
+     * Adds the n-gram counts of another {@code NGramCountsAnalyzer}. The
+     * other analyzer's token IDs are translated into this one's, and the
+     * n-grams which span the end of this analyzer's tokens and the start of
+     * the other's are counted.
+     *
+     * @param other the analyzer to merge into this one
+     */
+    public void merge(TokenAnalyzer other) {
+        NGramCountsAnalyzer otherAnalyzer = (NGramCountsAnalyzer) other;
+        if (otherAnalyzer.tokenCount == 0) {
+            return;
+        }
+
+        int[] translated = dictionary.translate(otherAnalyzer.dictionary);
+        int otherFirst = translated[otherAnalyzer.firstId];
+        int otherSecond = translated[otherAnalyzer.secondId];
+
+        countNGrams(secondPreviousId, previousId, otherFirst);
+        if (previousId != 0 && otherSecond != 0) {
+            countTrigram(previousId, otherFirst, otherSecond, 1);
+        }
+
+        if (bigramCounts != null) {
+            otherAnalyzer.bigramCounts.forEach((key, count) -> {
+                int[] ids = otherAnalyzer.unpack(key, 2);
+                bigramCounts.add(packBigram(translated[ids[0]],
+                        translated[ids[1]]), count);
+            });
+        }
+        if (trigramCounts != null) {
+            otherAnalyzer.trigramCounts.forEach((key, count) -> {
+                int[] ids = otherAnalyzer.unpack(key, 3);
+                countTrigram(translated[ids[0]], translated[ids[1]],
+                        translated[ids[2]], count);
+            });
+        }
+        pruned |= otherAnalyzer.pruned;
+
+        if (tokenCount == 0) {
+            firstId = otherFirst;
+            secondId = otherSecond;
+        } else if (tokenCount == 1) {
+            secondId = otherFirst;
+        }
+        if (otherAnalyzer.tokenCount == 1) {
+            secondPreviousId = previousId;
+            previousId = otherFirst;
+        } else {
+            secondPreviousId = translated[otherAnalyzer.secondPreviousId];
+            previousId = translated[otherAnalyzer.previousId];
+        }
+        tokenCount += otherAnalyzer.tokenCount;
+
+        if (governor != null) {
+            governor.release(otherAnalyzer);
+            long footprint = getFootprint();
+            if (footprint >= nextReport) {
+                checkMemory(footprint);
+            }
+        }
+    }
+
+    /**
+     * Creates an output file with the most frequent bigrams and trigrams.
+     * Each section starts with the number of distinct and total n-grams,
+     * followed by up to {@code ngram.top.count} n-grams counted at least
+     * {@code ngram.minimum.count} times. Each n-gram and its count are
+     * separated by a tab, most frequent first and alphabetically within a
+     * count.
+     *
+     * @param inputFilePath the filepath of the analyzed file
+     */
+    public void generateOutputFile(String inputFilePath) {
+        String outputFilePath = properties.getProperty("output.directory")
+                + properties.getProperty("output.file.ngrams");
+
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(
+                new FileWriter(outputFilePath)))) {
+            if (bigramCounts != null) {
+                writeNGrams(writer, "Bigrams", bigramCounts, 2);
+            }
+            if (trigramCounts != null) {
+                if (bigramCounts != null) {
+                    writer.println();
+                }
+                writeNGrams(writer, "Trigrams", trigramCounts, 3);
+            }
+            if (pruned) {
+                writer.println();
+                writer.println("N-grams seen once were pruned to save "
+                        + "memory, so counts are lower bounds");
+            }
+        } catch (IOException iOException) {
+            System.out.println("There was a problem writing "
+                    + properties.getProperty("output.file.ngrams"));
+            iOException.printStackTrace();
+        } catch (Exception exception) {
+            System.out.println("There was a problem writing "
+                    + properties.getProperty("output.file.ngrams"));
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes one section of the report. The n-grams are ranked by sorting
+     * their counts as primitives; only the n-grams tied at the cut-off are
+     * compared by text.
+     *
+     * @param writer the report to write to
+     * @param heading the name of the section
+     * @param counts the count of each packed n-gram
+     * @param size the number of tokens in each n-gram
+     */
+    private void writeNGrams(PrintWriter writer, String heading,
+            LongIntHashMap counts, int size) {
+        long[] keys = new long[counts.size()];
+        int[] values = new int[counts.size()];
+        long[] total = new long[1];
+        int[] kept = new int[1];
+
+        counts.forEach((key, count) -> {
+            total[0] += count;
+            if (count >= minimumCount) {
+                keys[kept[0]] = key;
+                values[kept[0]] = count;
+                kept[0]++;
+            }
+        });
+        writer.println(heading + ": " + counts.size() + " distinct, "
+                + total[0] + " total");
+
+        // Highest counts first: the count is inverted in the high bits
+        long[] ranks = new long[kept[0]];
+        for (int i = 0; i < ranks.length; i++) {
+            ranks[i] = ((long) (Integer.MAX_VALUE - values[i]) << 32) | i;
+        }
+        Arrays.sort(ranks);
+
+        int end = Math.min(topCount, ranks.length);
+        if (end == 0) {
+            return;
+        }
+        int cutOffCount = values[(int) ranks[end - 1]];
+        int tiedEnd = end;
+        while (tiedEnd < ranks.length
+                && values[(int) ranks[tiedEnd]] == cutOffCount) {
+            tiedEnd++;
+        }
+
+        String[] texts = new String[tiedEnd];
+        Integer[] order = new Integer[tiedEnd];
+        for (int i = 0; i < tiedEnd; i++) {
+            int index = (int) ranks[i];
+            texts[i] = toText(keys[index], size);
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingInt(
+                i -> -values[(int) ranks[i]]).thenComparing(i -> texts[i]));
+
+        for (int i = 0; i < end; i++) {
+            writer.println(texts[order[i]] + "\t"
+                    + values[(int) ranks[order[i]]]);
+        }
+    }
+
+    /**
+     * Builds the text of a packed n-gram, with its tokens separated by
+     * spaces.
+     *
+     * @param key the packed n-gram
+     * @param size the number of tokens in the n-gram
+     * @return the text of the n-gram
+     */
+    private String toText(long key, int size) {
+        int[] ids = unpack(key, size);
+        StringBuilder text = new StringBuilder(dictionary.tokenOf(ids[0]));
+        for (int i = 1; i < ids.length; i++) {
+            text.append(' ').append(dictionary.tokenOf(ids[i]));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,185 @@
+package java112.analyzer;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Groups near-duplicate documents of a batch run by their MinHash
+ * signatures using locality-sensitive hashing. Each signature is cut into
+ * {@code minhash.bands} bands and each band is hashed into a bucket;
+ * documents sharing a bucket in any band are candidates, and candidates
+ * whose estimated similarity reaches {@code minhash.similarity.threshold}
+ * are placed in the same group. Only documents sharing a bucket are ever
+ * compared.
+ *
+ * @author Ryan Chua
+ */
+public class NearDuplicateIndex {
+
+    /** The properties object to read from                                    */
+    private Properties properties;
+
+    /** The number of bands each signature is cut into                        */
+    private int bands;
+
+    /** The smallest estimated similarity of two documents in a group         */
+    private double threshold;
+
+    /** The name of each document added                                       */
+    private List<String> names;
+
+    /** The signature of each document added                                  */
+    private List<long[]> signatures;
+
+    /** The documents in each bucket, keyed by band and band hash             */
+    private Map<Long, List<Integer>> buckets;
+
+    /** The parent of each document in the union-find forest of groups        */
+    private List<Integer> parents;
+
+    /**
+     * Creates a new, empty {@code NearDuplicateIndex}. Reads the number of
+     * bands from {@code minhash.bands} and the threshold from
+     * {@code minhash.similarity.threshold}.
+     *
+     * @param properties the properties object to read from
+     */
+    public NearDuplicateIndex(Properties properties) {
+        this.properties = properties;
+        bands = Integer.parseInt(properties.getProperty("minhash.bands",
+                "32"));
+        threshold = Double.parseDouble(properties.getProperty(
+                "minhash.similarity.threshold", "0.8"));
+        names = new ArrayList<String>();
+        signatures = new ArrayList<long[]>();
+        buckets = new HashMap<Long, List<Integer>>();
+        parents = new ArrayList<Integer>();
+    }
+
+    /**
+     * Adds a document, grouping it with every earlier document it shares a
+     * bucket with and is similar enough to.
+     *
+     * @param name the name of the document
+     * @param signature the MinHash signature of the document
+     */
+    public void add(String name, long[] signature) {
+        int document = names.size();
+        names.add(name);
+        signatures.add(signature);
+        parents.add(document);
+
+        int rows = Math.max(1, signature.length / bands);
+        for (int band = 0; band * rows + rows <= signature.length; band++) {
+            long bandHash = band;
+            for (int row = band * rows; row < band * rows + rows; row++) {
+                bandHash = MinHashAnalyzer.mix(bandHash * 31 + signature[row]);
+            }
+
+            List<Integer> bucket = buckets.computeIfAbsent(bandHash,
+                    key -> new ArrayList<Integer>());
+            for (int candidate : bucket) {
+                if (find(candidate) != find(document)
+                        && MinHashAnalyzer.estimateSimilarity(signature,
+                        signatures.get(candidate)) >= threshold) {
+                    parents.set(find(candidate), find(document));
+                }
+            }
+            bucket.add(document);
+        }
+    }
+
+    /**
+     * Finds the document at the root of a document's group.
+     *
+     * @param document the index of the document
+     * @return the index of the root document
+     */
+    private int find(int document) {
+        while (parents.get(document) != document) {
+            parents.set(document, parents.get(parents.get(document)));
+            document = parents.get(document);
+        }
+        return document;
+    }
+
+    /**
+     * Gets the groups of more than one document, each in the order the
+     * documents were added.
+     *
+     * @return the indexes of the documents in each group
+     */
+    public List<List<Integer>> getGroups() {
+        Map<Integer, List<Integer>> groups =
+                new HashMap<Integer, List<Integer>>();
+        List<List<Integer>> ordered = new ArrayList<List<Integer>>();
+
+        for (int document = 0; document < names.size(); document++) {
+            List<Integer> group = groups.get(find(document));
+            if (group == null) {
+                group = new ArrayList<Integer>();
+                groups.put(find(document), group);
+                ordered.add(group);
+            }
+            group.add(document);
+        }
+        ordered.removeIf(group -> group.size() < 2);
+        return ordered;
+    }
+
+    /**
+     * Writes the near-duplicate groups. Each document after the first in a
+     * group is followed by its estimated similarity to the first.
+     *
+     * @param outputFilePath the path of the report
+     */
+    public void writeReport(String outputFilePath) {
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(
+                new FileWriter(outputFilePath)))) {
+            DecimalFormat formatter = new DecimalFormat("0.00");
+            List<List<Integer>> groups = getGroups();
+            writer.println("Near-duplicate groups: " + groups.size() + " in "
+                    + names.size() + " documents, similarity at least "
+                    + formatter.format(threshold));
+
+            for (int i = 0; i < groups.size(); i++) {
+                List<Integer> group = groups.get(i);
+                long[] first = signatures.get(group.get(0));
+                writer.println();
+                writer.println("Group " + (i + 1));
+                writer.println(names.get(group.get(0)));
+                for (int document : group.subList(1, group.size())) {
+                    writer.println(names.get(document) + "\t"
+                            + formatter.format(MinHashAnalyzer
+                            .estimateSimilarity(first,
+                            signatures.get(document))));
+                }
+            }
+        } catch (IOException iOException) {
+            System.out.println("There was a problem writing "
+                    + outputFilePath);
+            iOException.printStackTrace();
+        } catch (Exception exception) {
+            System.out.println("There was a problem writing "
+                    + outputFilePath);
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Gets the number of documents added.
+     *
+     * @return the number of documents
+     */
+    public int size() {
+        return names.size();
+    }
+}
@@ -0,0 +1,753 @@
+package java112.analyzer;
+
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A set of tokens, each with a count, stored outside the Java heap. Token
+ * text is appended to large direct buffers (arenas) and found through an
+ * open-addressing hash table that is also held in a direct buffer, so the
+ * garbage collector sees a handful of buffer objects however many distinct
+ * tokens there are.
+ *
+ * Each entry is stored as the {@code String.hashCode} of the token, its
+ * count, its length in chars and the chars themselves. Tokens with only
+ * Latin-1 chars use one byte per char; other tokens use two. The high bit of
+ * the stored length marks a two-byte token.
+ *
+ * An entry is identified by its address: the arena number in the high 32
+ * bits and the offset within the arena in the low 32 bits. The hash table
+ * stores each address plus one, so zero marks an empty slot.
+ *
+ * Tokens are written to reports and merged from another vocabulary directly
+ * from the arenas without creating {@code String} objects.
+ *
+ * @author Ryan Chua
+ */
+public class OffHeapVocabulary extends AbstractSet<String> {
+
+    /** The size of each arena in bytes                                       */
+    private static final int ARENA_SIZE = 8 * 1024 * 1024;
+
+    /** The size of an entry before its chars: hash, count and length         */
+    private static final int ENTRY_HEADER_SIZE = 3 * Integer.BYTES;
+
+    /** Marks a stored length as a token of two-byte chars                    */
+    private static final int WIDE_FLAG = 0x80000000;
+
+    /** The initial number of hash table slots                                */
+    private static final int INITIAL_TABLE_SIZE = 1024;
+
+    /** The most hash table slots whose byte offsets fit in an int            */
+    private static final int MAX_TABLE_SIZE = Integer.highestOneBit(
+            Integer.MAX_VALUE / Long.BYTES);
+
+    /** The most distinct tokens the table holds while at most half full      */
+    static final int MAX_ENTRIES = MAX_TABLE_SIZE / 2;
+
+    /** The arenas holding the entries, in the order they were filled         */
+    private List<ByteBuffer> arenas;
+
+    /** The arena new entries are added to                                    */
+    private ByteBuffer currentArena;
+
+    /** The hash table of entry addresses plus one                            */
+    private ByteBuffer table;
+
+    /** The number of slots in the hash table, always a power of two          */
+    private int tableSize;
+
+    /** The number of distinct tokens                                         */
+    private int entryCount;
+
+    /** A reusable buffer for writing tokens to reports                       */
+    private char[] writeBuffer;
+
+    /**
+     * Creates a new, empty {@code OffHeapVocabulary}.
+     */
+    public OffHeapVocabulary() {
+        arenas = new ArrayList<ByteBuffer>();
+        tableSize = INITIAL_TABLE_SIZE;
+        table = ByteBuffer.allocateDirect(tableSize * Long.BYTES);
+        entryCount = 0;
+        writeBuffer = new char[64];
+        startArena(ARENA_SIZE);
+    }
+
+    /**
+     * Checks whether {@code vocabulary.storage} in the properties file asks
+     * for tokens to be stored off the heap.
+     *
+     * @param properties the properties object to read from
+     * @return true if analyzers should use an {@code OffHeapVocabulary}
+     */
+    public static boolean isEnabled(Properties properties) {
+        return properties.getProperty("vocabulary.storage", "heap")
+                .equals("offheap");
+    }
+
+    /**
+     * Adds a new arena and makes it the current one.
+     *
+     * @param size the size of the arena in bytes
+     */
+    private void startArena(int size) {
+        currentArena = ByteBuffer.allocateDirect(size);
+        arenas.add(currentArena);
+    }
+
+    /**
+     * Adds a token with a count of one, or adds one to its count if it is
+     * already in the vocabulary.
+     *
+     * @param token the token to add
+     * @return true if the token was not already in the vocabulary
+     */
+    @Override
+    public boolean add(String token) {
+        return add(token, 1);
+    }
+
+    /**
+     * Adds a token with the given count, or adds the count to the token's
+     * count if it is already in the vocabulary.
+     *
+     * @param token the token to add
+     * @param count the number of times to count the token
+     * @return true if the token was not already in the vocabulary
+     * @throws IllegalStateException if the token is new and the vocabulary
+     *                               already holds {@code MAX_ENTRIES} tokens
+     */
+    public boolean add(String token, int count) {
+        int hashCode = token.hashCode();
+        int mask = tableSize - 1;
+        int slot = CompiledDictionary.mix(hashCode) & mask;
+
+        while (true) {
+            long stored = table.getLong(slot * Long.BYTES);
+            if (stored == 0) {
+                break;
+            }
+            long address = stored - 1;
+            if (matches(address, hashCode, token)) {
+                ByteBuffer arena = arena(address);
+                int countPosition = offset(address) + Integer.BYTES;
+                arena.putInt(countPosition, arena.getInt(countPosition)
+                        + count);
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        checkCapacity();
+        insert(slot, append(token, hashCode, count));
+        return true;
+    }
+
+    /**
+     * Adds every token of a collection. The tokens of another
+     * {@code OffHeapVocabulary} are copied from its arenas with their counts,
+     * or their counts are added, without creating {@code String} objects.
+     *
+     * @param tokens the tokens to add
+     * @return true if any token was not already in the vocabulary
+     * @throws IllegalStateException if the vocabulary would hold more than
+     *                               {@code MAX_ENTRIES} tokens
+     */
+    @Override
+    public boolean addAll(Collection<? extends String> tokens) {
+        if (!(tokens instanceof OffHeapVocabulary)) {
+            return super.addAll(tokens);
+        }
+
+        OffHeapVocabulary other = (OffHeapVocabulary) tokens;
+        boolean added = false;
+        for (long address : other.entryAddresses()) {
+            added |= addEntry(other.arena(address), other.offset(address));
+        }
+        return added;
+    }
+
+    /**
+     * Adds the entry of another vocabulary, or adds its count to the
+     * matching entry.
+     *
+     * @param source the arena of the other vocabulary holding the entry
+     * @param sourcePosition the position of the entry in that arena
+     * @return true if the token was not already in the vocabulary
+     */
+    private boolean addEntry(ByteBuffer source, int sourcePosition) {
+        int hashCode = source.getInt(sourcePosition);
+        int count = source.getInt(sourcePosition + Integer.BYTES);
+        int mask = tableSize - 1;
+        int slot = CompiledDictionary.mix(hashCode) & mask;
+
+        while (true) {
+            long stored = table.getLong(slot * Long.BYTES);
+            if (stored == 0) {
+                break;
+            }
+            long address = stored - 1;
+            if (matchesEntry(address, source, sourcePosition)) {
+                ByteBuffer arena = arena(address);
+                int countPosition = offset(address) + Integer.BYTES;
+                arena.putInt(countPosition, arena.getInt(countPosition)
+                        + count);
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        checkCapacity();
+        int size = nextEntry(source, sourcePosition) - sourcePosition;
+        if (currentArena.remaining() < size) {
+            startArena(Math.max(ARENA_SIZE, size));
+        }
+        int position = currentArena.position();
+        currentArena.put(source.slice(sourcePosition, size));
+        insert(slot, ((long) (arenas.size() - 1) << 32) | position);
+        return true;
+    }
+
+    /**
+     * Checks that another distinct token can be added.
+     *
+     * @throws IllegalStateException if the vocabulary already holds
+     *                               {@code MAX_ENTRIES} tokens
+     */
+    private void checkCapacity() {
+        // The table is indexed by int byte offsets, so it cannot grow further
+        if (entryCount == MAX_ENTRIES) {
+            throw new IllegalStateException("The off-heap vocabulary cannot "
+                    + "hold more than " + MAX_ENTRIES + " distinct tokens; "
+                    + "set memory.budget.mb to spill to disk instead");
+        }
+    }
+
+    /**
+     * Stores the address of a new entry in an empty slot and grows the table
+     * once it is half full.
+     *
+     * @param slot the empty slot
+     * @param address the address of the new entry
+     */
+    private void insert(int slot, long address) {
+        table.putLong(slot * Long.BYTES, address + 1);
+        entryCount++;
+        if (entryCount * 2 > tableSize) {
+            growTable();
+        }
+    }
+
+    /**
+     * Gets the count of a token.
+     *
+     * @param token the token to look up
+     * @return the number of times the token was added, or 0 if it was not
+     */
+    public int getCount(String token) {
+        long address = find(token);
+        if (address == -1) {
+            return 0;
+        }
+        return arena(address).getInt(offset(address) + Integer.BYTES);
+    }
+
+    /**
+     * Checks whether a token is in the vocabulary.
+     *
+     * @param object the token to look for
+     * @return true if the token is in the vocabulary, else false
+     */
+    @Override
+    public boolean contains(Object object) {
+        return object instanceof String && find((String) object) != -1;
+    }
+
+    /**
+     * Finds the address of a token's entry.
+     *
+     * @param token the token to look for
+     * @return the address of the entry, or -1 if the token is not stored
+     */
+    private long find(String token) {
+        int hashCode = token.hashCode();
+        int mask = tableSize - 1;
+        int slot = CompiledDictionary.mix(hashCode) & mask;
+
+        while (true) {
+            long stored = table.getLong(slot * Long.BYTES);
+            if (stored == 0) {
+                return -1;
+            }
+            if (matches(stored - 1, hashCode, token)) {
+                return stored - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Appends a new entry to the current arena, starting a new arena when
+     * the entry does not fit.
+     *
+     * @param token the token to store
+     * @param hashCode the hash code of the token
+     * @param count the initial count of the token
+     * @return the address of the new entry
+     */
+    private long append(String token, int hashCode, int count) {
+        int length = token.length();
+        boolean wide = false;
+        for (int i = 0; i < length && !wide; i++) {
+            wide = token.charAt(i) > 0xFF;
+        }
+
+        int size = ENTRY_HEADER_SIZE + (wide ? length * Character.BYTES
+                : length);
+        if (currentArena.remaining() < size) {
+            startArena(Math.max(ARENA_SIZE, size));
+        }
+
+        int position = currentArena.position();
+        currentArena.putInt(hashCode);
+        currentArena.putInt(count);
+        currentArena.putInt(wide ? length | WIDE_FLAG : length);
+        for (int i = 0; i < length; i++) {
+            if (wide) {
+                currentArena.putChar(token.charAt(i));
+            } else {
+                currentArena.put((byte) token.charAt(i));
+            }
+        }
+        return ((long) (arenas.size() - 1) << 32) | position;
+    }
+
+    /**
+     * Doubles the size of the hash table and reinserts every entry using the
+     * hash codes stored in the arenas. {@code add} never grows the table past
+     * {@code MAX_TABLE_SIZE}, so every slot offset fits in an int.
+     */
+    private void growTable() {
+        int newSize = tableSize * 2;
+        int mask = newSize - 1;
+        ByteBuffer newTable = ByteBuffer.allocateDirect(newSize * Long.BYTES);
+
+        for (int i = 0; i < tableSize; i++) {
+            long stored = table.getLong(i * Long.BYTES);
+            if (stored == 0) {
+                continue;
+            }
+            long address = stored - 1;
+            int hashCode = arena(address).getInt(offset(address));
+            int slot = CompiledDictionary.mix(hashCode) & mask;
+            while (newTable.getLong(slot * Long.BYTES) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newTable.putLong(slot * Long.BYTES, stored);
+        }
+
+        table = newTable;
+        tableSize = newSize;
+    }
+
+    /**
+     * Gets the arena holding an entry.
+     *
+     * @param address the address of the entry
+     * @return the arena holding the entry
+     */
+    private ByteBuffer arena(long address) {
+        return arenas.get((int) (address >>> 32));
+    }
+
+    /**
+     * Gets the position of an entry within its arena.
+     *
+     * @param address the address of the entry
+     * @return the position of the entry in its arena
+     */
+    private int offset(long address) {
+        return (int) address;
+    }
+
+    /**
+     * Gets the length in chars of the token stored in an entry.
+     *
+     * @param arena the arena holding the entry
+     * @param position the position of the entry in the arena
+     * @return the length of the token
+     */
+    private int length(ByteBuffer arena, int position) {
+        return arena.getInt(position + 2 * Integer.BYTES) & ~WIDE_FLAG;
+    }
+
+    /**
+     * Reads one char of the token stored in an entry.
+     *
+     * @param arena the arena holding the entry
+     * @param position the position of the entry in the arena
+     * @param index the index of the char in the token
+     * @return the char
+     */
+    private char charAt(ByteBuffer arena, int position, int index) {
+        int data = position + ENTRY_HEADER_SIZE;
+        if ((arena.getInt(position + 2 * Integer.BYTES) & WIDE_FLAG) != 0) {
+            return arena.getChar(data + index * Character.BYTES);
+        }
+        return (char) (arena.get(data + index) & 0xFF);
+    }
+
+    /**
+     * Checks whether an entry holds the given token.
+     *
+     * @param address the address of the entry
+     * @param hashCode the hash code of the token
+     * @param token the token to compare
+     * @return true if the entry holds the token, else false
+     */
+    private boolean matches(long address, int hashCode, String token) {
+        ByteBuffer arena = arena(address);
+        int position = offset(address);
+        if (arena.getInt(position) != hashCode
+                || length(arena, position) != token.length()) {
+            return false;
+        }
+        for (int i = 0; i < token.length(); i++) {
+            if (charAt(arena, position, i) != token.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether an entry holds the same token as the entry of another
+     * vocabulary. A token is stored with two-byte chars exactly when one of
+     * its chars needs them, so equal tokens have equal bytes.
+     *
+     * @param address the address of the entry
+     * @param source the arena of the other vocabulary holding its entry
+     * @param sourcePosition the position of the other entry in that arena
+     * @return true if both entries hold the same token, else false
+     */
+    private boolean matchesEntry(long address, ByteBuffer source,
+            int sourcePosition) {
+        ByteBuffer arena = arena(address);
+        int position = offset(address);
+        if (arena.getInt(position) != source.getInt(sourcePosition)
+                || arena.getInt(position + 2 * Integer.BYTES)
+                != source.getInt(sourcePosition + 2 * Integer.BYTES)) {
+            return false;
+        }
+        int dataSize = nextEntry(arena, position) - position
+                - ENTRY_HEADER_SIZE;
+        return arena.slice(position + ENTRY_HEADER_SIZE, dataSize).mismatch(
+                source.slice(sourcePosition + ENTRY_HEADER_SIZE, dataSize))
+                == -1;
+    }
+
+    /**
+     * Compares the tokens of two entries in the same order as
+     * {@code String.compareTo}.
+     *
+     * @param first the address of the first entry
+     * @param second the address of the second entry
+     * @return a negative number, zero or a positive number as the first token
+     *         is less than, equal to or greater than the second
+     */
+    int compareEntries(long first, long second) {
+        ByteBuffer firstArena = arena(first);
+        ByteBuffer secondArena = arena(second);
+        int firstPosition = offset(first);
+        int secondPosition = offset(second);
+        int firstLength = length(firstArena, firstPosition);
+        int secondLength = length(secondArena, secondPosition);
+        int limit = Math.min(firstLength, secondLength);
+
+        for (int i = 0; i < limit; i++) {
+            char firstChar = charAt(firstArena, firstPosition, i);
+            char secondChar = charAt(secondArena, secondPosition, i);
+            if (firstChar != secondChar) {
+                return firstChar - secondChar;
+            }
+        }
+        return firstLength - secondLength;
+    }
+
+    /**
+     * Gets the addresses of every entry in the order they were added.
+     *
+     * @return the entry addresses
+     */
+    long[] entryAddresses() {
+        long[] addresses = new long[entryCount];
+        int index = 0;
+
+        for (int arenaIndex = 0; arenaIndex < arenas.size(); arenaIndex++) {
+            ByteBuffer arena = arenas.get(arenaIndex);
+            int position = 0;
+            while (position < arena.position()) {
+                addresses[index++] = ((long) arenaIndex << 32) | position;
+                position = nextEntry(arena, position);
+            }
+        }
+        return addresses;
+    }
+
+    /**
+     * Gets the position of the entry following another in the same arena.
+     *
+     * @param arena the arena holding the entry
+     * @param position the position of the entry
+     * @return the position of the next entry
+     */
+    private int nextEntry(ByteBuffer arena, int position) {
+        int stored = arena.getInt(position + 2 * Integer.BYTES);
+        int length = stored & ~WIDE_FLAG;
+        int dataSize = ((stored & WIDE_FLAG) != 0) ? length * Character.BYTES
+                : length;
+        return position + ENTRY_HEADER_SIZE + dataSize;
+    }
+
+    /**
+     * Writes every token in {@code String.compareTo} order, one per line,
+     * copying the chars straight from the arenas.
+     *
+     * @param writer the report to write to
+     * @param includeCounts true to follow each token with a tab and its count
+     */
+    public void writeSorted(PrintWriter writer, boolean includeCounts) {
+        long[] addresses = entryAddresses();
+        sortEntries(addresses);
+
+        for (long address : addresses) {
+            ByteBuffer arena = arena(address);
+            int position = offset(address);
+            int length = length(arena, position);
+            if (writeBuffer.length < length) {
+                writeBuffer = new char[length];
+            }
+            for (int i = 0; i < length; i++) {
+                writeBuffer[i] = charAt(arena, position, i);
+            }
+            writer.write(writeBuffer, 0, length);
+            if (includeCounts) {
+                writer.print('\t');
+                writer.print(arena.getInt(position + Integer.BYTES));
+            }
+            writer.println();
+        }
+    }
+
+    /**
+     * Iterates over the tokens in {@code String.compareTo} order. Only the
+     * addresses are sorted up front; each token is copied into a new
+     * {@code String} when the iterator reaches it.
+     *
+     * @return an iterator over the sorted tokens
+     */
+    public Iterator<String> sortedIterator() {
+        long[] addresses = entryAddresses();
+        sortEntries(addresses);
+        return tokenIterator(addresses);
+    }
+
+    /**
+     * Gets a read-only map of the tokens to their counts, backed by the
+     * vocabulary. Lookups use the hash table; iterating copies each token
+     * into a new {@code String}.
+     *
+     * @return a view of the tokens and their counts
+     */
+    public Map<String, Integer> asCountMap() {
+        return new AbstractMap<String, Integer>() {
+            public Set<Map.Entry<String, Integer>> entrySet() {
+                return new AbstractSet<Map.Entry<String, Integer>>() {
+                    public int size() {
+                        return entryCount;
+                    }
+
+                    public Iterator<Map.Entry<String, Integer>> iterator() {
+                        Iterator<String> tokens =
+                                OffHeapVocabulary.this.iterator();
+                        return new Iterator<Map.Entry<String, Integer>>() {
+                            public boolean hasNext() {
+                                return tokens.hasNext();
+                            }
+
+                            public Map.Entry<String, Integer> next() {
+                                String token = tokens.next();
+                                return Map.entry(token, getCount(token));
+                            }
+                        };
+                    }
+                };
+            }
+
+            public boolean containsKey(Object key) {
+                return contains(key);
+            }
+
+            public Integer get(Object key) {
+                if (!contains(key)) {
+                    return null;
+                }
+                return getCount((String) key);
+            }
+
+            public int size() {
+                return entryCount;
+            }
+        };
+    }
+
+    /**
+     * Sorts entry addresses by their tokens with a parallel merge sort.
+     *
+     * @param addresses the addresses to sort
+     */
+    void sortEntries(long[] addresses) {
+        ForkJoinPool.commonPool().invoke(new SortTask(addresses.clone(),
+                addresses, 0, addresses.length));
+    }
+
+    /**
+     * Gets the number of distinct tokens.
+     *
+     * @return the number of distinct tokens
+     */
+    @Override
+    public int size() {
+        return entryCount;
+    }
+
+    /**
+     * Iterates over the tokens in the order they were first added. Each token
+     * is copied into a new {@code String}.
+     *
+     * @return an iterator over the tokens
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return tokenIterator(entryAddresses());
+    }
+
+    /**
+     * Iterates over the tokens of entries in the order of their addresses,
+     * copying each token into a new {@code String}.
+     *
+     * @param addresses the addresses of the entries
+     * @return an iterator over the tokens
+     */
+    private Iterator<String> tokenIterator(long[] addresses) {
+        return new Iterator<String>() {
+            private int index = 0;
+
+            public boolean hasNext() {
+                return index < addresses.length;
+            }
+
+            public String next() {
+                if (index == addresses.length) {
+                    throw new NoSuchElementException();
+                }
+                long address = addresses[index++];
+                ByteBuffer arena = arena(address);
+                int position = offset(address);
+                char[] chars = new char[length(arena, position)];
+                for (int i = 0; i < chars.length; i++) {
+                    chars[i] = charAt(arena, position, i);
+                }
+                return new String(chars);
+            }
+        };
+    }
+
+    /**
+     * Sorts one range of entry addresses. The two arrays start out holding
+     * the same addresses; each level of the sort merges the sorted halves of
+     * one array into the other. Ranges above a threshold sort their halves
+     * in parallel.
+     */
+    private class SortTask extends RecursiveAction {
+
+        /** The version of the serialized form, which is never used           */
+        private static final long serialVersionUID = 1L;
+
+        /** Ranges at or below this size are sorted on the current thread     */
+        private static final int PARALLEL_THRESHOLD = 8192;
+
+        /** The array holding the halves to merge                             */
+        private long[] source;
+
+        /** The array receiving the sorted range                              */
+        private long[] target;
+
+        /** The first index of the range                                      */
+        private int low;
+
+        /** The index after the end of the range                              */
+        private int high;
+
+        /**
+         * Creates a new {@code SortTask} for a range.
+         *
+         * @param source the array holding the halves to merge
+         * @param target the array receiving the sorted range
+         * @param low the first index of the range
+         * @param high the index after the end of the range
+         */
+        SortTask(long[] source, long[] target, int low, int high) {
+            this.source = source;
+            this.target = target;
+            this.low = low;
+            this.high = high;
+        }
+
+        /**
+         * Sorts both halves into {@code source} and merges them into
+         * {@code target}.
+         */
+        @Override
+        protected void compute() {
+            if (high - low < 2) {
+                return;
+            }
+
+            int middle = (low + high) >>> 1;
+            SortTask left = new SortTask(target, source, low, middle);
+            SortTask right = new SortTask(target, source, middle, high);
+            if (high - low > PARALLEL_THRESHOLD) {
+                invokeAll(left, right);
+            } else {
+                left.compute();
+                right.compute();
+            }
+
+            int leftIndex = low;
+            int rightIndex = middle;
+            for (int i = low; i < high; i++) {
+                if (rightIndex >= high || (leftIndex < middle && compareEntries(
+                        source[leftIndex], source[rightIndex]) <= 0)) {
+                    target[i] = source[leftIndex++];
+                } else {
+                    target[i] = source[rightIndex++];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package java112.analyzer;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Unit testing for {@link OffHeapVocabulary}. The vocabulary must count
+ * tokens exactly like the on-heap maps it replaces.
+ *
+ * @author Ryan Chua
+ */
+public class OffHeapVocabularyTest {
+
+    /**
+     * Runs tests on methods used in {@code OffHeapVocabulary}.
+     *
+     * @param args the command line arguments (not used)
+     */
+    public static void main(String[] args) {
+        OffHeapVocabularyTest test = new OffHeapVocabularyTest();
+
+        boolean growthFailed = test.testGrowth();
+        boolean collisionsFailed = test.testCollisions();
+        boolean heapFailed = test.testMatchesHeap();
+        System.out.println();
+
+        if (growthFailed) {
+            System.out.println("growTable failed testing");
+        }
+
+        if (collisionsFailed) {
+            System.out.println("Hash collisions failed testing");
+        }
+
+        if (heapFailed) {
+            System.out.println("Matching the on-heap counts failed testing");
+        }
+    }
+
+    /**
+     * Tests adding enough tokens to rehash the table many times and to fill
+     * more than one arena. Every token must keep its count.
+     *
+     * @return true if the test fails, else false
+     */
+    public boolean testGrowth() {
+        OffHeapVocabulary vocabulary = new OffHeapVocabulary();
+        int tokens = 600000;
+        List<String> failures = new ArrayList<String>();
+
+        System.out.println();
+        System.out.println("Testing growTable:");
+
+        for (int i = 0; i < tokens; i++) {
+            vocabulary.add("token" + i, i % 7 + 1);
+        }
+        vocabulary.add("token0");
+
+        if (vocabulary.size() != tokens) {
+            failures.add("size " + vocabulary.size());
+        }
+        for (int i = 0; i < tokens; i++) {
+            int expected = i % 7 + 1 + ((i == 0) ? 1 : 0);
+            if (vocabulary.getCount("token" + i) != expected) {
+                failures.add("token" + i);
+            }
+        }
+        if (vocabulary.contains("token" + tokens)) {
+            failures.add("token" + tokens + " was found");
+        }
+
+        if (failures.size() > 0) {
+            System.out.println("    Failed for " + failures.subList(0,
+                    Math.min(10, failures.size())));
+            System.out.println("Growth: Failed");
+            return true;
+        } else {
+            System.out.println("Growth: Success");
+            return false;
+        }
+    }
+
+    /**
+     * Tests tokens which share a hash code, such as "Aa" and "BB", so they
+     * probe the same slots and differ only in their chars. Latin-1 and
+     * two-byte tokens of the same length are mixed in too.
+     *
+     * @return true if any test fails, else false
+     */
+    public boolean testCollisions() {
+        int successes = 0;
+        int failures = 0;
+
+        // Create test objects: 16 tokens with the hash code of "AaAaAaAa"
+        OffHeapVocabulary vocabulary = new OffHeapVocabulary();
+        List<String> colliding = new ArrayList<String>();
+        String[] parts = {"Aa", "BB"};
+        for (int i = 0; i < 16; i++) {
+            StringBuilder token = new StringBuilder();
+            for (int bit = 0; bit < 4; bit++) {
+                token.append(parts[(i >> bit) & 1]);
+            }
+            colliding.add(token.toString());
+        }
+        colliding.add("\u00c0a\u00c0a");
+        colliding.add("\u65e5\u672c");
+
+        for (int i = 0; i < colliding.size(); i++) {
+            vocabulary.add(colliding.get(i), i + 1);
+        }
+
+        // Compare expected v. actual and display results
+        System.out.println();
+        System.out.println("Testing hash collisions");
+
+        for (int i = 0; i < colliding.size(); i++) {
+            int actual = vocabulary.getCount(colliding.get(i));
+            if (actual == i + 1) {
+                System.out.println("Test " + (i + 1) + ": Success");
+                successes++;
+            } else {
+                System.out.println("Test " + (i + 1) + ": Failed");
+                System.out.println("    Expected: " + (i + 1));
+                System.out.println("    Actual:   " + actual);
+                failures++;
+            }
+        }
+
+        if (vocabulary.size() == colliding.size()
+                && !vocabulary.contains("AaAaAaA")) {
+            System.out.println("Size: Success");
+            successes++;
+        } else {
+            System.out.println("Size: Failed");
+            failures++;
+        }
+
+        System.out.println();
+        System.out.println("Successful tests: " + successes + "/"
+                + (successes + failures));
+        System.out.println("Failed tests: " + failures + "/"
+                + (successes + failures));
+
+        if (failures > 0) {
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Tests that the distinct token counts analyzer gets the same counts and
+     * sorted report with off-heap storage as with the on-heap map, for a
+     * Zipf-like stream of Latin-1 and two-byte tokens. Two off-heap analyzers
+     * given alternate tokens must merge to the same counts, and the sorted
+     * iterator must give the tokens in report order.
+     *
+     * @return true if any test fails, else false
+     */
+    public boolean testMatchesHeap() {
+        int successes = 0;
+        int failures = 0;
+
+        // Create test objects
+        Properties heapProperties = new Properties();
+        heapProperties.setProperty("vocabulary.storage", "heap");
+        Properties offHeapProperties = new Properties();
+        offHeapProperties.setProperty("vocabulary.storage", "offheap");
+        DistinctTokenCountsAnalyzer heap = new DistinctTokenCountsAnalyzer(
+                heapProperties);
+        DistinctTokenCountsAnalyzer offHeap = new DistinctTokenCountsAnalyzer(
+                offHeapProperties);
+        DistinctTokenCountsAnalyzer[] halves = {
+                new DistinctTokenCountsAnalyzer(offHeapProperties),
+                new DistinctTokenCountsAnalyzer(offHeapProperties)};
+        OffHeapVocabulary vocabulary = new OffHeapVocabulary();
+        Map<String, Integer> expected = new HashMap<String, Integer>();
+
+        Random random = new Random(42);
+        String[] stems = {"word", "caf\u00e9", "\u65e5\u672c", "Aa", "BB"};
+        for (int i = 0; i < 200000; i++) {
+            int rank = (int) Math.floor(1 / (random.nextDouble() + 1e-5));
+            String token = stems[rank % stems.length] + rank;
+            heap.processToken(token);
+            offHeap.processToken(token);
+            halves[i % 2].processToken(token);
+            vocabulary.add(token);
+            expected.merge(token, 1, Integer::sum);
+        }
+
+        // Compare expected v. actual and display results
+        System.out.println();
+        System.out.println("Testing against the on-heap counts");
+
+        boolean countsMatch = heap.getTokens().equals(offHeap.getTokens())
+                && offHeap.getTokens().equals(expected.keySet());
+        for (String token : expected.keySet()) {
+            countsMatch &= heap.getCount(token) == expected.get(token)
+                    && offHeap.getCount(token) == expected.get(token);
+        }
+        if (countsMatch) {
+            System.out.println("Counts: Success");
+            successes++;
+        } else {
+            System.out.println("Counts: Failed");
+            failures++;
+        }
+
+        halves[0].merge(halves[1]);
+        if (halves[0].getDistinctTokenCounts().equals(expected)
+                && offHeap.getDistinctTokenCounts().equals(expected)
+                && expected.equals(offHeap.getDistinctTokenCounts())) {
+            System.out.println("Merged counts: Success");
+            successes++;
+        } else {
+            System.out.println("Merged counts: Failed");
+            failures++;
+        }
+
+        Iterator<String> sortedTokens = vocabulary.sortedIterator();
+        boolean sorted = true;
+        for (String token : new TreeMap<String, Integer>(expected).keySet()) {
+            sorted &= sortedTokens.hasNext()
+                    && token.equals(sortedTokens.next());
+        }
+        if (sorted && !sortedTokens.hasNext()) {
+            System.out.println("Sorted iterator: Success");
+            successes++;
+        } else {
+            System.out.println("Sorted iterator: Failed");
+            failures++;
+        }
+
+        StringWriter expectedReport = new StringWriter();
+        try (PrintWriter writer = new PrintWriter(expectedReport)) {
+            for (Map.Entry<String, Integer> entry :
+                    new TreeMap<String, Integer>(expected).entrySet()) {
+                writer.println(entry.getKey() + "\t" + entry.getValue());
+            }
+        }
+        StringWriter actualReport = new StringWriter();
+        try (PrintWriter writer = new PrintWriter(actualReport)) {
+            vocabulary.writeSorted(writer, true);
+        }
+        if (expectedReport.toString().equals(actualReport.toString())) {
+            System.out.println("Sorted report: Success");
+            successes++;
+        } else {
+            System.out.println("Sorted report: Failed");
+            failures++;
+        }
+
+        System.out.println();
+        System.out.println("Successful tests: " + successes + "/"
+                + (successes + failures));
+        System.out.println("Failed tests: " + failures + "/"
+                + (successes + failures));
+
+        if (failures > 0) {
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,18 @@
+package java112.analyzer;
+
+/**
+ * Interface for analyzers which go back to the input file after it has been
+ * read, using the byte offsets recorded while it was tokenized.
+ *
+ * @author Ryan Chua
+ */
+public interface OffsetIndexedAnalyzer extends TokenAnalyzer {
+    /**
+     * Gives the analyzer the offset index of the input file. Only called when
+     * the input is a plain file whose offsets can be recorded.
+     *
+     * @param index the offsets of the input file's tokens
+     */
+    public abstract void setOffsetIndex(TokenOffsetIndex index);
+
+}
@@ -0,0 +1,203 @@
+package java112.analyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs each {@link TokenAnalyzer} on its own thread. Tokens are collected
+ * into immutable {@link TokenBatch} objects which are published to a queue
+ * for every analyzer. Each analyzer is only ever used by its own thread, so
+ * its private state needs no locking.
+ *
+ * @author Ryan Chua
+ */
+public class ParallelAnalyzerRunner {
+
+    /** Marks the end of the token stream for the analyzer threads            */
+    private static final TokenBatch END_OF_TOKENS = new TokenBatch(
+            new String[0], 0);
+
+    /** How long to wait for queue space before checking the analyzer again   */
+    private static final long PUBLISH_WAIT_MILLISECONDS = 100;
+
+    /** The number of tokens collected before a batch is published            */
+    private int batchSize;
+
+    /** The tokens collected for the next batch                               */
+    private String[] pendingTokens;
+
+    /** The number of tokens in {@code pendingTokens}                         */
+    private int pendingCount;
+
+    /** The queue of batches waiting to be processed by each analyzer         */
+    private List<BlockingQueue<TokenBatch>> queues;
+
+    /** The thread running each analyzer                                      */
+    private List<AnalyzerThread> threads;
+
+    /**
+     * Creates a new {@code ParallelAnalyzerRunner} and starts one thread for
+     * each analyzer.
+     *
+     * @param analyzers the analyzers to run
+     * @param batchSize the number of tokens in each published batch
+     * @param queueCapacity the number of batches each analyzer may fall
+     *                      behind the tokenizer before the tokenizer waits
+     */
+    public ParallelAnalyzerRunner(List<TokenAnalyzer> analyzers, int batchSize,
+            int queueCapacity) {
+        this.batchSize = batchSize;
+        pendingTokens = new String[batchSize];
+        pendingCount = 0;
+        queues = new ArrayList<BlockingQueue<TokenBatch>>();
+        threads = new ArrayList<AnalyzerThread>();
+
+        for (TokenAnalyzer analyzer : analyzers) {
+            BlockingQueue<TokenBatch> queue =
+                    new ArrayBlockingQueue<TokenBatch>(queueCapacity);
+            AnalyzerThread thread = new AnalyzerThread(analyzer, queue);
+            queues.add(queue);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Adds a token to the current batch. The batch is published to the
+     * analyzers once it is full.
+     *
+     * @param token the token to process
+     */
+    public void submit(String token) {
+        pendingTokens[pendingCount++] = token;
+        if (pendingCount == batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Publishes the tokens collected so far to every analyzer.
+     */
+    public void flush() {
+        if (pendingCount == 0) {
+            return;
+        }
+        publish(new TokenBatch(pendingTokens, pendingCount));
+        pendingCount = 0;
+    }
+
+    /**
+     * Publishes any remaining tokens, signals the end of the token stream and
+     * waits for every analyzer to finish processing. An analyzer which failed
+     * stopped part way through the tokens, so its report would be written
+     * from partial counts; the failure is thrown here instead.
+     *
+     * @throws IllegalStateException if an analyzer failed or the wait was
+     *                               interrupted
+     */
+    public void finish() {
+        flush();
+        publish(END_OF_TOKENS);
+
+        for (AnalyzerThread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting "
+                        + "for " + thread.getName(), interruptedException);
+            }
+        }
+
+        for (AnalyzerThread thread : threads) {
+            if (thread.getFailure() != null) {
+                throw new IllegalStateException(thread.getName()
+                        + " failed before processing every token",
+                        thread.getFailure());
+            }
+        }
+    }
+
+    /**
+     * Places a batch on the queue of every analyzer, waiting for space when
+     * an analyzer has fallen behind.
+     *
+     * @param batch the batch to publish
+     */
+    private void publish(TokenBatch batch) {
+        for (int i = 0; i < queues.size(); i++) {
+            BlockingQueue<TokenBatch> queue = queues.get(i);
+            AnalyzerThread thread = threads.get(i);
+            try {
+                // A failed analyzer stops taking batches, so never wait on it
+                while (thread.isAlive() && !queue.offer(batch,
+                        PUBLISH_WAIT_MILLISECONDS, TimeUnit.MILLISECONDS)) {
+                    continue;
+                }
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                System.out.println("Interrupted while publishing tokens");
+                interruptedException.printStackTrace();
+                return;
+            }
+        }
+    }
+
+    /**
+     * A thread which feeds the batches from its queue to a single analyzer.
+     */
+    private static class AnalyzerThread extends Thread {
+
+        /** The analyzer owned by this thread                                 */
+        private TokenAnalyzer analyzer;
+
+        /** The queue of batches to process                                   */
+        private BlockingQueue<TokenBatch> queue;
+
+        /** The throwable which stopped the analyzer, or null if none did     */
+        private volatile Throwable failure;
+
+        /**
+         * Creates a new {@code AnalyzerThread} for an analyzer.
+         *
+         * @param analyzer the analyzer to run
+         * @param queue the queue of batches to process
+         */
+        AnalyzerThread(TokenAnalyzer analyzer,
+                BlockingQueue<TokenBatch> queue) {
+            super("analyzer-" + analyzer.getClass().getSimpleName());
+            this.analyzer = analyzer;
+            this.queue = queue;
+        }
+
+        /**
+         * Processes batches until the end of the token stream is reached.
+         * An exception or error, such as running out of memory, stops the
+         * thread and is kept for {@code finish} to report.
+         */
+        @Override
+        public void run() {
+            try {
+                TokenBatch batch = queue.take();
+                while (batch != END_OF_TOKENS) {
+                    analyzer.processBatch(batch);
+                    batch = queue.take();
+                }
+            } catch (Throwable throwable) {
+                failure = throwable;
+            }
+        }
+
+        /**
+         * Gets the throwable which stopped the analyzer.
+         *
+         * @return the throwable, or null if the analyzer did not fail
+         */
+        Throwable getFailure() {
+            return failure;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package java112.analyzer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Interface for mergeable analyzers whose results can be written to a
+ * compact binary partial and read back in another process. A worker writes
+ * the partial of the tokens it processed; the coordinator reads it into a
+ * new analyzer created with the same properties and merges that analyzer as
+ * usual.
+ *
+ * @author Ryan Chua
+ */
+public interface PartialStateAnalyzer extends MergeableAnalyzer {
+    /**
+     * Writes the results of the tokens processed so far.
+     *
+     * @param output the stream to write the partial to
+     * @throws IOException if the partial cannot be written
+     */
+    public abstract void writePartialState(DataOutputStream output)
+            throws IOException;
+
+    /**
+     * Reads the results written by {@code writePartialState} into this
+     * analyzer, which must not have processed any tokens.
+     *
+     * @param input the stream to read the partial from
+     * @throws IOException if the partial cannot be read
+     */
+    public abstract void readPartialState(DataInputStream input)
+            throws IOException;
+
+    /**
+     * Writes a token as its length in bytes followed by its UTF-8 bytes.
+     *
+     * @param output the stream to write to
+     * @param token the token to write
+     * @throws IOException if the token cannot be written
+     */
+    public static void writeToken(DataOutputStream output, String token)
+            throws IOException {
+        byte[] bytes = token.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Reads a token written by {@code writeToken}.
+     *
+     * @param input the stream to read from
+     * @return the token
+     * @throws IOException if the token cannot be read
+     */
+    public static String readToken(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
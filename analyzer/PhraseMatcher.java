@@ -0,0 +1,255 @@
+package java112.analyzer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds multi-token phrases in a token stream with an Aho-Corasick automaton
+ * over token IDs. Every token of a phrase gets an ID; any other token has ID
+ * 0 and can never continue a match. The automaton advances one state per
+ * token, and each state knows every phrase which ends there, so no earlier
+ * tokens have to be kept. A failed transition follows failure links, which
+ * costs a constant amount per token on average however many phrases there
+ * are.
+ *
+ * @author Ryan Chua
+ */
+public class PhraseMatcher {
+
+    /** The state before any token has been read                              */
+    public static final int START_STATE = 0;
+
+    /** The ID of each token which appears in a phrase                        */
+    private Map<String, Integer> tokenIds;
+
+    /** The child of each state and token ID, keyed by state and ID packed    */
+    private LongIntHashMap transitions;
+
+    /** The state to continue from when a state has no transition             */
+    private int[] failures;
+
+    /** The phrases ending at each state, as indexes into {@code phrases}     */
+    private int[][] outputs;
+
+    /** The text of each phrase as it was given                               */
+    private String[] phrases;
+
+    /** The number of tokens in each phrase                                   */
+    private int[] phraseLengths;
+
+    /** The number of tokens in the longest phrase                            */
+    private int maxLength;
+
+    /**
+     * Creates a new {@code PhraseMatcher} and builds its automaton. The
+     * phrases are split at each non-word character, as the scan and regex
+     * tokenizers split the input.
+     *
+     * @param phraseTexts the phrases to find
+     */
+    public PhraseMatcher(Collection<String> phraseTexts) {
+        this(phraseTexts, new ScanningTokenizer(), null);
+    }
+
+    /**
+     * Creates a new {@code PhraseMatcher} for a normalized token stream.
+     * Each token of a phrase is normalized as the input tokens are, while
+     * {@link #getPhrase} still gives the phrase as it was given.
+     *
+     * @param phraseTexts the phrases to find
+     * @param tokenizer the tokenizer of the input, which splits each phrase
+     *                  into tokens
+     * @param normalizer the normalizer of the input tokens, or null if they
+     *                   are not normalized
+     */
+    public PhraseMatcher(Collection<String> phraseTexts, Tokenizer tokenizer,
+            TokenNormalizer normalizer) {
+        tokenIds = new HashMap<String, Integer>();
+        transitions = new LongIntHashMap(16);
+        phrases = phraseTexts.toArray(new String[0]);
+        phraseLengths = new int[phrases.length];
+
+        List<List<Integer>> stateOutputs = new ArrayList<List<Integer>>();
+        stateOutputs.add(new ArrayList<Integer>());
+        for (int i = 0; i < phrases.length; i++) {
+            int state = START_STATE;
+            List<String> tokens = splitPhrase(phrases[i], tokenizer);
+            for (String token : tokens) {
+                if (normalizer != null) {
+                    token = normalizer.normalize(token);
+                }
+                int id = tokenIds.computeIfAbsent(token,
+                        key -> tokenIds.size() + 1);
+                int child = transitions.get(key(state, id));
+                if (child == 0) {
+                    child = stateOutputs.size();
+                    stateOutputs.add(new ArrayList<Integer>());
+                    transitions.add(key(state, id), child);
+                }
+                state = child;
+            }
+            stateOutputs.get(state).add(i);
+            phraseLengths[i] = tokens.size();
+            maxLength = Math.max(maxLength, tokens.size());
+        }
+
+        buildFailures(stateOutputs);
+    }
+
+    /**
+     * Splits a phrase into tokens with the tokenizer of the input, so its
+     * words are the same tokens as in the input text.
+     *
+     * @param phrase the phrase to split
+     * @param tokenizer the tokenizer of the input
+     * @return the tokens of the phrase
+     */
+    public static List<String> splitPhrase(String phrase,
+            Tokenizer tokenizer) {
+        List<String> tokens = new ArrayList<String>();
+        tokenizer.tokenize(phrase, tokens::add);
+        return tokens;
+    }
+
+    /**
+     * Checks whether a search token is a phrase of more than one token.
+     *
+     * @param searchToken the search token
+     * @param tokenizer the tokenizer of the input
+     * @return true if the search token splits into several tokens, else false
+     */
+    public static boolean isPhrase(String searchToken, Tokenizer tokenizer) {
+        return splitPhrase(searchToken, tokenizer).size() > 1;
+    }
+
+    /**
+     * Packs a state and a token ID into a transition key, which is never 0
+     * because token IDs start at 1.
+     *
+     * @param state the state
+     * @param id the token ID
+     * @return the transition key
+     */
+    private static long key(int state, int id) {
+        return ((long) state << 32) | id;
+    }
+
+    /**
+     * Sets the failure link of every state in breadth-first order, and adds
+     * the phrases ending at each state's failure state to its own outputs.
+     *
+     * @param stateOutputs the phrases ending at each state in the trie
+     */
+    private void buildFailures(List<List<Integer>> stateOutputs) {
+        int stateCount = stateOutputs.size();
+        failures = new int[stateCount];
+        outputs = new int[stateCount][];
+        List<List<long[]>> children = new ArrayList<List<long[]>>();
+        for (int state = 0; state < stateCount; state++) {
+            children.add(new ArrayList<long[]>());
+        }
+        transitions.forEach((key, child) -> children.get((int) (key >>> 32))
+                .add(new long[] {key & 0xFFFFFFFFL, child}));
+
+        ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+        queue.add(START_STATE);
+        outputs[START_STATE] = new int[0];
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (long[] edge : children.get(state)) {
+                int id = (int) edge[0];
+                int child = (int) edge[1];
+                failures[child] = state == START_STATE ? START_STATE
+                        : advance(failures[state], id);
+
+                List<Integer> found = stateOutputs.get(child);
+                int[] inherited = outputs[failures[child]];
+                int[] merged = new int[found.size() + inherited.length];
+                for (int i = 0; i < found.size(); i++) {
+                    merged[i] = found.get(i);
+                }
+                System.arraycopy(inherited, 0, merged, found.size(),
+                        inherited.length);
+                outputs[child] = merged;
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Gets the ID of a token.
+     *
+     * @param token the token
+     * @return the ID of the token, or 0 if it is in no phrase
+     */
+    public int idOf(String token) {
+        Integer id = tokenIds.get(token);
+        return id == null ? 0 : id;
+    }
+
+    /**
+     * Gets the state reached from a state by reading a token.
+     *
+     * @param state the current state
+     * @param id the ID of the token read
+     * @return the next state
+     */
+    public int advance(int state, int id) {
+        if (id == 0) {
+            return START_STATE;
+        }
+        while (true) {
+            int child = transitions.get(key(state, id));
+            if (child != 0) {
+                return child;
+            }
+            if (state == START_STATE) {
+                return START_STATE;
+            }
+            state = failures[state];
+        }
+    }
+
+    /**
+     * Gets the phrases which end at a state.
+     *
+     * @param state the state
+     * @return the indexes of the phrases, which must not be changed
+     */
+    public int[] getMatches(int state) {
+        return outputs[state];
+    }
+
+    /**
+     * Gets the text of a phrase.
+     *
+     * @param phrase the index of the phrase
+     * @return the phrase as it was given
+     */
+    public String getPhrase(int phrase) {
+        return phrases[phrase];
+    }
+
+    /**
+     * Gets the number of tokens in a phrase.
+     *
+     * @param phrase the index of the phrase
+     * @return the number of tokens
+     */
+    public int getPhraseLength(int phrase) {
+        return phraseLengths[phrase];
+    }
+
+    /**
+     * Gets the number of tokens in the longest phrase.
+     *
+     * @return the number of tokens
+     */
+    public int getMaxLength() {
+        return maxLength;
+    }
+}
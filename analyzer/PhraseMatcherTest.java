@@ -0,0 +1,277 @@
+package java112.analyzer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Unit testing for {@link PhraseMatcher}, and for the phrase matching of
+ * {@link TokenLocationSearchAnalyzer} when a phrase is split between the
+ * tokens of two analyzers.
+ *
+ * @author Ryan Chua
+ */
+public class PhraseMatcherTest {
+
+    /** The phrases every test searches for                                   */
+    private static final List<String> PHRASES = Arrays.asList("of the",
+            "the state of", "in the state of", "state of the art", "the the",
+            "a a a");
+
+    /** The tokens searched when the analyzers are split                      */
+    private static final String TEXT = "in the state of the art the the "
+            + "the a a a a of the state of the art in the";
+
+    /**
+     * Runs tests on methods used in {@code PhraseMatcher}.
+     *
+     * @param args the command line arguments (not used)
+     */
+    public static void main(String[] args) {
+        PhraseMatcherTest test = new PhraseMatcherTest();
+
+        boolean matchFailed = test.testMatches();
+        boolean boundaryFailed = test.testBoundaries();
+        boolean splitFailed = test.testSplitPhrase();
+        System.out.println();
+
+        if (matchFailed) {
+            System.out.println("advance failed testing");
+        }
+
+        if (boundaryFailed) {
+            System.out.println("Phrases across a boundary failed testing");
+        }
+
+        if (splitFailed) {
+            System.out.println("splitPhrase failed testing");
+        }
+    }
+
+    /**
+     * Tests overlapping phrases, a phrase which is a suffix of another, a
+     * phrase which overlaps itself and a partial match which has to follow
+     * a failure link to find the phrase.
+     *
+     * @return true if any test fails, else false
+     */
+    public boolean testMatches() {
+        int successes = 0;
+        int failures = 0;
+
+        // Create test objects
+        PhraseMatcher matcher = new PhraseMatcher(PHRASES);
+        String[] texts = {"in the state of the art",
+                "the the the",
+                "a a a a",
+                "the state the state of x",
+                "of state the"};
+
+        // Create expected results: each phrase found and its first token
+        String[][] expected = {
+                {"in the state of@1", "of the@4", "state of the art@3",
+                        "the state of@2"},
+                {"the the@1", "the the@2"},
+                {"a a a@1", "a a a@2"},
+                {"the state of@3"},
+                {}};
+
+        // Compare expected v. actual and display results
+        System.out.println();
+        System.out.println("Testing advance");
+
+        for (int i = 0; i < texts.length; i++) {
+            List<String> actual = findPhrases(matcher, texts[i]);
+            List<String> expectedPhrases = Arrays.asList(expected[i]);
+
+            if (expectedPhrases.equals(actual)) {
+                System.out.println("Test " + (i + 1) + ": Success");
+                successes++;
+            } else {
+                System.out.println("Test " + (i + 1) + ": Failed");
+                System.out.println("    Expected: " + expectedPhrases);
+                System.out.println("    Actual:   " + actual);
+                failures++;
+            }
+        }
+
+        System.out.println();
+        System.out.println("Successful tests: " + successes + "/"
+                + (successes + failures));
+        System.out.println("Failed tests: " + failures + "/"
+                + (successes + failures));
+
+        if (failures > 0) {
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Tests splitting the tokens between two and three analyzers at every
+     * position, as batches and shards are, and merging them. The merged
+     * locations must be the same as one analyzer's, including phrases which
+     * cross a boundary and a middle part shorter than the longest phrase.
+     *
+     * @return true if the test fails, else false
+     */
+    public boolean testBoundaries() {
+        String[] tokens = TEXT.split(" ");
+        Map<String, List<Integer>> expected = search(tokens, 0,
+                tokens.length).getFoundLocations();
+        List<String> failures = new ArrayList<String>();
+
+        System.out.println();
+        System.out.println("Testing phrases across a boundary:");
+
+        for (int first = 0; first <= tokens.length; first++) {
+            for (int second = first; second <= tokens.length; second++) {
+                TokenLocationSearchAnalyzer merged = search(tokens, 0,
+                        first);
+                merged.merge(search(tokens, first, second));
+                merged.merge(search(tokens, second, tokens.length));
+
+                if (!expected.equals(merged.getFoundLocations())) {
+                    failures.add(first + "/" + second);
+                }
+            }
+        }
+
+        if (failures.size() > 0) {
+            System.out.println("    Expected: " + new TreeMap<String,
+                    List<Integer>>(expected));
+            System.out.println("    Failed for splits " + failures.subList(0,
+                    Math.min(10, failures.size())));
+            System.out.println("Merged locations: Failed");
+            return true;
+        } else {
+            System.out.println("Merged locations: Success");
+            return false;
+        }
+    }
+
+    /**
+     * Tests splitting phrases with the scan tokenizer and with the unicode
+     * rules, which keep accented letters and hyphenated words whole. A
+     * phrase split by the rules must be found in tokens split by them.
+     *
+     * @return true if any test fails, else false
+     */
+    public boolean testSplitPhrase() {
+        int successes = 0;
+        int failures = 0;
+
+        // Create test objects
+        Properties rules = new Properties();
+        rules.setProperty("tokenizer.rules.preset", "unicode");
+        Tokenizer[] tokenizers = {new ScanningTokenizer(),
+                new ScanningTokenizer(), new RuleTokenizer(rules),
+                new RuleTokenizer(rules)};
+        String[] phrases = {"caf\u00e9 au lait", "well-known",
+                "caf\u00e9 au lait", "well-known"};
+
+        // Create expected results
+        String[][] expected = {{"caf", "au", "lait"}, {"well", "known"},
+                {"caf\u00e9", "au", "lait"}, {"well-known"}};
+
+        // Compare expected v. actual and display results
+        System.out.println();
+        System.out.println("Testing splitPhrase");
+
+        for (int i = 0; i < phrases.length; i++) {
+            List<String> actual = PhraseMatcher.splitPhrase(phrases[i],
+                    tokenizers[i]);
+            List<String> expectedTokens = Arrays.asList(expected[i]);
+            boolean phrase = PhraseMatcher.isPhrase(phrases[i],
+                    tokenizers[i]);
+
+            if (expectedTokens.equals(actual)
+                    && phrase == (expectedTokens.size() > 1)) {
+                System.out.println("Test " + (i + 1) + ": Success");
+                successes++;
+            } else {
+                System.out.println("Test " + (i + 1) + ": Failed");
+                System.out.println("    Expected: " + expectedTokens);
+                System.out.println("    Actual:   " + actual);
+                failures++;
+            }
+        }
+
+        PhraseMatcher matcher = new PhraseMatcher(Arrays.asList(phrases[2]),
+                tokenizers[2], null);
+        List<String> found = findPhrases(matcher, "le caf\u00e9 au lait");
+        if (found.equals(Arrays.asList("caf\u00e9 au lait@2"))) {
+            System.out.println("Test " + (phrases.length + 1)
+                    + ": Success");
+            successes++;
+        } else {
+            System.out.println("Test " + (phrases.length + 1) + ": Failed");
+            System.out.println("    Actual:   " + found);
+            failures++;
+        }
+
+        System.out.println();
+        System.out.println("Successful tests: " + successes + "/"
+                + (successes + failures));
+        System.out.println("Failed tests: " + failures + "/"
+                + (successes + failures));
+
+        if (failures > 0) {
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Runs the matcher over a text and lists each phrase found with the
+     * position of its first token, sorted.
+     *
+     * @param matcher the phrase matcher
+     * @param text the tokens separated by spaces
+     * @return the phrases found
+     */
+    private List<String> findPhrases(PhraseMatcher matcher, String text) {
+        List<String> found = new ArrayList<String>();
+        int state = PhraseMatcher.START_STATE;
+        String[] tokens = text.split(" ");
+        for (int i = 0; i < tokens.length; i++) {
+            state = matcher.advance(state, matcher.idOf(tokens[i]));
+            for (int phrase : matcher.getMatches(state)) {
+                found.add(matcher.getPhrase(phrase) + "@"
+                        + (i + 2 - matcher.getPhraseLength(phrase)));
+            }
+        }
+        found.sort(null);
+        return found;
+    }
+
+    /**
+     * Searches a range of tokens for the phrases with a new analyzer.
+     *
+     * @param tokens the tokens
+     * @param start the index of the first token to process
+     * @param end the index just past the last token to process
+     * @return the analyzer
+     */
+    private TokenLocationSearchAnalyzer search(String[] tokens, int start,
+            int end) {
+        TokenLocationSearchAnalyzer analyzer =
+                new TokenLocationSearchAnalyzer();
+        for (String phrase : PHRASES) {
+            analyzer.getFoundLocations().put(phrase,
+                    new ArrayList<Integer>());
+        }
+        analyzer.compilePatterns();
+
+        for (int i = start; i < end; i++) {
+            analyzer.processToken(tokens[i]);
+        }
+        return analyzer;
+    }
+
+}
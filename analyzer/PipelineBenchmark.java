@@ -0,0 +1,362 @@
+package java112.analyzer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Measures the whole analysis pipeline end to end and fails when it is
+ * slower or larger than a stored baseline, so a performance regression is
+ * caught before it is merged. Use it with a corpus from
+ * {@link CorpusGenerator} so the results can be reproduced anywhere.
+ *
+ * Each of {@code benchmark.iterations} runs analyzes the file and writes
+ * every report in a fresh JVM, so JIT warm-up, class loading and the heap
+ * are measured as a user would see them. A run records its throughput in
+ * megabytes and tokens per second, its peak resident set size and the time
+ * spent in garbage collection. The median of each measure is compared
+ * against the baseline in {@code benchmark.baseline.file}: the benchmark
+ * fails when a throughput falls, or the peak memory or GC time rises, by
+ * more than {@code benchmark.regression.threshold}.
+ *
+ * <pre>
+ * java java112.analyzer.PipelineBenchmark /analyzer.properties corpus.txt
+ *         [--record]
+ * </pre>
+ *
+ * With {@code --record} the medians are stored as the new baseline instead.
+ *
+ * @author Ryan Chua
+ */
+public class PipelineBenchmark {
+
+    /** The option which stores the results as the new baseline               */
+    private static final String RECORD_OPTION = "--record";
+
+    /** The option which makes the process run the pipeline once              */
+    private static final String RUN_OPTION = "--run";
+
+    /** The prefix of the line a run prints its measures on                   */
+    private static final String RESULT_PREFIX = "BENCHMARK ";
+
+    /** The number of bytes in a megabyte                                     */
+    private static final double MEGABYTE = 1024 * 1024;
+
+    /** A rise in GC time smaller than this is noise, never a regression      */
+    private static final double GC_NOISE_MILLIS = 50;
+
+    /** The names of the measures, as stored in the baseline                  */
+    private static final String[] MEASURES = {"mb.per.second",
+            "tokens.per.second", "peak.rss.mb", "gc.millis"};
+
+    /** True for each measure where a higher value is better                  */
+    private static final boolean[] HIGHER_IS_BETTER = {true, true, false,
+            false};
+
+    /** The properties object to read from                                    */
+    private Properties properties;
+
+    /** The location of the properties file, passed on to each run            */
+    private String propertiesPath;
+
+    /**
+     * Creates a new {@code PipelineBenchmark}.
+     *
+     * @param properties the properties object to read from
+     * @param propertiesPath the classpath location of the properties file
+     */
+    public PipelineBenchmark(Properties properties, String propertiesPath) {
+        this.properties = properties;
+        this.propertiesPath = propertiesPath;
+    }
+
+    /**
+     * Benchmarks the file named on the command line and exits with status 1
+     * if it regressed against the baseline.
+     *
+     * @param args the location of the properties file, the file to analyze
+     *             and optionally the option to record a new baseline
+     */
+    public static void main(String[] args) {
+        if (args.length == 3 && args[0].equals(RUN_OPTION)) {
+            runOnce(args[1], args[2]);
+            return;
+        }
+        if (args.length < 2) {
+            System.out.println("Please enter the properties file and the text "
+                    + "file to benchmark");
+            return;
+        }
+
+        Properties properties = new FileAnalysis().loadProperties(args[0]);
+        PipelineBenchmark benchmark = new PipelineBenchmark(properties,
+                args[0]);
+        boolean record = args.length > 2 && args[2].equals(RECORD_OPTION);
+
+        try {
+            double[] medians = benchmark.measure(args[1]);
+            if (record) {
+                benchmark.recordBaseline(medians, args[1]);
+            } else if (!benchmark.compareToBaseline(medians, args[1])) {
+                System.exit(1);
+            }
+        } catch (IOException iOException) {
+            System.out.println("There was a problem running the benchmark");
+            iOException.printStackTrace();
+            System.exit(1);
+        } catch (Exception exception) {
+            System.out.println("There was a problem running the benchmark");
+            exception.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs the pipeline once in this process and prints the measures on one
+     * line: the elapsed nanoseconds, the tokens, the peak memory in bytes
+     * and the GC milliseconds.
+     *
+     * @param fileName the file to analyze
+     * @param propertiesPath the classpath location of the properties file
+     */
+    private static void runOnce(String fileName, String propertiesPath) {
+        FileAnalysis analysis = new FileAnalysis();
+        Properties properties = analysis.loadProperties(propertiesPath);
+        long start = System.nanoTime();
+        long tokens = 0;
+
+        try (AnalysisResult result = analysis.analyzeFile(fileName,
+                properties)) {
+            result.writeReports();
+            try {
+                tokens = result.getTotalTokens();
+            } catch (IllegalStateException illegalStateException) {
+                // The summary analyzer is disabled, so tokens are not counted
+            }
+        } catch (IOException iOException) {
+            System.out.println("There was a problem reading the file");
+            iOException.printStackTrace();
+            System.exit(1);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean collector :
+                ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcMillis += Math.max(0, collector.getCollectionTime());
+        }
+        System.out.println(RESULT_PREFIX + elapsed + " " + tokens + " "
+                + getPeakMemory() + " " + gcMillis);
+    }
+
+    /**
+     * Gets the peak resident set size of this process. Where the operating
+     * system does not report it, the peak usage of the JVM's memory pools
+     * is used instead.
+     *
+     * @return the peak memory in bytes
+     */
+    private static long getPeakMemory() {
+        try {
+            for (String line : Files.readAllLines(Paths.get(
+                    "/proc/self/status"))) {
+                if (line.startsWith("VmHWM:")) {
+                    String[] fields = line.trim().split("\\s+");
+                    return Long.parseLong(fields[1]) * 1024;
+                }
+            }
+        } catch (IOException iOException) {
+            // Not Linux, fall back to the memory pools
+        }
+
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    /**
+     * Runs the pipeline {@code benchmark.iterations} times, each in a new
+     * JVM, and prints the measures of every run.
+     *
+     * @param fileName the file to analyze
+     * @return the median of each measure, in the order of {@code MEASURES}
+     * @throws Exception if a run fails or is interrupted
+     */
+    public double[] measure(String fileName) throws Exception {
+        int iterations = Integer.parseInt(properties.getProperty(
+                "benchmark.iterations", "3"));
+        double fileMb = new File(fileName).length() / MEGABYTE;
+        double[][] runs = new double[MEASURES.length][iterations];
+
+        for (int i = 0; i < iterations; i++) {
+            long[] result = runInNewProcess(fileName);
+            double seconds = result[0] / 1e9;
+            runs[0][i] = fileMb / seconds;
+            runs[1][i] = result[1] / seconds;
+            runs[2][i] = result[2] / MEGABYTE;
+            runs[3][i] = result[3];
+            System.out.printf("Run %d: %.1f MB/s, %.0f tokens/s, "
+                    + "%.1f MB peak RSS, %.0f ms GC%n", i + 1, runs[0][i],
+                    runs[1][i], runs[2][i], runs[3][i]);
+        }
+
+        double[] medians = new double[MEASURES.length];
+        for (int i = 0; i < MEASURES.length; i++) {
+            Arrays.sort(runs[i]);
+            medians[i] = runs[i][iterations / 2];
+        }
+        return medians;
+    }
+
+    /**
+     * Runs the pipeline once in a new JVM with the same Java installation
+     * and class path as this process.
+     *
+     * @param fileName the file to analyze
+     * @return the elapsed nanoseconds, tokens, peak memory in bytes and GC
+     *         milliseconds of the run
+     * @throws Exception if the run fails or is interrupted
+     */
+    private long[] runInNewProcess(String fileName) throws Exception {
+        List<String> command = new ArrayList<String>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java")
+                .toString());
+        int heapMb = Integer.parseInt(properties.getProperty(
+                "benchmark.heap.mb", "0"));
+        if (heapMb > 0) {
+            command.add("-Xmx" + heapMb + "m");
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(PipelineBenchmark.class.getName());
+        command.add(RUN_OPTION);
+        command.add(fileName);
+        command.add(propertiesPath);
+
+        Process run = new ProcessBuilder(command).redirectErrorStream(true)
+                .start();
+        long[] result = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                run.getInputStream(), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            while (line != null) {
+                if (line.startsWith(RESULT_PREFIX)) {
+                    result = Arrays.stream(line.substring(
+                            RESULT_PREFIX.length()).split(" "))
+                            .mapToLong(Long::parseLong).toArray();
+                } else {
+                    System.out.println(line);
+                }
+                line = reader.readLine();
+            }
+        }
+
+        if (run.waitFor() != 0 || result == null) {
+            throw new IOException("The benchmark run failed");
+        }
+        return result;
+    }
+
+    /**
+     * Stores the medians as the new baseline, along with the size of the
+     * file they were measured on.
+     *
+     * @param medians the median of each measure
+     * @param fileName the file which was analyzed
+     * @throws IOException if the baseline cannot be written
+     */
+    public void recordBaseline(double[] medians, String fileName)
+            throws IOException {
+        Properties baseline = new Properties();
+        for (int i = 0; i < MEASURES.length; i++) {
+            baseline.setProperty(MEASURES[i], String.valueOf(medians[i]));
+        }
+        baseline.setProperty("file.size", String.valueOf(
+                new File(fileName).length()));
+
+        String baselineFile = getBaselineFile();
+        try (OutputStream output = new FileOutputStream(baselineFile)) {
+            baseline.store(output, "Pipeline benchmark baseline");
+        }
+        System.out.println("Recorded the baseline in " + baselineFile);
+    }
+
+    /**
+     * Compares the medians against the stored baseline and prints each
+     * measure's change.
+     *
+     * @param medians the median of each measure
+     * @param fileName the file which was analyzed
+     * @return true if no measure regressed past the threshold, else false
+     * @throws IOException if the baseline cannot be read
+     */
+    public boolean compareToBaseline(double[] medians, String fileName)
+            throws IOException {
+        double threshold = Double.parseDouble(properties.getProperty(
+                "benchmark.regression.threshold", "0.10"));
+        Properties baseline = new Properties();
+        try (InputStream input = new FileInputStream(getBaselineFile())) {
+            baseline.load(input);
+        }
+        if (!String.valueOf(new File(fileName).length()).equals(
+                baseline.getProperty("file.size"))) {
+            System.out.println("The baseline was measured on a file of a "
+                    + "different size, so the comparison may not be fair");
+        }
+
+        boolean passed = true;
+        for (int i = 0; i < MEASURES.length; i++) {
+            double expected = Double.parseDouble(baseline.getProperty(
+                    MEASURES[i]));
+            double change = (expected == 0) ? 0
+                    : (medians[i] - expected) / expected;
+            boolean regressed;
+            if (HIGHER_IS_BETTER[i]) {
+                regressed = change < -threshold;
+            } else {
+                regressed = change > threshold;
+            }
+            if (MEASURES[i].equals("gc.millis")
+                    && medians[i] - expected <= GC_NOISE_MILLIS) {
+                regressed = false;
+            }
+
+            System.out.printf("%-18s %14.1f baseline %14.1f (%+.1f%%)%s%n",
+                    MEASURES[i], medians[i], expected, 100 * change,
+                    regressed ? " REGRESSED" : "");
+            passed &= !regressed;
+        }
+
+        System.out.println(passed ? "Benchmark passed"
+                : "Benchmark failed: regressed past "
+                + Math.round(100 * threshold) + "%");
+        return passed;
+    }
+
+    /**
+     * Gets the location of the baseline file.
+     *
+     * @return the baseline file
+     */
+    private String getBaselineFile() {
+        return properties.getProperty("benchmark.baseline.file",
+                "benchmark_baseline.properties");
+    }
+}
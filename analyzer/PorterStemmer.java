@@ -0,0 +1,485 @@
+package java112.analyzer;
+
+/**
+ * Reduces an English word to its stem with the Porter stemming algorithm
+ * (M.F. Porter, "An algorithm for suffix stripping", 1980), so that forms
+ * such as "running", "runs" and "run" are counted together. Only words made
+ * entirely of the lowercase letters a to z are stemmed; anything else is
+ * returned unchanged.
+ *
+ * A stemmer keeps the word being stemmed in a buffer and is not thread-safe.
+ *
+ * @author Ryan Chua
+ */
+public class PorterStemmer {
+
+    /** The word being stemmed                                                */
+    private char[] word;
+
+    /** The index of the last character of the current stem                   */
+    private int end;
+
+    /** The index of the last character before a matched suffix               */
+    private int stemEnd;
+
+    /**
+     * Creates a new {@code PorterStemmer}.
+     */
+    public PorterStemmer() {
+        word = new char[64];
+    }
+
+    /**
+     * Stems a word.
+     *
+     * @param token the word to stem
+     * @return the stem, or the token itself if it is not a lowercase word or
+     *         has no suffix to remove
+     */
+    public String stem(String token) {
+        int length = token.length();
+        if (length <= 2) {
+            return token;
+        }
+        for (int i = 0; i < length; i++) {
+            char character = token.charAt(i);
+            if (character < 'a' || character > 'z') {
+                return token;
+            }
+        }
+
+        if (word.length < length) {
+            word = new char[length];
+        }
+        token.getChars(0, length, word, 0);
+        end = length - 1;
+
+        step1ab();
+        if (end > 0) {
+            step1c();
+            step2();
+            step3();
+            step4();
+            step5();
+        }
+
+        if (end == length - 1 && isUnchanged(token)) {
+            return token;
+        }
+        return new String(word, 0, end + 1);
+    }
+
+    /**
+     * Checks whether the buffer still holds a word of the same length, since
+     * some steps replace a suffix with one of the same length.
+     *
+     * @param token the word being stemmed
+     * @return true if no character was replaced, else false
+     */
+    private boolean isUnchanged(String token) {
+        for (int i = 0; i <= end; i++) {
+            if (word[i] != token.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the character at an index is a consonant. A y is a
+     * consonant at the start of the word or after a vowel.
+     *
+     * @param index the index of the character
+     * @return true if the character is a consonant, else false
+     */
+    private boolean isConsonant(int index) {
+        switch (word[index]) {
+            case 'a':
+            case 'e':
+            case 'i':
+            case 'o':
+            case 'u':
+                return false;
+            case 'y':
+                return index == 0 || !isConsonant(index - 1);
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Counts the vowel-consonant sequences in the stem before the matched
+     * suffix: the m of the algorithm, where the stem has the form
+     * [C](VC){m}[V].
+     *
+     * @return the number of vowel-consonant sequences
+     */
+    private int measure() {
+        int count = 0;
+        int index = 0;
+
+        while (true) {
+            if (index > stemEnd) {
+                return count;
+            }
+            if (!isConsonant(index)) {
+                break;
+            }
+            index++;
+        }
+        index++;
+
+        while (true) {
+            while (true) {
+                if (index > stemEnd) {
+                    return count;
+                }
+                if (isConsonant(index)) {
+                    break;
+                }
+                index++;
+            }
+            index++;
+            count++;
+
+            while (true) {
+                if (index > stemEnd) {
+                    return count;
+                }
+                if (!isConsonant(index)) {
+                    break;
+                }
+                index++;
+            }
+            index++;
+        }
+    }
+
+    /**
+     * Checks whether the stem before the matched suffix contains a vowel.
+     *
+     * @return true if there is a vowel, else false
+     */
+    private boolean stemHasVowel() {
+        for (int i = 0; i <= stemEnd; i++) {
+            if (!isConsonant(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the characters at an index and the one before it are
+     * the same consonant.
+     *
+     * @param index the index of the second character
+     * @return true if they are a double consonant, else false
+     */
+    private boolean isDoubleConsonant(int index) {
+        return index >= 1 && word[index] == word[index - 1]
+                && isConsonant(index);
+    }
+
+    /**
+     * Checks whether the characters ending at an index are
+     * consonant-vowel-consonant with the last consonant not w, x or y, as in
+     * "hop" but not "snow", which marks a short syllable.
+     *
+     * @param index the index of the last character
+     * @return true if the characters have the form, else false
+     */
+    private boolean isShortSyllable(int index) {
+        if (index < 2 || !isConsonant(index) || isConsonant(index - 1)
+                || !isConsonant(index - 2)) {
+            return false;
+        }
+        char last = word[index];
+        return last != 'w' && last != 'x' && last != 'y';
+    }
+
+    /**
+     * Checks whether the current stem ends with a suffix, and if so sets
+     * {@code stemEnd} to the index before it.
+     *
+     * @param suffix the suffix
+     * @return true if the stem ends with the suffix, else false
+     */
+    private boolean endsWith(String suffix) {
+        int length = suffix.length();
+        int start = end - length + 1;
+        if (start < 0) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (word[start + i] != suffix.charAt(i)) {
+                return false;
+            }
+        }
+        stemEnd = end - length;
+        return true;
+    }
+
+    /**
+     * Replaces the matched suffix with another.
+     *
+     * @param replacement the characters to put after the stem
+     */
+    private void setSuffix(String replacement) {
+        int length = replacement.length();
+        replacement.getChars(0, length, word, stemEnd + 1);
+        end = stemEnd + length;
+    }
+
+    /**
+     * Replaces the matched suffix when the stem has at least one
+     * vowel-consonant sequence.
+     *
+     * @param replacement the characters to put after the stem
+     */
+    private void replaceIfMeasured(String replacement) {
+        if (measure() > 0) {
+            setSuffix(replacement);
+        }
+    }
+
+    /**
+     * Removes plurals and -ed or -ing, as in "caresses" to "caress",
+     * "ponies" to "poni", "agreed" to "agree" and "hopping" to "hop".
+     */
+    private void step1ab() {
+        if (word[end] == 's') {
+            if (endsWith("sses")) {
+                end -= 2;
+            } else if (endsWith("ies")) {
+                setSuffix("i");
+            } else if (word[end - 1] != 's') {
+                end--;
+            }
+        }
+
+        if (endsWith("eed")) {
+            if (measure() > 0) {
+                end--;
+            }
+        } else if ((endsWith("ed") || endsWith("ing")) && stemHasVowel()) {
+            end = stemEnd;
+            if (endsWith("at")) {
+                setSuffix("ate");
+            } else if (endsWith("bl")) {
+                setSuffix("ble");
+            } else if (endsWith("iz")) {
+                setSuffix("ize");
+            } else if (isDoubleConsonant(end)) {
+                char last = word[end];
+                if (last != 'l' && last != 's' && last != 'z') {
+                    end--;
+                }
+            } else {
+                stemEnd = end;
+                if (measure() == 1 && isShortSyllable(end)) {
+                    setSuffix("e");
+                }
+            }
+        }
+    }
+
+    /**
+     * Turns a final y into i when there is another vowel in the stem.
+     */
+    private void step1c() {
+        if (endsWith("y") && stemHasVowel()) {
+            word[end] = 'i';
+        }
+    }
+
+    /**
+     * Maps double suffixes to single ones, as in "-ization" to "-ize".
+     */
+    private void step2() {
+        if (end < 1) {
+            return;
+        }
+        switch (word[end - 1]) {
+            case 'a':
+                if (endsWith("ational")) {
+                    replaceIfMeasured("ate");
+                } else if (endsWith("tional")) {
+                    replaceIfMeasured("tion");
+                }
+                break;
+            case 'c':
+                if (endsWith("enci")) {
+                    replaceIfMeasured("ence");
+                } else if (endsWith("anci")) {
+                    replaceIfMeasured("ance");
+                }
+                break;
+            case 'e':
+                if (endsWith("izer")) {
+                    replaceIfMeasured("ize");
+                }
+                break;
+            case 'l':
+                if (endsWith("bli")) {
+                    replaceIfMeasured("ble");
+                } else if (endsWith("alli")) {
+                    replaceIfMeasured("al");
+                } else if (endsWith("entli")) {
+                    replaceIfMeasured("ent");
+                } else if (endsWith("eli")) {
+                    replaceIfMeasured("e");
+                } else if (endsWith("ousli")) {
+                    replaceIfMeasured("ous");
+                }
+                break;
+            case 'o':
+                if (endsWith("ization")) {
+                    replaceIfMeasured("ize");
+                } else if (endsWith("ation")) {
+                    replaceIfMeasured("ate");
+                } else if (endsWith("ator")) {
+                    replaceIfMeasured("ate");
+                }
+                break;
+            case 's':
+                if (endsWith("alism")) {
+                    replaceIfMeasured("al");
+                } else if (endsWith("iveness")) {
+                    replaceIfMeasured("ive");
+                } else if (endsWith("fulness")) {
+                    replaceIfMeasured("ful");
+                } else if (endsWith("ousness")) {
+                    replaceIfMeasured("ous");
+                }
+                break;
+            case 't':
+                if (endsWith("aliti")) {
+                    replaceIfMeasured("al");
+                } else if (endsWith("iviti")) {
+                    replaceIfMeasured("ive");
+                } else if (endsWith("biliti")) {
+                    replaceIfMeasured("ble");
+                }
+                break;
+            case 'g':
+                if (endsWith("logi")) {
+                    replaceIfMeasured("log");
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Removes or simplifies -ic-, -full, -ness and similar suffixes.
+     */
+    private void step3() {
+        switch (word[end]) {
+            case 'e':
+                if (endsWith("icate")) {
+                    replaceIfMeasured("ic");
+                } else if (endsWith("ative")) {
+                    replaceIfMeasured("");
+                } else if (endsWith("alize")) {
+                    replaceIfMeasured("al");
+                }
+                break;
+            case 'i':
+                if (endsWith("iciti")) {
+                    replaceIfMeasured("ic");
+                }
+                break;
+            case 'l':
+                if (endsWith("ical")) {
+                    replaceIfMeasured("ic");
+                } else if (endsWith("ful")) {
+                    replaceIfMeasured("");
+                }
+                break;
+            case 's':
+                if (endsWith("ness")) {
+                    replaceIfMeasured("");
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Removes -ant, -ence and similar suffixes from stems with more than one
+     * vowel-consonant sequence.
+     */
+    private void step4() {
+        if (end < 1) {
+            return;
+        }
+        boolean matched;
+        switch (word[end - 1]) {
+            case 'a':
+                matched = endsWith("al");
+                break;
+            case 'c':
+                matched = endsWith("ance") || endsWith("ence");
+                break;
+            case 'e':
+                matched = endsWith("er");
+                break;
+            case 'i':
+                matched = endsWith("ic");
+                break;
+            case 'l':
+                matched = endsWith("able") || endsWith("ible");
+                break;
+            case 'n':
+                matched = endsWith("ant") || endsWith("ement")
+                        || endsWith("ment") || endsWith("ent");
+                break;
+            case 'o':
+                matched = (endsWith("ion") && stemEnd >= 0
+                        && (word[stemEnd] == 's' || word[stemEnd] == 't'))
+                        || endsWith("ou");
+                break;
+            case 's':
+                matched = endsWith("ism");
+                break;
+            case 't':
+                matched = endsWith("ate") || endsWith("iti");
+                break;
+            case 'u':
+                matched = endsWith("ous");
+                break;
+            case 'v':
+                matched = endsWith("ive");
+                break;
+            case 'z':
+                matched = endsWith("ize");
+                break;
+            default:
+                matched = false;
+                break;
+        }
+
+        if (matched && measure() > 1) {
+            end = stemEnd;
+        }
+    }
+
+    /**
+     * Removes a final -e and turns a final -ll into -l on long enough stems.
+     */
+    private void step5() {
+        stemEnd = end;
+        if (word[end] == 'e') {
+            int measure = measure();
+            if (measure > 1 || (measure == 1 && !isShortSyllable(end - 1))) {
+                end--;
+            }
+        }
+        if (word[end] == 'l' && isDoubleConsonant(end) && measure() > 1) {
+            end--;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package java112.analyzer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads another stream on a background thread so that producing the bytes
+ * (for example inflating a compressed file) overlaps with consuming them.
+ * The background thread fills buffers taken from a fixed pool and hands them
+ * over in order; each buffer goes back to the pool once it has been read, so
+ * no buffers are allocated after the stream is created.
+ *
+ * @author Ryan Chua
+ */
+public class PrefetchInputStream extends InputStream {
+
+    /** The stream read by the background thread                              */
+    private InputStream source;
+
+    /** Empty buffers waiting to be filled                                    */
+    private BlockingQueue<Chunk> emptyChunks;
+
+    /** Filled buffers waiting to be read, in stream order                    */
+    private BlockingQueue<Chunk> filledChunks;
+
+    /** The buffer currently being read, or null before the first read        */
+    private Chunk currentChunk;
+
+    /** The position of the next byte to read in {@code currentChunk}         */
+    private int position;
+
+    /** True once the end of the source has been reached                      */
+    private boolean endOfStream;
+
+    /** The thread reading the source                                         */
+    private Thread readerThread;
+
+    /**
+     * Creates a new {@code PrefetchInputStream} and starts reading the source
+     * on a background thread.
+     *
+     * @param source the stream to read ahead of the consumer
+     * @param bufferSize the size of each pooled buffer in bytes
+     * @param bufferCount the number of pooled buffers
+     */
+    public PrefetchInputStream(InputStream source, int bufferSize,
+            int bufferCount) {
+        this.source = source;
+        emptyChunks = new ArrayBlockingQueue<Chunk>(bufferCount);
+        filledChunks = new ArrayBlockingQueue<Chunk>(bufferCount + 1);
+
+        for (int i = 0; i < bufferCount; i++) {
+            emptyChunks.add(new Chunk(bufferSize));
+        }
+
+        readerThread = new Thread(this::fillChunks, "input-prefetch");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    /**
+     * Fills pooled buffers from the source until it is exhausted. Runs on the
+     * background thread. A failure is handed over in place of the next
+     * buffer, wrapped in an {@code IOException} if it is not one.
+     */
+    private void fillChunks() {
+        try {
+            while (true) {
+                Chunk chunk = emptyChunks.take();
+                chunk.length = 0;
+                int read = 0;
+                while (chunk.length < chunk.data.length && read != -1) {
+                    read = source.read(chunk.data, chunk.length,
+                            chunk.data.length - chunk.length);
+                    if (read > 0) {
+                        chunk.length += read;
+                    }
+                }
+
+                if (chunk.length > 0) {
+                    filledChunks.put(chunk);
+                }
+                if (read == -1) {
+                    filledChunks.put(Chunk.END);
+                    return;
+                }
+            }
+        } catch (InterruptedException interruptedException) {
+            // The stream was closed before the source was exhausted
+        } catch (IOException iOException) {
+            filledChunks.offer(new Chunk(iOException));
+        } catch (Throwable throwable) {
+            // Any other failure must still reach the reader, or it would
+            // wait for the next chunk forever
+            filledChunks.offer(new Chunk(new IOException("The input could "
+                    + "not be read ahead", throwable)));
+        }
+    }
+
+    /**
+     * Moves to the next filled buffer when the current one is used up.
+     *
+     * @return true if there are bytes to read, false at the end of the stream
+     * @throws IOException if the source could not be read
+     */
+    private boolean nextChunk() throws IOException {
+        if (endOfStream) {
+            return false;
+        }
+        if (currentChunk != null && position < currentChunk.length) {
+            return true;
+        }
+        if (currentChunk != null) {
+            emptyChunks.offer(currentChunk);
+            currentChunk = null;
+        }
+
+        try {
+            Chunk chunk = filledChunks.take();
+            if (chunk.failure != null) {
+                endOfStream = true;
+                throw chunk.failure;
+            }
+            if (chunk == Chunk.END) {
+                endOfStream = true;
+                return false;
+            }
+            currentChunk = chunk;
+            position = 0;
+            return true;
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for input",
+                    interruptedException);
+        }
+    }
+
+    /**
+     * Reads the next byte.
+     *
+     * @return the next byte, or -1 at the end of the stream
+     * @throws IOException if the source could not be read
+     */
+    @Override
+    public int read() throws IOException {
+        if (!nextChunk()) {
+            return -1;
+        }
+        return currentChunk.data[position++] & 0xFF;
+    }
+
+    /**
+     * Reads bytes from the current buffer into an array.
+     *
+     * @param buffer the array to read into
+     * @param offset the position in the array to start at
+     * @param length the largest number of bytes to read
+     * @return the number of bytes read, or -1 at the end of the stream
+     * @throws IOException if the source could not be read
+     */
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        int count = Math.min(length, currentChunk.length - position);
+        System.arraycopy(currentChunk.data, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    /**
+     * Stops the background thread and closes the source.
+     *
+     * @throws IOException if the source could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        endOfStream = true;
+        readerThread.interrupt();
+        source.close();
+        try {
+            readerThread.join();
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A pooled buffer and the number of bytes filled in it.
+     */
+    private static class Chunk {
+
+        /** Marks the end of the source                                       */
+        static final Chunk END = new Chunk(0);
+
+        /** The bytes read from the source                                    */
+        byte[] data;
+
+        /** The number of bytes filled in {@code data}                        */
+        int length;
+
+        /** The error which stopped the background thread, if any             */
+        IOException failure;
+
+        /**
+         * Creates a new empty buffer.
+         *
+         * @param size the size of the buffer in bytes
+         */
+        Chunk(int size) {
+            data = new byte[size];
+        }
+
+        /**
+         * Creates a marker reporting that the source could not be read.
+         *
+         * @param failure the error which stopped the background thread
+         */
+        Chunk(IOException failure) {
+            this(0);
+            this.failure = failure;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package java112.analyzer;
+
+import java.util.function.Consumer;
+
+/**
+ * Splits lines at each non-word character with a regular expression. This is
+ * the original tokenizer of the application.
+ *
+ * @author Ryan Chua
+ */
+public class RegexTokenizer implements Tokenizer {
+
+    /**
+     * Splits the line at each non-word character and passes the non-empty
+     * tokens to the consumer.
+     *
+     * @param line a single line of a text file to split into tokens
+     * @param consumer the receiver of each token
+     */
+    public void tokenize(String line, Consumer<String> consumer) {
+        for (String token : line.split("\\W")) {
+            if (token.length() != 0) {
+                consumer.accept(token);
+            }
+        }
+    }
+}
@@ -0,0 +1,459 @@
+package java112.analyzer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+/**
+ * Splits lines into tokens by configurable rules compiled into a
+ * table-driven automaton. The rules say which characters make up words and
+ * which joiners may appear inside a word:
+ *
+ * <ul>
+ *     <li>{@code tokenizer.rules.letters} - {@code ascii} for a to z only,
+ *         {@code unicode} for every Unicode letter, including accented and
+ *         CJK letters</li>
+ *     <li>{@code tokenizer.rules.digits} - {@code ascii} or {@code unicode}
+ *         decimal digits</li>
+ *     <li>{@code tokenizer.rules.marks} - true to keep combining marks in
+ *         words</li>
+ *     <li>{@code tokenizer.rules.underscore} - true to keep underscores in
+ *         words</li>
+ *     <li>{@code tokenizer.rules.apostrophes} - true to keep a single
+ *         apostrophe between two word characters, as in "don't"</li>
+ *     <li>{@code tokenizer.rules.hyphens} - true to keep a single hyphen
+ *         between two word characters, as in "well-known"</li>
+ * </ul>
+ *
+ * {@code tokenizer.rules.preset} gives the defaults: {@code unicode} enables
+ * every rule, and {@code legacy} keeps only ASCII letters, digits and the
+ * underscore, which produces exactly the tokens of {@code split("\\W")}.
+ *
+ * Every char of the Basic Multilingual Plane is classified with one lookup
+ * in a table built from the rules; characters outside it are classified as
+ * code points when their surrogate pair is reached. A small transition
+ * table then decides from the class and the current state whether a token
+ * starts, continues or ends.
+ *
+ * Streams are decoded in fixed-size chunks rather than lines. For text in
+ * UTF-8, ISO-8859-1 or US-ASCII the byte width of each decoded char is
+ * known, so the byte offset of each token is available from
+ * {@code getTokenOffset} while the token is being consumed.
+ *
+ * @author Ryan Chua
+ */
+public class RuleTokenizer implements Tokenizer {
+
+    /** A character which is never part of a token                            */
+    private static final byte OTHER = 0;
+
+    /** A character which is part of a word                                   */
+    private static final byte WORD = 1;
+
+    /** A joiner which may appear inside a word                               */
+    private static final byte JOINER = 2;
+
+    /** A surrogate, classified as a code point with its pair                 */
+    private static final byte SURROGATE = 3;
+
+    /** The number of character classes in the transition table               */
+    private static final int CLASSES = 3;
+
+    /** The state between tokens                                              */
+    private static final int OUTSIDE = 0;
+
+    /** The state inside a token, after a word character                      */
+    private static final int IN_WORD = 1;
+
+    /** The state inside a token, after a joiner                              */
+    private static final int AFTER_JOINER = 2;
+
+    /** The next state for each state and character class                     */
+    private static final int[] NEXT_STATES = {
+        // OTHER    WORD     JOINER
+        OUTSIDE,    IN_WORD, OUTSIDE,        // OUTSIDE
+        OUTSIDE,    IN_WORD, AFTER_JOINER,   // IN_WORD
+        OUTSIDE,    IN_WORD, OUTSIDE         // AFTER_JOINER
+    };
+
+    /** The apostrophes recognized as joiners                                 */
+    private static final String APOSTROPHES = "'\u2019";
+
+    /** The hyphens recognized as joiners                                     */
+    private static final String HYPHENS = "-\u2010";
+
+    /** The number of bytes or chars decoded from a stream at a time          */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /** The char shown for input which cannot be decoded                      */
+    private static final char REPLACEMENT = '\ufffd';
+
+    /** The class of each char of the Basic Multilingual Plane                */
+    private byte[] classes;
+
+    /** True if Unicode letters outside ASCII are word characters             */
+    private boolean unicodeLetters;
+
+    /** True if Unicode digits outside ASCII are word characters              */
+    private boolean unicodeDigits;
+
+    /** True if combining marks are word characters                           */
+    private boolean marks;
+
+    /** The byte offset of the token being consumed, or -1 if not known       */
+    private long tokenOffset = -1;
+
+    /**
+     * Creates a new {@code RuleTokenizer} with the legacy rules.
+     */
+    public RuleTokenizer() {
+        this(new Properties());
+    }
+
+    /**
+     * Creates a new {@code RuleTokenizer} and compiles its rules from the
+     * properties file.
+     *
+     * @param properties the properties object to read from
+     */
+    public RuleTokenizer(Properties properties) {
+        boolean unicodePreset = properties.getProperty(
+                "tokenizer.rules.preset", "legacy").equals("unicode");
+        String defaultScope = unicodePreset ? "unicode" : "ascii";
+        String defaultFlag = Boolean.toString(unicodePreset);
+
+        unicodeLetters = properties.getProperty("tokenizer.rules.letters",
+                defaultScope).equals("unicode");
+        unicodeDigits = properties.getProperty("tokenizer.rules.digits",
+                defaultScope).equals("unicode");
+        marks = Boolean.parseBoolean(properties.getProperty(
+                "tokenizer.rules.marks", defaultFlag));
+        boolean underscore = Boolean.parseBoolean(properties.getProperty(
+                "tokenizer.rules.underscore", "true"));
+        boolean apostrophes = Boolean.parseBoolean(properties.getProperty(
+                "tokenizer.rules.apostrophes", defaultFlag));
+        boolean hyphens = Boolean.parseBoolean(properties.getProperty(
+                "tokenizer.rules.hyphens", defaultFlag));
+
+        classes = new byte[Character.MAX_VALUE + 1];
+        for (int character = 0; character <= Character.MAX_VALUE;
+                character++) {
+            if (Character.isSurrogate((char) character)) {
+                classes[character] = SURROGATE;
+            } else if (isWordCodePoint(character)) {
+                classes[character] = WORD;
+            }
+        }
+        classes['_'] = underscore ? WORD : OTHER;
+        if (apostrophes) {
+            setClass(APOSTROPHES, JOINER);
+        }
+        if (hyphens) {
+            setClass(HYPHENS, JOINER);
+        }
+    }
+
+    /**
+     * Sets the class of each of a set of characters.
+     *
+     * @param characters the characters
+     * @param characterClass the class to give them
+     */
+    private void setClass(String characters, byte characterClass) {
+        for (int i = 0; i < characters.length(); i++) {
+            classes[characters.charAt(i)] = characterClass;
+        }
+    }
+
+    /**
+     * Checks whether a code point is a word character under the letter,
+     * digit and mark rules.
+     *
+     * @param codePoint the code point to check
+     * @return true if the code point is part of a word, else false
+     */
+    private boolean isWordCodePoint(int codePoint) {
+        if (codePoint < 128) {
+            return (codePoint >= 'a' && codePoint <= 'z')
+                    || (codePoint >= 'A' && codePoint <= 'Z')
+                    || (codePoint >= '0' && codePoint <= '9');
+        }
+        if (unicodeLetters && Character.isLetter(codePoint)) {
+            return true;
+        }
+        if (unicodeDigits && Character.isDigit(codePoint)) {
+            return true;
+        }
+        if (marks) {
+            int type = Character.getType(codePoint);
+            return type == Character.NON_SPACING_MARK
+                    || type == Character.COMBINING_SPACING_MARK
+                    || type == Character.ENCLOSING_MARK;
+        }
+        return false;
+    }
+
+    /**
+     * Passes each token of the line to the consumer. A joiner is only kept
+     * when a word character follows it.
+     *
+     * @param line a single line of a text file to split into tokens
+     * @param consumer the receiver of each token
+     */
+    public void tokenize(String line, Consumer<String> consumer) {
+        int length = line.length();
+        int state = OUTSIDE;
+        int start = 0;
+        int joiner = 0;
+        int position = 0;
+
+        while (position < length) {
+            char character = line.charAt(position);
+            int characterClass = classes[character];
+            int width = 1;
+            if (characterClass == SURROGATE) {
+                int codePoint = line.codePointAt(position);
+                width = Character.charCount(codePoint);
+                characterClass = width == 2 && isWordCodePoint(codePoint)
+                        ? WORD : OTHER;
+            }
+
+            int next = NEXT_STATES[state * CLASSES + characterClass];
+            if (state == OUTSIDE && next == IN_WORD) {
+                start = position;
+            } else if (state == IN_WORD && next == OUTSIDE) {
+                consumer.accept(line.substring(start, position));
+            } else if (state == AFTER_JOINER && next == OUTSIDE) {
+                consumer.accept(line.substring(start, joiner));
+            } else if (next == AFTER_JOINER) {
+                joiner = position;
+            }
+            state = next;
+            position += width;
+        }
+
+        if (state == IN_WORD) {
+            consumer.accept(line.substring(start, length));
+        } else if (state == AFTER_JOINER) {
+            consumer.accept(line.substring(start, joiner));
+        }
+    }
+
+    /**
+     * Decodes the input in chunks and passes each token to the consumer in
+     * order. Tokens which cross a chunk boundary are joined before they are
+     * passed on, and input which cannot be decoded ends the current token.
+     * The input is not closed.
+     *
+     * @param input the stream of text to tokenize
+     * @param charset the charset the text is encoded in
+     * @param consumer the receiver of each token
+     * @throws IOException if the input cannot be read
+     */
+    @Override
+    public void tokenize(InputStream input, Charset charset,
+            Consumer<String> consumer) throws IOException {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        StreamScanner scanner = new StreamScanner(consumer,
+                charset.equals(StandardCharsets.UTF_8),
+                ScanningTokenizer.isAsciiCompatible(charset));
+        ByteBuffer bytes = ByteBuffer.allocate(CHUNK_SIZE);
+        CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+        boolean endOfInput = false;
+
+        while (!endOfInput) {
+            int length = input.read(bytes.array(), bytes.position(),
+                    bytes.remaining());
+            if (length == -1) {
+                endOfInput = true;
+            } else {
+                bytes.position(bytes.position() + length);
+            }
+
+            bytes.flip();
+            CoderResult result;
+            do {
+                result = decoder.decode(bytes, chars, endOfInput);
+                scanner.scan(chars);
+                if (result.isError()) {
+                    // Skip the bytes which could not be decoded
+                    bytes.position(bytes.position() + result.length());
+                    scanner.step(OTHER, REPLACEMENT, result.length());
+                }
+            } while (!result.isUnderflow());
+            bytes.compact();
+        }
+
+        decoder.flush(chars);
+        scanner.scan(chars);
+        scanner.finish();
+    }
+
+    /**
+     * Gets the byte offset in the input stream of the token being consumed.
+     * Offsets are only tracked for text in UTF-8, ISO-8859-1 or US-ASCII.
+     *
+     * @return the byte offset of the token, or -1 if it is not known
+     */
+    @Override
+    public long getTokenOffset() {
+        return tokenOffset;
+    }
+
+    /**
+     * Runs the automaton over decoded chunks of a stream, keeping the state
+     * and the partial token between chunks and counting the bytes each char
+     * was decoded from.
+     */
+    private class StreamScanner {
+
+        /** The receiver of each token                                        */
+        private Consumer<String> consumer;
+
+        /** True if the chars were decoded from UTF-8                         */
+        private boolean utf8;
+
+        /** True if the byte width of each char is known                      */
+        private boolean tracked;
+
+        /** The chars of the current token                                    */
+        private StringBuilder token;
+
+        /** The state of the automaton                                        */
+        private int state;
+
+        /** The length of the token before its last joiner                    */
+        private int joinerLength;
+
+        /** The byte offset of the current token                              */
+        private long start;
+
+        /** The byte offset of the next char                                  */
+        private long offset;
+
+        /**
+         * Creates a new {@code StreamScanner} outside any token.
+         *
+         * @param consumer the receiver of each token
+         * @param utf8 true if the chars were decoded from UTF-8
+         * @param tracked true if the byte width of each char is known
+         */
+        StreamScanner(Consumer<String> consumer, boolean utf8,
+                boolean tracked) {
+            this.consumer = consumer;
+            this.utf8 = utf8;
+            this.tracked = tracked;
+            token = new StringBuilder();
+            state = OUTSIDE;
+        }
+
+        /**
+         * Scans the decoded chars and empties the buffer. A surrogate pair is
+         * classified as one code point; the decoder never splits a pair
+         * between two chunks.
+         *
+         * @param chars the buffer the decoder wrote to
+         */
+        void scan(CharBuffer chars) {
+            chars.flip();
+            while (chars.hasRemaining()) {
+                char character = chars.get();
+                int characterClass = classes[character];
+                int codePoint = character;
+                int width = width(character);
+                if (characterClass == SURROGATE) {
+                    characterClass = OTHER;
+                    if (Character.isHighSurrogate(character)
+                            && chars.hasRemaining()
+                            && Character.isLowSurrogate(chars.get(
+                            chars.position()))) {
+                        char low = chars.get();
+                        codePoint = Character.toCodePoint(character, low);
+                        width += width(low);
+                        if (isWordCodePoint(codePoint)) {
+                            characterClass = WORD;
+                        }
+                    }
+                }
+                step(characterClass, codePoint, width);
+            }
+            chars.clear();
+        }
+
+        /**
+         * Moves the automaton on by one code point, passing on the token it
+         * ends, as {@code tokenize(String, Consumer)} does for a line.
+         *
+         * @param characterClass the class of the code point
+         * @param codePoint the code point
+         * @param width the number of bytes it was decoded from
+         */
+        void step(int characterClass, int codePoint, int width) {
+            int next = NEXT_STATES[state * CLASSES + characterClass];
+            if (state == OUTSIDE && next == IN_WORD) {
+                start = offset;
+            } else if (state == IN_WORD && next == OUTSIDE) {
+                accept();
+            } else if (state == AFTER_JOINER && next == OUTSIDE) {
+                token.setLength(joinerLength);
+                accept();
+            } else if (next == AFTER_JOINER) {
+                joinerLength = token.length();
+            }
+            if (next != OUTSIDE) {
+                token.appendCodePoint(codePoint);
+            }
+            state = next;
+            offset += width;
+        }
+
+        /**
+         * Passes on the token the end of the input leaves open.
+         */
+        void finish() {
+            if (state == AFTER_JOINER) {
+                token.setLength(joinerLength);
+            }
+            if (state != OUTSIDE) {
+                accept();
+            }
+            state = OUTSIDE;
+        }
+
+        /**
+         * Passes the current token to the consumer with its offset.
+         */
+        private void accept() {
+            tokenOffset = tracked ? start : -1;
+            consumer.accept(token.toString());
+            token.setLength(0);
+        }
+
+        /**
+         * Gets the number of bytes a char was decoded from. Each half of a
+         * surrogate pair counts for half of its four UTF-8 bytes.
+         *
+         * @param character the decoded char
+         * @return the number of bytes
+         */
+        private int width(char character) {
+            if (!utf8 || character < 0x80) {
+                return 1;
+            } else if (character < 0x800 || Character.isSurrogate(character)) {
+                return 2;
+            } else {
+                return 3;
+            }
+        }
+    }
+}
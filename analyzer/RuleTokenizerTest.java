@@ -0,0 +1,260 @@
+package java112.analyzer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Unit testing for {@link RuleTokenizer}. The legacy preset must produce
+ * exactly the same tokens as {@link RegexTokenizer}.
+ *
+ * @author Ryan Chua
+ */
+public class RuleTokenizerTest {
+
+    /**
+     * Runs tests on methods used in {@code RuleTokenizer}.
+     *
+     * @param args the command line arguments (not used)
+     */
+    public static void main(String[] args) {
+        RuleTokenizerTest test = new RuleTokenizerTest();
+
+        boolean legacyFailed = test.testLegacyPreset();
+        boolean unicodeFailed = test.testUnicodePreset();
+        boolean streamFailed = test.testTokenizeStream();
+        System.out.println();
+
+        if (legacyFailed) {
+            System.out.println("tokenize with the legacy preset failed "
+                    + "testing");
+        }
+
+        if (unicodeFailed) {
+            System.out.println("tokenize with the unicode preset failed "
+                    + "testing");
+        }
+
+        if (streamFailed) {
+            System.out.println("tokenize from a stream failed testing");
+        }
+    }
+
+    /**
+     * Tests the legacy preset against the regular expression tokenizer on
+     * every char value and on mixed lines.
+     *
+     * @return true if the test fails, else false
+     */
+    public boolean testLegacyPreset() {
+        Tokenizer expectedTokenizer = new RegexTokenizer();
+        Tokenizer actualTokenizer = new RuleTokenizer();
+        StringBuilder everyChar = new StringBuilder();
+        for (int i = Character.MIN_VALUE; i <= Character.MAX_VALUE; i++) {
+            everyChar.append((char) i).append("a").append((char) i);
+        }
+        String[] testLines = {everyChar.toString(), "", "  two   words  ",
+                "don't stop-me now", "caf\u00e9 na\u00efve \u65e5\u672c",
+                "snake_case and x1y2", "emoji \ud83d\ude00 split"};
+        int failures = 0;
+
+        System.out.println();
+        System.out.println("Testing the legacy preset:");
+
+        for (int i = 0; i < testLines.length; i++) {
+            List<String> expected = new ArrayList<String>();
+            List<String> actual = new ArrayList<String>();
+            expectedTokenizer.tokenize(testLines[i], expected::add);
+            actualTokenizer.tokenize(testLines[i], actual::add);
+            if (!expected.equals(actual)) {
+                System.out.println("    Failed for line " + (i + 1));
+                failures++;
+            }
+        }
+
+        if (failures > 0) {
+            System.out.println("Legacy preset: Failed");
+            return true;
+        } else {
+            System.out.println("Legacy preset: Success");
+            return false;
+        }
+    }
+
+    /**
+     * Tests the unicode preset on accented, CJK, supplementary, apostrophe
+     * and hyphen tokens.
+     *
+     * @return true if any test fails, else false
+     */
+    public boolean testUnicodePreset() {
+        int successes = 0;
+        int failures = 0;
+
+        // Create test objects
+        Properties properties = new Properties();
+        properties.setProperty("tokenizer.rules.preset", "unicode");
+        Tokenizer tokenizer = new RuleTokenizer(properties);
+
+        String[] testLines = {"caf\u00e9 na\u00efve",
+                "\u65e5\u672c\u8a9e text",
+                "don't stop-me now", "rock--roll 'quoted' end- -start",
+                "it\u2019s well\u2010known", "cafe\u0301 \u0661\u0662 x",
+                "\ud835\udc00\ud835\udc01 \ud83d\ude00 split"};
+        List<List<String>> expectedTokens = Arrays.asList(
+                Arrays.asList("caf\u00e9", "na\u00efve"),
+                Arrays.asList("\u65e5\u672c\u8a9e", "text"),
+                Arrays.asList("don't", "stop-me", "now"),
+                Arrays.asList("rock", "roll", "quoted", "end", "start"),
+                Arrays.asList("it\u2019s", "well\u2010known"),
+                Arrays.asList("cafe\u0301", "\u0661\u0662", "x"),
+                Arrays.asList("\ud835\udc00\ud835\udc01", "split"));
+
+        // Compare expected v. actual and display results
+        System.out.println();
+        System.out.println("Testing the unicode preset");
+
+        for (int i = 0; i < testLines.length; i++) {
+            List<String> actual = new ArrayList<String>();
+            tokenizer.tokenize(testLines[i], actual::add);
+
+            if (expectedTokens.get(i).equals(actual)) {
+                System.out.println("Test " + (i + 1) + ": Success");
+                successes++;
+            } else {
+                System.out.println("Test " + (i + 1) + ": Failed");
+                System.out.println("    Expected: " + expectedTokens.get(i));
+                System.out.println("    Actual:   " + actual);
+                failures++;
+            }
+        }
+
+        System.out.println();
+        System.out.println("Successful tests: " + successes + "/"
+                + (successes + failures));
+        System.out.println("Failed tests: " + failures + "/"
+                + (successes + failures));
+
+        if (failures > 0) {
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Tests tokenizing streams that arrive a few bytes at a time against
+     * tokenizing each line. In UTF-8 and ISO-8859-1 the offset of each token
+     * must be where its bytes start; bytes which are not valid UTF-8 end a
+     * token, as their replacement char does in a line.
+     *
+     * @return true if the test fails, else false
+     */
+    public boolean testTokenizeStream() {
+        Properties properties = new Properties();
+        properties.setProperty("tokenizer.rules.preset", "unicode");
+        Tokenizer tokenizer = new RuleTokenizer(properties);
+        String text = "  don't caf\u00e9\nwell\u2010known, \u65e5\u672c "
+                + "\ud835\udc00\ud835\udc01x end- -start it'";
+        Charset[] charsets = {StandardCharsets.UTF_8,
+                StandardCharsets.ISO_8859_1, StandardCharsets.UTF_16};
+        List<String> failures = new ArrayList<String>();
+
+        System.out.println();
+        System.out.println("Testing tokenize from a stream:");
+
+        for (Charset charset : charsets) {
+            byte[] bytes = text.getBytes(charset);
+            String decoded = new String(bytes, charset);
+            checkStream(tokenizer, decoded, bytes, charset, failures);
+        }
+
+        // A lone continuation byte and a truncated sequence at the end
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        byte[] malformed = new byte[utf8.length + 4];
+        System.arraycopy(utf8, 0, malformed, 0, 10);
+        malformed[10] = (byte) 0x80;
+        System.arraycopy(utf8, 10, malformed, 11, utf8.length - 10);
+        malformed[utf8.length + 1] = 'a';
+        malformed[utf8.length + 2] = (byte) 0xE6;
+        malformed[utf8.length + 3] = (byte) 0x97;
+        checkStream(tokenizer, new String(malformed, StandardCharsets.UTF_8),
+                malformed, StandardCharsets.UTF_8, failures);
+
+        if (failures.size() > 0) {
+            System.out.println("    Failed for " + failures);
+            System.out.println("Stream tokens: Failed");
+            return true;
+        } else {
+            System.out.println("Stream tokens: Success");
+            return false;
+        }
+    }
+
+    /**
+     * Tokenizes a stream and compares its tokens with those of the decoded
+     * lines, and each offset with the bytes of its token when offsets are
+     * tracked for the charset.
+     *
+     * @param tokenizer the tokenizer
+     * @param decoded the decoded text
+     * @param bytes the encoded text
+     * @param charset the charset of the bytes
+     * @param failures the list to add a description of each failure to
+     */
+    private void checkStream(Tokenizer tokenizer, String decoded,
+            byte[] bytes, Charset charset, List<String> failures) {
+        List<String> expected = new ArrayList<String>();
+        for (String line : decoded.split("\n")) {
+            tokenizer.tokenize(line, expected::add);
+        }
+        boolean tracked = !charset.equals(StandardCharsets.UTF_16);
+        List<String> actual = new ArrayList<String>();
+
+        try {
+            tokenizer.tokenize(new TrickleInputStream(bytes), charset,
+                    token -> {
+                actual.add(token);
+                long offset = tokenizer.getTokenOffset();
+                byte[] tokenBytes = token.getBytes(charset);
+                if (tracked ? (offset < 0 || !new String(bytes, (int) offset,
+                        tokenBytes.length, charset).equals(token))
+                        : offset != -1) {
+                    failures.add(charset + " " + token + " at " + offset);
+                }
+            });
+        } catch (IOException iOException) {
+            iOException.printStackTrace();
+            failures.add("IOException");
+        }
+
+        if (!expected.equals(actual)) {
+            failures.add(charset + " tokens " + actual);
+        }
+    }
+
+    /**
+     * A stream which returns at most three bytes from each read.
+     */
+    private static class TrickleInputStream extends ByteArrayInputStream {
+
+        /**
+         * Creates a new {@code TrickleInputStream} over an array of bytes.
+         *
+         * @param bytes the bytes to read
+         */
+        TrickleInputStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public synchronized int read(byte[] buffer, int offset, int length) {
+            return super.read(buffer, offset, Math.min(length, 3));
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package java112.analyzer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estimates the token total, lexical density and mean token length of a
+ * large file from a random sample of its blocks instead of reading all of
+ * it.
+ *
+ * The file is divided into blocks of {@code sample.block.kb} kilobytes.
+ * Blocks are chosen at random without replacement and read with positioned
+ * reads until {@code sample.fraction} of them have been read or
+ * {@code sample.seconds} have passed. Each block is moved to the next byte
+ * after an ASCII space or control character at both ends, which no
+ * tokenizer keeps in a token, so every token belongs to exactly one block
+ * and no token is cut in half. The summary, lexical
+ * density and token lengths analyzers process the sampled tokens, normalized
+ * as in a full run, and the summary report gives each estimate with a 95%
+ * confidence interval.
+ *
+ * Totals are estimated as the number of blocks times the mean per block;
+ * the density and mean length are ratio estimates. Both use the finite
+ * population correction, so the intervals narrow to nothing as the whole
+ * file is sampled.
+ *
+ * @author Ryan Chua
+ */
+public class SampledAnalysis {
+
+    /** The analyzers run on the sample                                       */
+    private static final String[] SAMPLED_ANALYZERS = {"summary",
+            "lexical.density", "token.lengths"};
+
+    /** The normal quantile of a 95% confidence interval                      */
+    private static final double Z_95 = 1.96;
+
+    /** The most bytes a block is extended by to reach a token boundary       */
+    private static final int MAX_ALIGNMENT = 64 * 1024;
+
+    /** Creates the tokenizer and the analyzers                               */
+    private FileAnalysis analysis;
+
+    /** The properties object to read from                                    */
+    private Properties properties;
+
+    /** The fraction of the blocks to read                                    */
+    private double fraction;
+
+    /** The time allowed for reading in nanoseconds, or 0 for no limit        */
+    private long budgetNanos;
+
+    /** The size of each block in bytes                                       */
+    private int blockSize;
+
+    /** Chooses the blocks to read                                            */
+    private SplittableRandom random;
+
+    /** The analyzers run on the sample                                       */
+    private List<TokenAnalyzer> analyzers;
+
+    /** Normalizes each sampled token, or null if not configured              */
+    private TokenNormalizer normalizer;
+
+    /** The lexical density analyzer, or null if it is disabled               */
+    private LexicalDensityAnalyzer lexicalDensity;
+
+    /** The number of blocks in the file                                      */
+    private long blockCount;
+
+    /** The tokens in each sampled block                                      */
+    private List<Long> blockTokens;
+
+    /** The lexical tokens in each sampled block                              */
+    private List<Long> blockLexicalTokens;
+
+    /** The total token length of each sampled block                          */
+    private List<Long> blockLengths;
+
+    /** The tokens of the block being read                                    */
+    private long tokens;
+
+    /** The total token length of the block being read                        */
+    private long lengths;
+
+    /**
+     * Creates a new {@code SampledAnalysis}. Reads the sample size from
+     * {@code sample.fraction} and {@code sample.seconds}, the block size from
+     * {@code sample.block.kb} and the random seed from {@code sample.seed}.
+     *
+     * @param analysis the analysis which creates the analyzers
+     * @param properties the properties object to read from
+     */
+    public SampledAnalysis(FileAnalysis analysis, Properties properties) {
+        this.analysis = analysis;
+        this.properties = properties;
+        fraction = Double.parseDouble(properties.getProperty(
+                "sample.fraction", "0"));
+        budgetNanos = TimeUnit.MILLISECONDS.toNanos((long) (1000
+                * Double.parseDouble(properties.getProperty(
+                "sample.seconds", "0"))));
+        blockSize = 1024 * Integer.parseInt(properties.getProperty(
+                "sample.block.kb", "1024"));
+        random = new SplittableRandom(Long.parseLong(properties.getProperty(
+                "sample.seed", "1")));
+        blockTokens = new ArrayList<Long>();
+        blockLexicalTokens = new ArrayList<Long>();
+        blockLengths = new ArrayList<Long>();
+
+        if (TokenNormalizer.isEnabled(properties)) {
+            normalizer = new TokenNormalizer(properties);
+        }
+
+        analyzers = new ArrayList<TokenAnalyzer>();
+        for (String name : SAMPLED_ANALYZERS) {
+            if (analysis.isAnalyzerEnabled(properties, name)) {
+                analyzers.add(analysis.builtInAnalyzers().get(name)
+                        .apply(properties));
+            }
+        }
+        for (TokenAnalyzer analyzer : analyzers) {
+            if (analyzer instanceof LexicalDensityAnalyzer) {
+                lexicalDensity = (LexicalDensityAnalyzer) analyzer;
+            } else if (analyzer instanceof FileSummaryAnalyzer) {
+                ((FileSummaryAnalyzer) analyzer).setSample(this);
+                if (normalizer != null) {
+                    ((FileSummaryAnalyzer) analyzer).setNormalizer(
+                            normalizer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether sampling is configured in the properties file.
+     *
+     * @param properties the properties object to read from
+     * @return true if {@code sample.fraction} or {@code sample.seconds} is
+     *         positive, else false
+     */
+    public static boolean isEnabled(Properties properties) {
+        return Double.parseDouble(properties.getProperty("sample.fraction",
+                "0")) > 0 || Double.parseDouble(properties.getProperty(
+                "sample.seconds", "0")) > 0;
+    }
+
+    /**
+     * Checks whether a charset encodes every ASCII character as the same
+     * single byte, so blocks can be aligned without decoding them.
+     *
+     * @param charset the charset of the input file
+     * @return true if the file can be sampled, else false
+     */
+    public static boolean canSample(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8)
+                || charset.equals(StandardCharsets.ISO_8859_1)
+                || charset.equals(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Reads the sample of the file and writes the reports of the sampled
+     * analyzers.
+     *
+     * @param fileName the name of the file to sample
+     * @param tokenizer the tokenizer to split each block with
+     * @param charset the charset of the file
+     */
+    public void analyze(String fileName, Tokenizer tokenizer,
+            Charset charset) {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName),
+                StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            blockCount = Math.max(1, (fileSize + blockSize - 1) / blockSize);
+            long target = Math.max(Math.min(2, blockCount),
+                    (long) Math.ceil(fraction * blockCount));
+            if (fraction <= 0) {
+                target = blockCount;
+            }
+
+            long start = System.nanoTime();
+            Map<Long, Long> swapped = new HashMap<Long, Long>();
+            for (long sampled = 0; sampled < Math.min(target, blockCount);
+                    sampled++) {
+                // One step of a Fisher-Yates shuffle of the block numbers
+                long chosen = sampled + random.nextLong(blockCount - sampled);
+                long block = swapped.getOrDefault(chosen, chosen);
+                swapped.put(chosen, swapped.getOrDefault(sampled, sampled));
+
+                analyzeBlock(channel, block, fileSize, tokenizer, charset);
+                if (budgetNanos > 0 && sampled >= 1
+                        && System.nanoTime() - start >= budgetNanos) {
+                    break;
+                }
+            }
+        } catch (IOException iOException) {
+            System.out.println("There was a problem sampling the file");
+            iOException.printStackTrace();
+        } catch (Exception exception) {
+            System.out.println("There was a problem sampling the file");
+            exception.printStackTrace();
+        }
+        analysis.writeOutputFiles(analyzers, fileName);
+    }
+
+    /**
+     * Reads one block and passes its tokens to the analyzers, recording the
+     * block's counts for the estimates.
+     *
+     * @param channel the file being sampled
+     * @param block the number of the block to read
+     * @param fileSize the size of the file in bytes
+     * @param tokenizer the tokenizer to split the block with
+     * @param charset the charset of the file
+     * @throws IOException if the file cannot be read
+     */
+    private void analyzeBlock(FileChannel channel, long block, long fileSize,
+            Tokenizer tokenizer, Charset charset) throws IOException {
+        long start = align(channel, block * blockSize, fileSize);
+        long end = align(channel, Math.min(fileSize, (block + 1) * blockSize),
+                fileSize);
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0,
+                end - start));
+        while (buffer.hasRemaining()
+                && channel.read(buffer, start + buffer.position()) != -1) {
+            // Positioned reads until the block is filled
+        }
+
+        long lexicalBefore = 0;
+        if (lexicalDensity != null) {
+            lexicalBefore = lexicalDensity.getLexicalTokens();
+        }
+        tokens = 0;
+        lengths = 0;
+        tokenizer.tokenize(new ByteArrayInputStream(buffer.array(), 0,
+                buffer.position()), charset, this::processToken);
+
+        blockTokens.add(tokens);
+        blockLengths.add(lengths);
+        if (lexicalDensity != null) {
+            blockLexicalTokens.add(lexicalDensity.getLexicalTokens()
+                    - lexicalBefore);
+        }
+    }
+
+    /**
+     * Moves a position forward to the next token boundary: the start or end
+     * of the file, or the byte after an ASCII space or control character.
+     * Gives up after {@code MAX_ALIGNMENT} bytes, which only a single giant
+     * token could need.
+     *
+     * @param channel the file being read
+     * @param position the position to align
+     * @param fileSize the size of the file in bytes
+     * @return the aligned position
+     * @throws IOException if the file cannot be read
+     */
+    public static long align(FileChannel channel, long position, long fileSize)
+            throws IOException {
+        if (position == 0 || position >= fileSize) {
+            return Math.min(position, fileSize);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(MAX_ALIGNMENT,
+                fileSize - position + 1));
+        channel.read(buffer, position - 1);
+        for (int i = 0; i < buffer.position(); i++) {
+            byte value = buffer.get(i);
+            if (value >= 0 && value <= ' ') {
+                return position + i;
+            }
+        }
+        return Math.min(fileSize, position + buffer.position() - 1);
+    }
+
+    /**
+     * Normalizes the token if a normalizer is configured, counts it for the
+     * current block and passes it to each analyzer.
+     *
+     * @param token the token for each analyzer to process
+     */
+    private void processToken(String token) {
+        if (normalizer != null) {
+            token = normalizer.normalize(token);
+        }
+        tokens++;
+        lengths += token.length();
+        for (TokenAnalyzer analyzer : analyzers) {
+            analyzer.processToken(token);
+        }
+    }
+
+    /**
+     * Gets the lines describing the sample and its estimates for the summary
+     * report.
+     *
+     * @return the lines to add to the summary report
+     */
+    public List<String> getEstimateLines() {
+        List<String> lines = new ArrayList<String>();
+        DecimalFormat percent = new DecimalFormat("0.00%");
+        DecimalFormat decimal = new DecimalFormat("0.00");
+        int sampled = blockTokens.size();
+        double sampledFraction = (double) sampled / blockCount;
+
+        lines.add("Sampled Blocks: " + sampled + " of " + blockCount + " ("
+                + percent.format(sampledFraction) + ") of " + blockSize / 1024
+                + " KB");
+        if (sampled == 0) {
+            return lines;
+        }
+
+        double meanTokens = mean(blockTokens);
+        double tokenError = Z_95 * blockCount * Math.sqrt((1 - sampledFraction)
+                * variance(blockTokens, null, 0) / sampled);
+        lines.add("Estimated Total Tokens: " + Math.round(meanTokens
+                * blockCount) + " +/- " + Math.round(tokenError));
+
+        if (meanTokens > 0 && !blockLexicalTokens.isEmpty()) {
+            double density = mean(blockLexicalTokens) / meanTokens;
+            lines.add("Estimated Lexical Density: " + percent.format(density)
+                    + " +/- " + percent.format(ratioError(blockLexicalTokens,
+                    density, meanTokens, sampledFraction)));
+        }
+        if (meanTokens > 0) {
+            double meanLength = mean(blockLengths) / meanTokens;
+            lines.add("Estimated Mean Token Length: "
+                    + decimal.format(meanLength) + " +/- "
+                    + decimal.format(ratioError(blockLengths, meanLength,
+                    meanTokens, sampledFraction)));
+        }
+        return lines;
+    }
+
+    /**
+     * Gets the half-width of the 95% confidence interval of a ratio estimate
+     * of some per-token quantity.
+     *
+     * @param values the quantity summed over each sampled block
+     * @param ratio the estimated ratio of the quantity to tokens
+     * @param meanTokens the mean tokens per sampled block
+     * @param sampledFraction the fraction of the blocks sampled
+     * @return the half-width of the interval
+     */
+    private double ratioError(List<Long> values, double ratio,
+            double meanTokens, double sampledFraction) {
+        return Z_95 / meanTokens * Math.sqrt((1 - sampledFraction)
+                * variance(values, blockTokens, ratio) / values.size());
+    }
+
+    /**
+     * Gets the mean of the values.
+     *
+     * @param values the values
+     * @return the mean
+     */
+    private static double mean(List<Long> values) {
+        double sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum / values.size();
+    }
+
+    /**
+     * Gets the sample variance of the values, or of their residuals from a
+     * ratio to the token counts when {@code tokens} is not null.
+     *
+     * @param values the values
+     * @param tokens the token count of each block, or null
+     * @param ratio the ratio of the values to the token counts
+     * @return the sample variance, or 0 for fewer than two values
+     */
+    private static double variance(List<Long> values, List<Long> tokens,
+            double ratio) {
+        if (values.size() < 2) {
+            return 0;
+        }
+
+        double mean = tokens == null ? mean(values) : 0;
+        double sum = 0;
+        for (int i = 0; i < values.size(); i++) {
+            double residual = values.get(i) - mean;
+            if (tokens != null) {
+                residual -= ratio * tokens.get(i);
+            }
+            sum += residual * residual;
+        }
+        return sum / (values.size() - 1);
+    }
+}
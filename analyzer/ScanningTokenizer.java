@@ -0,0 +1,235 @@
+package java112.analyzer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Splits lines at each non-word character by scanning the characters once.
+ * Produces exactly the same tokens as {@code line.split("\\W")} without the
+ * regular expression engine or the intermediate array.
+ *
+ * Word characters are {@code [a-zA-Z_0-9]}. Membership is tested against two
+ * 64-bit masks covering the ASCII range, so classifying a character is a
+ * shift and a bit test with no table lookups or range comparisons.
+ *
+ * Streams are read in fixed-size chunks rather than lines. Because every word
+ * character is ASCII, text in US-ASCII, ISO-8859-1 or UTF-8 is scanned as raw
+ * bytes with no decoding at all: bytes of 128 and above, including every byte
+ * of a multi-byte UTF-8 sequence, are always delimiters. Other charsets are
+ * decoded chunk by chunk with a streaming decoder. When the bytes are
+ * scanned directly, the byte offset of each token is available from
+ * {@code getTokenOffset} while the token is being consumed.
+ *
+ * @author Ryan Chua
+ */
+public class ScanningTokenizer implements Tokenizer {
+
+    /** The word characters between 0 and 63: the digits                      */
+    private static final long WORD_CHARS_LOW = 0x03FF000000000000L;
+
+    /** The word characters between 64 and 127: letters and underscore        */
+    private static final long WORD_CHARS_HIGH = 0x07FFFFFE87FFFFFEL;
+
+    /** The number of bytes or chars read from a stream at a time             */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /** The byte offset of the token being consumed, or -1 if not known       */
+    private long tokenOffset = -1;
+
+    /**
+     * Checks whether a character is a regular expression word character.
+     *
+     * @param character the character to check
+     * @return true if the character is in {@code [a-zA-Z_0-9]}, else false
+     */
+    public static boolean isWordChar(char character) {
+        if (character >= 128) {
+            return false;
+        }
+        long mask = (character < 64) ? WORD_CHARS_LOW : WORD_CHARS_HIGH;
+        return ((mask >>> (character & 63)) & 1) != 0;
+    }
+
+    /**
+     * Passes each run of word characters in the line to the consumer.
+     *
+     * @param line a single line of a text file to split into tokens
+     * @param consumer the receiver of each token
+     */
+    public void tokenize(String line, Consumer<String> consumer) {
+        int length = line.length();
+        int position = 0;
+
+        while (position < length) {
+            // Skip delimiters up to the start of the next token
+            while (position < length && !isWordChar(line.charAt(position))) {
+                position++;
+            }
+            int start = position;
+            while (position < length && isWordChar(line.charAt(position))) {
+                position++;
+            }
+            if (position > start) {
+                consumer.accept(line.substring(start, position));
+            }
+        }
+    }
+
+    /**
+     * Reads the input in chunks and passes each token to the consumer in
+     * order. Tokens which cross a chunk boundary are joined before they are
+     * passed on. The input is not closed.
+     *
+     * @param input the stream of text to tokenize
+     * @param charset the charset the text is encoded in
+     * @param consumer the receiver of each token
+     * @throws IOException if the input cannot be read
+     */
+    @Override
+    public void tokenize(InputStream input, Charset charset,
+            Consumer<String> consumer) throws IOException {
+        if (isAsciiCompatible(charset)) {
+            tokenizeBytes(input, consumer);
+        } else {
+            tokenizeChars(new InputStreamReader(input, charset), consumer);
+        }
+    }
+
+    /**
+     * Checks whether every word character of a charset is encoded as a single
+     * ASCII byte and no other byte sequence contains an ASCII byte.
+     *
+     * @param charset the charset to check
+     * @return true if the text can be tokenized without decoding, else false
+     */
+    public static boolean isAsciiCompatible(Charset charset) {
+        return charset.equals(StandardCharsets.US_ASCII)
+                || charset.equals(StandardCharsets.ISO_8859_1)
+                || charset.equals(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Tokenizes raw bytes. Each token is ASCII, so it is turned into a string
+     * with a plain Latin-1 copy.
+     *
+     * @param input the stream of text to tokenize
+     * @param consumer the receiver of each token
+     * @throws IOException if the input cannot be read
+     */
+    private void tokenizeBytes(InputStream input, Consumer<String> consumer)
+            throws IOException {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        StringBuilder partialToken = new StringBuilder();
+        long chunkOffset = 0;
+        long partialOffset = 0;
+        int length = input.read(chunk);
+
+        while (length != -1) {
+            int position = 0;
+            while (position < length) {
+                while (position < length && !isWordChar((char) (chunk[position]
+                        & 0xFF))) {
+                    position++;
+                }
+                if (position > 0 && partialToken.length() != 0) {
+                    // The token from the previous chunk ended at its boundary
+                    tokenOffset = partialOffset;
+                    consumer.accept(partialToken.toString());
+                    partialToken.setLength(0);
+                }
+                int start = position;
+                while (position < length && isWordChar((char) (chunk[position]
+                        & 0xFF))) {
+                    position++;
+                }
+                if (position == length) {
+                    if (partialToken.length() == 0) {
+                        partialOffset = chunkOffset + start;
+                    }
+                    partialToken.append(new String(chunk, start,
+                            position - start, StandardCharsets.ISO_8859_1));
+                } else if (partialToken.length() != 0) {
+                    partialToken.append(new String(chunk, start,
+                            position - start, StandardCharsets.ISO_8859_1));
+                    tokenOffset = partialOffset;
+                    consumer.accept(partialToken.toString());
+                    partialToken.setLength(0);
+                } else if (position > start) {
+                    tokenOffset = chunkOffset + start;
+                    consumer.accept(new String(chunk, start, position - start,
+                            StandardCharsets.ISO_8859_1));
+                }
+            }
+            chunkOffset += length;
+            length = input.read(chunk);
+        }
+
+        if (partialToken.length() != 0) {
+            tokenOffset = partialOffset;
+            consumer.accept(partialToken.toString());
+        }
+    }
+
+    /**
+     * Tokenizes text decoded by a reader, one chunk of chars at a time.
+     *
+     * @param reader the decoded text to tokenize
+     * @param consumer the receiver of each token
+     * @throws IOException if the input cannot be read
+     */
+    private void tokenizeChars(Reader reader, Consumer<String> consumer)
+            throws IOException {
+        tokenOffset = -1;
+        char[] chunk = new char[CHUNK_SIZE];
+        StringBuilder partialToken = new StringBuilder();
+        int length = reader.read(chunk);
+
+        while (length != -1) {
+            int position = 0;
+            while (position < length) {
+                while (position < length && !isWordChar(chunk[position])) {
+                    position++;
+                }
+                if (position > 0 && partialToken.length() != 0) {
+                    // The token from the previous chunk ended at its boundary
+                    consumer.accept(partialToken.toString());
+                    partialToken.setLength(0);
+                }
+                int start = position;
+                while (position < length && isWordChar(chunk[position])) {
+                    position++;
+                }
+                if (position == length) {
+                    partialToken.append(chunk, start, position - start);
+                } else if (partialToken.length() != 0) {
+                    partialToken.append(chunk, start, position - start);
+                    consumer.accept(partialToken.toString());
+                    partialToken.setLength(0);
+                } else if (position > start) {
+                    consumer.accept(new String(chunk, start, position - start));
+                }
+            }
+            length = reader.read(chunk);
+        }
+
+        if (partialToken.length() != 0) {
+            consumer.accept(partialToken.toString());
+        }
+    }
+
+    /**
+     * Gets the byte offset in the input stream of the token being consumed.
+     * Offsets are only tracked when the bytes are scanned without decoding.
+     *
+     * @return the byte offset of the token, or -1 if it is not known
+     */
+    @Override
+    public long getTokenOffset() {
+        return tokenOffset;
+    }
+}
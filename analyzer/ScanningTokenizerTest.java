@@ -0,0 +1,315 @@
+package java112.analyzer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Unit testing for {@link ScanningTokenizer}. The scanner must produce exactly
+ * the same tokens as {@link RegexTokenizer}.
+ *
+ * @author Ryan Chua
+ */
+public class ScanningTokenizerTest {
+
+    /**
+     * Runs tests on methods used in {@code ScanningTokenizer}.
+     *
+     * @param args the command line arguments (not used)
+     */
+    public static void main(String[] args) {
+        ScanningTokenizerTest test = new ScanningTokenizerTest();
+
+        boolean wordCharFailed = test.testIsWordChar();
+        boolean tokenizeFailed = test.testTokenize();
+        boolean streamFailed = test.testTokenizeStream();
+        boolean offsetsFailed = test.testTokenOffsets();
+        boolean vectorFailed = test.testVectorTokenizer();
+        System.out.println();
+
+        if (wordCharFailed) {
+            System.out.println("isWordChar failed testing");
+        }
+
+        if (tokenizeFailed) {
+            System.out.println("tokenize failed testing");
+        }
+
+        if (streamFailed) {
+            System.out.println("tokenize for streams failed testing");
+        }
+
+        if (offsetsFailed) {
+            System.out.println("getTokenOffset failed testing");
+        }
+
+        if (vectorFailed) {
+            System.out.println("The vector tokenizer failed testing");
+        }
+    }
+
+    /**
+     * Tests the {@code isWordChar} method against the regular expression
+     * word character class for every char value.
+     *
+     * @return true if the test fails, else false
+     */
+    public boolean testIsWordChar() {
+        int failures = 0;
+
+        System.out.println();
+        System.out.println("Testing isWordChar:");
+
+        for (int i = Character.MIN_VALUE; i <= Character.MAX_VALUE; i++) {
+            char character = (char) i;
+            boolean expected = String.valueOf(character).matches("\\w");
+            boolean actual = ScanningTokenizer.isWordChar(character);
+            if (expected != actual) {
+                System.out.println("    Failed for char " + i);
+                failures++;
+            }
+        }
+
+        if (failures > 0) {
+            System.out.println("Word characters: Failed");
+            return true;
+        } else {
+            System.out.println("Word characters: Success");
+            return false;
+        }
+    }
+
+    /**
+     * Tests the {@code tokenize} method.
+     *
+     * @return true if any test fails, else false
+     */
+    public boolean testTokenize() {
+        int successes = 0;
+        int failures = 0;
+
+        // Create test objects
+        Tokenizer expectedTokenizer = new RegexTokenizer();
+        Tokenizer actualTokenizer = new ScanningTokenizer();
+
+        String[] testLines = {"", " ", "word", "  two   words  ",
+                "don't stop-me now",
+                "caf\u00e9 na\u00efve \u65e5\u672c\u8a9e",
+                "snake_case and x1y2", "...!?", "end.", "\tTabbed\tline\t",
+                "emoji \ud83d\ude00 split"};
+
+        // Compare expected v. actual and display results
+        System.out.println();
+        System.out.println("Testing tokenize");
+
+        for (int i = 0; i < testLines.length; i++) {
+            List<String> expected = new ArrayList<String>();
+            List<String> actual = new ArrayList<String>();
+            expectedTokenizer.tokenize(testLines[i], expected::add);
+            actualTokenizer.tokenize(testLines[i], actual::add);
+
+            if (expected.equals(actual)) {
+                System.out.println("Test " + (i + 1) + ": Success");
+                successes++;
+            } else {
+                System.out.println("Test " + (i + 1) + ": Failed");
+                System.out.println("    Expected: " + expected);
+                System.out.println("    Actual:   " + actual);
+                failures++;
+            }
+        }
+
+        System.out.println();
+        System.out.println("Successful tests: " + successes + "/"
+                + (successes + failures));
+        System.out.println("Failed tests: " + failures + "/"
+                + (successes + failures));
+
+        if (failures > 0) {
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Tests the stream {@code tokenize} method with input that arrives a few
+     * bytes at a time, so tokens and multi-byte characters are split across
+     * chunks. Each charset takes a different path through the scanner.
+     *
+     * @return true if any test fails, else false
+     */
+    public boolean testTokenizeStream() {
+        int successes = 0;
+        int failures = 0;
+
+        // Create test objects
+        Tokenizer expectedTokenizer = new RegexTokenizer();
+        Tokenizer actualTokenizer = new ScanningTokenizer();
+        String text = "The caf\u00e9's na\u00efve\nzygomaticus major, "
+                + "\u65e5\u672c\u8a9e x_1\n\n  trailing";
+        Charset[] charsets = {StandardCharsets.UTF_8,
+                StandardCharsets.ISO_8859_1, StandardCharsets.UTF_16LE};
+
+        // Compare expected v. actual and display results
+        System.out.println();
+        System.out.println("Testing tokenize for streams");
+
+        for (int i = 0; i < charsets.length; i++) {
+            List<String> expected = new ArrayList<String>();
+            List<String> actual = new ArrayList<String>();
+            byte[] bytes = text.getBytes(charsets[i]);
+
+            try {
+                expectedTokenizer.tokenize(new ByteArrayInputStream(bytes),
+                        charsets[i], expected::add);
+                actualTokenizer.tokenize(new TrickleInputStream(bytes),
+                        charsets[i], actual::add);
+            } catch (IOException iOException) {
+                iOException.printStackTrace();
+            }
+
+            if (expected.equals(actual)) {
+                System.out.println("Test " + (i + 1) + ": Success");
+                successes++;
+            } else {
+                System.out.println("Test " + (i + 1) + ": Failed");
+                System.out.println("    Expected: " + expected);
+                System.out.println("    Actual:   " + actual);
+                failures++;
+            }
+        }
+
+        System.out.println();
+        System.out.println("Successful tests: " + successes + "/"
+                + (successes + failures));
+        System.out.println("Failed tests: " + failures + "/"
+                + (successes + failures));
+
+        if (failures > 0) {
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Tests the {@code getTokenOffset} method with input that arrives a few
+     * bytes at a time. The offset of each token must be where its bytes start
+     * in the UTF-8 input.
+     *
+     * @return true if the test fails, else false
+     */
+    public boolean testTokenOffsets() {
+        Tokenizer tokenizer = new ScanningTokenizer();
+        String text = "  one caf\u00e9\ntwo_2, \u65e5x  longer_token";
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        List<String> failures = new ArrayList<String>();
+
+        System.out.println();
+        System.out.println("Testing getTokenOffset:");
+
+        try {
+            tokenizer.tokenize(new TrickleInputStream(bytes),
+                    StandardCharsets.UTF_8, token -> {
+                int offset = (int) tokenizer.getTokenOffset();
+                String found = new String(bytes, offset, token.length(),
+                        StandardCharsets.ISO_8859_1);
+                if (!found.equals(token)) {
+                    failures.add(token + " at " + offset);
+                }
+            });
+        } catch (IOException iOException) {
+            iOException.printStackTrace();
+            failures.add("IOException");
+        }
+
+        if (failures.size() > 0) {
+            System.out.println("    Failed for " + failures);
+            System.out.println("Token offsets: Failed");
+            return true;
+        } else {
+            System.out.println("Token offsets: Success");
+            return false;
+        }
+    }
+
+    /**
+     * Tests the vector tokenizer against the scalar scanner on random bytes
+     * of every value, weighted towards word characters so tokens of every
+     * length occur, which span several chunks. The tokens and their offsets
+     * must be the same whether the input arrives whole or a few bytes at a
+     * time. Without the Vector API this tests the fallback.
+     *
+     * @return true if the test fails, else false
+     */
+    public boolean testVectorTokenizer() {
+        Tokenizer expectedTokenizer = new ScanningTokenizer();
+        Tokenizer actualTokenizer = FileAnalysis.newVectorTokenizer();
+        Random random = new Random(42);
+        byte[] bytes = new byte[200000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (random.nextInt(4) == 0) ? (byte) random.nextInt(256)
+                    : (byte) "abcXYZ_09".charAt(random.nextInt(9));
+        }
+        List<String> failures = new ArrayList<String>();
+
+        System.out.println();
+        System.out.println("Testing the vector tokenizer with "
+                + actualTokenizer.getClass().getSimpleName() + ":");
+
+        try {
+            List<String> expected = new ArrayList<String>();
+            expectedTokenizer.tokenize(new ByteArrayInputStream(bytes),
+                    StandardCharsets.UTF_8, token -> expected.add(token + "@"
+                    + expectedTokenizer.getTokenOffset()));
+            for (boolean trickle : new boolean[] {false, true}) {
+                List<String> actual = new ArrayList<String>();
+                actualTokenizer.tokenize(trickle ? new TrickleInputStream(
+                        bytes) : new ByteArrayInputStream(bytes),
+                        StandardCharsets.UTF_8, token -> actual.add(token
+                        + "@" + actualTokenizer.getTokenOffset()));
+                if (!expected.equals(actual)) {
+                    failures.add(trickle ? "trickled input" : "whole input");
+                }
+            }
+        } catch (IOException iOException) {
+            iOException.printStackTrace();
+            failures.add("IOException");
+        }
+
+        if (failures.size() > 0) {
+            System.out.println("    Failed for " + failures);
+            System.out.println("Vector tokens: Failed");
+            return true;
+        } else {
+            System.out.println("Vector tokens: Success");
+            return false;
+        }
+    }
+
+    /**
+     * A stream which returns at most three bytes from each read.
+     */
+    private static class TrickleInputStream extends ByteArrayInputStream {
+
+        /**
+         * Creates a new {@code TrickleInputStream} over an array of bytes.
+         *
+         * @param bytes the bytes to read
+         */
+        TrickleInputStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public synchronized int read(byte[] buffer, int offset, int length) {
+            return super.read(buffer, offset, Math.min(length, 3));
+        }
+    }
+
+}
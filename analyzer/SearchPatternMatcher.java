@@ -0,0 +1,291 @@
+package java112.analyzer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Matches tokens against a set of wildcard search patterns at once. In a
+ * pattern {@code *} stands for any run of characters, possibly empty, and
+ * {@code ?} makes the character before it optional, so {@code immuno*} finds
+ * every token starting with "immuno" and {@code colou?r} finds "colour" and
+ * "color". Tokens never contain either character, so no escaping is needed.
+ *
+ * Each pattern is stored in one trie, once for every way of leaving out its
+ * optional characters, and the trie nodes are the states of a
+ * nondeterministic automaton. Sets of trie nodes are turned into states of a
+ * deterministic automaton the first time a token reaches them, and each
+ * state caches its transitions, so after a short warm-up every token is
+ * matched by one table lookup per character no matter how many patterns
+ * there are. A token stops being walked as soon as no pattern can match it.
+ *
+ * @author Ryan Chua
+ */
+public class SearchPatternMatcher {
+
+    /** The characters with a transition table instead of a map               */
+    private static final int TABLE_SIZE = 128;
+
+    /** The state no pattern can match from                                   */
+    private static final int DEAD_STATE = 0;
+
+    /** The trie nodes, with the root at index 0                              */
+    private List<Node> nodes;
+
+    /** The trie nodes of each automaton state, in ascending order            */
+    private List<int[]> stateNodes;
+
+    /** The automaton state of each set of trie nodes                         */
+    private Map<List<Integer>, Integer> states;
+
+    /** The next state for each character below {@code TABLE_SIZE}, or -1     */
+    private List<int[]> tables;
+
+    /** The next state for each other character seen so far                   */
+    private List<Map<Character, Integer>> otherTransitions;
+
+    /** The patterns matched by each automaton state                          */
+    private List<List<String>> matches;
+
+    /** The state before any character has been read                          */
+    private int startState;
+
+    /**
+     * Creates a new {@code SearchPatternMatcher} for a set of patterns.
+     *
+     * @param patterns the patterns to match
+     */
+    public SearchPatternMatcher(Collection<String> patterns) {
+        nodes = new ArrayList<Node>();
+        nodes.add(new Node());
+        for (String pattern : patterns) {
+            addPattern(pattern);
+        }
+
+        stateNodes = new ArrayList<int[]>();
+        states = new HashMap<List<Integer>, Integer>();
+        tables = new ArrayList<int[]>();
+        otherTransitions = new ArrayList<Map<Character, Integer>>();
+        matches = new ArrayList<List<String>>();
+        addState(new TreeSet<Integer>());
+        TreeSet<Integer> start = new TreeSet<Integer>();
+        addWithClosure(start, 0);
+        startState = addState(start);
+    }
+
+    /**
+     * Checks whether a search token is a pattern rather than a plain word.
+     *
+     * @param searchToken the search token
+     * @return true if the token contains {@code *} or {@code ?}, else false
+     */
+    public static boolean isPattern(String searchToken) {
+        return searchToken.indexOf('*') != -1
+                || searchToken.indexOf('?') != -1;
+    }
+
+    /**
+     * Adds a pattern to the trie once for every way of leaving out its
+     * optional characters.
+     *
+     * @param pattern the pattern to add
+     */
+    private void addPattern(String pattern) {
+        List<String> expansions = new ArrayList<String>();
+        expansions.add("");
+        for (int i = 0; i < pattern.length(); i++) {
+            char character = pattern.charAt(i);
+            if (character == '?') {
+                continue;
+            }
+
+            boolean optional = i + 1 < pattern.length()
+                    && pattern.charAt(i + 1) == '?';
+            int count = expansions.size();
+            for (int j = 0; j < count; j++) {
+                if (optional) {
+                    expansions.add(expansions.get(j));
+                }
+                expansions.set(j, expansions.get(j) + character);
+            }
+        }
+
+        for (String expansion : expansions) {
+            addExpansion(expansion, pattern);
+        }
+    }
+
+    /**
+     * Adds one expansion of a pattern, made only of plain characters and
+     * {@code *}, to the trie.
+     *
+     * @param expansion the characters of the expansion
+     * @param pattern the pattern the expansion belongs to
+     */
+    private void addExpansion(String expansion, String pattern) {
+        int node = 0;
+        for (int i = 0; i < expansion.length(); i++) {
+            char character = expansion.charAt(i);
+            Node current = nodes.get(node);
+            if (character == '*') {
+                if (current.star == -1) {
+                    current.star = newNode(true);
+                }
+                node = current.star;
+            } else {
+                Integer child = current.children.get(character);
+                if (child == null) {
+                    child = newNode(false);
+                    current.children.put(character, child);
+                }
+                node = child;
+            }
+        }
+        nodes.get(node).patterns.add(pattern);
+    }
+
+    /**
+     * Adds an empty trie node.
+     *
+     * @param loops true if the node was reached by {@code *}
+     * @return the index of the new node
+     */
+    private int newNode(boolean loops) {
+        Node node = new Node();
+        node.loops = loops;
+        nodes.add(node);
+        return nodes.size() - 1;
+    }
+
+    /**
+     * Adds a trie node to a set along with every node reachable from it
+     * through {@code *} without reading a character.
+     *
+     * @param set the set of trie nodes
+     * @param node the node to add
+     */
+    private void addWithClosure(TreeSet<Integer> set, int node) {
+        while (node != -1 && set.add(node)) {
+            node = nodes.get(node).star;
+        }
+    }
+
+    /**
+     * Gets the automaton state of a set of trie nodes, creating it if the
+     * set has not been seen before.
+     *
+     * @param set the set of trie nodes
+     * @return the state of the set
+     */
+    private int addState(TreeSet<Integer> set) {
+        List<Integer> key = new ArrayList<Integer>(set);
+        Integer state = states.get(key);
+        if (state != null) {
+            return state;
+        }
+
+        state = stateNodes.size();
+        states.put(key, state);
+        int[] members = new int[key.size()];
+        LinkedHashSet<String> matched = new LinkedHashSet<String>();
+        for (int i = 0; i < members.length; i++) {
+            members[i] = key.get(i);
+            matched.addAll(nodes.get(members[i]).patterns);
+        }
+        stateNodes.add(members);
+
+        int[] table = new int[TABLE_SIZE];
+        Arrays.fill(table, -1);
+        tables.add(table);
+        otherTransitions.add(new HashMap<Character, Integer>());
+        matches.add(matched.isEmpty() ? Collections.<String>emptyList()
+                : new ArrayList<String>(matched));
+        return state;
+    }
+
+    /**
+     * Works out the state reached from a state by reading a character.
+     *
+     * @param state the current state
+     * @param character the character read
+     * @return the next state
+     */
+    private int computeTransition(int state, char character) {
+        TreeSet<Integer> next = new TreeSet<Integer>();
+        for (int member : stateNodes.get(state)) {
+            Node node = nodes.get(member);
+            Integer child = node.children.get(character);
+            if (child != null) {
+                addWithClosure(next, child);
+            }
+            if (node.loops) {
+                addWithClosure(next, member);
+            }
+        }
+        return addState(next);
+    }
+
+    /**
+     * Gets the state reached from a state by reading a character, working it
+     * out and caching it the first time.
+     *
+     * @param state the current state
+     * @param character the character read
+     * @return the next state
+     */
+    private int transition(int state, char character) {
+        if (character < TABLE_SIZE) {
+            int[] table = tables.get(state);
+            if (table[character] == -1) {
+                table[character] = computeTransition(state, character);
+            }
+            return table[character];
+        }
+
+        Map<Character, Integer> other = otherTransitions.get(state);
+        Integer next = other.get(character);
+        if (next == null) {
+            next = computeTransition(state, character);
+            other.put(character, next);
+        }
+        return next;
+    }
+
+    /**
+     * Gets the patterns which match a token.
+     *
+     * @param token the token to match
+     * @return the matching patterns, empty if there are none
+     */
+    public List<String> match(String token) {
+        int state = startState;
+        for (int i = 0; i < token.length() && state != DEAD_STATE; i++) {
+            state = transition(state, token.charAt(i));
+        }
+        return matches.get(state);
+    }
+
+    /**
+     * A node of the pattern trie.
+     */
+    private static class Node {
+
+        /** The node reached by each plain character                          */
+        Map<Character, Integer> children = new HashMap<Character, Integer>();
+
+        /** The node reached by {@code *}, or -1                              */
+        int star = -1;
+
+        /** True if the node was reached by {@code *} and loops on any char   */
+        boolean loops;
+
+        /** The patterns ending at this node                                  */
+        List<String> patterns = new ArrayList<String>();
+    }
+}
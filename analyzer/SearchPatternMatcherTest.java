@@ -0,0 +1,176 @@
+package java112.analyzer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Unit testing for {@link SearchPatternMatcher}. A token must be matched by
+ * every pattern it fits, however many of them overlap.
+ *
+ * @author Ryan Chua
+ */
+public class SearchPatternMatcherTest {
+
+    /** The patterns every test matches against                               */
+    private static final List<String> PATTERNS = Arrays.asList("immuno*",
+            "colou?r", "cat", "th*", "*e", "the", "a*b*c", "*ing*",
+            "caf\u00e9?s*");
+
+    /**
+     * Runs tests on methods used in {@code SearchPatternMatcher}.
+     *
+     * @param args the command line arguments (not used)
+     */
+    public static void main(String[] args) {
+        SearchPatternMatcherTest test = new SearchPatternMatcherTest();
+
+        boolean matchFailed = test.testMatch();
+        boolean regexFailed = test.testMatchesRegex();
+        System.out.println();
+
+        if (matchFailed) {
+            System.out.println("match failed testing");
+        }
+
+        if (regexFailed) {
+            System.out.println("Matching the regular expressions failed "
+                    + "testing");
+        }
+    }
+
+    /**
+     * Tests prefix, optional character, wildcard and literal patterns, and
+     * tokens which several overlapping patterns match at once.
+     *
+     * @return true if any test fails, else false
+     */
+    public boolean testMatch() {
+        int successes = 0;
+        int failures = 0;
+
+        // Create test objects
+        SearchPatternMatcher matcher = new SearchPatternMatcher(PATTERNS);
+        String[] tokens = {"immuno", "immunology", "immun", "colour",
+                "color", "colouur", "cat", "cats", "the", "thing",
+                "abc", "aXbYc", "acb", "sing", "caf", "caf\u00e9s",
+                "cafss", "", "zebra"};
+
+        // Create expected results
+        String[][] expected = {
+                {"immuno*"},
+                {"immuno*"},
+                {},
+                {"colou?r"},
+                {"colou?r"},
+                {},
+                {"cat"},
+                {},
+                {"th*", "*e", "the"},
+                {"th*", "*ing*"},
+                {"a*b*c"},
+                {"a*b*c"},
+                {},
+                {"*ing*"},
+                {},
+                {"caf\u00e9?s*"},
+                {"caf\u00e9?s*"},
+                {},
+                {}};
+
+        // Compare expected v. actual and display results
+        System.out.println();
+        System.out.println("Testing match");
+
+        for (int i = 0; i < tokens.length; i++) {
+            Set<String> expectedMatches = new HashSet<String>(
+                    Arrays.asList(expected[i]));
+            List<String> actual = matcher.match(tokens[i]);
+
+            if (expectedMatches.equals(new HashSet<String>(actual))
+                    && actual.size() == expectedMatches.size()) {
+                System.out.println("Test " + (i + 1) + ": Success");
+                successes++;
+            } else {
+                System.out.println("Test " + (i + 1) + ": Failed");
+                System.out.println("    Token:    " + tokens[i]);
+                System.out.println("    Expected: " + expectedMatches);
+                System.out.println("    Actual:   " + actual);
+                failures++;
+            }
+        }
+
+        System.out.println();
+        System.out.println("Successful tests: " + successes + "/"
+                + (successes + failures));
+        System.out.println("Failed tests: " + failures + "/"
+                + (successes + failures));
+
+        if (failures > 0) {
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Tests random tokens against a regular expression for each pattern.
+     * The tokens are drawn from the letters of the patterns so that most of
+     * them reach deep into the automaton, and each one is matched twice so
+     * that cached transitions are checked as well as new ones.
+     *
+     * @return true if the test fails, else false
+     */
+    public boolean testMatchesRegex() {
+        SearchPatternMatcher matcher = new SearchPatternMatcher(PATTERNS);
+        List<Pattern> regexes = new ArrayList<Pattern>();
+        for (String pattern : PATTERNS) {
+            regexes.add(Pattern.compile(pattern.replace("*", ".*")));
+        }
+
+        String letters = "abcehilmnorstu\u00e9";
+        Random random = new Random(42);
+        List<String> failures = new ArrayList<String>();
+
+        System.out.println();
+        System.out.println("Testing against the regular expressions:");
+
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder token = new StringBuilder();
+            int length = random.nextInt(12);
+            for (int j = 0; j < length; j++) {
+                token.append(letters.charAt(random.nextInt(
+                        letters.length())));
+            }
+
+            Set<String> expected = new HashSet<String>();
+            for (int j = 0; j < regexes.size(); j++) {
+                if (regexes.get(j).matcher(token).matches()) {
+                    expected.add(PATTERNS.get(j));
+                }
+            }
+            for (int pass = 0; pass < 2; pass++) {
+                Set<String> actual = new HashSet<String>(matcher.match(
+                        token.toString()));
+                if (!expected.equals(actual)) {
+                    failures.add(token.toString());
+                }
+            }
+        }
+
+        if (failures.size() > 0) {
+            System.out.println("    Failed for " + failures.subList(0,
+                    Math.min(10, failures.size())));
+            System.out.println("Random tokens: Failed");
+            return true;
+        } else {
+            System.out.println("Random tokens: Success");
+            return false;
+        }
+    }
+
+}
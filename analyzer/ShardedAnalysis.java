@@ -0,0 +1,496 @@
+package java112.analyzer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Analyzes a large file with several worker processes on the local machine
+ * so no single JVM needs a heap for the whole file.
+ *
+ * The coordinator splits the file into {@code shard.count} byte ranges, each
+ * moved to the next token boundary in the same way as sampled blocks, and
+ * starts one worker JVM per range. A worker runs the analyzers over its
+ * range and writes their results to a binary partial, see
+ * {@link PartialStateAnalyzer}; the partial is written under a temporary
+ * name and renamed when complete, so a crashed worker never leaves a
+ * partial behind. A worker which fails is started again for the same range,
+ * up to {@code shard.retries} times, while the others carry on.
+ *
+ * Once every partial is written the coordinator reads them in file order
+ * and merges them. Each worker counts token positions from the start of its
+ * range, and merging shifts them past the tokens of the ranges before it,
+ * so the reported positions are those of the whole file. Phrases crossing
+ * from one range into the next are found while merging.
+ *
+ * Only the summary, distinct, distinct.counts, largest.words,
+ * lexical.density, token.lengths and token.search.locations analyzers are
+ * run. Workers run without a memory budget, as the number of shards bounds
+ * their heap; the coordinator keeps its budget while merging. The
+ * concordance and the normalization cache statistics are not available.
+ *
+ * @author Ryan Chua
+ */
+public class ShardedAnalysis {
+
+    /** The analyzers run by the workers                                      */
+    private static final String[] SHARDED_ANALYZERS = {"summary", "distinct",
+            "distinct.counts", "largest.words", "lexical.density",
+            "token.lengths", "token.search.locations"};
+
+    /** The first int of every partial                                        */
+    private static final int PARTIAL_MAGIC = 0x414E5031;
+
+    /** The number of command line arguments of a worker                      */
+    private static final int WORKER_ARGUMENTS = 5;
+
+    /** Creates the analyzers the partials are read into                      */
+    private FileAnalysis analysis;
+
+    /** The properties object to read from                                    */
+    private Properties properties;
+
+    /** The number of ranges the file is split into                           */
+    private int shardCount;
+
+    /** How many times a failed worker is started again                       */
+    private int retries;
+
+    /** The maximum heap of each worker in megabytes, or 0 for the default    */
+    private int workerHeapMb;
+
+    /** The directory the partials are written to                             */
+    private File partialDirectory;
+
+    /**
+     * Creates a new {@code ShardedAnalysis}. Reads the number of shards from
+     * {@code shard.count}, the retries from {@code shard.retries}, the worker
+     * heap from {@code shard.worker.heap.mb} and the partial directory from
+     * {@code shard.directory} in the properties file. Every built-in
+     * analyzer which is not run by the workers is disabled.
+     *
+     * @param properties the properties object to read from
+     */
+    public ShardedAnalysis(Properties properties) {
+        analysis = new FileAnalysis();
+        this.properties = new Properties();
+        this.properties.putAll(properties);
+        for (String name : analysis.builtInAnalyzers().keySet()) {
+            if (!Arrays.asList(SHARDED_ANALYZERS).contains(name)) {
+                this.properties.setProperty("analyzer.enabled." + name,
+                        "false");
+            }
+        }
+
+        shardCount = Integer.parseInt(properties.getProperty("shard.count",
+                "0"));
+        retries = Integer.parseInt(properties.getProperty("shard.retries",
+                "2"));
+        workerHeapMb = Integer.parseInt(properties.getProperty(
+                "shard.worker.heap.mb", "0"));
+        partialDirectory = new File(properties.getProperty("shard.directory",
+                System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * Checks whether sharding is configured in the properties file.
+     *
+     * @param properties the properties object to read from
+     * @return true if {@code shard.count} is above zero, else false
+     */
+    public static boolean isEnabled(Properties properties) {
+        return Integer.parseInt(properties.getProperty("shard.count",
+                "0")) > 0;
+    }
+
+    /**
+     * Runs a worker: analyzes one range of the input file and writes the
+     * partial. Exits with status 1 if the partial could not be written.
+     *
+     * @param args the input file, the location of the properties file, the
+     *             start and end of the range and the partial to write
+     */
+    public static void main(String[] args) {
+        if (args.length != WORKER_ARGUMENTS) {
+            System.out.println("Please enter the input file, the properties "
+                    + "file, the range and the partial to write");
+            System.exit(1);
+        }
+
+        Properties properties = new FileAnalysis().loadProperties(args[1]);
+        ShardedAnalysis sharded = new ShardedAnalysis(properties);
+        try {
+            sharded.analyzeShard(args[0], Long.parseLong(args[2]),
+                    Long.parseLong(args[3]), new File(args[4]));
+        } catch (IOException iOException) {
+            System.out.println("There was a problem analyzing the shard of "
+                    + args[0]);
+            iOException.printStackTrace();
+            System.exit(1);
+        } catch (Exception exception) {
+            System.out.println("There was a problem analyzing the shard of "
+                    + args[0]);
+            exception.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Splits the file into ranges, runs a worker for each and writes the
+     * reports merged from their partials. No reports are written if a range
+     * still fails after its retries.
+     *
+     * @param fileName the name of the file to analyze
+     * @param propertiesPath the classpath location of the properties file,
+     *                       passed on to the workers
+     */
+    public void analyze(String fileName, String propertiesPath) {
+        File shardDirectory = null;
+        try {
+            long[] bounds = splitFile(fileName);
+            shardDirectory = Files.createTempDirectory(
+                    partialDirectory.toPath(), "analyzer-shards").toFile();
+            File[] partials = new File[shardCount];
+            for (int i = 0; i < shardCount; i++) {
+                partials[i] = new File(shardDirectory, "shard-" + i + ".bin");
+            }
+
+            if (runWorkers(fileName, propertiesPath, bounds, partials)) {
+                analysis.writeOutputFiles(mergePartials(partials), fileName);
+            }
+        } catch (IOException iOException) {
+            System.out.println("There was a problem merging the shards of "
+                    + fileName);
+            iOException.printStackTrace();
+        } catch (Exception exception) {
+            System.out.println("There was a problem merging the shards of "
+                    + fileName);
+            exception.printStackTrace();
+        } finally {
+            deleteDirectory(shardDirectory);
+        }
+    }
+
+    /**
+     * Splits a file into {@code shardCount} ranges of about the same size,
+     * each starting at a token boundary.
+     *
+     * @param fileName the name of the file to split
+     * @return the start of each range followed by the end of the file
+     * @throws IOException if the file cannot be read
+     */
+    public long[] splitFile(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName),
+                StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long[] bounds = new long[shardCount + 1];
+            bounds[shardCount] = fileSize;
+            for (int i = 1; i < shardCount; i++) {
+                bounds[i] = Math.max(bounds[i - 1], SampledAnalysis.align(
+                        channel, fileSize / shardCount * i, fileSize));
+            }
+            return bounds;
+        }
+    }
+
+    /**
+     * Runs a worker for every range at once, starting a failed worker again
+     * until it succeeds or runs out of retries.
+     *
+     * @param fileName the name of the file to analyze
+     * @param propertiesPath the classpath location of the properties file
+     * @param bounds the start of each range followed by the end of the file
+     * @param partials the partial each worker writes
+     * @return true if every worker wrote its partial, else false
+     * @throws Exception if waiting for the workers was interrupted
+     */
+    private boolean runWorkers(String fileName, String propertiesPath,
+            long[] bounds, File[] partials) throws Exception {
+        ExecutorService launcher = Executors.newFixedThreadPool(shardCount);
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        for (int i = 0; i < shardCount; i++) {
+            List<String> command = buildWorkerCommand(fileName,
+                    propertiesPath, bounds[i], bounds[i + 1], partials[i]);
+            int shard = i;
+            results.add(launcher.submit(() -> runWorker(shard, command,
+                    partials[shard])));
+        }
+        launcher.shutdown();
+
+        boolean succeeded = true;
+        for (Future<Boolean> result : results) {
+            succeeded &= result.get();
+        }
+        return succeeded;
+    }
+
+    /**
+     * Runs the worker of one range, starting it again after a failure.
+     *
+     * @param shard the number of the range
+     * @param command the command line of the worker
+     * @param partial the partial the worker writes
+     * @return true if the worker wrote its partial, else false
+     * @throws Exception if waiting for the worker was interrupted
+     */
+    private boolean runWorker(int shard, List<String> command, File partial)
+            throws Exception {
+        for (int attempt = 0; attempt <= retries; attempt++) {
+            Process worker = new ProcessBuilder(command).inheritIO().start();
+            int status = worker.waitFor();
+            if (status == 0 && partial.isFile()) {
+                return true;
+            }
+            System.out.println("Shard " + shard + " failed with status "
+                    + status + ((attempt < retries) ? ", retrying" : ""));
+        }
+        return false;
+    }
+
+    /**
+     * Builds the command line of a worker: the same Java installation and
+     * class path as this process.
+     *
+     * @param fileName the name of the file to analyze
+     * @param propertiesPath the classpath location of the properties file
+     * @param start the first byte of the range
+     * @param end the byte after the range
+     * @param partial the partial to write
+     * @return the command and its arguments
+     */
+    private List<String> buildWorkerCommand(String fileName,
+            String propertiesPath, long start, long end, File partial) {
+        List<String> command = new ArrayList<String>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java")
+                .toString());
+        if (workerHeapMb > 0) {
+            command.add("-Xmx" + workerHeapMb + "m");
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ShardedAnalysis.class.getName());
+        command.add(fileName);
+        command.add(propertiesPath);
+        command.add(String.valueOf(start));
+        command.add(String.valueOf(end));
+        command.add(partial.getPath());
+        return command;
+    }
+
+    /**
+     * Analyzes one range of a file and writes the partial of every analyzer
+     * which supports one. Runs in a worker.
+     *
+     * @param fileName the name of the file to analyze
+     * @param start the first byte of the range
+     * @param end the byte after the range
+     * @param partial the partial to write
+     * @throws IOException if the range cannot be read or the partial written
+     */
+    public void analyzeShard(String fileName, long start, long end,
+            File partial) throws IOException {
+        Properties workerProperties = new Properties();
+        workerProperties.putAll(properties);
+        workerProperties.setProperty("memory.budget.mb", "0");
+
+        AnalysisResult result;
+        try (InputStream input = new BufferedInputStream(
+                new RangeInputStream(fileName, start, end))) {
+            result = analysis.analyzeInput(fileName, input, workerProperties);
+        }
+
+        File written = new File(partial.getPath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(written)))) {
+            List<PartialStateAnalyzer> analyzers = getPartialStateAnalyzers(
+                    result.getAnalyzers());
+            output.writeInt(PARTIAL_MAGIC);
+            output.writeInt(analyzers.size());
+            for (PartialStateAnalyzer analyzer : analyzers) {
+                output.writeUTF(analyzer.getClass().getName());
+                analyzer.writePartialState(output);
+            }
+        }
+        Files.move(written.toPath(), partial.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the partials in file order and merges them into one set of
+     * analyzers.
+     *
+     * @param partials the partial of each range in file order
+     * @return the merged analyzers in output order
+     * @throws IOException if a partial cannot be read
+     */
+    private List<TokenAnalyzer> mergePartials(File[] partials)
+            throws IOException {
+        List<TokenAnalyzer> totals = analysis.buildAnalyzers(properties);
+        List<PartialStateAnalyzer> totalAnalyzers = getPartialStateAnalyzers(
+                totals);
+
+        for (int i = 0; i < partials.length; i++) {
+            List<PartialStateAnalyzer> shardAnalyzers = totalAnalyzers;
+            if (i > 0) {
+                shardAnalyzers = getPartialStateAnalyzers(
+                        analysis.buildAnalyzers(properties));
+            }
+            readPartial(partials[i], shardAnalyzers);
+
+            for (int j = 0; i > 0 && j < totalAnalyzers.size(); j++) {
+                totalAnalyzers.get(j).merge(shardAnalyzers.get(j));
+            }
+        }
+
+        totals.retainAll(totalAnalyzers);
+        return totals;
+    }
+
+    /**
+     * Reads a partial into a set of analyzers which have not processed any
+     * tokens.
+     *
+     * @param partial the partial to read
+     * @param analyzers the analyzers to read the partial into
+     * @throws IOException if the partial cannot be read or was written by
+     *         different analyzers
+     */
+    private void readPartial(File partial,
+            List<PartialStateAnalyzer> analyzers) throws IOException {
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(partial)))) {
+            if (input.readInt() != PARTIAL_MAGIC
+                    || input.readInt() != analyzers.size()) {
+                throw new IOException("The partial " + partial
+                        + " was written by different analyzers");
+            }
+
+            for (PartialStateAnalyzer analyzer : analyzers) {
+                if (!input.readUTF().equals(analyzer.getClass().getName())) {
+                    throw new IOException("The partial " + partial
+                            + " was written by different analyzers");
+                }
+                analyzer.readPartialState(input);
+            }
+        }
+    }
+
+    /**
+     * Gets the analyzers which support partials, in output order.
+     *
+     * @param analyzers the analyzers to choose from
+     * @return the analyzers which support partials
+     */
+    private List<PartialStateAnalyzer> getPartialStateAnalyzers(
+            List<TokenAnalyzer> analyzers) {
+        List<PartialStateAnalyzer> partialAnalyzers;
+        partialAnalyzers = new ArrayList<PartialStateAnalyzer>();
+        for (TokenAnalyzer analyzer : analyzers) {
+            if (analyzer instanceof PartialStateAnalyzer) {
+                partialAnalyzers.add((PartialStateAnalyzer) analyzer);
+            }
+        }
+        return partialAnalyzers;
+    }
+
+    /**
+     * Deletes the partials and their directory.
+     *
+     * @param directory the directory to delete, or null if none was created
+     */
+    private void deleteDirectory(File directory) {
+        if (directory == null) {
+            return;
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * Reads one range of a file.
+     */
+    private static class RangeInputStream extends FilterInputStream {
+
+        /** The number of bytes left in the range                             */
+        private long remaining;
+
+        /**
+         * Opens a file and moves to the start of the range.
+         *
+         * @param fileName the name of the file
+         * @param start the first byte of the range
+         * @param end the byte after the range
+         * @throws IOException if the file cannot be opened
+         */
+        RangeInputStream(String fileName, long start, long end)
+                throws IOException {
+            super(Channels.newInputStream(FileChannel.open(Paths.get(fileName),
+                    StandardOpenOption.READ).position(start)));
+            remaining = end - start;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int value = super.read();
+            if (value != -1) {
+                remaining--;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length)
+                throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(buffer, offset, (int) Math.min(length,
+                    remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long skipped = super.skip(Math.min(count, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package java112.analyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java112.utilities.PropertiesLoader;
+
+/**
+ * Unit testing for {@link ShardedAnalysis}. The reports merged from the
+ * workers' partials must be the same as those of a single process.
+ *
+ * @author Ryan Chua
+ */
+public class ShardedAnalysisTest implements PropertiesLoader {
+
+    /** The location of the properties file to read                           */
+    private final static String PROPERTIES_FILE = "/analyzer.properties";
+
+    /** A search token which the shard boundaries fall in the middle of       */
+    private final static String BOUNDARY_TOKEN = "zygomaticus";
+
+    /** The words the rest of the input is made of                            */
+    private final static String FILLER = "the muscle and the smile, if it "
+            + "was weak\nthen the corner of the mouth fell and ";
+
+    /** The number of worker processes                                        */
+    private final static int SHARDS = 3;
+
+    /** The size of the input in bytes, so each shard is 1000 bytes long      */
+    private final static int INPUT_SIZE = 3000;
+
+    /** The properties file to read from                                      */
+    private Properties properties;
+
+    /**
+     * Creates a {@code ShardedAnalysisTest} object and loads the analyzer's
+     * properties file.
+     */
+    public ShardedAnalysisTest() {
+        properties = loadProperties(PROPERTIES_FILE);
+
+        // A sharded run cannot write a concordance
+        properties.setProperty("search.concordance.context", "0");
+    }
+
+    /**
+     * Runs tests on methods used in {@code ShardedAnalysis}.
+     *
+     * @param args the command line arguments (not used)
+     */
+    public static void main(String[] args) {
+        ShardedAnalysisTest test = new ShardedAnalysisTest();
+
+        boolean splitFailed = test.testSplitFile();
+        boolean reportsFailed = test.testReports();
+        System.out.println();
+
+        if (splitFailed) {
+            System.out.println("splitFile failed testing");
+        }
+
+        if (reportsFailed) {
+            System.out.println("Sharded reports failed testing");
+        }
+    }
+
+    /**
+     * Tests that {@code splitFile} moves each boundary which falls in the
+     * middle of a token to the start of the next token.
+     *
+     * @return true if the test fails, else false
+     */
+    public boolean testSplitFile() {
+        System.out.println();
+        System.out.println("Testing splitFile:");
+
+        try {
+            File input = writeInput();
+            long[] actual = new ShardedAnalysis(shardedProperties(
+                    input.getParentFile())).splitFile(input.getPath());
+            input.delete();
+
+            // Each boundary token starts 5 bytes before the even split
+            long[] expected = new long[SHARDS + 1];
+            for (int i = 1; i < SHARDS; i++) {
+                expected[i] = INPUT_SIZE / SHARDS * i - 5
+                        + BOUNDARY_TOKEN.length() + 1;
+            }
+            expected[SHARDS] = INPUT_SIZE;
+
+            if (Arrays.equals(expected, actual)) {
+                System.out.println("Boundaries: Success");
+                return false;
+            } else {
+                System.out.println("Boundaries: Failed");
+                System.out.println("    Expected: "
+                        + Arrays.toString(expected));
+                System.out.println("    Actual:   "
+                        + Arrays.toString(actual));
+                return true;
+            }
+        } catch (IOException iOException) {
+            System.out.println("There was a problem splitting the input");
+            iOException.printStackTrace();
+            return true;
+        }
+    }
+
+    /**
+     * Analyzes the same input in one process and with three worker
+     * processes, and compares every report the sharded run writes. The
+     * shard boundaries fall in the middle of a search token, which must
+     * still be counted once and found at its position in the whole file.
+     *
+     * @return true if any test fails, else false
+     */
+    public boolean testReports() {
+        int successes = 0;
+        int failures = 0;
+
+        System.out.println();
+        System.out.println("Testing sharded reports");
+
+        try {
+            File directory = Files.createTempDirectory("shard-test").toFile();
+            File singleDirectory = new File(directory, "single");
+            File shardedDirectory = new File(directory, "sharded");
+            singleDirectory.mkdir();
+            shardedDirectory.mkdir();
+            File input = writeInput();
+
+            Properties singleProperties = new Properties();
+            singleProperties.putAll(properties);
+            singleProperties.setProperty("output.directory",
+                    singleDirectory.getPath() + File.separator);
+            int boundaryHits;
+            try (AnalysisResult result = new FileAnalysis().analyzeFile(
+                    input.getPath(), singleProperties)) {
+                result.writeReports();
+                boundaryHits = result.getSearchHits().get(BOUNDARY_TOKEN)
+                        .size();
+            }
+
+            new ShardedAnalysis(shardedProperties(shardedDirectory)).analyze(
+                    input.getPath(), PROPERTIES_FILE);
+
+            // Compare expected v. actual and display results
+            String[] reports = shardedDirectory.list();
+            if (reports.length == 7 && boundaryHits == SHARDS - 1) {
+                System.out.println("Reports written: Success");
+                successes++;
+            } else {
+                System.out.println("Reports written: Failed");
+                System.out.println("    Expected: 7 reports, "
+                        + (SHARDS - 1) + " boundary tokens");
+                System.out.println("    Actual:   " + reports.length
+                        + " reports, " + boundaryHits + " boundary tokens");
+                failures++;
+            }
+
+            for (String report : reports) {
+                List<String> expected = readReport(new File(singleDirectory,
+                        report));
+                List<String> actual = readReport(new File(shardedDirectory,
+                        report));
+                if (expected.equals(actual)) {
+                    System.out.println(report + ": Success");
+                    successes++;
+                } else {
+                    System.out.println(report + ": Failed");
+                    System.out.println("    Expected: " + expected);
+                    System.out.println("    Actual:   " + actual);
+                    failures++;
+                }
+            }
+
+            input.delete();
+            for (File parent : new File[] {singleDirectory,
+                    shardedDirectory}) {
+                for (File file : parent.listFiles()) {
+                    file.delete();
+                }
+                parent.delete();
+            }
+            directory.delete();
+        } catch (IOException iOException) {
+            System.out.println("There was a problem analyzing the input");
+            iOException.printStackTrace();
+            failures++;
+        }
+
+        System.out.println();
+        System.out.println("Successful tests: " + successes + "/"
+                + (successes + failures));
+        System.out.println("Failed tests: " + failures + "/"
+                + (successes + failures));
+
+        if (failures > 0) {
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Writes an input of {@code INPUT_SIZE} bytes in which the search token
+     * starts 5 bytes before each even split, so the split falls inside it.
+     *
+     * @return the input file
+     * @throws IOException if the file cannot be written
+     */
+    private File writeInput() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 1; i < SHARDS; i++) {
+            text.append(filler(INPUT_SIZE / SHARDS * i - 5 - text.length()));
+            text.append(BOUNDARY_TOKEN);
+        }
+        text.append(filler(INPUT_SIZE - text.length()));
+
+        File input = File.createTempFile("sharded", ".txt");
+        Files.write(input.toPath(), text.toString().getBytes("US-ASCII"));
+        return input;
+    }
+
+    /**
+     * Builds filler text of an exact length which starts and ends with a
+     * delimiter, so the tokens around it stay whole.
+     *
+     * @param length the number of characters
+     * @return the filler text
+     */
+    private String filler(int length) {
+        StringBuilder text = new StringBuilder(" ");
+        while (text.length() < length - 1) {
+            text.append(FILLER);
+        }
+        text.setLength(length - 1);
+        return text.append(' ').toString();
+    }
+
+    /**
+     * Gets the properties of a sharded run which writes its reports to a
+     * directory.
+     *
+     * @param outputDirectory the directory to write the reports to
+     * @return the properties of the sharded run
+     */
+    private Properties shardedProperties(File outputDirectory) {
+        Properties shardedProperties = new Properties();
+        shardedProperties.putAll(properties);
+        shardedProperties.setProperty("output.directory",
+                outputDirectory.getPath() + File.separator);
+        shardedProperties.setProperty("shard.count", String.valueOf(SHARDS));
+        return shardedProperties;
+    }
+
+    /**
+     * Reads the lines of a report, leaving out the date of analysis, which
+     * differs between runs.
+     *
+     * @param report the report to read
+     * @return the lines of the report
+     * @throws IOException if the report cannot be read
+     */
+    private List<String> readReport(File report) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        for (String line : Files.readAllLines(report.toPath())) {
+            if (!line.startsWith("Date of analysis")) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+}
@@ -0,0 +1,240 @@
+package java112.analyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Analyzes an unbounded token stream and writes report snapshots while the
+ * stream is still being read.
+ *
+ * Tokens are processed by a set of analyzers holding only the tokens since
+ * the last snapshot. When a snapshot is due that set is handed to a snapshot
+ * thread and reading continues straight away with a fresh, empty set. The
+ * snapshot thread merges the handed-over analyzers into the running totals,
+ * writes the reports and prepares the next empty set. Reading never waits
+ * for a snapshot: if the previous snapshot is still being written the new one
+ * is skipped. Each merge only costs as much as the tokens since the previous
+ * snapshot, and the final snapshot is exactly the result of a batch run.
+ *
+ * Analyzers which do not implement {@link MergeableAnalyzer} process every
+ * token directly and are only written once the stream ends.
+ *
+ * @author Ryan Chua
+ */
+public class StreamingAnalysis {
+
+    /** How many tokens are processed between checks of the clock             */
+    private static final int CLOCK_CHECK_INTERVAL = 1024;
+
+    /** Creates the analyzers for each snapshot interval                      */
+    private FileAnalysis analysis;
+
+    /** The properties object to read from                                    */
+    private Properties properties;
+
+    /** The name of the stream shown in the reports                           */
+    private String inputName;
+
+    /** The number of tokens between snapshots, or 0 for no token limit       */
+    private long snapshotTokens;
+
+    /** The time between snapshots in nanoseconds, or 0 for no time limit     */
+    private long snapshotNanos;
+
+    /** The analyzers processing the tokens since the last snapshot           */
+    private List<TokenAnalyzer> currentAnalyzers;
+
+    /** The analyzers which do not support merging                            */
+    private List<TokenAnalyzer> unmergeableAnalyzers;
+
+    /** The running totals, only used by the snapshot thread                  */
+    private List<TokenAnalyzer> totalAnalyzers;
+
+    /** An empty set of analyzers ready for the next interval                 */
+    private BlockingQueue<List<TokenAnalyzer>> freshAnalyzers;
+
+    /** Merges intervals and writes the reports                               */
+    private ExecutorService snapshotExecutor;
+
+    /** The number of tokens processed since the last snapshot                */
+    private long tokensSinceSnapshot;
+
+    /** The time of the last snapshot from {@code System.nanoTime}            */
+    private long lastSnapshotTime;
+
+    /** The first failure to merge an interval, or null if there was none    */
+    private volatile Throwable mergeFailure;
+
+    /**
+     * Creates a new {@code StreamingAnalysis}. Reads the snapshot interval
+     * from {@code stream.snapshot.tokens} and {@code stream.snapshot.seconds}
+     * in the properties file.
+     *
+     * @param analysis the analysis which creates the analyzers
+     * @param properties the properties object to read from
+     * @param inputName the name of the stream shown in the reports
+     */
+    public StreamingAnalysis(FileAnalysis analysis, Properties properties,
+            String inputName) {
+        this.analysis = analysis;
+        this.properties = properties;
+        this.inputName = inputName;
+        snapshotTokens = Long.parseLong(properties.getProperty(
+                "stream.snapshot.tokens", "0"));
+        snapshotNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(
+                properties.getProperty("stream.snapshot.seconds", "0")));
+
+        totalAnalyzers = new ArrayList<TokenAnalyzer>();
+        unmergeableAnalyzers = new ArrayList<TokenAnalyzer>();
+        for (TokenAnalyzer analyzer : analysis.buildAnalyzers(properties)) {
+            if (analyzer instanceof MergeableAnalyzer) {
+                totalAnalyzers.add(analyzer);
+            } else {
+                unmergeableAnalyzers.add(analyzer);
+            }
+        }
+
+        currentAnalyzers = buildMergeableAnalyzers();
+        freshAnalyzers = new ArrayBlockingQueue<List<TokenAnalyzer>>(1);
+        freshAnalyzers.add(buildMergeableAnalyzers());
+        snapshotExecutor = Executors.newSingleThreadExecutor();
+        lastSnapshotTime = System.nanoTime();
+    }
+
+    /**
+     * Creates an empty set of the analyzers which support merging, in the
+     * same order as {@code totalAnalyzers}.
+     *
+     * @return the new analyzers
+     */
+    private List<TokenAnalyzer> buildMergeableAnalyzers() {
+        List<TokenAnalyzer> mergeable = new ArrayList<TokenAnalyzer>();
+        for (TokenAnalyzer analyzer : analysis.buildAnalyzers(properties)) {
+            if (analyzer instanceof MergeableAnalyzer) {
+                mergeable.add(analyzer);
+            }
+        }
+        return mergeable;
+    }
+
+    /**
+     * Passes the token to each analyzer and starts a snapshot when one is
+     * due.
+     *
+     * @param token the token for each analyzer to process
+     */
+    public void processToken(String token) {
+        for (TokenAnalyzer analyzer : currentAnalyzers) {
+            analyzer.processToken(token);
+        }
+        for (TokenAnalyzer analyzer : unmergeableAnalyzers) {
+            analyzer.processToken(token);
+        }
+        tokensSinceSnapshot++;
+
+        if (snapshotTokens > 0 && tokensSinceSnapshot >= snapshotTokens) {
+            startSnapshot();
+        } else if (snapshotNanos > 0
+                && tokensSinceSnapshot % CLOCK_CHECK_INTERVAL == 0
+                && System.nanoTime() - lastSnapshotTime >= snapshotNanos) {
+            startSnapshot();
+        }
+    }
+
+    /**
+     * Hands the current analyzers to the snapshot thread and continues with
+     * a fresh set. Skips the snapshot if the previous one is still running.
+     * A snapshot which fails is reported and the next set of analyzers is
+     * prepared anyway, so later snapshots still run.
+     */
+    private void startSnapshot() {
+        List<TokenAnalyzer> fresh = freshAnalyzers.poll();
+        if (fresh == null) {
+            return;
+        }
+
+        List<TokenAnalyzer> interval = currentAnalyzers;
+        currentAnalyzers = fresh;
+        tokensSinceSnapshot = 0;
+        lastSnapshotTime = System.nanoTime();
+        snapshotExecutor.execute(() -> {
+            try {
+                mergeInterval(interval);
+                analysis.writeOutputFiles(totalAnalyzers, inputName);
+            } catch (Exception exception) {
+                System.out.println("There was a problem writing a report "
+                        + "snapshot of " + inputName);
+                exception.printStackTrace();
+            } finally {
+                freshAnalyzers.offer(buildMergeableAnalyzers());
+            }
+        });
+    }
+
+    /**
+     * Merges the analyzers of one interval into the running totals. A
+     * failure is kept, since the totals may then be missing some of the
+     * interval's tokens, and thrown again.
+     *
+     * @param interval the analyzers which processed the interval
+     */
+    private void mergeInterval(List<TokenAnalyzer> interval) {
+        try {
+            for (int i = 0; i < totalAnalyzers.size(); i++) {
+                ((MergeableAnalyzer) totalAnalyzers.get(i)).merge(
+                        interval.get(i));
+            }
+        } catch (RuntimeException | Error throwable) {
+            if (mergeFailure == null) {
+                mergeFailure = throwable;
+            }
+            throw throwable;
+        }
+    }
+
+    /**
+     * Merges the last interval, waits for the snapshot thread and writes the
+     * final reports of every analyzer. Any spilled runs are deleted once the
+     * final reports are written. If an interval could not be merged the
+     * reports are still written, with a warning that they are incomplete.
+     */
+    public void finish() {
+        List<TokenAnalyzer> interval = currentAnalyzers;
+        currentAnalyzers = new ArrayList<TokenAnalyzer>();
+        snapshotExecutor.execute(() -> {
+            try {
+                mergeInterval(interval);
+            } catch (Exception exception) {
+                System.out.println("There was a problem merging the last "
+                        + "tokens of " + inputName);
+                exception.printStackTrace();
+            }
+        });
+        snapshotExecutor.shutdown();
+
+        try {
+            snapshotExecutor.awaitTermination(Long.MAX_VALUE,
+                    TimeUnit.NANOSECONDS);
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            System.out.println("Interrupted while writing the final snapshot");
+            interruptedException.printStackTrace();
+            return;
+        }
+
+        if (mergeFailure != null) {
+            System.out.println("The reports of " + inputName + " are "
+                    + "incomplete: some tokens could not be merged ("
+                    + mergeFailure + ")");
+        }
+        analysis.writeOutputFiles(totalAnalyzers, inputName);
+        analysis.writeOutputFiles(unmergeableAnalyzers, inputName);
+        analysis.deleteSpilledRuns();
+    }
+}
@@ -0,0 +1,129 @@
+package java112.analyzer;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Counts each distinct token of one document as a compact vector of token
+ * IDs and counts, for {@link CorpusTfIdf} to weigh against the rest of a
+ * corpus. The counts are kept in an {@code int[]} indexed by the ID from the
+ * document's own {@link TokenDictionary}, so no boxed count is created per
+ * token.
+ *
+ * The analyzer writes no report of its own: TF-IDF needs the document
+ * frequencies of the whole corpus, so the reports are written by
+ * {@code CorpusTfIdf} once every document of a zip archive has been read.
+ *
+ * @author Ryan Chua
+ */
+public class TermFrequencyAnalyzer implements MergeableAnalyzer {
+
+    /** The initial length of {@code counts}                                  */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** The properties object to read from                                    */
+    private Properties properties;
+
+    /** The ID of each distinct token in the document                         */
+    private TokenDictionary dictionary;
+
+    /** The count of each token, indexed by its ID                            */
+    private int[] counts;
+
+    /** The total number of tokens in the document                            */
+    private long totalTokens;
+
+    /**
+     * Creates a new, empty {@code TermFrequencyAnalyzer}.
+     */
+    public TermFrequencyAnalyzer() {
+        dictionary = new TokenDictionary();
+        counts = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Creates a new, empty {@code TermFrequencyAnalyzer}. Assigns a
+     * properties object to the instance variable.
+     *
+     * @param properties the properties object to read from
+     */
+    public TermFrequencyAnalyzer(Properties properties) {
+        this();
+        this.properties = properties;
+    }
+
+    /**
+     * Counts one occurrence of the token.
+     *
+     * @param token the token to count
+     */
+    public void processToken(String token) {
+        addCount(dictionary.idOf(token), 1);
+        totalTokens++;
+    }
+
+    /**
+     * Adds to the count of a token, growing the counts when the ID is new.
+     *
+     * @param id the ID of the token
+     * @param count the number to add
+     */
+    private void addCount(int id, int count) {
+        if (id >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(id + 1,
+                    counts.length * 2));
+        }
+        counts[id] += count;
+    }
+
+    /**
+     * Adds the counts of another {@code TermFrequencyAnalyzer} to this one.
+     *
+     * @param other the analyzer which processed the following tokens
+     */
+    public void merge(TokenAnalyzer other) {
+        TermFrequencyAnalyzer otherAnalyzer = (TermFrequencyAnalyzer) other;
+        int[] translated = dictionary.translate(otherAnalyzer.dictionary);
+
+        for (int id = 1; id < translated.length; id++) {
+            addCount(translated[id], otherAnalyzer.counts[id]);
+        }
+        totalTokens += otherAnalyzer.totalTokens;
+    }
+
+    /**
+     * Writes nothing; the reports are written by {@code CorpusTfIdf}.
+     *
+     * @param inputFilePath the path of the input file
+     */
+    public void generateOutputFile(String inputFilePath) {
+    }
+
+    /**
+     * Gets the dictionary of the document's distinct tokens.
+     *
+     * @return the dictionary giving the IDs used by {@code getCount}
+     */
+    public TokenDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Gets the count of a token.
+     *
+     * @param id the ID of the token in {@code getDictionary}
+     * @return the number of times the token occurred
+     */
+    public int getCount(int id) {
+        return counts[id];
+    }
+
+    /**
+     * Gets the total number of tokens in the document.
+     *
+     * @return the number of tokens processed
+     */
+    public long getTotalTokens() {
+        return totalTokens;
+    }
+}
@@ -14,6 +14,19 @@ public interface TokenAnalyzer {
      */
     public abstract void processToken(String token);
 
+    /**
+     * Processes each token of a batch in order. Analyzers may override this
+     * method when they can handle a whole batch more efficiently than one
+     * token at a time.
+     * 
+     * @param batch the batch of tokens to process
+     */
+    public default void processBatch(TokenBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            processToken(batch.get(i));
+        }
+    }
+
     /**
      * Writes a file containing information about the file analyzed.
      * 
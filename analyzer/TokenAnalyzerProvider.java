@@ -0,0 +1,33 @@
+package java112.analyzer;
+
+import java.util.Properties;
+
+/**
+ * Service interface for adding {@link TokenAnalyzer} implementations without
+ * changing {@link FileAnalysis}. Providers are discovered with
+ * {@link java.util.ServiceLoader}, so a plugin jar lists its provider classes
+ * in {@code META-INF/services/java112.analyzer.TokenAnalyzerProvider}.
+ *
+ * A provider is only asked for an analyzer when
+ * {@code analyzer.enabled.<name>} is not set to false in the properties file.
+ *
+ * @author Ryan Chua
+ */
+public interface TokenAnalyzerProvider {
+    /**
+     * Gets the name used to enable or disable the analyzer in the properties
+     * file.
+     *
+     * @return the name of the analyzer
+     */
+    public abstract String getName();
+
+    /**
+     * Creates a new analyzer configured from the properties file.
+     *
+     * @param properties the properties object to read from
+     * @return the new analyzer
+     */
+    public abstract TokenAnalyzer createAnalyzer(Properties properties);
+
+}
@@ -0,0 +1,45 @@
+package java112.analyzer;
+
+/**
+ * An immutable group of tokens published by the tokenizer. Batches are shared
+ * between analyzer threads, so the tokens are copied on creation and can never
+ * be changed afterwards.
+ *
+ * @author Ryan Chua
+ */
+public final class TokenBatch {
+
+    /** The tokens in the batch, in the order they appeared in the file       */
+    private final String[] tokens;
+
+    /**
+     * Creates a new {@code TokenBatch} holding a copy of the first
+     * {@code size} tokens of the given array.
+     *
+     * @param tokens the array of tokens to copy from
+     * @param size the number of tokens to copy
+     */
+    public TokenBatch(String[] tokens, int size) {
+        this.tokens = new String[size];
+        System.arraycopy(tokens, 0, this.tokens, 0, size);
+    }
+
+    /**
+     * Gets the number of tokens in the batch.
+     *
+     * @return the number of tokens in the batch
+     */
+    public int size() {
+        return tokens.length;
+    }
+
+    /**
+     * Gets the token at the specified position of the batch.
+     *
+     * @param index the position of the token in the batch
+     * @return the token at the position
+     */
+    public String get(int index) {
+        return tokens[index];
+    }
+}
@@ -0,0 +1,83 @@
+package java112.analyzer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gives each distinct token of a run a small integer ID, so analyzers which
+ * count combinations of tokens can pack several IDs into one primitive key
+ * instead of building strings. IDs start at 1 and are given in the order
+ * tokens are first seen; 0 never names a token.
+ *
+ * @author Ryan Chua
+ */
+public class TokenDictionary {
+
+    /** The ID of each token                                                  */
+    private Map<String, Integer> ids;
+
+    /** The token of each ID, with nothing at index 0                         */
+    private List<String> tokens;
+
+    /**
+     * Creates a new, empty {@code TokenDictionary}.
+     */
+    public TokenDictionary() {
+        ids = new HashMap<String, Integer>();
+        tokens = new ArrayList<String>();
+        tokens.add(null);
+    }
+
+    /**
+     * Gets the ID of a token, giving it the next ID if it has none yet.
+     *
+     * @param token the token
+     * @return the ID of the token
+     */
+    public int idOf(String token) {
+        Integer id = ids.get(token);
+        if (id == null) {
+            id = tokens.size();
+            ids.put(token, id);
+            tokens.add(token);
+        }
+        return id;
+    }
+
+    /**
+     * Gets the token with an ID.
+     *
+     * @param id the ID of the token
+     * @return the token, or null for ID 0
+     */
+    public String tokenOf(int id) {
+        return tokens.get(id);
+    }
+
+    /**
+     * Maps each ID of another dictionary to the ID of the same token in this
+     * one, adding the tokens this dictionary does not have yet.
+     *
+     * @param other the dictionary whose IDs to translate
+     * @return the ID in this dictionary indexed by the ID in the other, with
+     *         0 mapped to 0
+     */
+    public int[] translate(TokenDictionary other) {
+        int[] translated = new int[other.tokens.size()];
+        for (int id = 1; id < translated.length; id++) {
+            translated[id] = idOf(other.tokens.get(id));
+        }
+        return translated;
+    }
+
+    /**
+     * Gets the number of tokens with an ID.
+     *
+     * @return the number of distinct tokens
+     */
+    public int size() {
+        return tokens.size() - 1;
+    }
+}
@@ -1,40 +1,42 @@
 package java112.analyzer;
 
 import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.Collections;
+import java.text.DecimalFormat;
 import java.util.Map;
 import java.util.Properties;
-import java.util.TreeMap;
 
 /**
  * Tracks the frequency that each token length appears in the file and writes
- * a file containing the results in numeric and visual formats.
+ * a file containing the results in numeric and visual formats, followed by
+ * summary statistics of the lengths.
  *
  * @author Ryan Chua
  */
-public class TokenLengthsAnalyzer implements TokenAnalyzer {
+public class TokenLengthsAnalyzer implements PartialStateAnalyzer {
 
     /** The properties file to read from                                      */
     private Properties properties;
 
-    /** A map of the token lengths and their frequency                        */
-    private Map<Integer, Integer> tokenLengths;
+    /** A histogram of the token lengths and their frequency                  */
+    private LengthHistogram tokenLengths;
 
     /**
      * Creates a new {@code TokenLengthsAnalyzer}. Creates an instance of a
-     * {@code TreeMap} and assigns it to {@code tokenLengths}.
+     * {@code LengthHistogram} and assigns it to {@code tokenLengths}.
      */
     public TokenLengthsAnalyzer() {
-        tokenLengths = new TreeMap<Integer, Integer>();
+        tokenLengths = new LengthHistogram();
     }
 
     /**
      * Creates a new {@code TokenLengthsAnalyzer}. Creates an instance of a
-     * {@code TreeMap} and assigns it to {@code tokenLengths}. Assigns a
-     * properties object to the instance variable.
+     * {@code LengthHistogram} and assigns it to {@code tokenLengths}. Assigns
+     * a properties object to the instance variable.
      *
      * @param properties the properties object to read from
      */
@@ -44,20 +46,58 @@ public class TokenLengthsAnalyzer implements TokenAnalyzer {
     }
 
     /**
-     * Adds the token length to the map or increments its counter by one.
+     * Counts the length of the token in the histogram.
      *
      * @param token the token to process
      */
     public void processToken(String token) {
-        int length = token.length();
-        Integer count = tokenLengths.get(length);
-        tokenLengths.put(length, (count == null) ? 1 : count + 1);
+        tokenLengths.add(token.length());
+    }
+
+    /**
+     * Adds the token length counts of another {@code TokenLengthsAnalyzer}.
+     *
+     * @param other the analyzer to merge into this one
+     */
+    public void merge(TokenAnalyzer other) {
+        tokenLengths.merge(((TokenLengthsAnalyzer) other).tokenLengths);
+    }
+
+    /**
+     * Writes each token length and its count to a partial.
+     *
+     * @param output the stream to write the partial to
+     * @throws IOException if the partial cannot be written
+     */
+    public void writePartialState(DataOutputStream output)
+            throws IOException {
+        Map<Integer, Long> lengths = tokenLengths.toMap();
+        output.writeInt(lengths.size());
+        for (Map.Entry<Integer, Long> entry : lengths.entrySet()) {
+            output.writeInt(entry.getKey());
+            output.writeLong(entry.getValue());
+        }
+    }
+
+    /**
+     * Reads the token lengths and their counts from a partial.
+     *
+     * @param input the stream to read the partial from
+     * @throws IOException if the partial cannot be read
+     */
+    public void readPartialState(DataInputStream input) throws IOException {
+        int size = input.readInt();
+        for (int i = 0; i < size; i++) {
+            int length = input.readInt();
+            tokenLengths.add(length, input.readLong());
+        }
     }
 
     /**
      * Creates an output file with each token length and its frequency
      * displayed on a line. The file also includes a histogram of the token
-     * lengths and their frequencies.
+     * lengths and their frequencies, and the mean, median, 90th and 99th
+     * percentile and maximum token length.
      *
      * @param inputFilePath the filepath of the analyzed file
      */
@@ -67,17 +107,31 @@ public class TokenLengthsAnalyzer implements TokenAnalyzer {
 
         try (PrintWriter writer = new PrintWriter(new BufferedWriter(
                 new FileWriter(outputFilePath)))) {
+            Map<Integer, Long> lengths = tokenLengths.toMap();
+
             // Numeric output
-            for (Map.Entry<Integer, Integer> entry : tokenLengths.entrySet()) {
+            for (Map.Entry<Integer, Long> entry : lengths.entrySet()) {
                 writer.println(entry.getKey() + "\t" + entry.getValue());
             }
 
             // Histogram output
-            int maxCount = Collections.max(tokenLengths.values());
-            for (Map.Entry<Integer, Integer> entry : tokenLengths.entrySet()) {
+            long maxCount = tokenLengths.getMaxCount();
+            for (Map.Entry<Integer, Long> entry : lengths.entrySet()) {
                 writer.println(entry.getKey() + "\t"
                         + writeAsterisks(entry.getValue(), maxCount));
             }
+
+            // Statistics output
+            if (tokenLengths.getTotal() > 0) {
+                DecimalFormat formatter = new DecimalFormat("0.00");
+                writer.println();
+                writer.println("Mean:   "
+                        + formatter.format(tokenLengths.getMean()));
+                writer.println("Median: " + tokenLengths.getPercentile(0.5));
+                writer.println("p90:    " + tokenLengths.getPercentile(0.9));
+                writer.println("p99:    " + tokenLengths.getPercentile(0.99));
+                writer.println("Max:    " + tokenLengths.getMaxLength());
+            }
         } catch (IOException iOException) {
             System.out.println("There was a problem writing "
                     + properties.getProperty("output.file.token.lengths"));
@@ -99,7 +153,7 @@ public class TokenLengthsAnalyzer implements TokenAnalyzer {
      * @param maxCount the highest frequency of a token length in the file
      * @return a string of asterisks proportional to other frequencies
      */
-    public String writeAsterisks(int count, int maxCount) {
+    public String writeAsterisks(long count, long maxCount) {
         int asteriskCount = Math.round(((float) count / maxCount) * 76);
         asteriskCount = (asteriskCount > 0) ? asteriskCount : 1;
 
@@ -114,7 +168,16 @@ public class TokenLengthsAnalyzer implements TokenAnalyzer {
      *
      * @return the token lengths and the number of times they appear
      */
-    public Map<Integer, Integer> getTokenLengths() {
+    public Map<Integer, Long> getTokenLengths() {
+        return tokenLengths.toMap();
+    }
+
+    /**
+     * Gets the histogram of token lengths in the analyzed file.
+     *
+     * @return the histogram of token lengths
+     */
+    public LengthHistogram getHistogram() {
         return tokenLengths;
     }
-}
\ No newline at end of file
+}
@@ -2,23 +2,50 @@ package java112.analyzer;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.FileWriter;
 import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.TreeMap;
 
 /**
  * Searches for a list of tokens specified in a file and outputs the position(s)
- * each can be found at. Case sensitive.
+ * each can be found at. Case sensitive. A search token containing {@code *}
+ * or {@code ?} is a pattern, see {@link SearchPatternMatcher}, and its
+ * positions are those of every token it matches. A search token of several
+ * words, such as {@code zygomaticus major}, is a phrase, see
+ * {@link PhraseMatcher}, and its positions are where each match starts. A
+ * search token is a phrase when the run's tokenizer splits it into several
+ * tokens, so with the rules tokenizer {@code well-known} can be one word.
+ *
+ * When the run normalizes its tokens, the search tokens and the words of
+ * the phrases are normalized the same way before they are matched, and the
+ * patterns are case folded. The report still lists each search token as it
+ * was given.
+ *
+ * When {@code search.concordance.context} is above zero, a concordance is
+ * also written: each found location with the tokens around it, read back
+ * from the input file through the offsets recorded while it was tokenized.
  *
  * @author Ryan Chua
  */
-public class TokenLocationSearchAnalyzer implements TokenAnalyzer {
+public class TokenLocationSearchAnalyzer implements PartialStateAnalyzer,
+        MemoryGovernedAnalyzer, OffsetIndexedAnalyzer {
+
+    /** The estimated size of one retained location in bytes                  */
+    private static final long LOCATION_BYTES = 20;
 
     /** The properties object to read from                                    */
     private Properties properties;
@@ -26,50 +53,381 @@ public class TokenLocationSearchAnalyzer implements TokenAnalyzer {
     /** A map of search tokens and their positions                            */
     private Map<String, List<Integer>> foundLocations;
 
+    /** The search tokens of each normalized form, or null if not normalized  */
+    private Map<String, List<String>> searchForms;
+
+    /** Normalizes the search tokens, or null if tokens are not normalized    */
+    private TokenNormalizer normalizer;
+
+    /** Splits the phrases into tokens as the input is split                  */
+    private Tokenizer tokenizer;
+
+    /** Matches the pattern search tokens, or null if there are none          */
+    private SearchPatternMatcher patterns;
+
+    /** Matches the phrase search tokens, or null if there are none           */
+    private PhraseMatcher phrases;
+
+    /** The state of {@code phrases} after the last token                     */
+    private int phraseState;
+
+    /** The phrase token IDs of the first tokens, for matches across a merge  */
+    private int[] firstPhraseTokens;
+
     /** The current token position in the file                                */
     private int currentTokenLocation;
 
+    /** False once the memory budget stopped new locations being retained     */
+    private boolean retainingLocations;
+
+    /** The number of matches of each token whose location was not retained   */
+    private Map<String, Integer> droppedLocations;
+
+    /** The memory governor of the run, or null if there is none              */
+    private MemoryGovernor governor;
+
+    /** The estimated size of the retained locations in bytes                 */
+    private long footprint;
+
+    /** The footprint at which to report to the governor next                 */
+    private long nextReport;
+
+    /** The offsets of the input file's tokens, or null if not recorded       */
+    private TokenOffsetIndex offsetIndex;
+
     /**
      * Creates a new {@code TokenLocationSearchAnalyzer}. Creates an instance of
-     * a {@code TreeMap} and assigns it to {@code foundLocations}. Initializes
-     * {@code currentTokenLocation} to zero.
+     * a {@code HashMap} and assigns it to {@code foundLocations}. Initializes
+     * {@code currentTokenLocation} to zero. Phrases are split at each
+     * non-word character, as the scan tokenizer splits the input.
      */
     public TokenLocationSearchAnalyzer() {
-        foundLocations = new TreeMap<String, List<Integer>>();
+        foundLocations = new HashMap<String, List<Integer>>();
         currentTokenLocation = 0;
+        retainingLocations = true;
+        droppedLocations = new HashMap<String, Integer>();
+        tokenizer = new ScanningTokenizer();
     }
 
     /**
      * Creates a new {@code TokenLocationSearchAnalyzer}. Creates an instance of
-     * a {@code TreeMap} and assigns it to {@code foundLocations}. Initializes
+     * a {@code HashMap} and assigns it to {@code foundLocations}. Initializes
      * {@code currentTokenLocation} to zero. Assigns a properties object to the
-     * instance variable. Reads a file containing the tokens to search for and
-     * stores them in {@code foundLocations}.
+     * instance variable. Creates the run's tokenizer to split the phrases
+     * with. Reads a file containing the tokens to search for and stores them
+     * in {@code foundLocations}.
      *
      * @param properties the properties object to read from
      */
     public TokenLocationSearchAnalyzer(Properties properties) {
         this();
         this.properties = properties;
+        tokenizer = FileAnalysis.newTokenizer(properties);
         loadSearchWords();
+        if (TokenNormalizer.isEnabled(properties)) {
+            normalizeSearchWords(new TokenNormalizer(properties));
+        }
+        compilePatterns();
+    }
+
+    /**
+     * Gives the analyzer the memory governor of the run. When the governor
+     * reports that the budget is nearly used, new locations are no longer
+     * retained and later matches are only counted.
+     *
+     * @param governor the memory governor of the run
+     */
+    public void setMemoryGovernor(MemoryGovernor governor) {
+        this.governor = governor;
+        nextReport = governor.getReportStep();
+    }
+
+    /**
+     * Gives the analyzer the offset index of the input file, used to write
+     * the concordance.
+     *
+     * @param index the offsets of the input file's tokens
+     */
+    public void setOffsetIndex(TokenOffsetIndex index) {
+        offsetIndex = index;
     }
 
     /**
      * Adds the current position to the list of found locations for a token
-     * that matches one of the searched words.
+     * that matches one of the searched words, and to the found locations of
+     * each pattern the token matches. When the token completes a phrase, the
+     * position the phrase started at is added to its found locations. Once
+     * locations are no longer retained the match is only counted.
      *
      * @param token the token to process
      */
     public void processToken(String token) {
         currentTokenLocation++;
-        if (foundLocations.containsKey(token)) {
-            foundLocations.get(token).add(currentTokenLocation);
+        if (searchForms != null) {
+            recordLocations(searchForms.get(token));
+        } else if (foundLocations.containsKey(token)) {
+            recordLocation(token, currentTokenLocation);
+        }
+
+        if (patterns != null) {
+            for (String pattern : patterns.match(token)) {
+                if (searchForms != null) {
+                    recordLocations(searchForms.get(pattern));
+                } else {
+                    recordLocation(pattern, currentTokenLocation);
+                }
+            }
+        }
+
+        if (phrases != null) {
+            int id = phrases.idOf(token);
+            if (currentTokenLocation <= firstPhraseTokens.length) {
+                firstPhraseTokens[currentTokenLocation - 1] = id;
+            }
+            phraseState = phrases.advance(phraseState, id);
+            recordPhrases(currentTokenLocation, 0);
+        }
+    }
+
+    /**
+     * Adds the start of each phrase ending at the current phrase state to
+     * its found locations.
+     *
+     * @param location the position of the token which ended the phrases
+     * @param latestStart the latest start position to record, or 0 for any
+     */
+    private void recordPhrases(int location, int latestStart) {
+        for (int phrase : phrases.getMatches(phraseState)) {
+            int start = location - phrases.getPhraseLength(phrase) + 1;
+            if (latestStart == 0 || start <= latestStart) {
+                recordLocation(phrases.getPhrase(phrase), start);
+            }
+        }
+    }
+
+    /**
+     * Checks whether a token is one of the search tokens, matches a search
+     * pattern or is one of the words of a search phrase. Used by analyzers
+     * which only look at the tokens around the search tokens.
+     *
+     * @param token the token to check
+     * @return true if the token is a search token, else false
+     */
+    public boolean matchesSearchTerm(String token) {
+        return (searchForms != null ? searchForms.containsKey(token)
+                : foundLocations.containsKey(token))
+                || (patterns != null && !patterns.match(token).isEmpty())
+                || (phrases != null && phrases.idOf(token) != 0);
+    }
+
+    /**
+     * Adds the current position to the found locations of each search token
+     * with the normalized form of the current token.
+     *
+     * @param searchTokens the search tokens, or null if there are none
+     */
+    private void recordLocations(List<String> searchTokens) {
+        if (searchTokens != null) {
+            for (String searchToken : searchTokens) {
+                recordLocation(searchToken, currentTokenLocation);
+            }
+        }
+    }
+
+    /**
+     * Adds a position to the found locations of a search token, or only
+     * counts the match once locations are no longer retained.
+     *
+     * @param searchToken the search token, pattern or phrase which matched
+     * @param location the position of the match
+     */
+    private void recordLocation(String searchToken, int location) {
+        if (!retainingLocations) {
+            droppedLocations.merge(searchToken, 1, Integer::sum);
+            return;
+        }
+        foundLocations.get(searchToken).add(location);
+        if (governor != null) {
+            footprint += LOCATION_BYTES;
+            if (footprint >= nextReport) {
+                checkMemory();
+            }
+        }
+    }
+
+    /**
+     * Records the phrases crossing from this analyzer's tokens into another's
+     * and moves the phrase state to the end of the other's tokens.
+     *
+     * @param other the analyzer which processed the following tokens
+     */
+    private void mergePhraseState(TokenLocationSearchAnalyzer other) {
+        int replayed = Math.min(other.currentTokenLocation,
+                firstPhraseTokens.length);
+        for (int i = 0; i < replayed; i++) {
+            int location = currentTokenLocation + i + 1;
+            if (location <= firstPhraseTokens.length) {
+                firstPhraseTokens[location - 1] = other.firstPhraseTokens[i];
+            }
+            phraseState = phrases.advance(phraseState,
+                    other.firstPhraseTokens[i]);
+            if (currentTokenLocation > 0) {
+                recordPhrases(location, currentTokenLocation);
+            }
+        }
+
+        if (other.currentTokenLocation > replayed) {
+            phraseState = other.phraseState;
+        }
+    }
+
+    /**
+     * Reports the footprint to the governor and stops retaining locations if
+     * the budget is nearly used.
+     */
+    private void checkMemory() {
+        nextReport = footprint + governor.getReportStep();
+        if (governor.report(this, footprint) && retainingLocations) {
+            retainingLocations = false;
+            governor.recordDegradation("token.search.locations",
+                    "stopped retaining positions after token "
+                    + currentTokenLocation + ", later matches are counted");
+        }
+    }
+
+    /**
+     * Adds the found locations of another {@code TokenLocationSearchAnalyzer}.
+     * The other analyzer counted positions from the start of its own tokens,
+     * so its locations are shifted past the tokens processed by this one.
+     * If either analyzer stopped retaining locations, the merged analyzer
+     * only counts the matches from that point on. Phrases which start in this
+     * analyzer's tokens and end in the other's are found by replaying the
+     * other's first tokens from this analyzer's phrase state.
+     *
+     * @param other the analyzer to merge into this one
+     */
+    public void merge(TokenAnalyzer other) {
+        TokenLocationSearchAnalyzer otherAnalyzer =
+                (TokenLocationSearchAnalyzer) other;
+        if (phrases != null) {
+            mergePhraseState(otherAnalyzer);
+        }
+
+        for (Map.Entry<String, List<Integer>> entry :
+                otherAnalyzer.foundLocations.entrySet()) {
+            List<Integer> locations = foundLocations.computeIfAbsent(
+                    entry.getKey(), key -> new ArrayList<Integer>());
+            if (!retainingLocations) {
+                droppedLocations.merge(entry.getKey(), entry.getValue().size(),
+                        Integer::sum);
+                continue;
+            }
+            for (Integer location : entry.getValue()) {
+                locations.add(location + currentTokenLocation);
+            }
+            footprint += LOCATION_BYTES * entry.getValue().size();
+        }
+        for (Map.Entry<String, Integer> entry :
+                otherAnalyzer.droppedLocations.entrySet()) {
+            droppedLocations.merge(entry.getKey(), entry.getValue(),
+                    Integer::sum);
+        }
+        currentTokenLocation += otherAnalyzer.currentTokenLocation;
+        retainingLocations &= otherAnalyzer.retainingLocations;
+
+        if (governor != null) {
+            governor.release(otherAnalyzer);
+            checkMemory();
+        }
+    }
+
+    /**
+     * Writes the found locations, the counts of matches not retained, the
+     * number of tokens and the phrase state to a partial. The locations are
+     * counted from the start of this analyzer's tokens.
+     *
+     * @param output the stream to write the partial to
+     * @throws IOException if the partial cannot be written
+     */
+    public void writePartialState(DataOutputStream output)
+            throws IOException {
+        output.writeInt(currentTokenLocation);
+        output.writeBoolean(retainingLocations);
+        output.writeInt(phraseState);
+        int replayed = (phrases == null) ? 0 : Math.min(currentTokenLocation,
+                firstPhraseTokens.length);
+        output.writeInt(replayed);
+        for (int i = 0; i < replayed; i++) {
+            output.writeInt(firstPhraseTokens[i]);
+        }
+
+        output.writeInt(foundLocations.size());
+        for (Map.Entry<String, List<Integer>> entry :
+                foundLocations.entrySet()) {
+            PartialStateAnalyzer.writeToken(output, entry.getKey());
+            output.writeInt(entry.getValue().size());
+            for (Integer location : entry.getValue()) {
+                output.writeInt(location);
+            }
+        }
+
+        output.writeInt(droppedLocations.size());
+        for (Map.Entry<String, Integer> entry :
+                droppedLocations.entrySet()) {
+            PartialStateAnalyzer.writeToken(output, entry.getKey());
+            output.writeInt(entry.getValue());
+        }
+    }
+
+    /**
+     * Reads the found locations, the counts of matches not retained, the
+     * number of tokens and the phrase state from a partial. The search
+     * tokens and phrases must be the same as those of the analyzer which
+     * wrote the partial.
+     *
+     * @param input the stream to read the partial from
+     * @throws IOException if the partial cannot be read
+     */
+    public void readPartialState(DataInputStream input) throws IOException {
+        currentTokenLocation = input.readInt();
+        retainingLocations = input.readBoolean();
+        phraseState = input.readInt();
+        int replayed = input.readInt();
+        if (replayed > ((phrases == null) ? 0 : firstPhraseTokens.length)) {
+            throw new IOException("The partial has different search phrases");
+        }
+        for (int i = 0; i < replayed; i++) {
+            firstPhraseTokens[i] = input.readInt();
+        }
+
+        int searchTokens = input.readInt();
+        for (int i = 0; i < searchTokens; i++) {
+            List<Integer> locations = foundLocations.computeIfAbsent(
+                    PartialStateAnalyzer.readToken(input),
+                    key -> new ArrayList<Integer>());
+            int size = input.readInt();
+            for (int j = 0; j < size; j++) {
+                locations.add(input.readInt());
+            }
+            footprint += LOCATION_BYTES * size;
+        }
+
+        int droppedTokens = input.readInt();
+        for (int i = 0; i < droppedTokens; i++) {
+            droppedLocations.put(PartialStateAnalyzer.readToken(input),
+                    input.readInt());
+        }
+
+        if (governor != null) {
+            checkMemory();
         }
     }
 
     /**
      * Creates an output file with each searched word and the positions the
-     * word was found.
+     * word was found. The searched words are sorted when the file is
+     * written. Matches whose locations were not retained are counted after
+     * the list.
      *
      * @param inputFilePath the filepath of the analyzed file
      */
@@ -79,10 +437,17 @@ public class TokenLocationSearchAnalyzer implements TokenAnalyzer {
 
         try (PrintWriter writer = new PrintWriter(new BufferedWriter(
                 new FileWriter(outputFilePath)))) {
-            for (Map.Entry<String, List<Integer>> entry :
-                    foundLocations.entrySet()) {
-                writer.println(entry.getKey() + " =\n" +
-                        writeLocations(entry.getValue()));
+            String[] sortedTokens = foundLocations.keySet().toArray(
+                    new String[0]);
+            Arrays.parallelSort(sortedTokens);
+            for (String token : sortedTokens) {
+                writer.println(token + " =\n" +
+                        writeLocations(foundLocations.get(token)));
+                Integer dropped = droppedLocations.get(token);
+                if (dropped != null) {
+                    writer.println("(" + dropped
+                            + " later locations not retained)");
+                }
                 writer.println();
             }
         } catch (IOException iOException) {
@@ -96,18 +461,81 @@ public class TokenLocationSearchAnalyzer implements TokenAnalyzer {
                     "output.file.token.search.locations"));
             exception.printStackTrace();
         }
+
+        int context = Integer.parseInt(properties.getProperty(
+                "search.concordance.context", "0"));
+        if (context > 0) {
+            writeConcordance(inputFilePath, context);
+        }
+    }
+
+    /**
+     * Creates an output file with each searched word followed by a line for
+     * each position it was found at: the position, a tab and the word or
+     * phrase in brackets with the tokens around it. The concordance can only
+     * be built for a plain input file whose tokenizer knew the byte offset
+     * of each token; otherwise the file explains why it is missing.
+     *
+     * @param inputFilePath the filepath of the analyzed file
+     * @param context the number of tokens to show on either side
+     */
+    public void writeConcordance(String inputFilePath, int context) {
+        String outputFilePath = properties.getProperty("output.directory")
+                + properties.getProperty("output.file.concordance");
+
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(
+                new FileWriter(outputFilePath)))) {
+            if (offsetIndex == null || !offsetIndex.isComplete()) {
+                writer.println("No concordance: the input must be a plain "
+                        + "file read in one process by the scan or rules "
+                        + "tokenizer in UTF-8, ISO-8859-1 or US-ASCII");
+                return;
+            }
+
+            Concordance concordance = new Concordance(new File(inputFilePath),
+                    Charset.forName(properties.getProperty("input.charset",
+                    "UTF-8")), offsetIndex, tokenizer);
+            String[] sortedTokens = foundLocations.keySet().toArray(
+                    new String[0]);
+            Arrays.parallelSort(sortedTokens);
+            for (String token : sortedTokens) {
+                // A phrase is bracketed from its first token to its last
+                int length = PhraseMatcher.splitPhrase(token, tokenizer)
+                        .size();
+                writer.println(token + " =");
+                for (Integer location : foundLocations.get(token)) {
+                    writer.println(location + "\t" + concordance.getLine(
+                            location, length, context));
+                }
+                writer.println();
+            }
+        } catch (IOException iOException) {
+            System.out.println("There was a problem writing "
+                    + properties.getProperty("output.file.concordance"));
+            iOException.printStackTrace();
+        } catch (Exception exception) {
+            System.out.println("There was a problem writing "
+                    + properties.getProperty("output.file.concordance"));
+            exception.printStackTrace();
+        }
     }
 
     /**
      * Reads the text file of words to search for and adds each one as a key in
      * {@code foundLocations}. Instantiates an empty {@code ArrayList} as the
-     * value.
+     * value. An up-to-date compiled dictionary is used instead of parsing the
+     * text file when one is configured.
      */
     public void loadSearchWords() {
         String fileName = properties.getProperty("classpath.search.tokens");
 
+        if (loadCompiledSearchWords(fileName)) {
+            return;
+        }
+
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(
-                this.getClass().getResourceAsStream(fileName)))) {
+                this.getClass().getResourceAsStream(fileName),
+                StandardCharsets.UTF_8))) {
             while (reader.ready()) {
                 String fileLine = reader.readLine();
                 String searchToken = fileLine.trim();
@@ -124,6 +552,106 @@ public class TokenLocationSearchAnalyzer implements TokenAnalyzer {
         }
     }
 
+    /**
+     * Groups the search tokens under the form the normalized tokens take:
+     * plain search tokens are normalized and patterns are only case folded.
+     * The words of the phrases are normalized when they are compiled. Several
+     * search tokens, such as "run" and "running", can share a form.
+     *
+     * @param normalizer the normalizer with the run's settings
+     */
+    public void normalizeSearchWords(TokenNormalizer normalizer) {
+        this.normalizer = normalizer;
+        searchForms = new HashMap<String, List<String>>();
+        for (String searchToken : foundLocations.keySet()) {
+            String form;
+            if (SearchPatternMatcher.isPattern(searchToken)) {
+                form = normalizer.foldCase(searchToken);
+            } else if (PhraseMatcher.isPhrase(searchToken, tokenizer)) {
+                continue;
+            } else {
+                form = normalizer.normalize(searchToken);
+            }
+            searchForms.computeIfAbsent(form,
+                    key -> new ArrayList<String>()).add(searchToken);
+        }
+    }
+
+    /**
+     * Compiles the search tokens which are patterns into one
+     * {@code SearchPatternMatcher} and the phrases into one
+     * {@code PhraseMatcher}. Leaves {@code patterns} or {@code phrases} null
+     * when there are none.
+     */
+    public void compilePatterns() {
+        List<String> patternTokens = new ArrayList<String>();
+        List<String> phraseTokens = new ArrayList<String>();
+        for (String searchToken : foundLocations.keySet()) {
+            if (SearchPatternMatcher.isPattern(searchToken)) {
+                patternTokens.add(normalizer == null ? searchToken
+                        : normalizer.foldCase(searchToken));
+            } else if (PhraseMatcher.isPhrase(searchToken, tokenizer)) {
+                phraseTokens.add(searchToken);
+            }
+        }
+
+        if (!patternTokens.isEmpty()) {
+            patterns = new SearchPatternMatcher(patternTokens);
+        }
+        if (!phraseTokens.isEmpty()) {
+            phrases = new PhraseMatcher(phraseTokens, tokenizer, normalizer);
+            firstPhraseTokens = new int[phrases.getMaxLength()];
+        }
+    }
+
+    /**
+     * Adds the words of the compiled search token dictionary to
+     * {@code foundLocations}. The dictionary is checked against the size and
+     * modification time of the classpath search tokens file.
+     *
+     * @param fileName the classpath location of the search tokens file
+     * @return true if the compiled dictionary was used, else false
+     */
+    public boolean loadCompiledSearchWords(String fileName) {
+        String compiledFileName = properties.getProperty(
+                "search.tokens.compiled");
+        URL resource = this.getClass().getResource(fileName);
+
+        if (compiledFileName == null || resource == null) {
+            return false;
+        }
+
+        long sourceLength;
+        long sourceLastModified;
+        try {
+            if (resource.getProtocol().equals("file")) {
+                File sourceFile = new File(resource.toURI());
+                sourceLength = sourceFile.length();
+                sourceLastModified = sourceFile.lastModified();
+            } else {
+                URLConnection connection = resource.openConnection();
+                sourceLength = connection.getContentLengthLong();
+                sourceLastModified = connection.getLastModified();
+            }
+        } catch (Exception exception) {
+            System.out.println("There was a problem checking the search "
+                    + "words.");
+            exception.printStackTrace();
+            return false;
+        }
+
+        CompiledDictionary dictionary = CompiledDictionary.open(
+                compiledFileName, sourceLength, sourceLastModified);
+        if (dictionary == null) {
+            return false;
+        }
+
+        for (String searchToken : dictionary) {
+            foundLocations.put(searchToken, new ArrayList<Integer>());
+        }
+        return true;
+    }
+
     /**
      * Creates a string of the found locations. The resulting output will start
      * with [ and end with ]. Output lines do not exceed 80 characters, and
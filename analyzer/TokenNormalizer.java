@@ -0,0 +1,173 @@
+package java112.analyzer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Turns each token into its normalized form before the analyzers see it, so
+ * that forms such as "Running", "runs" and "run" are counted as one token.
+ * Case folding and Porter stemming are each enabled in the properties file.
+ *
+ * Most tokens of a text are repeats, so the normalized form of each raw
+ * token is kept in a least-recently-used cache of
+ * {@code normalization.cache.size} entries and only worked out on a miss. A
+ * hit allocates nothing. The hits, misses and evictions are counted for the
+ * summary report.
+ *
+ * @author Ryan Chua
+ */
+public class TokenNormalizer {
+
+    /** True if tokens are folded to lowercase                                */
+    private boolean caseFolding;
+
+    /** The stemmer, or null if tokens are not stemmed                        */
+    private PorterStemmer stemmer;
+
+    /** The largest number of cached tokens                                   */
+    private int cacheSize;
+
+    /** The normalized form of recently seen tokens, least recent first       */
+    private Map<String, String> cache;
+
+    /** The number of tokens found in the cache                               */
+    private long hits;
+
+    /** The number of tokens normalized because they were not cached          */
+    private long misses;
+
+    /** The number of tokens dropped from the full cache                      */
+    private long evictions;
+
+    /**
+     * Creates a new {@code TokenNormalizer}. Reads {@code normalization.case}
+     * ({@code fold} or {@code keep}), {@code normalization.stemmer}
+     * ({@code porter} or {@code none}) and {@code normalization.cache.size}.
+     *
+     * @param properties the properties object to read from
+     */
+    public TokenNormalizer(Properties properties) {
+        caseFolding = properties.getProperty("normalization.case", "keep")
+                .equals("fold");
+        if (properties.getProperty("normalization.stemmer", "none")
+                .equals("porter")) {
+            stemmer = new PorterStemmer();
+        }
+        cacheSize = Integer.parseInt(properties.getProperty(
+                "normalization.cache.size", "65536"));
+
+        cache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, String> eldest) {
+                if (size() > cacheSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Checks whether any normalization is configured in the properties file.
+     *
+     * @param properties the properties object to read from
+     * @return true if tokens are case folded or stemmed, else false
+     */
+    public static boolean isEnabled(Properties properties) {
+        return properties.getProperty("normalization.case", "keep")
+                .equals("fold") || properties.getProperty(
+                "normalization.stemmer", "none").equals("porter");
+    }
+
+    /**
+     * Gets the normalized form of a token, from the cache when it was seen
+     * recently.
+     *
+     * @param token the raw token
+     * @return the normalized token
+     */
+    public String normalize(String token) {
+        String normalized = cache.get(token);
+        if (normalized != null) {
+            hits++;
+            return normalized;
+        }
+
+        misses++;
+        normalized = token;
+        if (caseFolding) {
+            normalized = normalized.toLowerCase();
+        }
+        if (stemmer != null) {
+            normalized = stemmer.stem(normalized);
+        }
+        if (cacheSize > 0) {
+            cache.put(token, normalized);
+        }
+        return normalized;
+    }
+
+    /**
+     * Folds a token to lowercase when case folding is enabled, without
+     * stemming it. Used for search patterns, whose stems mean nothing.
+     *
+     * @param token the raw token
+     * @return the token in lowercase if case folding is enabled, else the
+     *         token
+     */
+    public String foldCase(String token) {
+        return caseFolding ? token.toLowerCase() : token;
+    }
+
+    /**
+     * Describes the normalization for the summary report.
+     *
+     * @return the enabled normalization steps
+     */
+    public String getDescription() {
+        if (caseFolding && stemmer != null) {
+            return "case folding, Porter stemming";
+        }
+        return caseFolding ? "case folding" : "Porter stemming";
+    }
+
+    /**
+     * Gets the number of tokens found in the cache.
+     *
+     * @return the number of cache hits
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of tokens which were not in the cache.
+     *
+     * @return the number of cache misses
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of tokens dropped from the full cache.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Gets the fraction of tokens found in the cache.
+     *
+     * @return the hit rate, or 0 if no token was normalized
+     */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+}
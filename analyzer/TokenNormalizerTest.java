@@ -0,0 +1,333 @@
+package java112.analyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java112.utilities.PropertiesLoader;
+
+/**
+ * Unit testing for {@link TokenNormalizer} and {@link PorterStemmer}, and for
+ * the analyzers which match normalized tokens against word lists.
+ *
+ * @author Ryan Chua
+ */
+public class TokenNormalizerTest implements PropertiesLoader {
+
+    /** The location of the properties file to read                           */
+    private final static String PROPERTIES_FILE = "/analyzer.properties";
+
+    /** A text of stop words which stem differently and search tokens         */
+    private final static String TEXT = "This muscle was labelled the "
+            + "zygomaticus major, and it has been studied as the zygomaticus "
+            + "of smiling.\nWhen the zygomaticus is weak, this smile is thin "
+            + "and it was\nnoted as such.";
+
+    /** The properties file to read from                                      */
+    private Properties properties;
+
+    /**
+     * Creates a {@code TokenNormalizerTest} object and loads the analyzer's
+     * properties file.
+     */
+    public TokenNormalizerTest() {
+        properties = loadProperties(PROPERTIES_FILE);
+    }
+
+    /**
+     * Runs tests on methods used in {@code TokenNormalizer}.
+     *
+     * @param args the command line arguments (not used)
+     */
+    public static void main(String[] args) {
+        TokenNormalizerTest test = new TokenNormalizerTest();
+
+        boolean stemFailed = test.testStem();
+        boolean cacheFailed = test.testCache();
+        boolean analysisFailed = test.testNormalizedAnalysis();
+        System.out.println();
+
+        if (stemFailed) {
+            System.out.println("stem failed testing");
+        }
+
+        if (cacheFailed) {
+            System.out.println("The normalization cache failed testing");
+        }
+
+        if (analysisFailed) {
+            System.out.println("Normalized analysis failed testing");
+        }
+    }
+
+    /**
+     * Tests the {@code stem} method with words from each step of the
+     * algorithm, most of them examples from Porter's paper. Words which are
+     * not all lowercase letters are left as they are.
+     *
+     * @return true if any test fails, else false
+     */
+    public boolean testStem() {
+        int successes = 0;
+        int failures = 0;
+
+        // Create test objects
+        PorterStemmer stemmer = new PorterStemmer();
+        String[] words = {"running", "caresses", "ponies", "ties", "caress",
+                "cats", "feed", "agreed", "plastered", "motoring", "sing",
+                "conflated", "hopping", "falling", "filing", "happy",
+                "relational", "generalization", "hopeful", "goodness",
+                "adjustable", "electrical", "a", "Running", "co-op"};
+
+        // Create expected results
+        String[] expected = {"run", "caress", "poni", "ti", "caress", "cat",
+                "feed", "agre", "plaster", "motor", "sing", "conflat", "hop",
+                "fall", "file", "happi", "relat", "gener", "hope", "good",
+                "adjust", "electr", "a", "Running", "co-op"};
+
+        // Compare expected v. actual and display results
+        System.out.println();
+        System.out.println("Testing stem");
+
+        for (int i = 0; i < words.length; i++) {
+            String actual = stemmer.stem(words[i]);
+            if (expected[i].equals(actual)) {
+                System.out.println("Test " + (i + 1) + ": Success");
+                successes++;
+            } else {
+                System.out.println("Test " + (i + 1) + ": Failed");
+                System.out.println("    Word:     " + words[i]);
+                System.out.println("    Expected: " + expected[i]);
+                System.out.println("    Actual:   " + actual);
+                failures++;
+            }
+        }
+
+        System.out.println();
+        System.out.println("Successful tests: " + successes + "/"
+                + (successes + failures));
+        System.out.println("Failed tests: " + failures + "/"
+                + (successes + failures));
+
+        if (failures > 0) {
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Tests the hits, misses and evictions of a cache of two tokens. A hit
+     * makes a token the most recently used, so the other one is evicted
+     * first. With no cache every token is a miss.
+     *
+     * @return true if any test fails, else false
+     */
+    public boolean testCache() {
+        int successes = 0;
+        int failures = 0;
+
+        // Create test objects
+        Properties cacheProperties = new Properties();
+        cacheProperties.setProperty("normalization.case", "fold");
+        cacheProperties.setProperty("normalization.stemmer", "porter");
+        cacheProperties.setProperty("normalization.cache.size", "2");
+        TokenNormalizer normalizer = new TokenNormalizer(cacheProperties);
+        cacheProperties.setProperty("normalization.cache.size", "0");
+        TokenNormalizer uncached = new TokenNormalizer(cacheProperties);
+
+        // a, b miss; a hits; c evicts b; b evicts a; a evicts c; b hits
+        String[] tokens = {"Ponies", "running", "Ponies", "cats", "running",
+                "Ponies", "running"};
+        String[] expectedTokens = {"poni", "run", "poni", "cat", "run",
+                "poni", "run"};
+        boolean tokensMatch = true;
+        for (int i = 0; i < tokens.length; i++) {
+            tokensMatch &= expectedTokens[i].equals(normalizer.normalize(
+                    tokens[i]));
+            tokensMatch &= expectedTokens[i].equals(uncached.normalize(
+                    tokens[i]));
+        }
+
+        // Create expected results: hits, misses and evictions
+        long[][] expected = {{2, 5, 3}, {0, 7, 0}};
+        long[][] actual = {
+                {normalizer.getHits(), normalizer.getMisses(),
+                        normalizer.getEvictions()},
+                {uncached.getHits(), uncached.getMisses(),
+                        uncached.getEvictions()}};
+
+        // Compare expected v. actual and display results
+        System.out.println();
+        System.out.println("Testing the normalization cache");
+
+        if (tokensMatch) {
+            System.out.println("Normalized tokens: Success");
+            successes++;
+        } else {
+            System.out.println("Normalized tokens: Failed");
+            failures++;
+        }
+
+        for (int i = 0; i < expected.length; i++) {
+            if (Arrays.equals(expected[i], actual[i])) {
+                System.out.println("Test " + (i + 1) + ": Success");
+                successes++;
+            } else {
+                System.out.println("Test " + (i + 1) + ": Failed");
+                System.out.println("    Expected: "
+                        + Arrays.toString(expected[i]));
+                System.out.println("    Actual:   "
+                        + Arrays.toString(actual[i]));
+                failures++;
+            }
+        }
+
+        if (Math.abs(normalizer.getHitRate() - 2.0 / 7) < 1e-9
+                && uncached.getHitRate() == 0) {
+            System.out.println("Hit rate: Success");
+            successes++;
+        } else {
+            System.out.println("Hit rate: Failed");
+            System.out.println("    Actual:   " + normalizer.getHitRate()
+                    + ", " + uncached.getHitRate());
+            failures++;
+        }
+
+        System.out.println();
+        System.out.println("Successful tests: " + successes + "/"
+                + (successes + failures));
+        System.out.println("Failed tests: " + failures + "/"
+                + (successes + failures));
+
+        if (failures > 0) {
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Tests that case folding and Porter stemming leave the search hits and
+     * lexical density of a text unchanged when its search tokens and
+     * non-lexical words are in lowercase and no lexical word stems to a
+     * non-lexical one. "was", "this" and "has" stem to "wa", "thi" and "ha",
+     * and "zygomaticus" to "zygomaticu". A normalized sample of the whole
+     * text must estimate the same density.
+     *
+     * @return true if any test fails, else false
+     */
+    public boolean testNormalizedAnalysis() {
+        int successes = 0;
+        int failures = 0;
+
+        System.out.println();
+        System.out.println("Testing normalized analysis");
+
+        try {
+            File input = File.createTempFile("normalized", ".txt");
+            Files.write(input.toPath(), TEXT.getBytes("UTF-8"));
+
+            Properties plainProperties = new Properties();
+            plainProperties.putAll(properties);
+            plainProperties.setProperty("normalization.case", "keep");
+            plainProperties.setProperty("normalization.stemmer", "none");
+            Properties normalizedProperties = new Properties();
+            normalizedProperties.putAll(properties);
+            normalizedProperties.setProperty("normalization.case", "fold");
+            normalizedProperties.setProperty("normalization.stemmer",
+                    "porter");
+
+            Map<String, List<Integer>> expectedHits;
+            Map<String, List<Integer>> actualHits;
+            double expectedDensity;
+            double actualDensity;
+            try (AnalysisResult expected = new FileAnalysis().analyzeFile(
+                    input.getPath(), plainProperties);
+                    AnalysisResult actual = new FileAnalysis().analyzeFile(
+                    input.getPath(), normalizedProperties)) {
+                expectedHits = expected.getSearchHits();
+                actualHits = actual.getSearchHits();
+                expectedDensity = expected.getLexicalDensity();
+                actualDensity = actual.getLexicalDensity();
+            }
+
+            // A sample of every block must estimate the full run's density
+            File outputDirectory = Files.createTempDirectory("sampled")
+                    .toFile();
+            Properties sampledProperties = new Properties();
+            sampledProperties.putAll(normalizedProperties);
+            sampledProperties.setProperty("sample.fraction", "1");
+            sampledProperties.setProperty("output.directory",
+                    outputDirectory.getPath() + File.separator);
+            SampledAnalysis sample = new SampledAnalysis(new FileAnalysis(),
+                    sampledProperties);
+            sample.analyze(input.getPath(), new ScanningTokenizer(),
+                    StandardCharsets.UTF_8);
+            String expectedEstimate = "Estimated Lexical Density: "
+                    + new DecimalFormat("0.00%").format(actualDensity)
+                    + " +/- 0.00%";
+            List<String> estimates = sample.getEstimateLines();
+
+            for (File file : outputDirectory.listFiles()) {
+                file.delete();
+            }
+            outputDirectory.delete();
+            input.delete();
+
+            // Compare expected v. actual and display results
+            if (expectedHits.get("zygomaticus").size() == 3
+                    && expectedHits.equals(actualHits)) {
+                System.out.println("Search hits: Success");
+                successes++;
+            } else {
+                System.out.println("Search hits: Failed");
+                System.out.println("    Expected: " + expectedHits);
+                System.out.println("    Actual:   " + actualHits);
+                failures++;
+            }
+
+            if (expectedDensity == actualDensity) {
+                System.out.println("Lexical density: Success");
+                successes++;
+            } else {
+                System.out.println("Lexical density: Failed");
+                System.out.println("    Expected: " + expectedDensity);
+                System.out.println("    Actual:   " + actualDensity);
+                failures++;
+            }
+
+            if (estimates.contains(expectedEstimate)) {
+                System.out.println("Sampled lexical density: Success");
+                successes++;
+            } else {
+                System.out.println("Sampled lexical density: Failed");
+                System.out.println("    Expected: " + expectedEstimate);
+                System.out.println("    Actual:   " + estimates);
+                failures++;
+            }
+        } catch (IOException iOException) {
+            System.out.println("There was a problem analyzing the text");
+            iOException.printStackTrace();
+            failures++;
+        }
+
+        System.out.println();
+        System.out.println("Successful tests: " + successes + "/"
+                + (successes + failures));
+        System.out.println("Failed tests: " + failures + "/"
+                + (successes + failures));
+
+        if (failures > 0) {
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+package java112.analyzer;
+
+import java.util.Arrays;
+
+/**
+ * A sparse index from token numbers to byte offsets in the input file. The
+ * offset of every {@code CHECKPOINT_INTERVAL}th token is recorded while the
+ * file is read, so finding any token later means jumping to the checkpoint
+ * before it and scanning at most one interval of tokens. The index holds one
+ * {@code long} per interval however many tokens are looked up.
+ *
+ * @author Ryan Chua
+ */
+public class TokenOffsetIndex {
+
+    /** The number of tokens between two recorded offsets                     */
+    public static final int CHECKPOINT_INTERVAL = 256;
+
+    /** The offset of tokens 1, 1 + interval, 1 + 2 * interval and so on      */
+    private long[] checkpoints;
+
+    /** The number of offsets recorded                                        */
+    private int checkpointCount;
+
+    /** The number of tokens seen                                             */
+    private long tokenCount;
+
+    /** False once a token's offset was not known                             */
+    private boolean complete;
+
+    /**
+     * Creates a new, empty {@code TokenOffsetIndex}.
+     */
+    public TokenOffsetIndex() {
+        checkpoints = new long[1024];
+        complete = true;
+    }
+
+    /**
+     * Counts a token and records its offset if it starts a new interval.
+     *
+     * @param tokenizer the tokenizer which is passing on the token
+     */
+    public void countToken(Tokenizer tokenizer) {
+        if (tokenCount++ % CHECKPOINT_INTERVAL != 0) {
+            return;
+        }
+
+        long offset = tokenizer.getTokenOffset();
+        if (offset < 0) {
+            complete = false;
+        }
+        if (checkpointCount == checkpoints.length) {
+            checkpoints = Arrays.copyOf(checkpoints, checkpoints.length * 2);
+        }
+        checkpoints[checkpointCount++] = offset;
+    }
+
+    /**
+     * Gets the checkpoint at or before a token.
+     *
+     * @param tokenNumber the number of the token, counting from 1
+     * @return the number of the checkpoint token, counting from 1
+     */
+    public long getCheckpointToken(long tokenNumber) {
+        return (tokenNumber - 1) / CHECKPOINT_INTERVAL * CHECKPOINT_INTERVAL
+                + 1;
+    }
+
+    /**
+     * Gets the byte offset of the checkpoint at or before a token.
+     *
+     * @param tokenNumber the number of the token, counting from 1
+     * @return the byte offset of the checkpoint token
+     */
+    public long getCheckpointOffset(long tokenNumber) {
+        return checkpoints[(int) ((tokenNumber - 1) / CHECKPOINT_INTERVAL)];
+    }
+
+    /**
+     * Checks whether the offset of every checkpoint is known.
+     *
+     * @return true if tokens can be found through the index, else false
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Gets the number of tokens seen.
+     *
+     * @return the number of tokens
+     */
+    public long getTokenCount() {
+        return tokenCount;
+    }
+}
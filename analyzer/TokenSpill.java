@@ -0,0 +1,327 @@
+package java112.analyzer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Sorted runs of tokens written to disk when an analyzer is over its memory
+ * budget. Each run is a temporary file with one token per line in
+ * {@code String.compareTo} order, optionally followed by a tab and a count.
+ * When the report is written the runs and the tokens still in memory are
+ * merged in a single pass, adding the counts of a token found in several
+ * runs, so the report is the same as if nothing had been spilled.
+ *
+ * Run files are kept until {@link #close} is called, so a spill can be
+ * merged into several report snapshots. The memory governor closes every
+ * spill of a run once the final reports have been written.
+ *
+ * @author Ryan Chua
+ */
+public class TokenSpill implements AutoCloseable {
+
+    /** The directory run files are created in                                */
+    private File directory;
+
+    /** The run files in the order they were written                          */
+    private List<File> runs;
+
+    /** True once the run files have been deleted                             */
+    private boolean closed;
+
+    /**
+     * Creates a new {@code TokenSpill} with no runs.
+     *
+     * @param directory the directory to create run files in
+     */
+    public TokenSpill(File directory) {
+        this.directory = directory;
+        runs = new ArrayList<File>();
+    }
+
+    /**
+     * Writes a new run. The writer passed to {@code writeRun} must be given
+     * the tokens in sorted order, one per line.
+     *
+     * @param writeRun writes the sorted lines of the run
+     * @throws IOException if the run file could not be written
+     */
+    public void spill(Consumer<PrintWriter> writeRun) throws IOException {
+        File run = File.createTempFile("analyzer-spill", ".run", directory);
+
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(run),
+                StandardCharsets.UTF_8)))) {
+            writeRun.accept(writer);
+            if (writer.checkError()) {
+                throw new IOException("Could not write " + run);
+            }
+        }
+        runs.add(run);
+    }
+
+    /**
+     * Writes a new run of sorted tokens.
+     *
+     * @param sortedTokens the tokens in sorted order
+     * @param counts gets the count of each token, or null for no counts
+     * @throws IOException if the run file could not be written
+     */
+    public void spill(String[] sortedTokens, ToIntFunction<String> counts)
+            throws IOException {
+        spill(writer -> {
+            for (String token : sortedTokens) {
+                writeLine(writer, token, (counts == null) ? 1
+                        : counts.applyAsInt(token), counts != null);
+            }
+        });
+    }
+
+    /**
+     * Takes over the runs of another spill, which must have been written to
+     * the same kind of report. The other spill no longer holds the runs, so
+     * closing it does not delete them.
+     *
+     * @param other the spill whose runs to add
+     */
+    public void addRuns(TokenSpill other) {
+        runs.addAll(other.runs);
+        other.runs.clear();
+    }
+
+    /**
+     * Deletes every run file. The spill cannot be merged afterwards.
+     */
+    @Override
+    public void close() {
+        for (File run : runs) {
+            if (!run.delete() && run.exists()) {
+                System.out.println("Could not delete the spilled run " + run);
+            }
+        }
+        runs.clear();
+        closed = true;
+    }
+
+    /**
+     * Merges every run with the tokens still in memory and writes each
+     * distinct token once, in sorted order.
+     *
+     * @param writer the report to write to
+     * @param sortedTokens the tokens still in memory, in sorted order
+     * @param counts gets the count of each token in memory, or null if each
+     *               counts once
+     * @param includeCounts true to follow each token with a tab and its total
+     *                      count
+     * @throws IOException if a run file could not be read or the runs have
+     *         been deleted
+     */
+    public void writeMerged(PrintWriter writer, String[] sortedTokens,
+            ToIntFunction<String> counts, boolean includeCounts)
+            throws IOException {
+        writeMerged(writer, Arrays.asList(sortedTokens).iterator(), counts,
+                includeCounts);
+    }
+
+    /**
+     * Merges every run with the tokens still in memory and writes each
+     * distinct token once, in sorted order. The tokens in memory are taken
+     * from the iterator one at a time, so tokens stored off the heap need
+     * not all be copied into {@code String} objects at once.
+     *
+     * @param writer the report to write to
+     * @param sortedTokens the tokens still in memory, in sorted order
+     * @param counts gets the count of each token in memory, or null if each
+     *               counts once
+     * @param includeCounts true to follow each token with a tab and its total
+     *                      count
+     * @throws IOException if a run file could not be read or the runs have
+     *         been deleted
+     */
+    public void writeMerged(PrintWriter writer,
+            Iterator<String> sortedTokens, ToIntFunction<String> counts,
+            boolean includeCounts) throws IOException {
+        if (closed) {
+            throw new IOException("The spilled runs have been deleted");
+        }
+        PriorityQueue<Run> queue = new PriorityQueue<Run>(runs.size() + 1,
+                (first, second) -> first.token.compareTo(second.token));
+        List<BufferedReader> readers = new ArrayList<BufferedReader>();
+
+        try {
+            for (File run : runs) {
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(new FileInputStream(run),
+                        StandardCharsets.UTF_8));
+                readers.add(reader);
+                addIfNotEmpty(queue, new FileRun(reader));
+            }
+            addIfNotEmpty(queue, new MemoryRun(sortedTokens, counts));
+
+            while (!queue.isEmpty()) {
+                Run run = queue.poll();
+                String token = run.token;
+                long count = run.count;
+                addIfNotEmpty(queue, run);
+
+                while (!queue.isEmpty() && queue.peek().token.equals(token)) {
+                    run = queue.poll();
+                    count += run.count;
+                    addIfNotEmpty(queue, run);
+                }
+                writeLine(writer, token, count, includeCounts);
+            }
+        } finally {
+            for (BufferedReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Moves a run to its next token and queues it unless it is used up.
+     *
+     * @param queue the runs ordered by their current token
+     * @param run the run to advance
+     * @throws IOException if the run file could not be read
+     */
+    private void addIfNotEmpty(PriorityQueue<Run> queue, Run run)
+            throws IOException {
+        if (run.advance()) {
+            queue.add(run);
+        }
+    }
+
+    /**
+     * Writes one token and, if wanted, its count.
+     *
+     * @param writer the writer to write to
+     * @param token the token
+     * @param count the number of times the token was counted
+     * @param includeCounts true to follow the token with a tab and its count
+     */
+    private static void writeLine(PrintWriter writer, String token,
+            long count, boolean includeCounts) {
+        writer.print(token);
+        if (includeCounts) {
+            writer.print('\t');
+            writer.print(count);
+        }
+        writer.println();
+    }
+
+    // Getters and Setters
+
+    /**
+     * Gets the number of runs written to disk.
+     *
+     * @return the number of runs
+     */
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * A sorted sequence of tokens and counts being merged.
+     */
+    private abstract static class Run {
+
+        /** The current token                                                 */
+        String token;
+
+        /** The count of the current token                                    */
+        long count;
+
+        /**
+         * Moves to the next token.
+         *
+         * @return true if there was another token, false at the end
+         * @throws IOException if the run could not be read
+         */
+        abstract boolean advance() throws IOException;
+    }
+
+    /**
+     * A run read from a file.
+     */
+    private static class FileRun extends Run {
+
+        /** Reads the lines of the run file                                   */
+        private BufferedReader reader;
+
+        /**
+         * Creates a new {@code FileRun}.
+         *
+         * @param reader reads the lines of the run file
+         */
+        FileRun(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            String line = reader.readLine();
+            if (line == null) {
+                return false;
+            }
+
+            int tab = line.indexOf('\t');
+            if (tab == -1) {
+                token = line;
+                count = 1;
+            } else {
+                token = line.substring(0, tab);
+                count = Long.parseLong(line.substring(tab + 1));
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A run of the sorted tokens still in memory.
+     */
+    private static class MemoryRun extends Run {
+
+        /** The tokens in sorted order                                        */
+        private Iterator<String> sortedTokens;
+
+        /** Gets the count of each token, or null if each counts once         */
+        private ToIntFunction<String> counts;
+
+        /**
+         * Creates a new {@code MemoryRun}.
+         *
+         * @param sortedTokens the tokens in sorted order
+         * @param counts gets the count of each token, or null
+         */
+        MemoryRun(Iterator<String> sortedTokens,
+                ToIntFunction<String> counts) {
+            this.sortedTokens = sortedTokens;
+            this.counts = counts;
+        }
+
+        @Override
+        boolean advance() {
+            if (!sortedTokens.hasNext()) {
+                return false;
+            }
+            token = sortedTokens.next();
+            count = (counts == null) ? 1 : counts.applyAsInt(token);
+            return true;
+        }
+    }
+}
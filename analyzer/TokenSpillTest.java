@@ -0,0 +1,175 @@
+package java112.analyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Unit testing for {@link TokenSpill}. Reports merged from spilled runs must
+ * match the reports written from memory, and closing the spills must delete
+ * their run files.
+ *
+ * @author Ryan Chua
+ */
+public class TokenSpillTest {
+
+    /** The number of tokens given to each analyzer                           */
+    private static final int TOKENS = 400000;
+
+    /**
+     * Runs tests on methods used in {@code TokenSpill}.
+     *
+     * @param args the command line arguments (not used)
+     */
+    public static void main(String[] args) {
+        TokenSpillTest test = new TokenSpillTest();
+
+        boolean mergeFailed = test.testMergedReports();
+        System.out.println();
+
+        if (mergeFailed) {
+            System.out.println("writeMerged failed testing");
+        }
+    }
+
+    /**
+     * Runs the distinct and distinct counts analyzers over the same tokens
+     * with no budget and with a 1 MB budget, which forces several spills.
+     * The reports must be identical, and no run files may be left once the
+     * governor deletes the spills.
+     *
+     * @return true if any test fails, else false
+     */
+    public boolean testMergedReports() {
+        int successes = 0;
+        int failures = 0;
+
+        System.out.println();
+        System.out.println("Testing writeMerged");
+
+        try {
+            File directory = Files.createTempDirectory("spill-test").toFile();
+            File memoryDirectory = new File(directory, "memory");
+            File spilledDirectory = new File(directory, "spilled");
+            File spillDirectory = new File(directory, "runs");
+            memoryDirectory.mkdir();
+            spilledDirectory.mkdir();
+            spillDirectory.mkdir();
+
+            MemoryGovernor governor = runAnalyzers(memoryDirectory, 0,
+                    spillDirectory);
+            MemoryGovernor spillingGovernor = runAnalyzers(spilledDirectory,
+                    1, spillDirectory);
+
+            // Compare expected v. actual and display results
+            if (spillingGovernor.getDegradations().size() == 2
+                    && governor.getDegradations().isEmpty()) {
+                System.out.println("Spilled: Success");
+                successes++;
+            } else {
+                System.out.println("Spilled: Failed");
+                System.out.println("    Degradations: "
+                        + spillingGovernor.getDegradations());
+                failures++;
+            }
+
+            for (String report : new String[] {"distinct.txt",
+                    "distinct_counts.txt"}) {
+                byte[] expected = Files.readAllBytes(new File(
+                        memoryDirectory, report).toPath());
+                byte[] actual = Files.readAllBytes(new File(
+                        spilledDirectory, report).toPath());
+                if (Arrays.equals(expected, actual)) {
+                    System.out.println(report + ": Success");
+                    successes++;
+                } else {
+                    System.out.println(report + ": Failed");
+                    failures++;
+                }
+            }
+
+            int runsWritten = spillDirectory.list().length;
+            spillingGovernor.deleteSpills();
+            int runsLeft = spillDirectory.list().length;
+            if (runsWritten > 0 && runsLeft == 0) {
+                System.out.println("Runs deleted: Success");
+                successes++;
+            } else {
+                System.out.println("Runs deleted: Failed");
+                System.out.println("    Written: " + runsWritten);
+                System.out.println("    Left:    " + runsLeft);
+                failures++;
+            }
+
+            for (File parent : new File[] {memoryDirectory, spilledDirectory,
+                    spillDirectory}) {
+                for (File file : parent.listFiles()) {
+                    file.delete();
+                }
+                parent.delete();
+            }
+            directory.delete();
+        } catch (IOException iOException) {
+            System.out.println("There was a problem writing the reports");
+            iOException.printStackTrace();
+            failures++;
+        }
+
+        System.out.println();
+        System.out.println("Successful tests: " + successes + "/"
+                + (successes + failures));
+        System.out.println("Failed tests: " + failures + "/"
+                + (successes + failures));
+
+        if (failures > 0) {
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Runs the distinct and distinct counts analyzers over a repeatable
+     * stream of tokens and writes their reports.
+     *
+     * @param outputDirectory the directory to write the reports to
+     * @param budgetMegabytes the memory budget, 0 for none
+     * @param spillDirectory the directory to spill runs to
+     * @return the memory governor of the run, which still holds its spills
+     */
+    private MemoryGovernor runAnalyzers(File outputDirectory,
+            int budgetMegabytes, File spillDirectory) {
+        Properties properties = new Properties();
+        properties.setProperty("output.directory",
+                outputDirectory.getPath() + File.separator);
+        properties.setProperty("output.file.distinct", "distinct.txt");
+        properties.setProperty("output.file.distinct.counts",
+                "distinct_counts.txt");
+        properties.setProperty("memory.budget.mb",
+                String.valueOf(budgetMegabytes));
+        properties.setProperty("memory.spill.directory",
+                spillDirectory.getPath());
+
+        MemoryGovernor governor = new MemoryGovernor(properties);
+        DistinctTokensAnalyzer distinct = new DistinctTokensAnalyzer(
+                properties);
+        DistinctTokenCountsAnalyzer counts = new DistinctTokenCountsAnalyzer(
+                properties);
+        distinct.setMemoryGovernor(governor);
+        counts.setMemoryGovernor(governor);
+
+        for (int i = 0; i < TOKENS; i++) {
+            // Every token recurs, so counts must be added across runs
+            String token = "token" + (i * 7919L % (TOKENS / 4));
+            distinct.processToken(token);
+            counts.processToken(token);
+        }
+
+        distinct.generateOutputFile("test.txt");
+        counts.generateOutputFile("test.txt");
+        return governor;
+    }
+
+}
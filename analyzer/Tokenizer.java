@@ -0,0 +1,58 @@
+package java112.analyzer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.function.Consumer;
+
+/**
+ * Interface for splitting text into tokens. Implementations only pass
+ * non-empty tokens to the consumer.
+ *
+ * @author Ryan Chua
+ */
+public interface Tokenizer {
+    /**
+     * Splits a line of text into tokens and passes each non-empty token to
+     * the consumer in order.
+     *
+     * @param line a single line of a text file to split into tokens
+     * @param consumer the receiver of each token
+     */
+    public abstract void tokenize(String line, Consumer<String> consumer);
+
+    /**
+     * Reads the input until it is exhausted and passes each token to the
+     * consumer in order. The input is decoded with the given charset and
+     * tokenized one line at a time. The input is not closed.
+     *
+     * @param input the stream of text to tokenize
+     * @param charset the charset the text is encoded in
+     * @param consumer the receiver of each token
+     * @throws IOException if the input cannot be read
+     */
+    public default void tokenize(InputStream input, Charset charset,
+            Consumer<String> consumer) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                input, charset));
+        String line = reader.readLine();
+        while (line != null) {
+            tokenize(line, consumer);
+            line = reader.readLine();
+        }
+    }
+
+    /**
+     * Gets the byte offset in the input stream of the token most recently
+     * passed to the consumer. Only meaningful while a stream is being
+     * tokenized, and only for tokenizers which track offsets.
+     *
+     * @return the byte offset of the token, or -1 if it is not known
+     */
+    public default long getTokenOffset() {
+        return -1;
+    }
+
+}
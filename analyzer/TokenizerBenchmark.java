@@ -0,0 +1,166 @@
+package java112.analyzer;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the throughput of each {@link Tokenizer} over a text file held in
+ * memory, so file reading does not affect the results. Each tokenizer is
+ * timed on the lines of the file and on its bytes as a UTF-8 stream, which
+ * is how files are analyzed. The vector tokenizer is only measured when the
+ * JVM is started with {@code --add-modules jdk.incubator.vector}.
+ *
+ * <pre>
+ * java java112.analyzer.TokenizerBenchmark input.txt [iterations]
+ * </pre>
+ *
+ * @author Ryan Chua
+ */
+public class TokenizerBenchmark {
+
+    /** The number of untimed passes made to let the JIT compiler warm up     */
+    private static final int WARMUP_ITERATIONS = 3;
+
+    /** The number of tokens seen by the current run                          */
+    private long tokenCount;
+
+    /**
+     * Runs the benchmark on the file named on the command line.
+     *
+     * @param args the input file and optionally the number of timed passes
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Please enter the text file to benchmark");
+            return;
+        }
+
+        int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+        TokenizerBenchmark benchmark = new TokenizerBenchmark();
+
+        try {
+            List<String> lines = benchmark.readLines(args[0]);
+            byte[] bytes = Files.readAllBytes(Paths.get(args[0]));
+            Tokenizer vector = FileAnalysis.newVectorTokenizer();
+            Tokenizer[] tokenizers = {new RegexTokenizer(),
+                    new ScanningTokenizer(), new RuleTokenizer(), vector};
+            String[] names = {"regex", "scan", "rules", "vector"};
+            // The fallback is the scan tokenizer, which is measured already
+            int count = (vector.getClass() == ScanningTokenizer.class) ? 3
+                    : 4;
+
+            System.out.println("Lines:");
+            for (int i = 0; i < count; i++) {
+                benchmark.run(names[i], tokenizers[i], lines, iterations);
+            }
+            System.out.println("Streams:");
+            for (int i = 0; i < count; i++) {
+                benchmark.runStream(names[i], tokenizers[i], bytes,
+                        iterations);
+            }
+        } catch (IOException iOException) {
+            System.out.println("There was a problem reading the file");
+            iOException.printStackTrace();
+        }
+    }
+
+    /**
+     * Reads every line of a file into memory.
+     *
+     * @param fileName the file to read
+     * @return the lines of the file
+     * @throws IOException if the file cannot be read
+     */
+    public List<String> readLines(String fileName) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        try (BufferedReader reader = new BufferedReader(
+                new FileReader(fileName))) {
+            String line = reader.readLine();
+            while (line != null) {
+                lines.add(line);
+                line = reader.readLine();
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Times a tokenizer over the lines and prints its throughput.
+     *
+     * @param name the name to print for the tokenizer
+     * @param tokenizer the tokenizer to measure
+     * @param lines the lines to tokenize
+     * @param iterations the number of timed passes over the lines
+     */
+    public void run(String name, Tokenizer tokenizer, List<String> lines,
+            int iterations) {
+        long chars = 0;
+        for (String line : lines) {
+            chars += line.length() + 1;
+        }
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            tokenizeAll(tokenizer, lines);
+        }
+
+        tokenCount = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            tokenizeAll(tokenizer, lines);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%-8s %10.1f MB/s %14.0f tokens/s %12d tokens%n",
+                name, chars * iterations / seconds / 1e6,
+                tokenCount / seconds, tokenCount / iterations);
+    }
+
+    /**
+     * Times a tokenizer over the bytes of the file as a stream and prints
+     * its throughput.
+     *
+     * @param name the name to print for the tokenizer
+     * @param tokenizer the tokenizer to measure
+     * @param bytes the contents of the file
+     * @param iterations the number of timed passes over the bytes
+     * @throws IOException if the stream cannot be tokenized
+     */
+    public void runStream(String name, Tokenizer tokenizer, byte[] bytes,
+            int iterations) throws IOException {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            tokenizer.tokenize(new ByteArrayInputStream(bytes),
+                    StandardCharsets.UTF_8, token -> tokenCount++);
+        }
+
+        tokenCount = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            tokenizer.tokenize(new ByteArrayInputStream(bytes),
+                    StandardCharsets.UTF_8, token -> tokenCount++);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%-8s %10.1f MB/s %14.0f tokens/s %12d tokens%n",
+                name, (double) bytes.length * iterations / seconds / 1e6,
+                tokenCount / seconds, tokenCount / iterations);
+    }
+
+    /**
+     * Tokenizes every line once, counting the tokens.
+     *
+     * @param tokenizer the tokenizer to run
+     * @param lines the lines to tokenize
+     */
+    private void tokenizeAll(Tokenizer tokenizer, List<String> lines) {
+        for (String line : lines) {
+            tokenizer.tokenize(line, token -> tokenCount++);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package java112.analyzer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Splits streams at each non-word character like {@link ScanningTokenizer},
+ * but classifies the bytes of each chunk with the incubating Vector API:
+ * each vector of 16 to 64 bytes is compared against the word character
+ * ranges at once and the result is stored as one bit per byte. Token
+ * boundaries are then found by counting the zeros of the bitmap, so runs of
+ * word or delimiter bytes are skipped 64 at a time.
+ *
+ * The class needs the {@code jdk.incubator.vector} module, so it is kept out
+ * of the main sources and compiled on its own:
+ *
+ * <pre>
+ * javac --add-modules jdk.incubator.vector -cp classes -d classes \
+ *         analyzer/vector/VectorScanningTokenizer.java
+ * </pre>
+ *
+ * The JVM must then be started with {@code --add-modules
+ * jdk.incubator.vector}. {@link FileAnalysis#newTokenizer} loads it by name
+ * for the {@code vector} backend and uses {@link ScanningTokenizer} when it
+ * cannot be loaded. Lines and text in charsets which are not scanned as raw
+ * bytes are tokenized by the scalar code.
+ *
+ * @author Ryan Chua
+ */
+public class VectorScanningTokenizer extends ScanningTokenizer {
+
+    /** The widest vector of bytes the hardware supports                      */
+    private static final VectorSpecies<Byte> SPECIES =
+            ByteVector.SPECIES_PREFERRED;
+
+    /** The bit each lane sets in its group of 8 lanes when it is a word byte */
+    private static final ByteVector LANE_BITS = ByteVector.broadcast(
+            SPECIES, (byte) 1).lanewise(VectorOperators.LSHL,
+            ByteVector.zero(SPECIES).addIndex(1).and((byte) 7));
+
+    /** Reads 8 bytes of lane bits at a time as a little-endian long          */
+    private static final VarHandle LONGS =
+            MethodHandles.byteArrayViewVarHandle(long[].class,
+            ByteOrder.LITTLE_ENDIAN);
+
+    /** Moves the digits to the bottom of the signed byte range               */
+    private static final byte DIGIT_BIAS = (byte) (0x80 - '0');
+
+    /** Moves the lowercase letters to the bottom of the signed byte range    */
+    private static final byte LETTER_BIAS = (byte) (0x80 - 'a');
+
+    /** The number of bytes read from a stream at a time, a multiple of 64    */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /** The byte offset of the token being consumed, or -1 if not known       */
+    private long tokenOffset = -1;
+
+    /**
+     * Creates a new {@code VectorScanningTokenizer}.
+     *
+     * @throws UnsupportedOperationException if the hardware has no vectors
+     *                                       of at least 16 bytes
+     */
+    public VectorScanningTokenizer() {
+        if (SPECIES.length() < 16) {
+            throw new UnsupportedOperationException("Vectors of "
+                    + SPECIES.length() + " bytes are too narrow to help");
+        }
+    }
+
+    /**
+     * Reads the input in chunks and passes each token to the consumer in
+     * order. Text in US-ASCII, ISO-8859-1 or UTF-8 is classified with
+     * vectors; other charsets are decoded and scanned by the scalar code.
+     * The input is not closed.
+     *
+     * @param input the stream of text to tokenize
+     * @param charset the charset the text is encoded in
+     * @param consumer the receiver of each token
+     * @throws IOException if the input cannot be read
+     */
+    @Override
+    public void tokenize(InputStream input, Charset charset,
+            Consumer<String> consumer) throws IOException {
+        if (isAsciiCompatible(charset)) {
+            tokenizeBytes(input, consumer);
+        } else {
+            tokenOffset = -1;
+            super.tokenize(input, charset, consumer);
+        }
+    }
+
+    /**
+     * Tokenizes raw bytes from the word bitmap of each chunk. Tokens which
+     * cross a chunk boundary are joined as in the scalar scanner.
+     *
+     * @param input the stream of text to tokenize
+     * @param consumer the receiver of each token
+     * @throws IOException if the input cannot be read
+     */
+    private void tokenizeBytes(InputStream input, Consumer<String> consumer)
+            throws IOException {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        long[] wordBits = new long[CHUNK_SIZE / 64];
+        byte[] laneBits = new byte[SPECIES.length()];
+        StringBuilder partialToken = new StringBuilder();
+        long chunkOffset = 0;
+        long partialOffset = 0;
+        int length = input.read(chunk);
+
+        while (length != -1) {
+            classify(chunk, length, wordBits, laneBits);
+            int position = 0;
+            while (position < length) {
+                position = nextBit(wordBits, position, length, 0);
+                if (position > 0 && partialToken.length() != 0) {
+                    // The token from the previous chunk ended at its boundary
+                    tokenOffset = partialOffset;
+                    consumer.accept(partialToken.toString());
+                    partialToken.setLength(0);
+                }
+                int start = position;
+                position = nextBit(wordBits, position, length, -1L);
+                if (position == length) {
+                    if (partialToken.length() == 0) {
+                        partialOffset = chunkOffset + start;
+                    }
+                    partialToken.append(new String(chunk, start,
+                            position - start, StandardCharsets.ISO_8859_1));
+                } else if (partialToken.length() != 0) {
+                    partialToken.append(new String(chunk, start,
+                            position - start, StandardCharsets.ISO_8859_1));
+                    tokenOffset = partialOffset;
+                    consumer.accept(partialToken.toString());
+                    partialToken.setLength(0);
+                } else if (position > start) {
+                    tokenOffset = chunkOffset + start;
+                    consumer.accept(new String(chunk, start, position - start,
+                            StandardCharsets.ISO_8859_1));
+                }
+            }
+            chunkOffset += length;
+            length = input.read(chunk);
+        }
+
+        if (partialToken.length() != 0) {
+            tokenOffset = partialOffset;
+            consumer.accept(partialToken.toString());
+        }
+    }
+
+    /**
+     * Sets one bit for each word byte of a chunk. Digits and letters are
+     * each found with one comparison: adding a bias moves the range to the
+     * bottom of the signed bytes, where nothing else can land. A letter is
+     * lowercased first by setting bit 5, which maps no other byte into a to
+     * z.
+     *
+     * The mask is turned into bits by storing the lane bit of each word byte
+     * and summing each group of 8 lanes with one multiplication; on JDK 17
+     * this is several times faster than {@code VectorMask.toLong}.
+     *
+     * @param chunk the bytes read
+     * @param length the number of bytes read
+     * @param wordBits the bitmap to fill, bit i of word i / 64 for byte i
+     * @param laneBits room for the lane bits of one vector
+     */
+    private static void classify(byte[] chunk, int length, long[] wordBits,
+            byte[] laneBits) {
+        Arrays.fill(wordBits, 0, (length + 63) >>> 6, 0);
+        int lanes = SPECIES.length();
+        int vectorEnd = SPECIES.loopBound(length);
+        int position = 0;
+
+        for (; position < vectorEnd; position += lanes) {
+            ByteVector bytes = ByteVector.fromArray(SPECIES, chunk, position);
+            VectorMask<Byte> word = bytes.add(DIGIT_BIAS).compare(
+                    VectorOperators.LT, (byte) (Byte.MIN_VALUE + 10))
+                    .or(bytes.or((byte) 0x20).add(LETTER_BIAS).compare(
+                    VectorOperators.LT, (byte) (Byte.MIN_VALUE + 26)))
+                    .or(bytes.compare(VectorOperators.EQ, (byte) '_'));
+            ByteVector.zero(SPECIES).blend(LANE_BITS, word).intoArray(
+                    laneBits, 0);
+            long bits = 0;
+            for (int i = 0; i < lanes; i += 8) {
+                // Each lane bit is distinct, so the top byte sums without
+                // carries
+                bits |= (((long) LONGS.get(laneBits, i)
+                        * 0x0101010101010101L) >>> 56) << i;
+            }
+            // The lanes divide 64, so a vector never spans two words
+            wordBits[position >>> 6] |= bits << (position & 63);
+        }
+
+        for (; position < length; position++) {
+            if (isWordChar((char) (chunk[position] & 0xFF))) {
+                wordBits[position >>> 6] |= 1L << position;
+            }
+        }
+    }
+
+    /**
+     * Finds the next byte whose bit in the bitmap differs from a pattern:
+     * with a pattern of 0 the next word byte, with -1 the next delimiter.
+     *
+     * @param wordBits the bitmap of word bytes
+     * @param from the position to search from
+     * @param limit the number of bytes in the chunk
+     * @param pattern 0 to find a word byte, -1 to find a delimiter
+     * @return the position found, or {@code limit} if there is none
+     */
+    private static int nextBit(long[] wordBits, int from, int limit,
+            long pattern) {
+        if (from >= limit) {
+            return limit;
+        }
+        int index = from >>> 6;
+        long bits = (wordBits[index] ^ pattern) & (-1L << from);
+        while (bits == 0) {
+            index++;
+            if (index << 6 >= limit) {
+                return limit;
+            }
+            bits = wordBits[index] ^ pattern;
+        }
+        return Math.min(limit, (index << 6) + Long.numberOfTrailingZeros(
+                bits));
+    }
+
+    /**
+     * Gets the byte offset in the input stream of the token being consumed.
+     * Offsets are only tracked when the bytes are scanned directly.
+     *
+     * @return the byte offset of the token, or -1 if it is not known
+     */
+    @Override
+    public long getTokenOffset() {
+        return tokenOffset;
+    }
+}